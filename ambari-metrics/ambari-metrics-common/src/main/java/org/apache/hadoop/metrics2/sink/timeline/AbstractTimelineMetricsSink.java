@@ -18,17 +18,20 @@
 package org.apache.hadoop.metrics2.sink.timeline;
 
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
 import org.apache.commons.httpclient.methods.PostMethod;
-import org.apache.commons.httpclient.methods.StringRequestEntity;
-import org.apache.commons.httpclient.params.HttpMethodParams;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.codehaus.jackson.map.AnnotationIntrospector;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.annotate.JsonSerialize;
 import org.codehaus.jackson.xc.JaxbAnnotationIntrospector;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.net.ConnectException;
+import java.util.zip.GZIPOutputStream;
 
 public abstract class AbstractTimelineMetricsSink {
   public static final String TAGS_FOR_PREFIX_PROPERTY_PREFIX = "tagsForPrefix.";
@@ -37,10 +40,19 @@ public abstract class AbstractTimelineMetricsSink {
   public static final String METRICS_POST_TIMEOUT_SECONDS = "timeout";
   public static final String COLLECTOR_HOST_PROPERTY = "collector";
   public static final String COLLECTOR_PORT_PROPERTY = "port";
+  public static final String GZIP_PROPERTY = "gzip";
+  public static final String EMITTER_QUEUE_SIZE_PROPERTY = "emitter.queueSize";
+  public static final String EMITTER_SPOOL_FILE_PROPERTY = "emitter.spoolFile";
+  public static final String EMITTER_SPOOL_MAX_BYTES_PROPERTY = "emitter.spoolMaxBytes";
 
   protected static final int DEFAULT_POST_TIMEOUT_SECONDS = 10;
+  protected static final int DEFAULT_EMITTER_QUEUE_SIZE = 100;
+  protected static final long DEFAULT_EMITTER_SPOOL_MAX_BYTES = 64L * 1024 * 1024;
+  private static final int MAX_CONNECTIONS_PER_HOST = 2;
   protected final Log LOG;
-  private HttpClient httpClient = new HttpClient();
+  private HttpClient httpClient;
+  private volatile boolean gzipEnabled = false;
+  private volatile TimelineMetricsEmitter emitter;
 
   protected static ObjectMapper mapper;
 
@@ -54,19 +66,47 @@ public abstract class AbstractTimelineMetricsSink {
 
   public AbstractTimelineMetricsSink() {
     LOG = LogFactory.getLog(this.getClass());
+    // Pooled connections are kept alive between posts
+    MultiThreadedHttpConnectionManager connectionManager =
+      new MultiThreadedHttpConnectionManager();
+    connectionManager.getParams().setDefaultMaxConnectionsPerHost(MAX_CONNECTIONS_PER_HOST);
+    connectionManager.getParams().setStaleCheckingEnabled(true);
+    httpClient = new HttpClient(connectionManager);
     httpClient.getParams().setSoTimeout(getTimeoutSeconds() * 1000);
     httpClient.getParams().setConnectionManagerTimeout(getTimeoutSeconds() * 1000);
   }
 
+  /**
+   * Send the metrics to the collector. When the background emitter is
+   * started, the metrics are only queued and the calling thread never waits
+   * for the collector, otherwise they are posted right away.
+   */
   protected void emitMetrics(TimelineMetrics metrics) throws IOException {
+    TimelineMetricsEmitter emitter = this.emitter;
+    if (emitter != null) {
+      emitter.offer(metrics);
+    } else {
+      postMetrics(mapper.writeValueAsBytes(metrics));
+    }
+  }
+
+  /**
+   * POST serialized metrics to the collector.
+   *
+   * @return the HTTP status code of the response
+   * @throws UnableToConnectException if the collector cannot be reached
+   */
+  int postMetrics(byte[] jsonData) throws IOException {
     String connectUrl = getCollectorUri();
+    PostMethod postMethod = new PostMethod(connectUrl);
     try {
-      String jsonData = mapper.writeValueAsString(metrics);
-
-      StringRequestEntity requestEntity = new StringRequestEntity(jsonData, "application/json", "UTF-8");
-
-      PostMethod postMethod = new PostMethod(connectUrl);
-      postMethod.setRequestEntity(requestEntity);
+      byte[] content = jsonData;
+      if (gzipEnabled) {
+        content = compress(jsonData);
+        postMethod.setRequestHeader("Content-Encoding", "gzip");
+      }
+      postMethod.setRequestEntity(new ByteArrayRequestEntity(content,
+        "application/json; charset=UTF-8"));
       int statusCode = httpClient.executeMethod(postMethod);
 
       if (statusCode != 200) {
@@ -75,9 +115,70 @@ public abstract class AbstractTimelineMetricsSink {
       } else {
         LOG.debug("Metrics posted to Collector " + connectUrl);
       }
+      return statusCode;
     } catch (ConnectException e) {
       throw new UnableToConnectException(e).setConnectUrl(connectUrl);
+    } finally {
+      // Reads what is left of the response so the connection can be reused
+      postMethod.releaseConnection();
+    }
+  }
+
+  private static byte[] compress(byte[] data) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4 + 64);
+    GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+    try {
+      gzip.write(data);
+    } finally {
+      gzip.close();
     }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Start sending metrics from a background thread, see
+   * {@link TimelineMetricsEmitter}.
+   *
+   * @param queueSize max number of batches waiting to be sent, the emitter
+   *                  is not started if it is not positive
+   * @param spoolFile file keeping batches while the collector is
+   *                  unreachable, null to drop them
+   * @param spoolMaxBytes max size of the spool file
+   */
+  protected synchronized void startEmitter(int queueSize, File spoolFile, long spoolMaxBytes) {
+    stopEmitter();
+    if (queueSize > 0) {
+      TimelineMetricsEmitter emitter =
+        new TimelineMetricsEmitter(this, queueSize, spoolFile, spoolMaxBytes);
+      emitter.start();
+      this.emitter = emitter;
+      LOG.info("Started metrics emitter, queueSize = " + queueSize +
+        ", spoolFile = " + spoolFile);
+    }
+  }
+
+  /**
+   * Stop the background emitter, batches which were not sent yet are
+   * spooled.
+   */
+  protected synchronized void stopEmitter() {
+    TimelineMetricsEmitter emitter = this.emitter;
+    if (emitter != null) {
+      this.emitter = null;
+      emitter.stop();
+    }
+  }
+
+  /**
+   * @return the background emitter, null if metrics are posted by the
+   * calling thread
+   */
+  public TimelineMetricsEmitter getEmitter() {
+    return emitter;
+  }
+
+  public void setGzipEnabled(boolean gzipEnabled) {
+    this.gzipEnabled = gzipEnabled;
   }
 
   public void setHttpClient(HttpClient httpClient) {
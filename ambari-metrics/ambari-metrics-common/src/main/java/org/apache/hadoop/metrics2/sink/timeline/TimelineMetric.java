@@ -18,12 +18,12 @@
 package org.apache.hadoop.metrics2.sink.timeline;
 
 import java.util.Map;
-import java.util.TreeMap;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -41,7 +41,7 @@ public class TimelineMetric implements Comparable<TimelineMetric> {
   private long timestamp;
   private long startTime;
   private String type;
-  private Map<Long, Double> metricValues = new TreeMap<Long, Double>();
+  private TimelineMetricSeries metricValues = new TimelineMetricSeries();
 
   @XmlElement(name = "metricname")
   public String getMetricName() {
@@ -111,8 +111,26 @@ public class TimelineMetric implements Comparable<TimelineMetric> {
     return metricValues;
   }
 
+  /**
+   * Set the values of the metric. A {@link TimelineMetricSeries} is used as
+   * it is, the values of any other map are copied into one.
+   *
+   * @param metricValues the values by timestamp
+   */
   public void setMetricValues(Map<Long, Double> metricValues) {
-    this.metricValues = metricValues;
+    if (metricValues == null || metricValues instanceof TimelineMetricSeries) {
+      this.metricValues = (TimelineMetricSeries) metricValues;
+    } else {
+      this.metricValues = new TimelineMetricSeries(metricValues);
+    }
+  }
+
+  /**
+   * @return the values of the metric, sorted by timestamp
+   */
+  @XmlTransient
+  public TimelineMetricSeries getMetricSeries() {
+    return metricValues;
   }
 
   public void addMetricValues(Map<Long, Double> metricValues) {
@@ -0,0 +1,573 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * The values of a {@link TimelineMetric}, sorted by timestamp and kept in
+ * primitive arrays instead of a TreeMap of boxed Longs and Doubles. Appending
+ * a datapoint later than the last one is a plain array store; other
+ * datapoints are inserted in place.
+ * <p/>
+ * The series is a {@code Map<Long, Double>} iterated in time order, so it is
+ * serialized to the same JSON as the TreeMap it replaces. Null values, used
+ * for padding, are supported; {@link #getValue(int)} returns NaN for them.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Unstable
+public class TimelineMetricSeries extends AbstractMap<Long, Double> {
+
+  private static final int DEFAULT_CAPACITY = 4;
+
+  private long[] timestamps;
+  private double[] values;
+  // allocated when the first null value is put
+  private boolean[] nulls;
+  private int size;
+  private int modCount;
+
+  private EntrySet entrySet;
+
+  public TimelineMetricSeries() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public TimelineMetricSeries(int capacity) {
+    timestamps = new long[capacity];
+    values = new double[capacity];
+  }
+
+  public TimelineMetricSeries(Map<Long, Double> metricValues) {
+    this(metricValues.size());
+    putAll(metricValues);
+  }
+
+  /**
+   * Create a series from the given arrays, which must be sorted by timestamp
+   * and are used as they are.
+   *
+   * @param timestamps the timestamps, in ascending order
+   * @param values     the values
+   * @param size       the number of datapoints in the arrays
+   */
+  public TimelineMetricSeries(long[] timestamps, double[] values, int size) {
+    if (timestamps.length < size || values.length < size) {
+      throw new IllegalArgumentException("Arrays are shorter than " + size);
+    }
+    this.timestamps = timestamps;
+    this.values = values;
+    this.size = size;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param index the index of the datapoint, in time order
+   * @return the timestamp of the datapoint
+   */
+  public long getTimestamp(int index) {
+    checkIndex(index);
+    return timestamps[index];
+  }
+
+  /**
+   * @param index the index of the datapoint, in time order
+   * @return the value of the datapoint, NaN if it is null
+   */
+  public double getValue(int index) {
+    checkIndex(index);
+    return isNullAt(index) ? Double.NaN : values[index];
+  }
+
+  /**
+   * Replace the value of a datapoint.
+   *
+   * @param index the index of the datapoint, in time order
+   * @param value the new value
+   */
+  public void setValue(int index, double value) {
+    checkIndex(index);
+    values[index] = value;
+    if (nulls != null) {
+      nulls[index] = false;
+    }
+  }
+
+  /**
+   * @param index the index of the datapoint, in time order
+   * @return true if the value of the datapoint is null
+   */
+  public boolean isNull(int index) {
+    checkIndex(index);
+    return isNullAt(index);
+  }
+
+  public long getFirstTimestamp() {
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    return timestamps[0];
+  }
+
+  public long getLastTimestamp() {
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    return timestamps[size - 1];
+  }
+
+  /**
+   * Find the datapoint with the given timestamp.
+   *
+   * @param timestamp the timestamp
+   * @return the index of the datapoint, or {@code -(insertion point) - 1} if
+   *         there is none, as {@link Arrays#binarySearch(long[], long)}
+   */
+  public int indexOf(long timestamp) {
+    if (size > 0 && timestamps[size - 1] < timestamp) {
+      return -size - 1;
+    }
+    return Arrays.binarySearch(timestamps, 0, size, timestamp);
+  }
+
+  /**
+   * Add a datapoint, replacing the value of an existing one with the same
+   * timestamp.
+   *
+   * @param timestamp the timestamp
+   * @param value     the value
+   */
+  public void append(long timestamp, double value) {
+    if (size == 0 || timestamps[size - 1] < timestamp) {
+      ensureCapacity(size + 1);
+      timestamps[size] = timestamp;
+      values[size] = value;
+      if (nulls != null) {
+        nulls[size] = false;
+      }
+      size++;
+      modCount++;
+    } else {
+      set(timestamp, value, false);
+    }
+  }
+
+  @Override
+  public Double put(Long timestamp, Double value) {
+    if (value == null) {
+      return set(timestamp, 0.0, true);
+    }
+    if (size == 0 || timestamps[size - 1] < timestamp) {
+      append(timestamp, value);
+      return null;
+    }
+    return set(timestamp, value, false);
+  }
+
+  @Override
+  public Double get(Object key) {
+    if (!(key instanceof Long)) {
+      return null;
+    }
+    int index = indexOf((Long) key);
+    return index < 0 ? null : boxedValue(index);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key instanceof Long && indexOf((Long) key) >= 0;
+  }
+
+  @Override
+  public Double remove(Object key) {
+    if (!(key instanceof Long)) {
+      return null;
+    }
+    int index = indexOf((Long) key);
+    if (index < 0) {
+      return null;
+    }
+    Double previous = boxedValue(index);
+    removeAt(index);
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    size = 0;
+    nulls = null;
+    modCount++;
+  }
+
+  @Override
+  public void putAll(Map<? extends Long, ? extends Double> metricValues) {
+    if (metricValues instanceof TimelineMetricSeries) {
+      merge((TimelineMetricSeries) metricValues);
+    } else {
+      for (Map.Entry<? extends Long, ? extends Double> entry : metricValues.entrySet()) {
+        put(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Add the datapoints of the given series. Values of the given series
+   * replace values with the same timestamp.
+   *
+   * @param other the series to merge
+   */
+  public void merge(TimelineMetricSeries other) {
+    if (other.size == 0) {
+      return;
+    }
+    if (size == 0 || timestamps[size - 1] < other.timestamps[0]) {
+      // the common case of a later batch of the same metric
+      ensureCapacity(size + other.size);
+      System.arraycopy(other.timestamps, 0, timestamps, size, other.size);
+      System.arraycopy(other.values, 0, values, size, other.size);
+      if (other.nulls != null) {
+        ensureNulls();
+        System.arraycopy(other.nulls, 0, nulls, size, other.size);
+      }
+      size += other.size;
+      modCount++;
+      return;
+    }
+
+    int capacity = size + other.size;
+    long[] mergedTimestamps = new long[capacity];
+    double[] mergedValues = new double[capacity];
+    boolean[] mergedNulls = nulls != null || other.nulls != null ? new boolean[capacity] : null;
+
+    int i = 0, j = 0, n = 0;
+    while (i < size || j < other.size) {
+      boolean fromOther;
+      if (i == size) {
+        fromOther = true;
+      } else if (j == other.size) {
+        fromOther = false;
+      } else if (timestamps[i] == other.timestamps[j]) {
+        // replaced by the other value
+        i++;
+        continue;
+      } else {
+        fromOther = other.timestamps[j] < timestamps[i];
+      }
+
+      if (fromOther) {
+        mergedTimestamps[n] = other.timestamps[j];
+        mergedValues[n] = other.values[j];
+        if (mergedNulls != null) {
+          mergedNulls[n] = other.isNullAt(j);
+        }
+        j++;
+      } else {
+        mergedTimestamps[n] = timestamps[i];
+        mergedValues[n] = values[i];
+        if (mergedNulls != null) {
+          mergedNulls[n] = isNullAt(i);
+        }
+        i++;
+      }
+      n++;
+    }
+
+    timestamps = mergedTimestamps;
+    values = mergedValues;
+    nulls = mergedNulls;
+    size = n;
+    modCount++;
+  }
+
+  /**
+   * Copy the datapoints between the given times.
+   *
+   * @param startTime the start time, inclusive
+   * @param endTime   the end time, inclusive
+   *
+   * @return a new series
+   */
+  public TimelineMetricSeries slice(long startTime, long endTime) {
+    int from = indexOf(startTime);
+    if (from < 0) {
+      from = -from - 1;
+    }
+    int to = indexOf(endTime);
+    to = to < 0 ? -to - 1 : to + 1;
+
+    int length = Math.max(0, to - from);
+    TimelineMetricSeries slice = new TimelineMetricSeries(
+      Arrays.copyOfRange(timestamps, from, from + length),
+      Arrays.copyOfRange(values, from, from + length), length);
+    if (nulls != null && length > 0) {
+      slice.nulls = Arrays.copyOfRange(nulls, from, from + length);
+    }
+    return slice;
+  }
+
+  /**
+   * Average the datapoints into buckets of the given interval. Each bucket is
+   * stamped with the time its interval starts; null values are left out of
+   * the averages and a bucket of only null values is null.
+   *
+   * @param interval the bucket interval, in the unit of the timestamps
+   *
+   * @return a new series
+   */
+  public TimelineMetricSeries downsample(long interval) {
+    if (interval <= 0) {
+      throw new IllegalArgumentException("Invalid interval " + interval);
+    }
+    TimelineMetricSeries downsampled = new TimelineMetricSeries(Math.max(1, size));
+
+    int i = 0;
+    while (i < size) {
+      long bucket = timestamps[i] - (timestamps[i] % interval + interval) % interval;
+      double sum = 0.0;
+      int count = 0;
+      for (; i < size && timestamps[i] < bucket + interval; i++) {
+        if (!isNullAt(i)) {
+          sum += values[i];
+          count++;
+        }
+      }
+      if (count > 0) {
+        downsampled.append(bucket, sum / count);
+      } else {
+        downsampled.put(bucket, null);
+      }
+    }
+    return downsampled;
+  }
+
+  /**
+   * Release the unused capacity of the arrays.
+   */
+  public void trimToSize() {
+    if (timestamps.length > size) {
+      timestamps = Arrays.copyOf(timestamps, size);
+      values = Arrays.copyOf(values, size);
+      if (nulls != null) {
+        nulls = Arrays.copyOf(nulls, size);
+      }
+    }
+  }
+
+  @Override
+  public Set<Map.Entry<Long, Double>> entrySet() {
+    if (entrySet == null) {
+      entrySet = new EntrySet();
+    }
+    return entrySet;
+  }
+
+  private Double set(long timestamp, double value, boolean isNull) {
+    int index = indexOf(timestamp);
+    Double previous = null;
+    if (index >= 0) {
+      previous = boxedValue(index);
+    } else {
+      index = -index - 1;
+      ensureCapacity(size + 1);
+      int moved = size - index;
+      System.arraycopy(timestamps, index, timestamps, index + 1, moved);
+      System.arraycopy(values, index, values, index + 1, moved);
+      if (nulls != null) {
+        System.arraycopy(nulls, index, nulls, index + 1, moved);
+      }
+      timestamps[index] = timestamp;
+      size++;
+      modCount++;
+    }
+    values[index] = value;
+    if (isNull) {
+      ensureNulls();
+    }
+    if (nulls != null) {
+      nulls[index] = isNull;
+    }
+    return previous;
+  }
+
+  private void removeAt(int index) {
+    int moved = size - index - 1;
+    System.arraycopy(timestamps, index + 1, timestamps, index, moved);
+    System.arraycopy(values, index + 1, values, index, moved);
+    if (nulls != null) {
+      System.arraycopy(nulls, index + 1, nulls, index, moved);
+      nulls[size - 1] = false;
+    }
+    size--;
+    modCount++;
+  }
+
+  private boolean isNullAt(int index) {
+    return nulls != null && nulls[index];
+  }
+
+  private Double boxedValue(int index) {
+    return isNullAt(index) ? null : values[index];
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > timestamps.length) {
+      int newCapacity = Math.max(capacity, Math.max(DEFAULT_CAPACITY,
+        timestamps.length + (timestamps.length >> 1)));
+      timestamps = Arrays.copyOf(timestamps, newCapacity);
+      values = Arrays.copyOf(values, newCapacity);
+      if (nulls != null) {
+        nulls = Arrays.copyOf(nulls, newCapacity);
+      }
+    }
+  }
+
+  private void ensureNulls() {
+    if (nulls == null) {
+      nulls = new boolean[timestamps.length];
+    }
+  }
+
+  private class EntrySet extends AbstractSet<Map.Entry<Long, Double>> {
+    @Override
+    public Iterator<Map.Entry<Long, Double>> iterator() {
+      return new EntryIterator();
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public void clear() {
+      TimelineMetricSeries.this.clear();
+    }
+  }
+
+  private class EntryIterator implements Iterator<Map.Entry<Long, Double>> {
+    private int next = 0;
+    private int last = -1;
+    private int expectedModCount = modCount;
+
+    @Override
+    public boolean hasNext() {
+      return next < size;
+    }
+
+    @Override
+    public Map.Entry<Long, Double> next() {
+      if (expectedModCount != modCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (next >= size) {
+        throw new NoSuchElementException();
+      }
+      last = next++;
+      return new SeriesEntry(last);
+    }
+
+    @Override
+    public void remove() {
+      if (last < 0) {
+        throw new IllegalStateException();
+      }
+      if (expectedModCount != modCount) {
+        throw new ConcurrentModificationException();
+      }
+      removeAt(last);
+      next = last;
+      last = -1;
+      expectedModCount = modCount;
+    }
+  }
+
+  private class SeriesEntry implements Map.Entry<Long, Double> {
+    private final int index;
+
+    private SeriesEntry(int index) {
+      this.index = index;
+    }
+
+    @Override
+    public Long getKey() {
+      return timestamps[index];
+    }
+
+    @Override
+    public Double getValue() {
+      return boxedValue(index);
+    }
+
+    @Override
+    public Double setValue(Double value) {
+      Double previous = boxedValue(index);
+      if (value == null) {
+        ensureNulls();
+        nulls[index] = true;
+      } else {
+        values[index] = value;
+        if (nulls != null) {
+          nulls[index] = false;
+        }
+      }
+      return previous;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      Double value = getValue();
+      return getKey().equals(e.getKey()) &&
+        (value == null ? e.getValue() == null : value.equals(e.getValue()));
+    }
+
+    @Override
+    public int hashCode() {
+      Double value = getValue();
+      return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+    }
+
+    @Override
+    public String toString() {
+      return getKey() + "=" + getValue();
+    }
+  }
+}
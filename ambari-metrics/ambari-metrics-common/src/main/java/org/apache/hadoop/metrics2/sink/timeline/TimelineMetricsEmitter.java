@@ -0,0 +1,383 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Sends the metrics of a sink to the collector from a background thread, so
+ * that the metrics thread of the monitored process never waits for the
+ * collector.
+ * <p/>
+ * Batches are kept in a bounded queue, batches offered while it is full are
+ * dropped. The emitter thread merges what is queued into a single POST. When
+ * the collector cannot be reached, batches are appended to a size-capped
+ * spool file, one JSON document per line, and the collector is not tried
+ * again before {@link #RETRY_INTERVAL_MILLIS}. The spool is replayed once a
+ * POST succeeds again.
+ * <p/>
+ * The emitter reports its own counters with every POST, as metrics named
+ * {@value #EMITTER_METRIC_PREFIX}* of the host and appId of the batch.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class TimelineMetricsEmitter {
+  static final String EMITTER_METRIC_PREFIX = "timeline.sink.emitter.";
+  static final long RETRY_INTERVAL_MILLIS = 30000L;
+  private static final int MAX_BATCHES_PER_POST = 10;
+  private static final long POLL_TIMEOUT_MILLIS = 1000L;
+  private static final long STOP_TIMEOUT_MILLIS = 5000L;
+  private static final String REPLAY_FILE_SUFFIX = ".replay";
+  private static final String CHARSET = "UTF-8";
+
+  private static final Log LOG = LogFactory.getLog(TimelineMetricsEmitter.class);
+
+  private final AbstractTimelineMetricsSink sink;
+  private final BlockingQueue<TimelineMetrics> queue;
+  private final File spoolFile;
+  private final long spoolMaxBytes;
+  private final Thread thread;
+  private volatile boolean running = false;
+  private long retryInterval = RETRY_INTERVAL_MILLIS;
+
+  /**
+   * The collector is not tried before this time after a failure, only
+   * accessed by the emitter thread.
+   */
+  private long nextAttemptTime = 0L;
+
+  private final AtomicLong queuedCount = new AtomicLong();
+  private final AtomicLong droppedCount = new AtomicLong();
+  private final AtomicLong sentCount = new AtomicLong();
+  private final AtomicLong failedCount = new AtomicLong();
+  private final AtomicLong spooledCount = new AtomicLong();
+  private final AtomicLong replayedCount = new AtomicLong();
+  private volatile long lastPostLatency = 0L;
+
+  TimelineMetricsEmitter(AbstractTimelineMetricsSink sink, int queueSize,
+                         File spoolFile, long spoolMaxBytes) {
+    this.sink = sink;
+    this.queue = new ArrayBlockingQueue<TimelineMetrics>(queueSize);
+    this.spoolFile = spoolFile;
+    this.spoolMaxBytes = spoolMaxBytes;
+    this.thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        runEmitter();
+      }
+    }, "timeline-metrics-emitter");
+    this.thread.setDaemon(true);
+  }
+
+  void start() {
+    running = true;
+    thread.start();
+  }
+
+  /**
+   * Stop the emitter thread, batches which were not sent yet are spooled.
+   */
+  void stop() {
+    running = false;
+    thread.interrupt();
+    try {
+      thread.join(STOP_TIMEOUT_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  void setRetryInterval(long retryInterval) {
+    this.retryInterval = retryInterval;
+  }
+
+  /**
+   * Queue the metrics to be sent, never blocks.
+   *
+   * @return false if the queue is full and the metrics were dropped
+   */
+  public boolean offer(TimelineMetrics metrics) {
+    if (!running || !queue.offer(metrics)) {
+      droppedCount.incrementAndGet();
+      return false;
+    }
+    queuedCount.incrementAndGet();
+    return true;
+  }
+
+  private void runEmitter() {
+    List<TimelineMetrics> batches = new ArrayList<TimelineMetrics>();
+    while (running) {
+      try {
+        TimelineMetrics first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          replaySpool();
+          continue;
+        }
+        batches.add(first);
+        queue.drainTo(batches, MAX_BATCHES_PER_POST - 1);
+        send(merge(batches));
+      } catch (InterruptedException e) {
+        break;
+      } catch (RuntimeException e) {
+        LOG.error("Unexpected error sending metrics", e);
+      } finally {
+        batches.clear();
+      }
+    }
+
+    // Keep what could not be sent for the next start
+    queue.drainTo(batches);
+    for (TimelineMetrics metrics : batches) {
+      byte[] json = serialize(metrics);
+      if (json != null) {
+        spool(json);
+      }
+    }
+  }
+
+  private static TimelineMetrics merge(List<TimelineMetrics> batches) {
+    if (batches.size() == 1) {
+      return batches.get(0);
+    }
+    List<TimelineMetric> metricList = new ArrayList<TimelineMetric>();
+    for (TimelineMetrics batch : batches) {
+      metricList.addAll(batch.getMetrics());
+    }
+    TimelineMetrics merged = new TimelineMetrics();
+    merged.setMetrics(metricList);
+    return merged;
+  }
+
+  private void send(TimelineMetrics metrics) {
+    addEmitterMetrics(metrics);
+    byte[] json = serialize(metrics);
+    if (json == null) {
+      return;
+    }
+
+    if (System.currentTimeMillis() >= nextAttemptTime && post(json)) {
+      replaySpool();
+    } else {
+      spool(json);
+    }
+  }
+
+  private byte[] serialize(TimelineMetrics metrics) {
+    try {
+      return AbstractTimelineMetricsSink.mapper.writeValueAsBytes(metrics);
+    } catch (IOException e) {
+      LOG.error("Unable to serialize metrics, dropping them", e);
+      droppedCount.incrementAndGet();
+      return null;
+    }
+  }
+
+  /**
+   * @return false if the batch should be tried again later
+   */
+  private boolean post(byte[] json) {
+    long start = System.currentTimeMillis();
+    try {
+      int statusCode = sink.postMetrics(json);
+      lastPostLatency = System.currentTimeMillis() - start;
+      if (statusCode == 200) {
+        sentCount.incrementAndGet();
+        nextAttemptTime = 0L;
+        return true;
+      }
+      if (statusCode >= 400 && statusCode < 500) {
+        // Sending the same batch again will not help
+        droppedCount.incrementAndGet();
+        return true;
+      }
+    } catch (UnableToConnectException e) {
+      LOG.warn("Unable to send metrics to collector by address:" + e.getConnectUrl());
+    } catch (IOException e) {
+      LOG.warn("Unable to send metrics to collector", e);
+    }
+    failedCount.incrementAndGet();
+    nextAttemptTime = System.currentTimeMillis() + retryInterval;
+    return false;
+  }
+
+  private void spool(byte[] json) {
+    if (spoolFile == null || spoolFile.length() + json.length + 1 > spoolMaxBytes) {
+      droppedCount.incrementAndGet();
+      return;
+    }
+    try {
+      OutputStream out = new FileOutputStream(spoolFile, true);
+      try {
+        out.write(json);
+        out.write('\n');
+      } finally {
+        out.close();
+      }
+      spooledCount.incrementAndGet();
+    } catch (IOException e) {
+      LOG.warn("Unable to spool metrics to " + spoolFile, e);
+      droppedCount.incrementAndGet();
+    }
+  }
+
+  /**
+   * Send the spooled batches, stops at the first one which cannot be sent.
+   * Batches spooled meanwhile are kept in the spool file.
+   */
+  private void replaySpool() {
+    if (spoolFile == null || System.currentTimeMillis() < nextAttemptTime) {
+      return;
+    }
+    File replayFile = new File(spoolFile.getPath() + REPLAY_FILE_SUFFIX);
+    if (!replayFile.exists()) {
+      if (!spoolFile.exists() || spoolFile.length() == 0 || !spoolFile.renameTo(replayFile)) {
+        return;
+      }
+    }
+
+    try {
+      BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(replayFile), CHARSET));
+      try {
+        boolean posting = true;
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.isEmpty()) {
+            continue;
+          }
+          byte[] json = line.getBytes(CHARSET);
+          if (posting && post(json)) {
+            replayedCount.incrementAndGet();
+          } else {
+            posting = false;
+            spool(json);
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to replay spooled metrics from " + replayFile, e);
+    }
+    if (!replayFile.delete()) {
+      LOG.warn("Unable to delete " + replayFile);
+    }
+  }
+
+  private void addEmitterMetrics(TimelineMetrics metrics) {
+    if (metrics.getMetrics().isEmpty()) {
+      return;
+    }
+    TimelineMetric first = metrics.getMetrics().get(0);
+    long now = System.currentTimeMillis();
+    List<TimelineMetric> metricList = new ArrayList<TimelineMetric>(metrics.getMetrics());
+    metricList.add(createEmitterMetric(first, now, "queue.size", queue.size()));
+    metricList.add(createEmitterMetric(first, now, "dropped", droppedCount.get()));
+    metricList.add(createEmitterMetric(first, now, "failed", failedCount.get()));
+    metricList.add(createEmitterMetric(first, now, "spooled", spooledCount.get()));
+    metricList.add(createEmitterMetric(first, now, "post.latency", lastPostLatency));
+    metrics.setMetrics(metricList);
+  }
+
+  private static TimelineMetric createEmitterMetric(TimelineMetric first, long now,
+                                                    String name, long value) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(EMITTER_METRIC_PREFIX + name);
+    metric.setHostName(first.getHostName());
+    metric.setAppId(first.getAppId());
+    metric.setStartTime(now);
+    metric.setType("Long");
+    metric.getMetricSeries().append(now, value);
+    return metric;
+  }
+
+  /**
+   * @return the number of batches waiting to be sent
+   */
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  /**
+   * @return the number of batches queued since the emitter was started
+   */
+  public long getQueuedCount() {
+    return queuedCount.get();
+  }
+
+  /**
+   * @return the number of batches which were lost, because the queue or the
+   * spool file was full or the collector rejected them
+   */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  /**
+   * @return the number of successful POSTs
+   */
+  public long getSentCount() {
+    return sentCount.get();
+  }
+
+  /**
+   * @return the number of failed POSTs
+   */
+  public long getFailedCount() {
+    return failedCount.get();
+  }
+
+  /**
+   * @return the number of batches written to the spool file
+   */
+  public long getSpooledCount() {
+    return spooledCount.get();
+  }
+
+  /**
+   * @return the number of spooled batches which were sent later
+   */
+  public long getReplayedCount() {
+    return replayedCount.get();
+  }
+
+  /**
+   * @return the duration in milliseconds of the last POST
+   */
+  public long getLastPostLatency() {
+    return lastPostLatency;
+  }
+}
@@ -22,37 +22,104 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
 
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Buffers the values of sink metrics until they are due to be sent. A metric
+ * is returned by {@link #getTimelineMetric(String)} once its buffered values
+ * span {@link #getMaxEvictionTimeInMillis()}.
+ * <p/>
+ * The cache is safe to use from multiple threads. Its size is bounded by the
+ * estimated bytes of the buffered metrics. When it is full, the metrics which
+ * were put least recently are evicted along with their buffered values until
+ * a tenth of the budget is free; datapoints which still do not fit are
+ * dropped and counted as overflow. Metrics which are not reported anymore
+ * expire together with their counter and de-duplication state; expired
+ * metrics are looked for at most once per eviction interval from the put
+ * path, never from {@link #getTimelineMetric(String)}.
+ */
 @InterfaceAudience.Public
 @InterfaceStability.Evolving
 public class TimelineMetricsCache {
 
-  private final TimelineMetricHolder timelineMetricCache = new TimelineMetricHolder();
-  private static final Log LOG = LogFactory.getLog(TimelineMetric.class);
+  private static final Log LOG = LogFactory.getLog(TimelineMetricsCache.class);
   public static final int MAX_RECS_PER_NAME_DEFAULT = 10000;
   public static final int MAX_EVICTION_TIME_MILLIS = 59000; // ~ 1 min
-  private final int maxRecsPerName;
+  /**
+   * Bytes budgeted per metric when the cache is bounded by a metric count.
+   */
+  public static final int BYTES_PER_REC_DEFAULT = 1024;
+  static final int ENTRY_OVERHEAD_BYTES = 256;
+  static final int DATAPOINT_BYTES = 16;
+  private static final long MIN_EXPIRY_MILLIS = 600000L; // 10 min
+  private static final long OVERFLOW_PURGE_INTERVAL_MILLIS = 1000L;
+
+  private final ConcurrentMap<String, TimelineMetricWrapper> timelineMetricCache =
+    new ConcurrentHashMap<String, TimelineMetricWrapper>();
   private final int maxEvictionTimeInMillis;
-  private final Map<String, Double> counterMetricLastValue = new HashMap<String, Double>();
+  private final long maxCacheBytes;
+  private final long expiryMillis;
+
+  private final AtomicLong cacheBytes = new AtomicLong();
+  private final AtomicLong overflowCount = new AtomicLong();
+  private final AtomicLong expiredCount = new AtomicLong();
+  private final AtomicLong evictedCount = new AtomicLong();
+  private final AtomicLong lastPurgeTime = new AtomicLong();
+  private final AtomicLong putSequence = new AtomicLong();
+  private final Object evictionLock = new Object();
+  private volatile boolean gotOverflow = false;
 
+  /**
+   * @param maxRecsPerName max number of buffered metrics, turned into a
+   *                       byte budget of {@link #BYTES_PER_REC_DEFAULT} each
+   * @param maxEvictionTimeInMillis time span of values to buffer per metric
+   */
   public TimelineMetricsCache(int maxRecsPerName, int maxEvictionTimeInMillis) {
-    this.maxRecsPerName = maxRecsPerName;
+    this(maxRecsPerName, maxEvictionTimeInMillis, (long) maxRecsPerName * BYTES_PER_REC_DEFAULT);
+  }
+
+  /**
+   * @param maxRecsPerName not used, the cache is bounded by maxCacheBytes
+   * @param maxEvictionTimeInMillis time span of values to buffer per metric
+   * @param maxCacheBytes max estimated bytes of the buffered metrics
+   */
+  public TimelineMetricsCache(int maxRecsPerName, int maxEvictionTimeInMillis, long maxCacheBytes) {
     this.maxEvictionTimeInMillis = maxEvictionTimeInMillis;
+    this.maxCacheBytes = maxCacheBytes;
+    this.expiryMillis = Math.max(MIN_EXPIRY_MILLIS, 10L * maxEvictionTimeInMillis);
+    this.lastPurgeTime.set(System.currentTimeMillis());
   }
 
-  class TimelineMetricWrapper {
+  /**
+   * The buffered values of a metric along with the state which outlives the
+   * buffer. Guarded by its own monitor.
+   */
+  private static final class TimelineMetricWrapper {
+    private final String metricName;
     private long timeDiff = -1;
     private long oldestTimestamp = -1;
     private TimelineMetric timelineMetric;
+    // To avoid duplication at the end of the buffer and beginning of the next
+    // segment of values
+    private long endOfBufferTimestamp = Long.MIN_VALUE;
+    private Double counterLastValue;
+    private long lastPutTime;
+    private volatile long lastPutSequence;
+    private int weight;
+    private boolean removed = false;
 
-    TimelineMetricWrapper(TimelineMetric timelineMetric) {
-      this.timelineMetric = timelineMetric;
-      this.oldestTimestamp = timelineMetric.getStartTime();
+    TimelineMetricWrapper(String metricName) {
+      this.metricName = metricName;
+      this.weight = estimateWeight();
     }
 
     private void updateTimeDiff(long timestamp) {
@@ -63,117 +130,271 @@ public class TimelineMetricsCache {
       }
     }
 
-    public void putMetric(TimelineMetric metric) {
-      this.timelineMetric.addMetricValues(metric.getMetricValues());
-      updateTimeDiff(metric.getStartTime());
+    /**
+     * @return the change of the estimated weight
+     */
+    int putMetric(TimelineMetric metric, boolean isCounter, long now, long sequence) {
+      lastPutTime = now;
+      lastPutSequence = sequence;
+      if (endOfBufferTimestamp == metric.getStartTime()) {
+        return 0;
+      }
+      if (isCounter) {
+        transformMetricValuesToDerivative(metric);
+      }
+      if (timelineMetric == null) {
+        timelineMetric = metric;
+        oldestTimestamp = metric.getStartTime();
+        timeDiff = -1;
+      } else {
+        timelineMetric.addMetricValues(metric.getMetricSeries());
+        updateTimeDiff(metric.getStartTime());
+      }
+      endOfBufferTimestamp = metric.getStartTime();
+      return updateWeight();
+    }
+
+    private void transformMetricValuesToDerivative(TimelineMetric metric) {
+      TimelineMetricSeries metricValues = metric.getMetricSeries();
+      double firstValue = metricValues.size() > 0 ? metricValues.getValue(0) : 0;
+      double previousValue = counterLastValue != null ? counterLastValue : firstValue;
+      for (int i = 0; i < metricValues.size(); i++) {
+        double currentValue = metricValues.getValue(i);
+        metricValues.setValue(i, currentValue - previousValue);
+        previousValue = currentValue;
+      }
+      counterLastValue = previousValue;
+    }
+
+    /**
+     * @return the buffered metric if it is due, null otherwise
+     */
+    TimelineMetric evict(long maxEvictionTimeInMillis) {
+      if (timelineMetric == null || timeDiff < maxEvictionTimeInMillis) {
+        return null;
+      }
+      TimelineMetric evicted = timelineMetric;
+      timelineMetric = null;
+      timeDiff = -1;
+      oldestTimestamp = -1;
+      return evicted;
     }
 
-    public long getTimeDiff() {
-      return timeDiff;
+    int updateWeight() {
+      int oldWeight = weight;
+      weight = estimateWeight();
+      return weight - oldWeight;
     }
 
-    public TimelineMetric getTimelineMetric() {
-      return timelineMetric;
+    private int estimateWeight() {
+      int values = timelineMetric == null ? 0 : timelineMetric.getMetricSeries().size();
+      return ENTRY_OVERHEAD_BYTES + 2 * metricName.length() + DATAPOINT_BYTES * values;
     }
   }
 
-  // TODO: Change to ConcurentHashMap with weighted eviction
-  class TimelineMetricHolder extends LinkedHashMap<String, TimelineMetricWrapper> {
-    private static final long serialVersionUID = 1L;
-    private boolean gotOverflow = false;
-    // To avoid duplication at the end of the buffer and beginning of the next
-    // segment of values
-    private Map<String, Long> endOfBufferTimestamps = new HashMap<String, Long>();
+  public TimelineMetric getTimelineMetric(String metricName) {
+    TimelineMetricWrapper wrapper = timelineMetricCache.get(metricName);
+    if (wrapper == null) {
+      return null;
+    }
 
-    @Override
-    protected boolean removeEldestEntry(Map.Entry<String, TimelineMetricWrapper> eldest) {
-      boolean overflow = size() > maxRecsPerName;
-      if (overflow && !gotOverflow) {
-        LOG.warn("Metrics cache overflow at "+ size() +" for "+ eldest);
-        gotOverflow = true;
+    TimelineMetric timelineMetric;
+    int weightChange;
+    synchronized (wrapper) {
+      timelineMetric = wrapper.evict(maxEvictionTimeInMillis);
+      if (timelineMetric == null) {
+        return null;
       }
-      return overflow;
+      weightChange = wrapper.updateWeight();
     }
+    cacheBytes.addAndGet(weightChange);
+    return timelineMetric;
+  }
+
+  /**
+   * Getter method to help testing eviction
+   * @return @int
+   */
+  public int getMaxEvictionTimeInMillis() {
+    return maxEvictionTimeInMillis;
+  }
 
-    public TimelineMetric evict(String metricName) {
-      TimelineMetricWrapper metricWrapper = this.get(metricName);
+  public void putTimelineMetric(TimelineMetric timelineMetric) {
+    putTimelineMetric(timelineMetric, false);
+  }
 
-      if (metricWrapper == null
-        || metricWrapper.getTimeDiff() < getMaxEvictionTimeInMillis()) {
-        return null;
+  public void putTimelineMetric(TimelineMetric timelineMetric, boolean isCounter) {
+    String metricName = timelineMetric.getMetricName();
+    long now = System.currentTimeMillis();
+    purgeExpired(now, maxEvictionTimeInMillis);
+
+    while (true) {
+      if (cacheBytes.get() > maxCacheBytes && isFull(now)) {
+        return;
       }
 
-      TimelineMetric timelineMetric = metricWrapper.getTimelineMetric();
-      this.remove(metricName);
+      TimelineMetricWrapper wrapper = timelineMetricCache.get(metricName);
+      if (wrapper == null) {
+        TimelineMetricWrapper newWrapper = new TimelineMetricWrapper(metricName);
+        newWrapper.lastPutSequence = putSequence.incrementAndGet();
+        wrapper = timelineMetricCache.putIfAbsent(metricName, newWrapper);
+        if (wrapper == null) {
+          wrapper = newWrapper;
+          cacheBytes.addAndGet(wrapper.weight);
+        }
+      }
 
-      return timelineMetric;
+      int weightChange;
+      synchronized (wrapper) {
+        if (wrapper.removed) {
+          // expired meanwhile
+          continue;
+        }
+        weightChange = wrapper.putMetric(timelineMetric, isCounter, now,
+          putSequence.incrementAndGet());
+      }
+      cacheBytes.addAndGet(weightChange);
+      return;
     }
+  }
 
-    public void put(String metricName, TimelineMetric timelineMetric) {
-      if (isDuplicate(timelineMetric)) {
+  private boolean isFull(long now) {
+    purgeExpired(now, OVERFLOW_PURGE_INTERVAL_MILLIS);
+    if (cacheBytes.get() > maxCacheBytes) {
+      evictLeastRecentlyPut();
+    }
+    if (cacheBytes.get() <= maxCacheBytes) {
+      return false;
+    }
+    overflowCount.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Drop the metrics which were put least recently until a tenth of the
+   * budget is free, by a single thread at a time.
+   */
+  private void evictLeastRecentlyPut() {
+    synchronized (evictionLock) {
+      if (cacheBytes.get() <= maxCacheBytes) {
         return;
       }
-      TimelineMetricWrapper metric = this.get(metricName);
-      if (metric == null) {
-        this.put(metricName, new TimelineMetricWrapper(timelineMetric));
-      } else {
-        metric.putMetric(timelineMetric);
+      if (!gotOverflow) {
+        LOG.warn("Metrics cache full at " + timelineMetricCache.size() +
+          " metrics, " + cacheBytes.get() + " bytes, evicting the least recently put metrics");
+        gotOverflow = true;
+      }
+
+      List<Map.Entry<String, TimelineMetricWrapper>> entries =
+        new ArrayList<Map.Entry<String, TimelineMetricWrapper>>(timelineMetricCache.entrySet());
+      final long[] sequences = new long[entries.size()];
+      Integer[] order = new Integer[entries.size()];
+      for (int i = 0; i < order.length; i++) {
+        sequences[i] = entries.get(i).getValue().lastPutSequence;
+        order[i] = i;
+      }
+      Arrays.sort(order, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer i1, Integer i2) {
+          return sequences[i1] < sequences[i2] ? -1 : (sequences[i1] == sequences[i2] ? 0 : 1);
+        }
+      });
+
+      long target = maxCacheBytes - maxCacheBytes / 10;
+      for (int i = 0; i < order.length && cacheBytes.get() > target; i++) {
+        Map.Entry<String, TimelineMetricWrapper> entry = entries.get(order[i]);
+        if (remove(entry.getKey(), entry.getValue())) {
+          evictedCount.incrementAndGet();
+        }
       }
-      // Buffer last ts value
-      endOfBufferTimestamps.put(metricName, timelineMetric.getStartTime());
     }
+  }
 
-    /**
-     * Test whether last buffered timestamp is same as the newly received.
-     * @param timelineMetric @TimelineMetric
-     * @return true/false
-     */
-    private boolean isDuplicate(TimelineMetric timelineMetric) {
-      return endOfBufferTimestamps.containsKey(timelineMetric.getMetricName())
-        && endOfBufferTimestamps.get(timelineMetric.getMetricName()).equals(timelineMetric.getStartTime());
+  /**
+   * Remove the given metric unless it was removed already.
+   *
+   * @return true if the metric was removed
+   */
+  private boolean remove(String metricName, TimelineMetricWrapper wrapper) {
+    int weight;
+    synchronized (wrapper) {
+      if (wrapper.removed) {
+        return false;
+      }
+      wrapper.removed = true;
+      weight = wrapper.weight;
     }
+    timelineMetricCache.remove(metricName, wrapper);
+    cacheBytes.addAndGet(-weight);
+    return true;
   }
 
-  public TimelineMetric getTimelineMetric(String metricName) {
-    if (timelineMetricCache.containsKey(metricName)) {
-      return timelineMetricCache.evict(metricName);
+  /**
+   * Drop the metrics which were not put for a while, at most once per the
+   * given interval and by a single thread.
+   */
+  private void purgeExpired(long now, long interval) {
+    long last = lastPurgeTime.get();
+    if (now - last < interval || !lastPurgeTime.compareAndSet(last, now)) {
+      return;
     }
 
-    return null;
+    for (Map.Entry<String, TimelineMetricWrapper> entry : timelineMetricCache.entrySet()) {
+      TimelineMetricWrapper wrapper = entry.getValue();
+      synchronized (wrapper) {
+        if (now - wrapper.lastPutTime < expiryMillis) {
+          continue;
+        }
+      }
+      if (remove(entry.getKey(), wrapper)) {
+        expiredCount.incrementAndGet();
+      }
+    }
+
+    if (gotOverflow && cacheBytes.get() <= maxCacheBytes - maxCacheBytes / 10) {
+      // warn again when the cache fills up the next time
+      gotOverflow = false;
+    }
   }
 
   /**
-   * Getter method to help testing eviction
-   * @return @int
+   * @return the number of metrics in the cache
    */
-  public int getMaxEvictionTimeInMillis() {
-    return maxEvictionTimeInMillis;
+  public int getCacheSize() {
+    return timelineMetricCache.size();
   }
 
-  public void putTimelineMetric(TimelineMetric timelineMetric) {
-    timelineMetricCache.put(timelineMetric.getMetricName(), timelineMetric);
+  /**
+   * @return the estimated bytes of the cached metrics
+   */
+  public long getCacheBytes() {
+    return cacheBytes.get();
   }
 
-  private void transformMetricValuesToDerivative(TimelineMetric timelineMetric) {
-    String metricName = timelineMetric.getMetricName();
-    double firstValue = timelineMetric.getMetricValues().size() > 0
-        ? timelineMetric.getMetricValues().entrySet().iterator().next().getValue() : 0;
-    Double value = counterMetricLastValue.get(metricName);
-    double previousValue = value != null ? value : firstValue;
-    Map<Long, Double> metricValues = timelineMetric.getMetricValues();
-    Map<Long, Double>   newMetricValues = new TreeMap<Long, Double>();
-    for (Map.Entry<Long, Double> entry : metricValues.entrySet()) {
-      newMetricValues.put(entry.getKey(), entry.getValue() - previousValue);
-      previousValue = entry.getValue();
-    }
-    timelineMetric.setMetricValues(newMetricValues);
-    counterMetricLastValue.put(metricName, previousValue);
+  public long getMaxCacheBytes() {
+    return maxCacheBytes;
   }
 
-  public void putTimelineMetric(TimelineMetric timelineMetric, boolean isCounter) {
-    if (isCounter) {
-      transformMetricValuesToDerivative(timelineMetric);
-    }
-    putTimelineMetric(timelineMetric);
+  /**
+   * @return the number of puts dropped because the cache was full
+   */
+  public long getOverflowCount() {
+    return overflowCount.get();
+  }
+
+  /**
+   * @return the number of metrics dropped because they were not put for a
+   * while
+   */
+  public long getExpiredCount() {
+    return expiredCount.get();
+  }
+
+  /**
+   * @return the number of metrics dropped to make room because they were
+   * put least recently
+   */
+  public long getEvictedCount() {
+    return evictedCount.get();
   }
 }
@@ -0,0 +1,193 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import org.codehaus.jackson.map.AnnotationIntrospector;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.xc.JaxbAnnotationIntrospector;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TimelineMetricSeriesTest {
+
+  @Test
+  public void testAppendAndPut() throws Exception {
+    TimelineMetricSeries series = new TimelineMetricSeries();
+    series.append(1000L, 1.0);
+    series.append(3000L, 3.0);
+    series.put(2000L, 2.0);
+    series.put(500L, 0.5);
+    // replaces the existing value
+    assertEquals(Double.valueOf(3.0), series.put(3000L, 3.5));
+    series.append(3000L, 4.0);
+
+    assertEquals(4, series.size());
+    assertEquals(500L, series.getFirstTimestamp());
+    assertEquals(3000L, series.getLastTimestamp());
+    assertEquals(2.0, series.getValue(2), 0.0);
+    assertEquals(4.0, series.getValue(3), 0.0);
+    assertEquals(Double.valueOf(2.0), series.get(2000L));
+    assertNull(series.get(2500L));
+    assertFalse(series.containsKey(2500L));
+  }
+
+  @Test
+  public void testBehavesLikeTreeMap() throws Exception {
+    Random random = new Random(1);
+    TimelineMetricSeries series = new TimelineMetricSeries();
+    TreeMap<Long, Double> map = new TreeMap<Long, Double>();
+
+    for (int i = 0; i < 5000; i++) {
+      long timestamp = random.nextInt(1000);
+      Double value = random.nextInt(10) == 0 ? null : random.nextDouble();
+      switch (random.nextInt(4)) {
+        case 0:
+          assertEquals(map.remove(timestamp), series.remove(timestamp));
+          break;
+        default:
+          assertEquals(map.put(timestamp, value), series.put(timestamp, value));
+          break;
+      }
+    }
+
+    assertEquals(map, series);
+    assertEquals(series, map);
+    assertEquals(map.hashCode(), series.hashCode());
+    assertEquals(map.toString(), series.toString());
+  }
+
+  @Test
+  public void testMerge() throws Exception {
+    TimelineMetricSeries series = new TimelineMetricSeries();
+    series.append(1000L, 1.0);
+    series.append(3000L, 3.0);
+
+    TimelineMetricSeries later = new TimelineMetricSeries();
+    later.append(4000L, 4.0);
+    later.put(5000L, null);
+    series.merge(later);
+
+    TimelineMetricSeries overlapping = new TimelineMetricSeries();
+    overlapping.append(2000L, 2.0);
+    overlapping.append(3000L, 3.5);
+    series.putAll(overlapping);
+
+    TreeMap<Long, Double> expected = new TreeMap<Long, Double>();
+    expected.put(1000L, 1.0);
+    expected.put(2000L, 2.0);
+    expected.put(3000L, 3.5);
+    expected.put(4000L, 4.0);
+    expected.put(5000L, null);
+    assertEquals(expected, series);
+    assertTrue(series.isNull(4));
+  }
+
+  @Test
+  public void testSlice() throws Exception {
+    TimelineMetricSeries series = new TimelineMetricSeries();
+    for (long timestamp = 1000L; timestamp <= 10000L; timestamp += 1000L) {
+      series.append(timestamp, timestamp / 1000);
+    }
+
+    TimelineMetricSeries slice = series.slice(2500L, 5000L);
+    assertEquals(3, slice.size());
+    assertEquals(3000L, slice.getFirstTimestamp());
+    assertEquals(5000L, slice.getLastTimestamp());
+
+    // the slice is a copy
+    slice.setValue(0, 0.0);
+    assertEquals(3.0, series.getValue(2), 0.0);
+
+    assertEquals(0, series.slice(20000L, 30000L).size());
+    assertEquals(10, series.slice(Long.MIN_VALUE, Long.MAX_VALUE).size());
+  }
+
+  @Test
+  public void testDownsample() throws Exception {
+    TimelineMetricSeries series = new TimelineMetricSeries();
+    series.append(1000L, 1.0);
+    series.append(1500L, 2.0);
+    series.put(2000L, null);
+    series.append(2500L, 4.0);
+    series.put(3000L, null);
+
+    TimelineMetricSeries downsampled = series.downsample(1000L);
+    assertEquals(3, downsampled.size());
+    assertEquals(1.5, downsampled.getValue(0), 0.0);
+    assertEquals(4.0, downsampled.getValue(1), 0.0);
+    assertTrue(downsampled.isNull(2));
+    assertEquals(3000L, downsampled.getLastTimestamp());
+  }
+
+  @Test
+  public void testIteratorRemoveAndSetValue() throws Exception {
+    TimelineMetricSeries series = new TimelineMetricSeries();
+    for (long timestamp = 1; timestamp <= 10; timestamp++) {
+      series.append(timestamp, timestamp);
+    }
+
+    Iterator<Map.Entry<Long, Double>> iterator = series.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Long, Double> entry = iterator.next();
+      if (entry.getKey() % 2 == 0) {
+        iterator.remove();
+      } else {
+        entry.setValue(entry.getValue() * 10);
+      }
+    }
+
+    assertEquals(5, series.size());
+    assertEquals(10.0, series.getValue(0), 0.0);
+    assertEquals(90.0, series.getValue(4), 0.0);
+  }
+
+  @Test
+  public void testJsonIsUnchanged() throws Exception {
+    ObjectMapper mapper = new ObjectMapper();
+    AnnotationIntrospector introspector = new JaxbAnnotationIntrospector();
+    mapper.setAnnotationIntrospector(introspector);
+
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName("cpu_user");
+    metric.setHostName("h1");
+    metric.setAppId("HOST");
+    metric.setStartTime(1000L);
+    metric.getMetricSeries().append(1000L, 1.0);
+    metric.getMetricSeries().append(2000L, 2.5);
+
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+    values.put(1000L, 1.0);
+    values.put(2000L, 2.5);
+
+    String json = mapper.writeValueAsString(metric);
+    assertTrue(json, json.contains("\"metrics\":" + mapper.writeValueAsString(values)));
+
+    TimelineMetric read = mapper.readValue(json, TimelineMetric.class);
+    assertEquals(values, read.getMetricValues());
+    assertEquals(2000L, read.getMetricSeries().getLastTimestamp());
+  }
+}
@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimelineMetricsEmitterTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testMetricsAreSentInBackground() throws Exception {
+    TestSink sink = new TestSink();
+    final TimelineMetricsEmitter emitter = new TimelineMetricsEmitter(sink, 10, null, 0);
+    emitter.start();
+    try {
+      assertTrue(emitter.offer(createMetrics("m1")));
+      waitFor(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          return emitter.getSentCount() == 1;
+        }
+      });
+
+      TimelineMetrics posted = AbstractTimelineMetricsSink.mapper.readValue(
+        sink.posted.get(0), TimelineMetrics.class);
+      List<String> names = new ArrayList<String>();
+      for (TimelineMetric metric : posted.getMetrics()) {
+        names.add(metric.getMetricName());
+        assertEquals("h1", metric.getHostName());
+      }
+      assertTrue(names.contains("m1"));
+      assertTrue(names.contains(TimelineMetricsEmitter.EMITTER_METRIC_PREFIX + "dropped"));
+      assertEquals(1, emitter.getQueuedCount());
+      assertEquals(0, emitter.getDroppedCount());
+    } finally {
+      emitter.stop();
+    }
+  }
+
+  @Test
+  public void testFullQueueDropsWithoutBlocking() throws Exception {
+    TestSink sink = new TestSink();
+    sink.block = new CountDownLatch(1);
+    TimelineMetricsEmitter emitter = new TimelineMetricsEmitter(sink, 1, null, 0);
+    emitter.start();
+    try {
+      emitter.offer(createMetrics("m1"));
+      // the emitter thread is now stuck posting m1
+      assertTrue(sink.entered.await(10, TimeUnit.SECONDS));
+
+      assertTrue(emitter.offer(createMetrics("m2")));
+      assertFalse(emitter.offer(createMetrics("m3")));
+      assertEquals(1, emitter.getQueueSize());
+      assertEquals(1, emitter.getDroppedCount());
+    } finally {
+      sink.block.countDown();
+      emitter.stop();
+    }
+  }
+
+  @Test
+  public void testUnreachableCollectorSpoolsAndReplays() throws Exception {
+    TestSink sink = new TestSink();
+    sink.reachable = false;
+    final File spoolFile = new File(folder.getRoot(), "metrics.spool");
+    final TimelineMetricsEmitter emitter = new TimelineMetricsEmitter(sink, 10, spoolFile, 1024 * 1024);
+    emitter.setRetryInterval(0);
+    emitter.start();
+    try {
+      emitter.offer(createMetrics("m1"));
+      waitFor(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          return emitter.getSpooledCount() >= 1;
+        }
+      });
+      assertTrue(emitter.getFailedCount() >= 1);
+      assertEquals(0, emitter.getSentCount());
+
+      sink.reachable = true;
+      waitFor(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          return emitter.getReplayedCount() == 1 && !spoolFile.exists();
+        }
+      });
+
+      TimelineMetrics replayed = AbstractTimelineMetricsSink.mapper.readValue(
+        sink.posted.get(0), TimelineMetrics.class);
+      assertEquals("m1", replayed.getMetrics().get(0).getMetricName());
+      assertEquals(0, emitter.getDroppedCount());
+    } finally {
+      emitter.stop();
+    }
+  }
+
+  @Test
+  public void testFullSpoolDrops() throws Exception {
+    TestSink sink = new TestSink();
+    sink.reachable = false;
+    File spoolFile = new File(folder.getRoot(), "metrics.spool");
+    final TimelineMetricsEmitter emitter = new TimelineMetricsEmitter(sink, 10, spoolFile, 10);
+    emitter.start();
+    try {
+      emitter.offer(createMetrics("m1"));
+      waitFor(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          return emitter.getDroppedCount() == 1;
+        }
+      });
+      assertEquals(0, emitter.getSpooledCount());
+      assertFalse(spoolFile.exists());
+    } finally {
+      emitter.stop();
+    }
+  }
+
+  private static TimelineMetrics createMetrics(String name) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(name);
+    metric.setHostName("h1");
+    metric.setAppId("test");
+    metric.setStartTime(1000L);
+    metric.getMetricSeries().append(1000L, 1.0);
+
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.setMetrics(new ArrayList<TimelineMetric>(Collections.singletonList(metric)));
+    return metrics;
+  }
+
+  private static void waitFor(Callable<Boolean> condition) throws Exception {
+    long deadline = System.currentTimeMillis() + 10000L;
+    while (!condition.call()) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new AssertionError("Timed out");
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  private static class TestSink extends AbstractTimelineMetricsSink {
+    private final List<byte[]> posted = Collections.synchronizedList(new ArrayList<byte[]>());
+    private final CountDownLatch entered = new CountDownLatch(1);
+    private volatile CountDownLatch block;
+    private volatile boolean reachable = true;
+
+    @Override
+    int postMetrics(byte[] jsonData) throws IOException {
+      entered.countDown();
+      if (block != null) {
+        try {
+          block.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+      if (!reachable) {
+        throw new UnableToConnectException(new ConnectException()).setConnectUrl("collector");
+      }
+      posted.add(jsonData);
+      return 200;
+    }
+
+    @Override
+    protected String getCollectorUri() {
+      return "collector";
+    }
+
+    @Override
+    protected int getTimeoutSeconds() {
+      return 10;
+    }
+  }
+}
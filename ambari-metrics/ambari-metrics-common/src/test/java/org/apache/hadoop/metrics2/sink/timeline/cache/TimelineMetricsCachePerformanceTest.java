@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline.cache;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the put/get throughput of {@link TimelineMetricsCache} with 50k
+ * distinct metric names reported by 8 threads, along with the heap used by
+ * the cache. Every thread puts a datapoint of its share of the names and
+ * asks for the due metric right after, as the sinks do. The first
+ * {@link #WARMUP_ITERATIONS} iterations are not printed, so that the cache is
+ * compiled before it is timed.
+ * <p/>
+ * The budget of {@link #MAX_CACHE_BYTES} holds all names; run with a smaller
+ * one to measure the cost of evicting the least recently put metrics.
+ * <p/>
+ * Not run by default, timings depend on the machine. Remove the
+ * {@link Ignore} annotation and run
+ * {@code mvn test -Dtest=TimelineMetricsCachePerformanceTest} to run it.
+ */
+@Ignore
+public class TimelineMetricsCachePerformanceTest {
+
+  private static final int THREADS = 8;
+  private static final int METRIC_NAMES = 50000;
+  private static final int ROUNDS = 60;
+  private static final int WARMUP_ITERATIONS = 3;
+  private static final int ITERATIONS = 5;
+  private static final long MAX_CACHE_BYTES = 256L * 1024 * 1024;
+  private static final int EVICTION_TIME_MILLIS = 10;
+
+  @Test
+  public void testConcurrentPutGet() throws Exception {
+    final String[] names = new String[METRIC_NAMES];
+    for (int i = 0; i < METRIC_NAMES; i++) {
+      names[i] = "regionserver.Server.Namespace_default_table_t" + i + "_metric_storeFileSize";
+    }
+
+    for (int iteration = 0; iteration < WARMUP_ITERATIONS + ITERATIONS; iteration++) {
+      System.gc();
+      long usedBefore = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+
+      final TimelineMetricsCache cache = new TimelineMetricsCache(
+        TimelineMetricsCache.MAX_RECS_PER_NAME_DEFAULT, EVICTION_TIME_MILLIS, MAX_CACHE_BYTES);
+      final AtomicLong evicted = new AtomicLong();
+      final CountDownLatch start = new CountDownLatch(1);
+      final CountDownLatch done = new CountDownLatch(THREADS);
+
+      for (int t = 0; t < THREADS; t++) {
+        final int thread = t;
+        new Thread(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              start.await();
+              // each thread reports its own share of the names
+              for (int round = 0; round < ROUNDS; round++) {
+                long time = round * EVICTION_TIME_MILLIS / 5;
+                for (int i = thread; i < METRIC_NAMES; i += THREADS) {
+                  TimelineMetric metric = new TimelineMetric();
+                  metric.setMetricName(names[i]);
+                  metric.setStartTime(time);
+                  metric.getMetricSeries().append(time, i);
+                  cache.putTimelineMetric(metric, i % 2 == 0);
+                  if (cache.getTimelineMetric(names[i]) != null) {
+                    evicted.incrementAndGet();
+                  }
+                }
+              }
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            } finally {
+              done.countDown();
+            }
+          }
+        }).start();
+      }
+
+      long startTime = System.nanoTime();
+      start.countDown();
+      done.await();
+      long elapsed = (System.nanoTime() - startTime) / 1000000;
+
+      long usedAfter = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+      if (iteration < WARMUP_ITERATIONS) {
+        continue;
+      }
+      long operations = (long) ROUNDS * METRIC_NAMES;
+      System.out.println(operations + " put/get in " + elapsed + "ms (" +
+        (operations * 1000 / Math.max(1, elapsed)) + " ops/s), evicted = " + evicted +
+        ", cached = " + cache.getCacheSize() + ", estimated bytes = " + cache.getCacheBytes() +
+        ", heap delta = " + (usedAfter - usedBefore) + ", lru evicted = " + cache.getEvictedCount() +
+        ", overflow = " + cache.getOverflowCount());
+    }
+  }
+}
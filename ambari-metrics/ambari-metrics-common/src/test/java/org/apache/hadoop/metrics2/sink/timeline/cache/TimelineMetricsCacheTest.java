@@ -20,10 +20,19 @@ package org.apache.hadoop.metrics2.sink.timeline.cache;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class TimelineMetricsCacheTest {
 
@@ -72,6 +81,168 @@ public class TimelineMetricsCacheTest {
     assertEquals(70, cachedMetric.getMetricValues().get(8L), delta);
   }
 
+  @Test
+  public void testDuplicateStartTimeIsIgnored() throws Exception {
+    timelineMetricsCache.putTimelineMetric(createTimelineMetric(new TreeMap<Long, Double>() {{
+      put(1L, 10.0);
+    }}, DEFAULT_START_TIME));
+    timelineMetricsCache.putTimelineMetric(createTimelineMetric(new TreeMap<Long, Double>() {{
+      put(2L, 20.0);
+    }}, DEFAULT_START_TIME));
+    timelineMetricsCache.putTimelineMetric(createTimelineMetric(new TreeMap<Long, Double>() {{
+      put(3L, 30.0);
+    }}, DEFAULT_START_TIME + TimelineMetricsCache.MAX_EVICTION_TIME_MILLIS));
+
+    TimelineMetric cachedMetric = timelineMetricsCache.getTimelineMetric(METRIC_NAME);
+    assertEquals(2, cachedMetric.getMetricValues().size());
+    assertNull(cachedMetric.getMetricValues().get(2L));
+
+    // nothing left until enough values are buffered again
+    assertNull(timelineMetricsCache.getTimelineMetric(METRIC_NAME));
+  }
+
+  @Test
+  public void testCacheIsBoundedByBytes() throws Exception {
+    long maxBytes = 100 * TimelineMetricsCache.ENTRY_OVERHEAD_BYTES;
+    TimelineMetricsCache cache = new TimelineMetricsCache(
+      TimelineMetricsCache.MAX_RECS_PER_NAME_DEFAULT,
+      TimelineMetricsCache.MAX_EVICTION_TIME_MILLIS, maxBytes);
+
+    for (int i = 0; i < 1000; i++) {
+      TimelineMetric metric = createTimelineMetric(new TreeMap<Long, Double>() {{
+        put(1L, 1.0);
+      }}, DEFAULT_START_TIME);
+      metric.setMetricName("metric" + i);
+      cache.putTimelineMetric(metric);
+    }
+
+    assertTrue(cache.getCacheSize() < 100);
+    // the older metrics make room for the new ones
+    assertTrue(cache.getEvictedCount() > 900);
+    assertEquals(0, cache.getOverflowCount());
+    // at most one metric over the limit
+    assertTrue(cache.getCacheBytes() <= maxBytes + 2 * TimelineMetricsCache.ENTRY_OVERHEAD_BYTES);
+  }
+
+  @Test
+  public void testLeastRecentlyPutMetricsAreEvicted() throws Exception {
+    long maxBytes = 10 * TimelineMetricsCache.ENTRY_OVERHEAD_BYTES;
+    TimelineMetricsCache cache = new TimelineMetricsCache(
+      TimelineMetricsCache.MAX_RECS_PER_NAME_DEFAULT, 100, maxBytes);
+
+    cache.putTimelineMetric(createMetric("a", 0));
+    for (int i = 0; i < 8; i++) {
+      cache.putTimelineMetric(createMetric("b" + i, 0));
+    }
+    cache.putTimelineMetric(createMetric("a", 100));
+    for (int i = 8; i < 12; i++) {
+      cache.putTimelineMetric(createMetric("b" + i, 0));
+    }
+
+    assertTrue(cache.getEvictedCount() > 0);
+    assertTrue(cache.getCacheBytes() <= maxBytes + 2 * TimelineMetricsCache.ENTRY_OVERHEAD_BYTES);
+    // put again after the others, so it was kept with its values
+    assertNotNull(cache.getTimelineMetric("a"));
+  }
+
+  @Test
+  public void testConcurrentPuts() throws Exception {
+    final int threads = 8;
+    final int metricsPerThread = 1000;
+    final TimelineMetricsCache cache = new TimelineMetricsCache(
+      TimelineMetricsCache.MAX_RECS_PER_NAME_DEFAULT, 100);
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+    for (int t = 0; t < threads; t++) {
+      futures.add(executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          int evicted = 0;
+          for (int time = 0; time <= 200; time += 50) {
+            for (int i = 0; i < metricsPerThread; i++) {
+              // all threads put the same metrics
+              String name = "metric" + i;
+              TimelineMetric metric = new TimelineMetric();
+              metric.setMetricName(name);
+              metric.setStartTime(time);
+              metric.getMetricSeries().append(time, 1.0);
+              cache.putTimelineMetric(metric);
+              if (cache.getTimelineMetric(name) != null) {
+                evicted++;
+              }
+            }
+          }
+          return evicted;
+        }
+      }));
+    }
+
+    int evicted = 0;
+    for (Future<Integer> future : futures) {
+      evicted += future.get();
+    }
+    executor.shutdown();
+
+    assertEquals(metricsPerThread, cache.getCacheSize());
+    assertTrue(evicted >= metricsPerThread);
+    assertEquals(0, cache.getOverflowCount());
+  }
+
+  @Test
+  public void testConcurrentPutsAreBoundedByBytes() throws Exception {
+    final int threads = 8;
+    final int metricNames = 5000;
+    final String prefix = "regionserver.Server.Namespace_default_table_t";
+    final long maxBytes = 200 * TimelineMetricsCache.ENTRY_OVERHEAD_BYTES;
+    final TimelineMetricsCache cache = new TimelineMetricsCache(
+      TimelineMetricsCache.MAX_RECS_PER_NAME_DEFAULT, 100, maxBytes);
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+    for (int t = 0; t < threads; t++) {
+      final int thread = t;
+      futures.add(executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          // each thread reports its own share of the names
+          for (int time = 0; time <= 200; time += 20) {
+            for (int i = thread; i < metricNames; i += threads) {
+              TimelineMetric metric = new TimelineMetric();
+              metric.setMetricName(prefix + i);
+              metric.setStartTime(time);
+              metric.getMetricSeries().append(time, i);
+              cache.putTimelineMetric(metric, i % 2 == 0);
+              cache.getTimelineMetric(prefix + i);
+            }
+          }
+          return 0;
+        }
+      }));
+    }
+    for (Future<Integer> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    assertTrue(cache.getEvictedCount() > 0);
+    assertTrue(cache.getCacheSize() < 200);
+    // each thread may have put one metric past the check of the limit
+    long maxMetricBytes = TimelineMetricsCache.ENTRY_OVERHEAD_BYTES +
+      2 * (prefix.length() + 4) + 2 * TimelineMetricsCache.DATAPOINT_BYTES;
+    assertTrue(cache.getCacheBytes() <= maxBytes + threads * maxMetricBytes);
+    assertTrue(cache.getCacheBytes() >= (long) cache.getCacheSize() *
+      TimelineMetricsCache.ENTRY_OVERHEAD_BYTES);
+  }
+
+  private TimelineMetric createMetric(String metricName, long startTime) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(metricName);
+    metric.setStartTime(startTime);
+    metric.getMetricSeries().append(startTime, 1.0);
+    return metric;
+  }
+
   private TimelineMetric createTimelineMetric(Map<Long, Double> metricValues,
                                               long startTime) {
     TimelineMetric timelineMetric = new TimelineMetric();
@@ -31,7 +31,9 @@ import org.apache.hadoop.metrics2.sink.timeline.UnableToConnectException;
 import org.apache.hadoop.metrics2.sink.timeline.cache.TimelineMetricsCache;
 import org.apache.hadoop.metrics2.sink.timeline.configuration.Configuration;
 
+import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
@@ -51,8 +53,13 @@ public class FlumeTimelineMetricsSink extends AbstractTimelineMetricsSink implem
   private long pollFrequency;
   private String hostname;
   private final static String COUNTER_METRICS_PROPERTY = "counters";
+  // passed by the agent as -Dflume.monitoring.agentName
+  private final static String AGENT_NAME_PROPERTY = "agentName";
   private final Set<String> counterMetrics = new HashSet<String>();
   private int timeoutSeconds = 10;
+  private int emitterQueueSize = 0;
+  private File emitterSpoolFile;
+  private long emitterSpoolMaxBytes = DEFAULT_EMITTER_SPOOL_MAX_BYTES;
 
   @Override
   public void start() {
@@ -61,6 +68,7 @@ public class FlumeTimelineMetricsSink extends AbstractTimelineMetricsSink implem
     if (scheduledExecutorService == null || scheduledExecutorService.isShutdown() || scheduledExecutorService.isTerminated()) {
       scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
     }
+    startEmitter(emitterQueueSize, emitterSpoolFile, emitterSpoolMaxBytes);
     scheduledExecutorService.scheduleWithFixedDelay(timelineMetricsCollector, 0,
         pollFrequency, TimeUnit.MILLISECONDS);
   }
@@ -69,6 +77,7 @@ public class FlumeTimelineMetricsSink extends AbstractTimelineMetricsSink implem
   public void stop() {
     LOG.info("Stopping Flume Metrics Sink");
     scheduledExecutorService.shutdown();
+    stopEmitter();
   }
 
   @Override
@@ -88,6 +97,16 @@ public class FlumeTimelineMetricsSink extends AbstractTimelineMetricsSink implem
     int metricsSendInterval = Integer.parseInt(configuration.getProperty(METRICS_SEND_INTERVAL,
         String.valueOf(TimelineMetricsCache.MAX_EVICTION_TIME_MILLIS)));
     metricsCache = new TimelineMetricsCache(maxRowCacheSize, metricsSendInterval);
+    setGzipEnabled(Boolean.parseBoolean(configuration.getProperty(GZIP_PROPERTY, "true")));
+    emitterQueueSize = Integer.parseInt(configuration.getProperty(EMITTER_QUEUE_SIZE_PROPERTY,
+        String.valueOf(DEFAULT_EMITTER_QUEUE_SIZE)));
+    // Each agent on the host needs a spool file of its own
+    String spoolFile = configuration.getProperty(EMITTER_SPOOL_FILE_PROPERTY,
+        new File(System.getProperty("java.io.tmpdir"),
+            "timeline-metrics-flume-" + getAgentName(context) + ".spool").getPath());
+    emitterSpoolFile = spoolFile.trim().isEmpty() ? null : new File(spoolFile.trim());
+    emitterSpoolMaxBytes = Long.parseLong(configuration.getProperty(EMITTER_SPOOL_MAX_BYTES_PROPERTY,
+        String.valueOf(DEFAULT_EMITTER_SPOOL_MAX_BYTES)));
     String collectorHostname = configuration.getProperty(COLLECTOR_HOST_PROPERTY);
     String port = configuration.getProperty(COLLECTOR_PORT_PROPERTY);
     collectorUri = "http://" + collectorHostname + ":" + port + "/ws/v1/timeline/metrics";
@@ -97,6 +116,18 @@ public class FlumeTimelineMetricsSink extends AbstractTimelineMetricsSink implem
     Collections.addAll(counterMetrics, metrics);
   }
 
+  /**
+   * The name of the agent, or the name of the JVM if the agent doesn't pass
+   * it, made safe for use in a file name.
+   */
+  static String getAgentName(Context context) {
+    String agentName = context.getString(AGENT_NAME_PROPERTY);
+    if (agentName == null || agentName.trim().isEmpty()) {
+      agentName = ManagementFactory.getRuntimeMXBean().getName();
+    }
+    return agentName.trim().replaceAll("[^A-Za-z0-9._-]", "_");
+  }
+
   @Override
   public String getCollectorUri() {
     return collectorUri;
@@ -177,7 +208,7 @@ public class FlumeTimelineMetricsSink extends AbstractTimelineMetricsSink implem
       timelineMetric.setStartTime(currentTimeMillis);
       timelineMetric.setType(ClassUtils.getShortCanonicalName(
           attributeValue, "Number"));
-      timelineMetric.getMetricValues().put(currentTimeMillis, Double.parseDouble(attributeValue));
+      timelineMetric.getMetricSeries().append(currentTimeMillis, Double.parseDouble(attributeValue));
       return timelineMetric;
     }
   }
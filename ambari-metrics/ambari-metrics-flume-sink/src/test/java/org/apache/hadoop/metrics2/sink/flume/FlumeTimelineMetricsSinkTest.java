@@ -25,10 +25,12 @@ import static org.powermock.api.easymock.PowerMock.verifyAll;
 import java.util.Collections;
 
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.flume.Context;
 import org.apache.flume.instrumentation.util.JMXPollUtil;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.cache.TimelineMetricsCache;
 import org.easymock.EasyMock;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.powermock.core.classloader.annotations.PrepareForTest;
@@ -104,4 +106,15 @@ public class FlumeTimelineMetricsSinkTest {
     collector.run();
     verifyAll();
   }
+
+  @Test
+  public void testAgentName() {
+    Assert.assertEquals("agent_1", FlumeTimelineMetricsSink.getAgentName(
+        new Context(Collections.singletonMap("agentName", "agent 1"))));
+
+    // the name of the JVM, which is unique on the host
+    String jvmName = FlumeTimelineMetricsSink.getAgentName(new Context());
+    Assert.assertFalse(jvmName.isEmpty());
+    Assert.assertFalse(jvmName.contains("@"));
+  }
 }
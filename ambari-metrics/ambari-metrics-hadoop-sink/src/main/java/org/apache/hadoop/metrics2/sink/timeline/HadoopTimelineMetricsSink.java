@@ -17,6 +17,8 @@
  */
 package org.apache.hadoop.metrics2.sink.timeline;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
@@ -47,7 +49,8 @@ import org.apache.hadoop.net.DNS;
 
 @InterfaceAudience.Public
 @InterfaceStability.Evolving
-public class HadoopTimelineMetricsSink extends AbstractTimelineMetricsSink implements MetricsSink {
+public class HadoopTimelineMetricsSink extends AbstractTimelineMetricsSink
+    implements MetricsSink, Closeable {
   private Map<String, Set<String>> useTagsMap = new HashMap<String, Set<String>>();
   private TimelineMetricsCache metricsCache;
   private String hostName = "UNKNOWN.example.com";
@@ -100,6 +103,15 @@ public class HadoopTimelineMetricsSink extends AbstractTimelineMetricsSink imple
       TimelineMetricsCache.MAX_EVICTION_TIME_MILLIS); // ~ 1 min
     metricsCache = new TimelineMetricsCache(maxRowCacheSize, metricsSendInterval);
 
+    // Send from a background thread, spooling to disk while the collector is down
+    setGzipEnabled(conf.getBoolean(GZIP_PROPERTY, true));
+    String spoolFile = conf.getString(EMITTER_SPOOL_FILE_PROPERTY,
+      new File(System.getProperty("java.io.tmpdir"),
+        "timeline-metrics-" + serviceName + ".spool").getPath());
+    startEmitter(conf.getInt(EMITTER_QUEUE_SIZE_PROPERTY, DEFAULT_EMITTER_QUEUE_SIZE),
+      StringUtils.isEmpty(spoolFile) ? null : new File(spoolFile),
+      conf.getLong(EMITTER_SPOOL_MAX_BYTES_PROPERTY, DEFAULT_EMITTER_SPOOL_MAX_BYTES));
+
     conf.setListDelimiter(',');
     Iterator<String> it = (Iterator<String>) conf.getKeys();
     while (it.hasNext()) {
@@ -189,7 +201,7 @@ public class HadoopTimelineMetricsSink extends AbstractTimelineMetricsSink imple
         timelineMetric.setAppId(serviceName);
         timelineMetric.setStartTime(startTime);
         timelineMetric.setType(ClassUtils.getShortCanonicalName(value, "Number"));
-        timelineMetric.getMetricValues().put(startTime, value.doubleValue());
+        timelineMetric.getMetricSeries().append(startTime, value.doubleValue());
         // Put intermediate values into the cache until it is time to send
         boolean isCounter = MetricType.COUNTER == metric.type();
         metricsCache.putTimelineMetric(timelineMetric, isCounter);
@@ -244,4 +256,13 @@ public class HadoopTimelineMetricsSink extends AbstractTimelineMetricsSink imple
   public void flush() {
     // TODO: Buffering implementation
   }
+
+  /**
+   * Called by the metrics system when the sink is stopped. Stops the
+   * emitter, spooling the batches which were not sent yet.
+   */
+  @Override
+  public void close() throws IOException {
+    stopEmitter();
+  }
 }
@@ -240,4 +240,14 @@ public class HadoopTimelineMetricsSinkTest {
     Assert.assertEquals(new Double(5.0), values.next());
     Assert.assertEquals(new Double(6.0), values.next());
   }
+
+  @Test
+  public void testCloseStopsEmitter() throws Exception {
+    HadoopTimelineMetricsSink sink = new HadoopTimelineMetricsSink();
+    sink.startEmitter(10, null, 0);
+    Assert.assertNotNull(sink.getEmitter());
+
+    sink.close();
+    Assert.assertNull(sink.getEmitter());
+  }
 }
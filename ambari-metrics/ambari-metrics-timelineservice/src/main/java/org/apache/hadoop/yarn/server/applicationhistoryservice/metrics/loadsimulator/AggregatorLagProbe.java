@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator;
+
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.net.RestMetricsReader;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.util.BenchmarkStats;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures how far the aggregators of the collector are behind, from the
+ * latest aggregate of a simulated metric of a host and of the cluster.
+ */
+public class AggregatorLagProbe implements Runnable {
+  private final static Logger LOG = LoggerFactory.getLogger(AggregatorLagProbe.class);
+
+  private static final long PROBE_RANGE_MILLIS = 3600000l;
+
+  private final RestMetricsReader reader;
+  private final String hostName;
+  private final String appId;
+  private final String metricName;
+  private final BenchmarkStats stats;
+
+  public AggregatorLagProbe(RestMetricsReader reader, String hostName,
+                            String appId, String metricName,
+                            BenchmarkStats stats) {
+    this.reader = reader;
+    this.hostName = hostName;
+    this.appId = appId;
+    this.metricName = metricName;
+    this.stats = stats;
+  }
+
+  @Override
+  public void run() {
+    long endTime = System.currentTimeMillis();
+    String query = "metricNames=" + metricName + "&appId=" + appId +
+      "&startTime=" + (endTime - PROBE_RANGE_MILLIS) + "&endTime=" + endTime;
+    try {
+      // minute aggregates of the host
+      stats.setHostAggregatorLagMillis(getLagMillis(
+        reader.getMetrics(query + "&hostname=" + hostName + "&precision=minutes"), endTime));
+      // cluster aggregates, read when no hostname is given
+      stats.setClusterAggregatorLagMillis(getLagMillis(
+        reader.getMetrics(query), endTime));
+    } catch (IOException e) {
+      LOG.warn("Unable to read the aggregates of " + metricName, e);
+    }
+  }
+
+  /**
+   * The time since the latest value of the response, -1 if it has none.
+   */
+  @SuppressWarnings("unchecked")
+  static long getLagMillis(String response, long now) throws IOException {
+    Map<String, Object> metrics = new ObjectMapper().readValue(response, Map.class);
+    long latest = -1;
+    Object metricList = metrics.get("metrics");
+    if (metricList instanceof List) {
+      for (Object metric : (List<Object>) metricList) {
+        Object values = ((Map<String, Object>) metric).get("metrics");
+        if (values instanceof Map) {
+          for (Object timestamp : ((Map<String, Object>) values).keySet()) {
+            latest = Math.max(latest, Long.parseLong(timestamp.toString()));
+          }
+        }
+      }
+    }
+    return latest < 0 ? -1 : Math.max(0, now - latest);
+  }
+}
@@ -28,10 +28,14 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
   .loadsimulator.data.MetricsGeneratorConfigurer;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
   .loadsimulator.net.MetricsSender;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.net.RestMetricsReader;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
   .loadsimulator.net.RestMetricsSender;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
   .loadsimulator.net.StdOutMetricsSender;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.util.BenchmarkStats;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
   .loadsimulator.util.TimeStampProvider;
 import org.slf4j.Logger;
@@ -49,7 +53,8 @@ import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
   .loadsimulator.data.AppID.SLAVE_APPS;
 
 /**
- *
+ * Posts the metrics of the simulated hosts every send interval, and
+ * optionally reads some of them back, counting both in {@link BenchmarkStats}.
  */
 public class LoadRunner {
   private final static Logger LOG = LoggerFactory.getLogger(LoadRunner.class);
@@ -57,9 +62,15 @@ public class LoadRunner {
   private final ScheduledExecutorService timer;
   private final ExecutorService workersPool;
   private final Collection<Callable<String>> workers;
+  private final List<HostMetricsGenerator> generators =
+    new ArrayList<HostMetricsGenerator>();
   private final long startTime = new Date().getTime();
   private final int collectIntervalMillis;
   private final int sendIntervalMillis;
+  private final int appCount;
+  private final int metricCount;
+  private final BenchmarkStats stats = new BenchmarkStats();
+  private final AggregatorLagProbe lagProbe;
 
   public LoadRunner(String hostName,
                     int threadCount,
@@ -67,12 +78,51 @@ public class LoadRunner {
                     int collectIntervalMillis,
                     int sendIntervalMillis,
                     boolean createMaster) {
+    this(hostName, threadCount, metricsHostName, collectIntervalMillis,
+      sendIntervalMillis, createMaster, 0, 0, 0);
+  }
+
+  /**
+   * @param appCount           the number of apps of each host, all if not
+   *                           positive
+   * @param metricCount        the number of metrics of each app, all if not
+   *                           positive
+   * @param queriesPerInterval the number of queries sent with the metrics
+   *                           of every send interval
+   */
+  public LoadRunner(String hostName,
+                    int threadCount,
+                    String metricsHostName,
+                    int collectIntervalMillis,
+                    int sendIntervalMillis,
+                    boolean createMaster,
+                    int appCount,
+                    int metricCount,
+                    int queriesPerInterval) {
     this.collectIntervalMillis = collectIntervalMillis;
     this.workersPool = Executors.newFixedThreadPool(threadCount);
     this.timer = Executors.newScheduledThreadPool(1);
     this.sendIntervalMillis = sendIntervalMillis;
+    this.appCount = appCount;
+    this.metricCount = metricCount;
 
     workers = prepareWorkers(hostName, threadCount, metricsHostName, createMaster);
+
+    RestMetricsReader reader = new RestMetricsReader(metricsHostName);
+    for (int i = 0; i < queriesPerInterval; i++) {
+      workers.add(new MetricsQueryWorker(reader, generators, stats));
+    }
+
+    HostMetricsGenerator probed = generators.isEmpty() ? null :
+      generators.get(generators.size() - 1);
+    if (probed != null && !probed.getMetricNames().isEmpty()) {
+      lagProbe = new AggregatorLagProbe(reader,
+        probed.getApplicationInstance().getHostName(),
+        probed.getApplicationInstance().getAppId().getId(),
+        probed.getMetricNames().iterator().next(), stats);
+    } else {
+      lagProbe = null;
+    }
   }
 
   private Collection<Callable<String>> prepareWorkers(String hostName,
@@ -101,11 +151,13 @@ public class LoadRunner {
                                  String specificHostName,
                                  String metricsHostName,
                                  AppID[] apps) {
-    for (AppID app : apps) {
+    int count = appCount > 0 ? Math.min(appCount, apps.length) : apps.length;
+    for (int i = 0; i < count; i++) {
       HostMetricsGenerator metricsGenerator =
-        createApplicationMetrics(specificHostName, app);
+        createApplicationMetrics(specificHostName, apps[i]);
+      generators.add(metricsGenerator);
       MetricsSender sender = new RestMetricsSender(metricsHostName);
-      senderWorkers.add(new MetricsSenderWorker(sender, metricsGenerator));
+      senderWorkers.add(new MetricsSenderWorker(sender, metricsGenerator, stats));
     }
   }
 
@@ -115,7 +167,11 @@ public class LoadRunner {
       collectIntervalMillis, sendIntervalMillis);
 
     return MetricsGeneratorConfigurer
-      .createMetricsForHost(appInstance, timeStampProvider);
+      .createMetricsForHost(appInstance, timeStampProvider, metricCount);
+  }
+
+  public BenchmarkStats getStats() {
+    return stats;
   }
 
   public void start() {
@@ -143,6 +199,10 @@ public class LoadRunner {
     }
 
     LOG.info("Finished successfully " + done + " tasks ");
+
+    if (lagProbe != null) {
+      lagProbe.run();
+    }
   }
 
   public void shutdown() {
@@ -18,12 +18,20 @@
 package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
   .loadsimulator;
 
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.ApplicationHistoryServer;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.util.Json;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Sample Usage:
@@ -31,6 +39,13 @@ import java.util.Map;
  * $ java -cp "dependency/*":LoadSimulator-1.0-SNAPSHOT.jar \
  * org.apache.ambari.metrics.MetricsLoadSimulator \
  * -h "bartosz.laptop" -n 2 -m "162.216.148.45" -c 10000 -s 30000</pre>
+ * <p/>
+ * As a benchmark, run for a duration and write the report as json:
+ * <pre>
+ * $ java ... MetricsLoadSimulator -n 100 -q 20 -D 1800 -o report.json</pre>
+ * With -E true the collector is started in this process, with the
+ * ams-site.xml and hbase-site.xml found on the classpath, e.g. pointing to
+ * a local standalone HBase.
  */
 public class MetricsLoadSimulator {
   private final static Logger LOG = LoggerFactory.getLogger(MetricsLoadSimulator
@@ -39,16 +54,52 @@ public class MetricsLoadSimulator {
   public static void main(String[] args) throws IOException, InterruptedException {
     Map<String, String> mapArgs = parseArgs(args);
 
+    ApplicationHistoryServer collector = null;
+    if (Boolean.valueOf(mapArgs.get("embedded"))) {
+      collector = new ApplicationHistoryServer();
+      collector.init(new YarnConfiguration());
+      collector.start();
+      mapArgs.put("metricsHostName", "localhost");
+    }
+
     LoadRunner loadRunner = new LoadRunner(
       mapArgs.get("hostName"),
       Integer.valueOf(mapArgs.get("numberOfHosts")),
       mapArgs.get("metricsHostName"),
       Integer.valueOf(mapArgs.get("collectInterval")),
       Integer.valueOf(mapArgs.get("sendInterval")),
-      Boolean.valueOf(mapArgs.get("master"))
+      Boolean.valueOf(mapArgs.get("master")),
+      Integer.valueOf(mapArgs.get("appsPerHost")),
+      Integer.valueOf(mapArgs.get("metricsPerApp")),
+      Integer.valueOf(mapArgs.get("queriesPerInterval"))
     );
 
     loadRunner.start();
+
+    int duration = Integer.valueOf(mapArgs.get("duration"));
+    if (duration <= 0) {
+      return;
+    }
+    Thread.sleep(TimeUnit.SECONDS.toMillis(duration));
+    loadRunner.shutdown();
+
+    String report = new Json(true).serialize(loadRunner.getStats().toReport());
+    String output = mapArgs.get("output");
+    if (output == null) {
+      System.out.println(report);
+    } else {
+      Writer writer = new OutputStreamWriter(new FileOutputStream(output), "UTF-8");
+      try {
+        writer.write(report);
+      } finally {
+        writer.close();
+      }
+      LOG.info("Wrote the report to {}", output);
+    }
+
+    if (collector != null) {
+      collector.stop();
+    }
   }
 
   private static Map<String, String> parseArgs(String[] args) {
@@ -59,6 +110,10 @@ public class MetricsLoadSimulator {
     mapProps.put("metricsHostName", "localhost");
     mapProps.put("collectInterval", "10000");
     mapProps.put("sendInterval", "60000");
+    mapProps.put("appsPerHost", "0");
+    mapProps.put("metricsPerApp", "0");
+    mapProps.put("queriesPerInterval", "0");
+    mapProps.put("duration", "0");
 
     if (args.length == 0) {
       printUsage();
@@ -80,6 +135,18 @@ public class MetricsLoadSimulator {
           mapProps.put("sendInterval", args[i + 1]);
         } else if (arg.equals("-M")) {
           mapProps.put("master", args[i + 1]);
+        } else if (arg.equals("-a")) {
+          mapProps.put("appsPerHost", args[i + 1]);
+        } else if (arg.equals("-k")) {
+          mapProps.put("metricsPerApp", args[i + 1]);
+        } else if (arg.equals("-q")) {
+          mapProps.put("queriesPerInterval", args[i + 1]);
+        } else if (arg.equals("-D")) {
+          mapProps.put("duration", args[i + 1]);
+        } else if (arg.equals("-o")) {
+          mapProps.put("output", args[i + 1]);
+        } else if (arg.equals("-E")) {
+          mapProps.put("embedded", args[i + 1]);
         } else if (arg.equals("-d")) {
           // a dummy switch - it says that we agree with defaults
         } else {
@@ -91,14 +158,21 @@ public class MetricsLoadSimulator {
 
     LOG.info("Recognized options: baseHostName={} hosts#={} trafficMode={} " +
         "metricsHostName={} collectIntervalMillis={} sendIntervalMillis={} " +
-        "simulateMaster={}",
+        "simulateMaster={} appsPerHost={} metricsPerApp={} " +
+        "queriesPerInterval={} durationSeconds={} output={} embedded={}",
       mapProps.get("hostName"),
       Integer.valueOf(mapProps.get("numberOfHosts")),
       mapProps.get("trafficType"),
       mapProps.get("metricsHostName"),
       Integer.valueOf(mapProps.get("collectInterval")),
       Integer.valueOf(mapProps.get("sendInterval")),
-      Boolean.valueOf(mapProps.get("master"))
+      Boolean.valueOf(mapProps.get("master")),
+      Integer.valueOf(mapProps.get("appsPerHost")),
+      Integer.valueOf(mapProps.get("metricsPerApp")),
+      Integer.valueOf(mapProps.get("queriesPerInterval")),
+      Integer.valueOf(mapProps.get("duration")),
+      mapProps.get("output"),
+      Boolean.valueOf(mapProps.get("embedded"))
     );
 
     return mapProps;
@@ -110,11 +184,18 @@ public class MetricsLoadSimulator {
     System.err.println("[-h hostName] [-n numberOfHosts] "
       + "[-t trafficMode {burst, staggered}] [-m metricsHostName] "
       + "[-c collectIntervalMillis {10 sec}] [-s sendIntervalMillis {60 sec}]"
-      + "[-M simulateMaster {true, false}] ");
+      + "[-M simulateMaster {true, false}] [-a appsPerHost {all}] "
+      + "[-k metricsPerApp {all}] [-q queriesPerInterval {0}] "
+      + "[-D durationSeconds {forever}] [-o reportFile {stdout}] "
+      + "[-E embeddedCollector {true, false}] ");
     System.err.println();
     System.err.println("When you select a master, then one simulated host will play");
     System.err.println("a role of a master, and the rest will be slaves. Otherwise");
     System.err.println("all simulation threads (single thread is for single host)");
     System.err.println("will be slave hosts");
+    System.err.println();
+    System.err.println("With a duration, the run stops after it and reports ingest");
+    System.err.println("points/s, post and query latency percentiles and the lag of");
+    System.err.println("the aggregators as json.");
   }
 }
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator;
+
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.data.ApplicationInstance;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.data.HostMetricsGenerator;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.net.RestMetricsReader;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.util.BenchmarkStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Reads the last hour of a random metric of a random simulated host, the
+ * kind of query a host page of Ambari Web polls.
+ */
+public class MetricsQueryWorker implements Callable<String> {
+  private final static Logger LOG = LoggerFactory.getLogger(MetricsQueryWorker.class);
+
+  private static final long QUERY_RANGE_MILLIS = 3600000l;
+
+  private final RestMetricsReader reader;
+  private final List<HostMetricsGenerator> generators;
+  private final BenchmarkStats stats;
+  private final Random rnd = new Random();
+
+  public MetricsQueryWorker(RestMetricsReader reader,
+                            List<HostMetricsGenerator> generators,
+                            BenchmarkStats stats) {
+    this.reader = reader;
+    this.generators = generators;
+    this.stats = stats;
+  }
+
+  @Override
+  public String call() throws Exception {
+    HostMetricsGenerator generator = generators.get(rnd.nextInt(generators.size()));
+    List<String> metricNames = new ArrayList<String>(generator.getMetricNames());
+    if (metricNames.isEmpty()) {
+      return "";
+    }
+    ApplicationInstance app = generator.getApplicationInstance();
+    long endTime = System.currentTimeMillis();
+    String query = "metricNames=" + metricNames.get(rnd.nextInt(metricNames.size())) +
+      "&appId=" + app.getAppId().getId() +
+      "&hostname=" + app.getHostName() +
+      "&startTime=" + (endTime - QUERY_RANGE_MILLIS) +
+      "&endTime=" + endTime;
+
+    long start = System.currentTimeMillis();
+    try {
+      String response = reader.getMetrics(query);
+      stats.recordQuery(System.currentTimeMillis() - start, true);
+      return response;
+    } catch (IOException e) {
+      stats.recordQuery(System.currentTimeMillis() - start, false);
+      LOG.error("Error while reading metrics: ", e);
+      throw e;
+    }
+  }
+}
@@ -26,6 +26,8 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
   .loadsimulator.net.MetricsSender;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
   .loadsimulator.net.RestMetricsSender;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.util.BenchmarkStats;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
   .loadsimulator.util.Json;
 import org.slf4j.Logger;
@@ -41,10 +43,18 @@ public class MetricsSenderWorker implements Callable<String> {
 
   MetricsSender sender;
   HostMetricsGenerator hmg;
+  BenchmarkStats stats;
 
   public MetricsSenderWorker(MetricsSender sender, HostMetricsGenerator metricsGenerator) {
+    this(sender, metricsGenerator, null);
+  }
+
+  public MetricsSenderWorker(MetricsSender sender,
+                             HostMetricsGenerator metricsGenerator,
+                             BenchmarkStats stats) {
     this.sender = sender;
     hmg = metricsGenerator;
+    this.stats = stats;
   }
 
   @Override
@@ -53,8 +63,14 @@ public class MetricsSenderWorker implements Callable<String> {
 
     try {
       String request = new Json().serialize(hostMetrics);
+      long start = System.currentTimeMillis();
       String response = sender.pushMetrics(request);
 
+      if (stats != null) {
+        // the sender answers nothing if the post failed
+        stats.recordPost(System.currentTimeMillis() - start,
+          hostMetrics.countPoints(), response != null && response.length() > 0);
+      }
       return response;
     } catch (IOException e) {
       LOG.error("Error while pushing metrics: ", e);
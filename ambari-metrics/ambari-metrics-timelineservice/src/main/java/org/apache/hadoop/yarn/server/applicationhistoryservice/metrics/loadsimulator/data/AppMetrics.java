@@ -45,4 +45,16 @@ public class AppMetrics {
     metrics.add(metric);
   }
 
+  /**
+   * The number of values of all metrics, not named as a getter so that it
+   * is not serialized.
+   */
+  public int countPoints() {
+    int points = 0;
+    for (Metric metric : metrics) {
+      points += metric.getMetrics().size();
+    }
+    return points;
+  }
+
 }
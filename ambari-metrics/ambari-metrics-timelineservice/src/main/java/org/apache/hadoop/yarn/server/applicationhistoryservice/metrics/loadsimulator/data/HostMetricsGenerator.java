@@ -25,6 +25,7 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  */
@@ -42,6 +43,14 @@ public class HostMetricsGenerator {
     this.metricDataProviders = metricDataProviders;
   }
 
+  public ApplicationInstance getApplicationInstance() {
+    return id;
+  }
+
+  public Set<String> getMetricNames() {
+    return metricDataProviders.keySet();
+  }
+
   public AppMetrics createMetrics() {
     long[] timestamps = tsp.timestampsForNextInterval();
     AppMetrics appMetrics = new AppMetrics(id, timestamps[0]);
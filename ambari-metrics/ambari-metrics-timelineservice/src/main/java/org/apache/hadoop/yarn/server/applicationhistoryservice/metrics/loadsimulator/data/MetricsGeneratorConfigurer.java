@@ -31,6 +31,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * MetricsGeneratorConfigurer is a factory that reads metrics definition from a file,
@@ -59,6 +60,32 @@ public class MetricsGeneratorConfigurer {
     return new HostMetricsGenerator(id, timeStamps, readMetrics(id.getAppId()));
   }
 
+  /**
+   * Creates HostMetricsGenerator with at most the given number of the metrics
+   * loaded from file, the first ones by name.
+   *
+   * @param maxMetrics the number of metrics, all if not positive
+   */
+  public static HostMetricsGenerator createMetricsForHost(
+    ApplicationInstance id,
+    TimeStampProvider timeStamps,
+    int maxMetrics) {
+    Map<String, RandomMetricsProvider> metrics = readMetrics(id.getAppId());
+    if (maxMetrics > 0 && metrics.size() > maxMetrics) {
+      Map<String, RandomMetricsProvider> selected =
+        new HashMap<String, RandomMetricsProvider>();
+      for (Map.Entry<String, RandomMetricsProvider> entry :
+        new TreeMap<String, RandomMetricsProvider>(metrics).entrySet()) {
+        if (selected.size() == maxMetrics) {
+          break;
+        }
+        selected.put(entry.getKey(), entry.getValue());
+      }
+      metrics = selected;
+    }
+    return new HostMetricsGenerator(id, timeStamps, metrics);
+  }
+
   private static Map<String, RandomMetricsProvider> readMetrics(AppID type) {
     InputStream input = null;
     Map<String, RandomMetricsProvider> metrics =
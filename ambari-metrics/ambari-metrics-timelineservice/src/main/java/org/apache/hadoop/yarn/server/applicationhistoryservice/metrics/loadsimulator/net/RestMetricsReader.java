@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.net;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Reads metrics back from the REST endpoint of the application metrics
+ * history service.
+ */
+public class RestMetricsReader {
+  private final static Logger LOG = LoggerFactory.getLogger(RestMetricsReader.class);
+
+  private final static String COLLECTOR_URL = "http://%s:6188/ws/v1/timeline/metrics";
+  private final String collectorServiceAddress;
+
+  /**
+   * @param metricsHost the hostname that will be used to access application
+   *                    metrics history service.
+   */
+  public RestMetricsReader(String metricsHost) {
+    collectorServiceAddress = String.format(COLLECTOR_URL, metricsHost);
+  }
+
+  /**
+   * Query the metrics endpoint. Connection is always open and closed on every
+   * call.
+   *
+   * @param query the query string, e.g. metricNames=cpu_user&appId=HOST
+   * @return the response message
+   * @throws IOException if the query failed
+   */
+  public String getMetrics(String query) throws IOException {
+    UrlService svc = null;
+    try {
+      LOG.debug("query: {}", query);
+      svc = getConnectedUrlService(collectorServiceAddress + "?" + query);
+      return svc.receive();
+    } finally {
+      if (svc != null) {
+        svc.disconnect();
+      }
+    }
+  }
+
+  /**
+   * Relaxed to protected for testing.
+   */
+  protected UrlService getConnectedUrlService(String address) throws IOException {
+    return UrlService.newConnection(address, "GET");
+  }
+}
@@ -30,10 +30,12 @@ public class UrlService {
   public static final int CONNECT_TIMEOUT = 20000;
   public static final int READ_TIMEOUT = 20000;
   private final String address;
+  private final String method;
   private HttpURLConnection conn;
 
-  private UrlService(String address) {
+  private UrlService(String address, String method) {
     this.address = address;
+    this.method = method;
   }
 
   /**
@@ -44,7 +46,16 @@ public class UrlService {
    * @throws IOException
    */
   public static UrlService newConnection(String address) throws IOException {
-    UrlService svc = new UrlService(address);
+    return newConnection(address, "POST");
+  }
+
+  /**
+   * Returns a new UrlService connected to specified address, that sends
+   * requests of the given method.
+   */
+  public static UrlService newConnection(String address, String method)
+    throws IOException {
+    UrlService svc = new UrlService(address, method);
     svc.connect();
 
     return svc;
@@ -58,8 +69,8 @@ public class UrlService {
     conn.setConnectTimeout(CONNECT_TIMEOUT);
     conn.setReadTimeout(READ_TIMEOUT);
     conn.setDoInput(true);
-    conn.setDoOutput(true);
-    conn.setRequestMethod("POST");
+    conn.setDoOutput("POST".equals(method));
+    conn.setRequestMethod(method);
     conn.setRequestProperty("Content-Type", "application/json");
     conn.setRequestProperty("Accept", "*/*");
 
@@ -74,6 +85,16 @@ public class UrlService {
     return read();
   }
 
+  /**
+   * Read the response of a request without a payload.
+   */
+  public String receive() throws IOException {
+    if (conn == null)
+      throw new IllegalStateException("Cannot use unconnected UrlService");
+
+    return read();
+  }
+
   private String read() throws IOException {
     StringBuilder response = new StringBuilder();
 
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts what a load run posted to and read from the collector, and builds
+ * the report of the run.
+ */
+public class BenchmarkStats {
+
+  private final long startTime = System.currentTimeMillis();
+  private final LatencyStats postLatency = new LatencyStats();
+  private final LatencyStats queryLatency = new LatencyStats();
+  private final AtomicLong pointsPosted = new AtomicLong();
+  private final AtomicLong failedPosts = new AtomicLong();
+  private final AtomicLong failedQueries = new AtomicLong();
+  private final AtomicLong hostAggregatorLagMillis = new AtomicLong(-1);
+  private final AtomicLong clusterAggregatorLagMillis = new AtomicLong(-1);
+
+  public void recordPost(long millis, int points, boolean success) {
+    postLatency.record(millis);
+    if (success) {
+      pointsPosted.addAndGet(points);
+    } else {
+      failedPosts.incrementAndGet();
+    }
+  }
+
+  public void recordQuery(long millis, boolean success) {
+    queryLatency.record(millis);
+    if (!success) {
+      failedQueries.incrementAndGet();
+    }
+  }
+
+  /**
+   * @param lagMillis time since the latest minute aggregate of a host, -1 if
+   *                  there is none yet
+   */
+  public void setHostAggregatorLagMillis(long lagMillis) {
+    hostAggregatorLagMillis.set(lagMillis);
+  }
+
+  public void setClusterAggregatorLagMillis(long lagMillis) {
+    clusterAggregatorLagMillis.set(lagMillis);
+  }
+
+  public long getPointsPosted() {
+    return pointsPosted.get();
+  }
+
+  public LatencyStats getPostLatency() {
+    return postLatency;
+  }
+
+  public LatencyStats getQueryLatency() {
+    return queryLatency;
+  }
+
+  /**
+   * The results of the run so far, latencies in milliseconds and lags in
+   * seconds.
+   */
+  public Map<String, Object> toReport() {
+    long elapsedMillis = Math.max(1, System.currentTimeMillis() - startTime);
+    Map<String, Object> report = new LinkedHashMap<String, Object>();
+    report.put("elapsedSeconds", elapsedMillis / 1000);
+    report.put("pointsPosted", pointsPosted.get());
+    report.put("ingestPointsPerSecond", pointsPosted.get() * 1000.0 / elapsedMillis);
+    report.put("failedPosts", failedPosts.get());
+    report.put("postLatencyMillis", postLatency.toMap());
+    report.put("failedQueries", failedQueries.get());
+    report.put("queryLatencyMillis", queryLatency.toMap());
+    report.put("hostAggregatorLagSeconds", toSeconds(hostAggregatorLagMillis.get()));
+    report.put("clusterAggregatorLagSeconds", toSeconds(clusterAggregatorLagMillis.get()));
+    return report;
+  }
+
+  private static long toSeconds(long millis) {
+    return millis < 0 ? -1 : millis / 1000;
+  }
+}
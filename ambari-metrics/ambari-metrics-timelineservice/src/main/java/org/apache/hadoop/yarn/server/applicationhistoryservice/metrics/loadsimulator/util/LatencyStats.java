@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Keeps a uniform sample of latencies, so that percentiles of long runs are
+ * estimated in bounded memory.
+ */
+public class LatencyStats {
+
+  private static final int DEFAULT_SAMPLE_SIZE = 100000;
+
+  private final long[] samples;
+  private final Random rnd = new Random();
+  private long count;
+  private long max;
+
+  public LatencyStats() {
+    this(DEFAULT_SAMPLE_SIZE);
+  }
+
+  public LatencyStats(int sampleSize) {
+    this.samples = new long[sampleSize];
+  }
+
+  public synchronized void record(long millis) {
+    if (count < samples.length) {
+      samples[(int) count] = millis;
+    } else {
+      // reservoir sampling, every latency is kept with the same chance
+      long index = (long) (rnd.nextDouble() * (count + 1));
+      if (index < samples.length) {
+        samples[(int) index] = millis;
+      }
+    }
+    count++;
+    max = Math.max(max, millis);
+  }
+
+  public synchronized long getCount() {
+    return count;
+  }
+
+  public synchronized long getMax() {
+    return max;
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return the latency below which the given share of the samples fall,
+   * 0 if nothing was recorded
+   */
+  public synchronized long getPercentile(double percentile) {
+    int size = (int) Math.min(count, samples.length);
+    if (size == 0) {
+      return 0;
+    }
+    long[] sorted = Arrays.copyOf(samples, size);
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(percentile / 100 * size) - 1;
+    return sorted[Math.max(0, Math.min(size - 1, index))];
+  }
+
+  /**
+   * The count and percentiles in milliseconds, for the report.
+   */
+  public Map<String, Object> toMap() {
+    Map<String, Object> map = new LinkedHashMap<String, Object>();
+    map.put("count", getCount());
+    map.put("p50", getPercentile(50));
+    map.put("p95", getPercentile(95));
+    map.put("p99", getPercentile(99));
+    map.put("max", getMax());
+    return map;
+  }
+}
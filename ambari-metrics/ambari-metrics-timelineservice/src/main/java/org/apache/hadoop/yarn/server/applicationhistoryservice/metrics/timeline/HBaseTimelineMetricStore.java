@@ -21,15 +21,21 @@ package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.MetricsException;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.service.AbstractService;
 import org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregator;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregatorFactory;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregatorPool;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricIngestAggregator;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL;
 
 import java.io.IOException;
 import java.sql.SQLException;
@@ -38,7 +44,10 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.INGESTION_BUFFER_ENABLED;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.INGEST_AGGREGATOR_ENABLED;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.QUERY_CACHE_ENABLED;
 
 public class HBaseTimelineMetricStore extends AbstractService
     implements TimelineMetricStore {
@@ -46,6 +55,11 @@ public class HBaseTimelineMetricStore extends AbstractService
   static final Log LOG = LogFactory.getLog(HBaseTimelineMetricStore.class);
   private final TimelineMetricConfiguration configuration;
   private PhoenixHBaseAccessor hBaseAccessor;
+  private TimelineMetricsIngestionBuffer ingestionBuffer;
+  private TimelineMetricIngestAggregator ingestAggregator;
+  private TimelineMetricAggregatorPool aggregatorPool;
+  private TimelineMetricQueryCache queryCache;
+  private TimelineMetricPrecisionPlanner precisionPlanner;
 
   /**
    * Construct the service.
@@ -67,57 +81,107 @@ public class HBaseTimelineMetricStore extends AbstractService
     hBaseAccessor = new PhoenixHBaseAccessor(hbaseConf, metricsConf);
     hBaseAccessor.initMetricSchema();
 
-    // Start the cluster aggregator minute
-    TimelineMetricAggregator minuteClusterAggregator =
-      TimelineMetricAggregatorFactory.createTimelineClusterAggregatorMinute(hBaseAccessor, metricsConf);
-    if (!minuteClusterAggregator.isDisabled()) {
-      Thread aggregatorThread = new Thread(minuteClusterAggregator);
-      aggregatorThread.start();
+    if (metricsConf.getBoolean(INGESTION_BUFFER_ENABLED, true)) {
+      ingestionBuffer = new TimelineMetricsIngestionBuffer(hBaseAccessor, metricsConf);
+      ingestionBuffer.start();
+      try {
+        DefaultMetricsSystem.instance().register(TimelineMetricsIngestionBuffer.METRICS_SOURCE_NAME,
+          "Buffered writes of the posted timeline metrics", ingestionBuffer);
+      } catch (MetricsException e) {
+        LOG.warn("Unable to register the ingestion buffer metrics.", e);
+      }
+    }
+
+    // Minute aggregates are built from the posted metrics, the minute
+    // aggregators only catch up with what was posted before
+    if (metricsConf.getBoolean(INGEST_AGGREGATOR_ENABLED, false)) {
+      ingestAggregator = new TimelineMetricIngestAggregator(hBaseAccessor, metricsConf);
+      ingestAggregator.start();
+    }
+
+    precisionPlanner = new TimelineMetricPrecisionPlanner(metricsConf);
+
+    if (metricsConf.getBoolean(QUERY_CACHE_ENABLED, false)) {
+      queryCache = new TimelineMetricQueryCache(metricsConf);
+      try {
+        DefaultMetricsSystem.instance().register(TimelineMetricQueryCache.METRICS_SOURCE_NAME,
+          "Hits of the timeline metric query cache", queryCache);
+      } catch (MetricsException e) {
+        LOG.warn("Unable to register the query cache metrics.", e);
+      }
+    }
+
+    aggregatorPool = new TimelineMetricAggregatorPool(metricsConf);
+
+    // Start the cluster aggregator minute, split by metric name
+    for (TimelineMetricAggregator minuteClusterAggregator :
+        TimelineMetricAggregatorFactory.createTimelineClusterAggregatorMinuteShards(hBaseAccessor, metricsConf)) {
+      if (ingestAggregator != null) {
+        minuteClusterAggregator.setCatchUpEndTime(ingestAggregator.getClusterCoveredFrom());
+      }
+      if (!minuteClusterAggregator.isDisabled()) {
+        aggregatorPool.schedule(minuteClusterAggregator);
+      }
     }
 
     // Start the hourly cluster aggregator
     TimelineMetricAggregator hourlyClusterAggregator =
       TimelineMetricAggregatorFactory.createTimelineClusterAggregatorHourly(hBaseAccessor, metricsConf);
     if (!hourlyClusterAggregator.isDisabled()) {
-      Thread aggregatorThread = new Thread(hourlyClusterAggregator);
-      aggregatorThread.start();
+      aggregatorPool.schedule(hourlyClusterAggregator);
     }
 
     // Start the daily cluster aggregator
     TimelineMetricAggregator dailyClusterAggregator =
       TimelineMetricAggregatorFactory.createTimelineClusterAggregatorDaily(hBaseAccessor, metricsConf);
     if (!dailyClusterAggregator.isDisabled()) {
-      Thread aggregatorThread = new Thread(dailyClusterAggregator);
-      aggregatorThread.start();
+      aggregatorPool.schedule(dailyClusterAggregator);
     }
 
-    // Start the minute host aggregator
-    TimelineMetricAggregator minuteHostAggregator =
-      TimelineMetricAggregatorFactory.createTimelineMetricAggregatorMinute(hBaseAccessor, metricsConf);
-    if (!minuteHostAggregator.isDisabled()) {
-      Thread minuteAggregatorThread = new Thread(minuteHostAggregator);
-      minuteAggregatorThread.start();
+    // Start the minute host aggregator, split by metric name
+    for (TimelineMetricAggregator minuteHostAggregator :
+        TimelineMetricAggregatorFactory.createTimelineMetricAggregatorMinuteShards(hBaseAccessor, metricsConf)) {
+      if (ingestAggregator != null) {
+        minuteHostAggregator.setCatchUpEndTime(ingestAggregator.getHostCoveredFrom());
+      }
+      if (!minuteHostAggregator.isDisabled()) {
+        aggregatorPool.schedule(minuteHostAggregator);
+      }
     }
 
     // Start the hourly host aggregator
     TimelineMetricAggregator hourlyHostAggregator =
       TimelineMetricAggregatorFactory.createTimelineMetricAggregatorHourly(hBaseAccessor, metricsConf);
     if (!hourlyHostAggregator.isDisabled()) {
-      Thread aggregatorHourlyThread = new Thread(hourlyHostAggregator);
-      aggregatorHourlyThread.start();
+      aggregatorPool.schedule(hourlyHostAggregator);
     }
 
     // Start the daily host aggregator
     TimelineMetricAggregator dailyHostAggregator =
       TimelineMetricAggregatorFactory.createTimelineMetricAggregatorDaily(hBaseAccessor, metricsConf);
     if (!dailyHostAggregator.isDisabled()) {
-      Thread aggregatorDailyThread = new Thread(dailyHostAggregator);
-      aggregatorDailyThread.start();
+      aggregatorPool.schedule(dailyHostAggregator);
+    }
+
+    try {
+      DefaultMetricsSystem.instance().register(TimelineMetricAggregatorPool.METRICS_SOURCE_NAME,
+        "Lag of the timeline metric aggregators", aggregatorPool);
+    } catch (MetricsException e) {
+      LOG.warn("Unable to register the aggregator metrics.", e);
     }
   }
 
   @Override
   protected void serviceStop() throws Exception {
+    if (aggregatorPool != null) {
+      aggregatorPool.stop();
+    }
+    if (ingestAggregator != null) {
+      ingestAggregator.stop();
+    }
+    if (ingestionBuffer != null) {
+      ingestionBuffer.stop();
+    }
     super.serviceStop();
   }
 
@@ -127,6 +191,17 @@ public class HBaseTimelineMetricStore extends AbstractService
       Long startTime, Long endTime, Precision precision, Integer limit,
       boolean groupedByHosts) throws SQLException, IOException {
 
+    return getTimelineMetrics(metricNames, hostname, applicationId, instanceId,
+      startTime, endTime, precision, limit, groupedByHosts, null, null);
+  }
+
+  @Override
+  public TimelineMetrics getTimelineMetrics(List<String> metricNames,
+      String hostname, String applicationId, String instanceId,
+      Long startTime, Long endTime, Precision precision, Integer limit,
+      boolean groupedByHosts, TimelineMetricSeriesDownsampler downsampler,
+      TopNConfig topNConfig) throws SQLException, IOException {
+
     if (metricNames == null || metricNames.isEmpty()) {
       throw new IllegalArgumentException("No metric name filter specified.");
     }
@@ -137,23 +212,117 @@ public class HBaseTimelineMetricStore extends AbstractService
     if (limit != null && limit > PhoenixHBaseAccessor.RESULTSET_LIMIT){
       throw new IllegalArgumentException("Limit too big");
     }
+    if (topNConfig != null && (hostname != null || startTime == null)) {
+      throw new IllegalArgumentException("Top N hosts need a time range and no hostname.");
+    }
     Map<String, List<Function>> metricFunctions =
       parseMetricNamesToAggregationFunctions(metricNames);
 
+    // Automatic precision, the tables are picked for the points to render
+    boolean autoPrecision = precision == null && downsampler != null && startTime != null;
+
+    TimelineMetrics metrics;
+    if (topNConfig != null) {
+      if (autoPrecision) {
+        precision = precisionPlanner.selectPrecision(false, startTime, endTime,
+          downsampler.getPoints(startTime, endTime));
+      }
+      metrics = getTopNHostMetrics(metricFunctions, applicationId, instanceId,
+        startTime, endTime, precision, limit, topNConfig);
+    } else if (autoPrecision) {
+      metrics = new TimelineMetrics();
+      for (TimelineMetricPrecisionPlanner.Segment segment : precisionPlanner.plan(
+          hostname == null, startTime, endTime,
+          downsampler.getPoints(startTime, endTime), System.currentTimeMillis())) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Reading " + segment + " of " + metricNames);
+        }
+        TimelineMetrics segmentMetrics = queryMetrics(metricNames, metricFunctions,
+          hostname, applicationId, instanceId, segment.getStartTime(),
+          segment.getEndTime(), segment.getPrecision(), limit, groupedByHosts);
+        for (TimelineMetric metric : segmentMetrics.getMetrics()) {
+          if (groupedByHosts) {
+            metrics.addOrMergeTimelineMetric(metric);
+          } else {
+            metrics.getMetrics().add(metric);
+          }
+        }
+      }
+    } else {
+      metrics = queryMetrics(metricNames, metricFunctions, hostname,
+        applicationId, instanceId, startTime, endTime, precision, limit,
+        groupedByHosts);
+    }
+
+    metrics = postProcessMetrics(metrics);
+    if (downsampler != null && startTime != null) {
+      downsampler.downsample(metrics, startTime, endTime);
+    }
+    return metrics;
+  }
+
+  private TimelineMetrics queryMetrics(List<String> metricNames,
+      final Map<String, List<Function>> metricFunctions, String hostname,
+      String applicationId, String instanceId, Long startTime, Long endTime,
+      Precision precision, Integer limit, boolean groupedByHosts)
+      throws SQLException, IOException {
+
     Condition condition = new DefaultCondition(
       new ArrayList<String>(metricFunctions.keySet()),
       hostname, applicationId, instanceId, startTime, endTime,
       precision, limit, groupedByHosts);
 
-    if (hostname == null) {
-      TimelineMetrics metrics = hBaseAccessor.getAggregateMetricRecords
-        (condition,  metricFunctions);
+    if (queryCache != null && groupedByHosts && limit == null && startTime != null) {
+      // The precision is part of the cache key, the scan picks the same table
+      PhoenixTransactSQL.resolvePrecision(condition);
+      return queryCache.getTimelineMetrics(metricNames, condition,
+        new TimelineMetricQueryCache.Scanner() {
+          @Override
+          public TimelineMetrics scan(Condition scanCondition) throws SQLException, IOException {
+            return scanMetrics(scanCondition, metricFunctions);
+          }
+        });
+    }
+    return scanMetrics(condition, metricFunctions);
+  }
 
-      return postProcessMetrics(metrics);
+  private TimelineMetrics scanMetrics(Condition condition,
+      Map<String, List<Function>> metricFunctions) throws SQLException, IOException {
+    if (condition.getHostname() == null) {
+      return hBaseAccessor.getAggregateMetricRecords(condition, metricFunctions);
     }
+    return hBaseAccessor.getMetricRecords(condition, metricFunctions);
+  }
+
+  /**
+   * The series of every metric for the hosts ranked highest by it. Hosts are
+   * ranked by Phoenix, and only the records of the top hosts are read.
+   */
+  private TimelineMetrics getTopNHostMetrics(
+      Map<String, List<Function>> metricFunctions, String applicationId,
+      String instanceId, Long startTime, Long endTime, Precision precision,
+      Integer limit, TopNConfig topNConfig) throws SQLException, IOException {
+
+    TimelineMetrics metrics = new TimelineMetrics();
+    for (String metricName : metricFunctions.keySet()) {
+      Condition topNCondition = new DefaultCondition(
+        Collections.singletonList(metricName), null, applicationId,
+        instanceId, startTime, endTime, precision, null, true);
+      List<String> hostnameKeys = hBaseAccessor.getTopNHostnameKeys(
+        topNCondition, topNConfig);
+      if (hostnameKeys.isEmpty()) {
+        continue;
+      }
 
-    return postProcessMetrics(
-      hBaseAccessor.getMetricRecords(condition, metricFunctions));
+      // Same precision the hosts were ranked at
+      Condition condition = new DefaultCondition(
+        Collections.singletonList(metricName), null, applicationId,
+        instanceId, startTime, endTime, topNCondition.getPrecision(), limit, true);
+      condition.setHostnameKeys(hostnameKeys);
+      metrics.getMetrics().addAll(hBaseAccessor.getMetricRecords(condition,
+        Collections.singletonMap(metricName, metricFunctions.get(metricName))).getMetrics());
+    }
+    return metrics;
   }
 
   private TimelineMetrics postProcessMetrics(TimelineMetrics metrics) {
@@ -162,30 +331,27 @@ public class HBaseTimelineMetricStore extends AbstractService
     for (TimelineMetric metric: metricsList){
       String name = metric.getMetricName();
       if (name.contains("._rate")){
-        updateValueAsRate(metric.getMetricValues());
+        updateValueAsRate(metric.getMetricSeries());
       }
     }
 
     return metrics;
   }
 
-  private Map<Long, Double> updateValueAsRate(Map<Long, Double> metricValues) {
-    Long prevTime = null;
-    long step;
-
-    for (Map.Entry<Long, Double> timeValueEntry : metricValues.entrySet()) {
-      Long currTime = timeValueEntry.getKey();
-      Double currVal = timeValueEntry.getValue();
+  private TimelineMetricSeries updateValueAsRate(TimelineMetricSeries metricValues) {
+    if (metricValues == null) {
+      return null;
+    }
 
-      if (prevTime != null) {
-        step = currTime - prevTime;
-        Double rate = currVal / step;
-        timeValueEntry.setValue(rate);
+    for (int i = 0; i < metricValues.size(); i++) {
+      if (i > 0) {
+        if (!metricValues.isNull(i)) {
+          long step = metricValues.getTimestamp(i) - metricValues.getTimestamp(i - 1);
+          metricValues.setValue(i, metricValues.getValue(i) / step);
+        }
       } else {
-        timeValueEntry.setValue(0.0);
+        metricValues.setValue(i, 0.0);
       }
-
-      prevTime = currTime;
     }
 
     return metricValues;
@@ -264,9 +430,9 @@ public class HBaseTimelineMetricStore extends AbstractService
       metric.setHostName(metricList.get(0).getHostName());
       // Assumption that metrics are ordered by start time
       metric.setStartTime(metricList.get(0).getStartTime());
-      Map<Long, Double> metricRecords = new TreeMap<Long, Double>();
+      TimelineMetricSeries metricRecords = new TimelineMetricSeries();
       for (TimelineMetric timelineMetric : metricList) {
-        metricRecords.putAll(timelineMetric.getMetricValues());
+        metricRecords.merge(timelineMetric.getMetricSeries());
       }
       metric.setMetricValues(metricRecords);
     }
@@ -282,7 +448,15 @@ public class HBaseTimelineMetricStore extends AbstractService
     // Error indicated by the Sql exception
     TimelinePutResponse response = new TimelinePutResponse();
 
-    hBaseAccessor.insertMetricRecords(metrics);
+    if (ingestAggregator != null) {
+      ingestAggregator.add(metrics);
+    }
+
+    if (ingestionBuffer != null) {
+      ingestionBuffer.add(metrics);
+    } else {
+      hBaseAccessor.insertMetricRecords(metrics);
+    }
 
     return response;
   }
@@ -24,6 +24,7 @@ import org.apache.hadoop.hbase.util.RetryCounter;
 import org.apache.hadoop.hbase.util.RetryCounterFactory;
 import org.apache.hadoop.metrics2.sink.timeline.SingleValuedTimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.AggregatorUtils;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
@@ -46,8 +47,10 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -63,11 +66,16 @@ import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.ti
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_DAILY_TABLE_TTL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_HOUR_TABLE_TTL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_MINUTE_TABLE_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.INGESTION_BATCH_BYTES;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.INGESTION_BATCH_ROWS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.PRECISION_TABLE_SERIES_ENCODING;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.PRECISION_TABLE_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.ALTER_METRICS_TABLE_ADD_BINARY_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.ALTER_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.CREATE_METRICS_AGGREGATE_TABLE_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.CREATE_METRICS_CLUSTER_AGGREGATE_HOURLY_TABLE_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.CREATE_METRICS_CLUSTER_AGGREGATE_TABLE_SQL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.CREATE_METRICS_DICTIONARY_TABLE_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.CREATE_METRICS_TABLE_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.DEFAULT_ENCODING;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.DEFAULT_TABLE_COMPRESSION;
@@ -90,7 +98,6 @@ public class PhoenixHBaseAccessor {
 
   static final int PHOENIX_MAX_MUTATION_STATE_SIZE = 50000;
   private static final Log LOG = LogFactory.getLog(PhoenixHBaseAccessor.class);
-  private static final TimelineMetricReadHelper TIMELINE_METRIC_READ_HELPER = new TimelineMetricReadHelper();
   /**
    * 4 metrics/min * 60 * 24: Retrieve data for 1 day.
    */
@@ -104,6 +111,11 @@ public class PhoenixHBaseAccessor {
   private final Configuration metricsConf;
   private final RetryCounterFactory retryCounterFactory;
   private final ConnectionProvider dataSource;
+  private final int insertBatchRows;
+  private final long insertBatchBytes;
+  private final TimelineMetricSeriesCodec.Encoding precisionSeriesEncoding;
+  private final TimelineMetricDictionary dictionary;
+  private final TimelineMetricReadHelper timelineMetricReadHelper;
 
   public PhoenixHBaseAccessor(Configuration hbaseConf,
                               Configuration metricsConf){
@@ -126,23 +138,35 @@ public class PhoenixHBaseAccessor {
     this.retryCounterFactory = new RetryCounterFactory(
       metricsConf.getInt(GLOBAL_MAX_RETRIES, 10),
       (int) SECONDS.toMillis(metricsConf.getInt(GLOBAL_RETRY_INTERVAL, 5)));
+    this.insertBatchRows = Math.min(PHOENIX_MAX_MUTATION_STATE_SIZE - 1,
+      metricsConf.getInt(INGESTION_BATCH_ROWS, 10000));
+    this.insertBatchBytes = metricsConf.getLong(INGESTION_BATCH_BYTES, 4 * 1024 * 1024);
+    this.precisionSeriesEncoding = TimelineMetricSeriesCodec.Encoding.valueOf(
+      metricsConf.get(PRECISION_TABLE_SERIES_ENCODING,
+        TimelineMetricSeriesCodec.Encoding.BINARY.name()).trim().toUpperCase());
+    this.dictionary = new TimelineMetricDictionary(dataSource, metricsConf);
+    this.timelineMetricReadHelper = new TimelineMetricReadHelper(false, dictionary);
   }
 
-  private static TimelineMetric getLastTimelineMetricFromResultSet(ResultSet rs)
+  public TimelineMetricDictionary getDictionary() {
+    return dictionary;
+  }
+
+  private TimelineMetric getLastTimelineMetricFromResultSet(ResultSet rs)
     throws SQLException, IOException {
-    TimelineMetric metric = TIMELINE_METRIC_READ_HELPER.getTimelineMetricCommonsFromResultSet(rs);
-    metric.setMetricValues(readLastMetricValueFromJSON(rs.getString("METRICS")));
+    TimelineMetric metric = timelineMetricReadHelper.getTimelineMetricCommonsFromResultSet(rs);
+    metric.setMetricValues(readLastMetricValue(rs));
     return metric;
   }
 
-  public static SingleValuedTimelineMetric getAggregatedTimelineMetricFromResultSet(
+  public SingleValuedTimelineMetric getAggregatedTimelineMetricFromResultSet(
       ResultSet rs, Function f) throws SQLException, IOException {
 
     SingleValuedTimelineMetric metric = new SingleValuedTimelineMetric(
-      rs.getString("METRIC_NAME") + f.getSuffix(),
+      timelineMetricReadHelper.getMetricName(rs) + f.getSuffix(),
       rs.getString("APP_ID"),
       rs.getString("INSTANCE_ID"),
-      rs.getString("HOSTNAME"),
+      timelineMetricReadHelper.getHostname(rs),
       rs.getLong("SERVER_TIME"),
       rs.getLong("SERVER_TIME"),
       rs.getString("UNITS")
@@ -174,16 +198,31 @@ public class PhoenixHBaseAccessor {
     return metric;
   }
 
-  private static Map<Long, Double> readLastMetricValueFromJSON(String json)
-    throws IOException {
-    Map<Long, Double> values = readMetricFromJSON(json);
-    Long lastTimeStamp = Collections.max(values.keySet());
-
-    HashMap<Long, Double> valueMap = new HashMap<Long, Double>(1);
-    valueMap.put(lastTimeStamp, values.get(lastTimeStamp));
+  private static Map<Long, Double> readLastMetricValue(ResultSet rs)
+    throws SQLException, IOException {
+    TimelineMetricSeries values = readMetricValues(rs);
+    TimelineMetricSeries valueMap = new TimelineMetricSeries(1);
+    if (values.size() > 0) {
+      int last = values.size() - 1;
+      valueMap.put(values.getTimestamp(last), values.get(values.getTimestamp(last)));
+    }
     return valueMap;
   }
 
+  /**
+   * Read the series of a METRIC_RECORD row, which is either binary encoded
+   * or, for rows written before the binary encoding or with the JSON
+   * encoding configured, JSON text.
+   */
+  public static TimelineMetricSeries readMetricValues(ResultSet rs)
+    throws SQLException, IOException {
+    byte[] bytes = rs.getBytes("METRICS_BINARY");
+    if (bytes != null) {
+      return TimelineMetricSeriesCodec.decode(bytes);
+    }
+    return new TimelineMetricSeries(readMetricFromJSON(rs.getString("METRICS")));
+  }
+
   @SuppressWarnings("unchecked")
   public static Map<Long, Double>  readMetricFromJSON(String json) throws IOException {
     return (Map<Long, Double>) mapper.readValue(json, metricValuesTypeRef);
@@ -256,6 +295,13 @@ public class PhoenixHBaseAccessor {
       stmt.executeUpdate(String.format(CREATE_METRICS_CLUSTER_AGGREGATE_HOURLY_TABLE_SQL,
         METRICS_CLUSTER_AGGREGATE_DAILY_TABLE_NAME, encoding, clusterDailyTtl, compression));
 
+      stmt.executeUpdate(String.format(CREATE_METRICS_DICTIONARY_TABLE_SQL,
+        encoding, compression));
+
+      // binary series column of tables created by older versions
+      stmt.executeUpdate(String.format(ALTER_METRICS_TABLE_ADD_BINARY_SQL,
+        METRICS_RECORD_TABLE_NAME));
+
       //alter TTL options to update tables
       stmt.executeUpdate(String.format(ALTER_SQL,
         METRICS_RECORD_TABLE_NAME,
@@ -311,6 +357,16 @@ public class PhoenixHBaseAccessor {
         }
       }
     }
+
+    // Metric names and hostnames are encoded only once all known keys are
+    // read, even when some of the above failed
+    try {
+      dictionary.load();
+    } catch (SQLException sql) {
+      LOG.error("Error reading the metrics dictionary.", sql);
+      throw new MetricsSystemInitializationException(
+        "Error reading the metrics dictionary.", sql);
+    }
   }
 
   public void insertMetricRecords(TimelineMetrics metrics)
@@ -325,6 +381,9 @@ public class PhoenixHBaseAccessor {
     Connection conn = getConnection();
     PreparedStatement metricRecordStmt = null;
     long currentTime = System.currentTimeMillis();
+    long start = currentTime;
+    int rowCount = 0;
+    long byteCount = 0;
 
     try {
       metricRecordStmt = conn.prepareStatement(String.format(
@@ -341,8 +400,8 @@ public class PhoenixHBaseAccessor {
         double[] aggregates =  AggregatorUtils.calculateAggregates(
           metric.getMetricValues());
 
-        metricRecordStmt.setString(1, metric.getMetricName());
-        metricRecordStmt.setString(2, metric.getHostName());
+        metricRecordStmt.setString(1, dictionary.encodeMetricName(metric.getMetricName()));
+        metricRecordStmt.setString(2, dictionary.encodeHostname(metric.getHostName()));
         metricRecordStmt.setString(3, metric.getAppId());
         metricRecordStmt.setString(4, metric.getInstanceId());
         metricRecordStmt.setLong(5, currentTime);
@@ -352,17 +411,39 @@ public class PhoenixHBaseAccessor {
         metricRecordStmt.setDouble(9, aggregates[1]);
         metricRecordStmt.setDouble(10, aggregates[2]);
         metricRecordStmt.setLong(11, (long)aggregates[3]);
-        String json =
-          TimelineUtils.dumpTimelineRecordtoJSON(metric.getMetricValues());
-        metricRecordStmt.setString(12, json);
+        int length;
+        if (precisionSeriesEncoding == TimelineMetricSeriesCodec.Encoding.BINARY) {
+          byte[] bytes = TimelineMetricSeriesCodec.encode(metric.getMetricValues());
+          metricRecordStmt.setNull(12, Types.VARCHAR);
+          metricRecordStmt.setBytes(13, bytes);
+          length = bytes.length;
+        } else {
+          String json =
+            TimelineUtils.dumpTimelineRecordtoJSON(metric.getMetricValues());
+          metricRecordStmt.setString(12, json);
+          metricRecordStmt.setNull(13, Types.VARBINARY);
+          length = json.length();
+        }
 
         try {
           metricRecordStmt.executeUpdate();
+          rowCount++;
+          byteCount += length;
         } catch (SQLException sql) {
           LOG.error(sql);
         }
+
+        // Phoenix sends the upserts to HBase on commit, keep the batches
+        // bounded by rows and bytes. New dictionary keys are saved first.
+        if (rowCount >= insertBatchRows || byteCount >= insertBatchBytes) {
+          dictionary.saveNewKeys();
+          conn.commit();
+          rowCount = 0;
+          byteCount = 0;
+        }
       }
 
+      dictionary.saveNewKeys();
       conn.commit();
 
     } finally {
@@ -381,6 +462,11 @@ public class PhoenixHBaseAccessor {
         }
       }
     }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Inserted " + timelineMetrics.size() + " metric records in " +
+        (System.currentTimeMillis() - start) + " ms");
+    }
   }
 
   @SuppressWarnings("unchecked")
@@ -396,6 +482,8 @@ public class PhoenixHBaseAccessor {
     TimelineMetrics metrics = new TimelineMetrics();
 
     try {
+      dictionary.setConditionKeys(condition);
+
       //get latest
       if(condition.isPointInTime()){
         stmt = getLatestMetricRecords(condition, conn, metrics);
@@ -435,6 +523,57 @@ public class PhoenixHBaseAccessor {
     return metrics;
   }
 
+  /**
+   * The HOSTNAME values of the hosts ranked highest by the metric of the
+   * condition, as stored so that they can be set as the hostname keys of a
+   * query for their records.
+   */
+  public List<String> getTopNHostnameKeys(final Condition condition,
+      TopNConfig topNConfig) throws SQLException {
+
+    validateConditionIsNotEmpty(condition);
+
+    Connection conn = getConnection();
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
+    List<String> hostnameKeys = new ArrayList<String>(topNConfig.getTopN());
+
+    try {
+      dictionary.setConditionKeys(condition);
+
+      stmt = PhoenixTransactSQL.prepareGetTopNHostsSqlStmt(conn, condition, topNConfig);
+      rs = stmt.executeQuery();
+      while (rs.next()) {
+        hostnameKeys.add(rs.getString("HOSTNAME"));
+      }
+
+    } finally {
+      if (rs != null) {
+        try {
+          rs.close();
+        } catch (SQLException e) {
+          // Ignore
+        }
+      }
+      if (stmt != null) {
+        try {
+          stmt.close();
+        } catch (SQLException e) {
+          // Ignore
+        }
+      }
+      if (conn != null) {
+        try {
+          conn.close();
+        } catch (SQLException sql) {
+          // Ignore
+        }
+      }
+    }
+
+    return hostnameKeys;
+  }
+
   private void appendMetricFromResultSet(
       TimelineMetrics metrics, Condition condition, Map<String,
       List<Function>> metricFunctions, ResultSet rs)
@@ -442,7 +581,7 @@ public class PhoenixHBaseAccessor {
     if (condition.getPrecision() == Precision.HOURS
       || condition.getPrecision() == Precision.MINUTES) {
 
-      String metricName = rs.getString("METRIC_NAME");
+      String metricName = timelineMetricReadHelper.getMetricName(rs);
       List<Function> functions = metricFunctions.get(metricName);
 
       for (Function f : functions) {
@@ -457,7 +596,7 @@ public class PhoenixHBaseAccessor {
     }
     else {
       TimelineMetric metric;
-      metric = TIMELINE_METRIC_READ_HELPER.getTimelineMetricFromResultSet(rs);
+      metric = timelineMetricReadHelper.getTimelineMetricFromResultSet(rs);
 
       if (condition.isGrouped()) {
         metrics.addOrMergeTimelineMetric(metric);
@@ -478,22 +617,29 @@ public class PhoenixHBaseAccessor {
       new SplitByMetricNamesCondition(condition);
 
     for (String metricName: splitCondition.getOriginalMetricNames()) {
-      splitCondition.setCurrentMetric(metricName);
-      stmt = PhoenixTransactSQL.prepareGetLatestMetricSqlStmt(conn,
-        splitCondition);
-      ResultSet rs = null;
-      try {
-        rs = stmt.executeQuery();
-        while (rs.next()) {
-          TimelineMetric metric = getLastTimelineMetricFromResultSet(rs);
-          metrics.getMetrics().add(metric);
-        }
-      } finally {
-        if (rs != null) {
-          try {
-            rs.close();
-          } catch (SQLException e) {
-            // Ignore
+      // The encoded rows are the latest, the full name is only looked up
+      // when there are none
+      boolean found = false;
+      for (Iterator<String> keys = dictionary.getMetricNameKeys(
+          Collections.singletonList(metricName)).iterator(); !found && keys.hasNext(); ) {
+        splitCondition.setCurrentMetric(keys.next());
+        stmt = PhoenixTransactSQL.prepareGetLatestMetricSqlStmt(conn,
+          splitCondition);
+        ResultSet rs = null;
+        try {
+          rs = stmt.executeQuery();
+          while (rs.next()) {
+            TimelineMetric metric = getLastTimelineMetricFromResultSet(rs);
+            metrics.getMetrics().add(metric);
+            found = true;
+          }
+        } finally {
+          if (rs != null) {
+            try {
+              rs.close();
+            } catch (SQLException e) {
+              // Ignore
+            }
           }
         }
       }
@@ -520,6 +666,8 @@ public class PhoenixHBaseAccessor {
     TimelineMetrics metrics = new TimelineMetrics();
 
     try {
+      dictionary.setConditionKeys(condition);
+
       //get latest
       if(condition.isPointInTime()) {
         stmt = getLatestAggregateMetricRecords(condition, conn, metrics, metricFunctions);
@@ -563,7 +711,7 @@ public class PhoenixHBaseAccessor {
       Condition condition, Map<String, List<Function>> metricFunctions,
       ResultSet rs) throws SQLException {
 
-    String metricName = rs.getString("METRIC_NAME");
+    String metricName = timelineMetricReadHelper.getMetricName(rs);
     List<Function> functions = metricFunctions.get(metricName);
 
     for (Function aggregateFunction : functions) {
@@ -593,37 +741,43 @@ public class PhoenixHBaseAccessor {
       new SplitByMetricNamesCondition(condition);
 
     for (String metricName: splitCondition.getOriginalMetricNames()) {
-
-      splitCondition.setCurrentMetric(metricName);
-      stmt = PhoenixTransactSQL.prepareGetLatestAggregateMetricSqlStmt(conn, splitCondition);
-      ResultSet rs = null;
-      try {
-        rs = stmt.executeQuery();
-        while (rs.next()) {
-          List<Function> functions = metricFunctions.get(metricName);
-          if (functions != null) {
-            for (Function f : functions) {
-              SingleValuedTimelineMetric metric =
-                getAggregateTimelineMetricFromResultSet(rs, f, true);
-
-              if (condition.isGrouped()) {
-                metrics.addOrMergeTimelineMetric(metric);
-              } else {
-                metrics.getMetrics().add(metric.getTimelineMetric());
+      // The encoded rows are the latest, the full name is only looked up
+      // when there are none
+      boolean found = false;
+      for (Iterator<String> keys = dictionary.getMetricNameKeys(
+          Collections.singletonList(metricName)).iterator(); !found && keys.hasNext(); ) {
+        splitCondition.setCurrentMetric(keys.next());
+        stmt = PhoenixTransactSQL.prepareGetLatestAggregateMetricSqlStmt(conn, splitCondition);
+        ResultSet rs = null;
+        try {
+          rs = stmt.executeQuery();
+          while (rs.next()) {
+            found = true;
+            List<Function> functions = metricFunctions.get(metricName);
+            if (functions != null) {
+              for (Function f : functions) {
+                SingleValuedTimelineMetric metric =
+                  getAggregateTimelineMetricFromResultSet(rs, f, true);
+
+                if (condition.isGrouped()) {
+                  metrics.addOrMergeTimelineMetric(metric);
+                } else {
+                  metrics.getMetrics().add(metric.getTimelineMetric());
+                }
               }
+            } else {
+              SingleValuedTimelineMetric metric =
+                getAggregateTimelineMetricFromResultSet(rs, new Function(), true);
+              metrics.getMetrics().add(metric.getTimelineMetric());
             }
-          } else {
-            SingleValuedTimelineMetric metric =
-              getAggregateTimelineMetricFromResultSet(rs, new Function(), true);
-            metrics.getMetrics().add(metric.getTimelineMetric());
           }
-        }
-      } finally {
-        if (rs != null) {
-          try {
-            rs.close();
-          } catch (SQLException e) {
-            // Ignore
+        } finally {
+          if (rs != null) {
+            try {
+              rs.close();
+            } catch (SQLException e) {
+              // Ignore
+            }
           }
         }
       }
@@ -641,7 +795,7 @@ public class PhoenixHBaseAccessor {
     }
 
     SingleValuedTimelineMetric metric = new SingleValuedTimelineMetric(
-      rs.getString("METRIC_NAME") + f.getSuffix(),
+      timelineMetricReadHelper.getMetricName(rs) + f.getSuffix(),
       rs.getString("APP_ID"),
       rs.getString("INSTANCE_ID"),
       null,
@@ -706,8 +860,8 @@ public class PhoenixHBaseAccessor {
 
         rowCount++;
         stmt.clearParameters();
-        stmt.setString(1, metric.getMetricName());
-        stmt.setString(2, metric.getHostName());
+        stmt.setString(1, dictionary.encodeMetricName(metric.getMetricName()));
+        stmt.setString(2, dictionary.encodeHostname(metric.getHostName()));
         stmt.setString(3, metric.getAppId());
         stmt.setString(4, metric.getInstanceId());
         stmt.setLong(5, metric.getTimestamp());
@@ -724,12 +878,14 @@ public class PhoenixHBaseAccessor {
         }
 
         if (rowCount >= PHOENIX_MAX_MUTATION_STATE_SIZE - 1) {
+          dictionary.saveNewKeys();
           conn.commit();
           rowCount = 0;
         }
 
       }
 
+      dictionary.saveNewKeys();
       conn.commit();
 
     } finally {
@@ -790,7 +946,7 @@ public class PhoenixHBaseAccessor {
 
         rowCount++;
         stmt.clearParameters();
-        stmt.setString(1, clusterMetric.getMetricName());
+        stmt.setString(1, dictionary.encodeMetricName(clusterMetric.getMetricName()));
         stmt.setString(2, clusterMetric.getAppId());
         stmt.setString(3, clusterMetric.getInstanceId());
         stmt.setLong(4, clusterMetric.getTimestamp());
@@ -808,11 +964,13 @@ public class PhoenixHBaseAccessor {
         }
 
         if (rowCount >= PHOENIX_MAX_MUTATION_STATE_SIZE - 1) {
+          dictionary.saveNewKeys();
           conn.commit();
           rowCount = 0;
         }
       }
 
+      dictionary.saveNewKeys();
       conn.commit();
 
     } finally {
@@ -870,7 +1028,7 @@ public class PhoenixHBaseAccessor {
 
         rowCount++;
         stmt.clearParameters();
-        stmt.setString(1, clusterMetric.getMetricName());
+        stmt.setString(1, dictionary.encodeMetricName(clusterMetric.getMetricName()));
         stmt.setString(2, clusterMetric.getAppId());
         stmt.setString(3, clusterMetric.getInstanceId());
         stmt.setLong(4, clusterMetric.getTimestamp());
@@ -888,11 +1046,13 @@ public class PhoenixHBaseAccessor {
         }
 
         if (rowCount >= PHOENIX_MAX_MUTATION_STATE_SIZE - 1) {
+          dictionary.saveNewKeys();
           conn.commit();
           rowCount = 0;
         }
       }
 
+      dictionary.saveNewKeys();
       conn.commit();
 
     } finally {
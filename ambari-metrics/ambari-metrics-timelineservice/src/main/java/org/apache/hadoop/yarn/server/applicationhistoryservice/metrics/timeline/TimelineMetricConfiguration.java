@@ -55,6 +55,9 @@ public class TimelineMetricConfiguration {
   public static final String PRECISION_TABLE_TTL =
     "timeline.metrics.host.aggregator.ttl";
 
+  public static final String PRECISION_TABLE_SERIES_ENCODING =
+    "timeline.metrics.precision.table.series.encoding";
+
   public static final String HOST_MINUTE_TABLE_TTL =
     "timeline.metrics.host.aggregator.minute.ttl";
 
@@ -157,6 +160,69 @@ public class TimelineMetricConfiguration {
   public static final String CLUSTER_AGGREGATOR_APP_IDS =
     "timeline.metrics.service.cluster.aggregator.appIds";
 
+  public static final String INGESTION_BUFFER_ENABLED =
+    "timeline.metrics.service.ingestion.buffer.enabled";
+
+  public static final String INGESTION_BUFFER_MAX_DATAPOINTS =
+    "timeline.metrics.service.ingestion.buffer.max.datapoints";
+
+  public static final String INGESTION_BUFFER_OVERFLOW_POLICY =
+    "timeline.metrics.service.ingestion.buffer.overflow.policy";
+
+  public static final String INGESTION_FLUSH_INTERVAL =
+    "timeline.metrics.service.ingestion.flush.interval";
+
+  public static final String INGESTION_BATCH_ROWS =
+    "timeline.metrics.service.ingestion.batch.rows";
+
+  public static final String INGESTION_BATCH_BYTES =
+    "timeline.metrics.service.ingestion.batch.bytes";
+
+  public static final String INGEST_AGGREGATOR_ENABLED =
+    "timeline.metrics.service.ingest.aggregator.enabled";
+
+  public static final String INGEST_AGGREGATOR_LATENESS =
+    "timeline.metrics.service.ingest.aggregator.lateness";
+
+  public static final String INGEST_AGGREGATOR_FLUSH_INTERVAL =
+    "timeline.metrics.service.ingest.aggregator.flush.interval";
+
+  public static final String INGEST_AGGREGATOR_MAX_PENDING_WINDOWS =
+    "timeline.metrics.service.ingest.aggregator.max.pending.windows";
+
+  public static final String AGGREGATOR_POOL_SIZE =
+    "timeline.metrics.service.aggregator.pool.size";
+
+  public static final String AGGREGATOR_SHARDS =
+    "timeline.metrics.service.aggregator.shards";
+
+  public static final String AGGREGATOR_SHARD_BOUNDARIES =
+    "timeline.metrics.service.aggregator.shard.boundaries";
+
+  public static final String AGGREGATOR_SAVE_BATCH_SIZE =
+    "timeline.metrics.service.aggregator.save.batch.size";
+
+  public static final String DICTIONARY_ENCODING_ENABLED =
+    "timeline.metrics.service.dictionary.encoding.enabled";
+
+  public static final String QUERY_CACHE_ENABLED =
+    "timeline.metrics.service.query.cache.enabled";
+
+  public static final String QUERY_CACHE_MAX_ENTRIES =
+    "timeline.metrics.service.query.cache.max.entries";
+
+  public static final String QUERY_CACHE_REFRESH_OVERLAP =
+    "timeline.metrics.service.query.cache.refresh.overlap";
+
+  public static final String QUERY_CACHE_ENTRY_TTL =
+    "timeline.metrics.service.query.cache.entry.ttl";
+
+  public static final String CLUSTER_AGGREGATOR_APP_MEMORY_BUDGET =
+    "timeline.metrics.service.cluster.aggregator.app.memory.budget";
+
+  public static final String CLUSTER_AGGREGATOR_SPILL_DIR =
+    "timeline.metrics.service.cluster.aggregator.spill.dir";
+
   public static final String HOST_APP_ID = "HOST";
 
   private Configuration hbaseConf;
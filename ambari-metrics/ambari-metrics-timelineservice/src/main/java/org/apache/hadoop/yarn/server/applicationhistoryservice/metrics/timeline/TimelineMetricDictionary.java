@@ -0,0 +1,372 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.ConnectionProvider;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.DICTIONARY_ENCODING_ENABLED;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.GET_DICTIONARY_SQL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.UPSERT_DICTIONARY_SQL;
+
+/**
+ * Maps metric names and hostnames to short keys stored in the METRIC_NAME
+ * and HOSTNAME columns of the metric tables instead of the full strings.
+ * <p/>
+ * A key is {@link #ENCODED_KEY_PREFIX} followed by the id in base 36, least
+ * significant digit first so that keys spread evenly over the row key space.
+ * The ids are kept in the METRIC_DICTIONARY table and all of them are held
+ * in memory both ways. New ids are taken from the highest one loaded, which
+ * assumes a single collector writes to the tables. They are handed out in
+ * memory and saved in one batch by {@link #saveNewKeys()}, which the writers
+ * call before committing any row that uses them.
+ * <p/>
+ * Rows written before the encoding was enabled keep the full strings. Keys
+ * are translated back on read whichever way a row was written, and queries
+ * match both the full strings and the keys until the older rows expire.
+ */
+public class TimelineMetricDictionary {
+  private static final Log LOG = LogFactory.getLog(TimelineMetricDictionary.class);
+
+  public static final String ENCODED_KEY_PREFIX = "#";
+
+  static final String METRIC_NAME_TYPE = "M";
+  static final String HOSTNAME_TYPE = "H";
+
+  private final ConnectionProvider connectionProvider;
+  private final boolean encodingEnabled;
+  private final Keys metricNames = new Keys(METRIC_NAME_TYPE);
+  private final Keys hostnames = new Keys(HOSTNAME_TYPE);
+  private final List<NewKey> newKeys = new ArrayList<NewKey>();
+  private final Object saveLock = new Object();
+  private volatile boolean loaded = false;
+
+  public TimelineMetricDictionary(ConnectionProvider connectionProvider,
+                                  Configuration metricsConf) {
+    this.connectionProvider = connectionProvider;
+    this.encodingEnabled = metricsConf.getBoolean(DICTIONARY_ENCODING_ENABLED, false);
+  }
+
+  public boolean isEncodingEnabled() {
+    return encodingEnabled;
+  }
+
+  /**
+   * Read all ids from the dictionary table. Nothing is encoded before, so
+   * that no id is handed out twice.
+   */
+  public void load() throws SQLException {
+    Connection conn = connectionProvider.getConnection();
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
+    try {
+      stmt = conn.prepareStatement(GET_DICTIONARY_SQL);
+      rs = stmt.executeQuery();
+      while (rs.next()) {
+        String type = rs.getString("KEY_TYPE");
+        if (METRIC_NAME_TYPE.equals(type)) {
+          metricNames.put(rs.getString("NAME"), rs.getLong("KEY_ID"));
+        } else if (HOSTNAME_TYPE.equals(type)) {
+          hostnames.put(rs.getString("NAME"), rs.getLong("KEY_ID"));
+        }
+      }
+    } finally {
+      if (rs != null) {
+        try {
+          rs.close();
+        } catch (SQLException e) {
+          // Ignore
+        }
+      }
+      if (stmt != null) {
+        try {
+          stmt.close();
+        } catch (SQLException e) {
+          // Ignore
+        }
+      }
+      try {
+        conn.close();
+      } catch (SQLException e) {
+        // Ignore
+      }
+    }
+    loaded = true;
+    LOG.info("Loaded " + metricNames.size() + " metric name and " +
+      hostnames.size() + " hostname keys.");
+  }
+
+  /**
+   * The value to store for the metric name, the name itself if encoding is
+   * disabled.
+   */
+  public String encodeMetricName(String metricName) {
+    return encode(metricNames, metricName);
+  }
+
+  public String encodeHostname(String hostname) {
+    return encode(hostnames, hostname);
+  }
+
+  public String decodeMetricName(String value) {
+    return decode(metricNames, value);
+  }
+
+  public String decodeHostname(String value) {
+    return decode(hostnames, value);
+  }
+
+  /**
+   * Set the values to match for the metric names and hostname of a query,
+   * both the names and the keys of the names known to the dictionary.
+   */
+  public void setConditionKeys(Condition condition) {
+    if (metricNames.size() == 0 && hostnames.size() == 0) {
+      return;
+    }
+    if (condition.getMetricNames() != null) {
+      condition.setMetricNameKeys(getMetricNameKeys(condition.getMetricNames()));
+    }
+    if (condition.getHostname() != null) {
+      condition.setHostnameKeys(getHostnameKeys(condition.getHostname()));
+    }
+  }
+
+  /**
+   * The keys to match for the metric names, with the key of a name before
+   * the name. Patterns are kept for the rows with full names and matched
+   * against the dictionary for the encoded rows.
+   */
+  public List<String> getMetricNameKeys(List<String> names) {
+    List<String> keys = new ArrayList<String>(names.size());
+    for (String name : names) {
+      if (name.contains("%")) {
+        Pattern pattern = toPattern(name);
+        for (Map.Entry<String, String> entry : metricNames.nameToKey.entrySet()) {
+          if (pattern.matcher(entry.getKey()).matches() && !keys.contains(entry.getValue())) {
+            keys.add(entry.getValue());
+          }
+        }
+      } else {
+        String key = metricNames.nameToKey.get(name);
+        if (key != null && !keys.contains(key)) {
+          keys.add(key);
+        }
+      }
+      if (!keys.contains(name)) {
+        keys.add(name);
+      }
+    }
+    return keys;
+  }
+
+  public List<String> getHostnameKeys(String hostname) {
+    List<String> keys = new ArrayList<String>(2);
+    String key = hostnames.nameToKey.get(hostname);
+    if (key != null) {
+      keys.add(key);
+    }
+    keys.add(hostname);
+    return keys;
+  }
+
+  /**
+   * The stored value of the metric name that sorts last, the key or the
+   * name. Rows read in METRIC_NAME order hold all rows of the metric once
+   * a greater value is read.
+   */
+  public String getLastStoredMetricName(String metricName) {
+    String key = metricNames.nameToKey.get(metricName);
+    return key != null && key.compareTo(metricName) > 0 ? key : metricName;
+  }
+
+  /**
+   * Save the ids handed out since the last call. Called before committing
+   * rows with the keys, the ids are kept to be saved again on failure.
+   */
+  public void saveNewKeys() throws SQLException {
+    synchronized (saveLock) {
+      List<NewKey> keys;
+      synchronized (newKeys) {
+        if (newKeys.isEmpty()) {
+          return;
+        }
+        keys = new ArrayList<NewKey>(newKeys);
+        newKeys.clear();
+      }
+      try {
+        saveKeys(keys);
+      } catch (SQLException e) {
+        synchronized (newKeys) {
+          newKeys.addAll(0, keys);
+        }
+        throw e;
+      }
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Saved " + keys.size() + " new keys.");
+      }
+    }
+  }
+
+  protected void saveKeys(List<NewKey> keys) throws SQLException {
+    Connection conn = connectionProvider.getConnection();
+    PreparedStatement stmt = null;
+    try {
+      stmt = conn.prepareStatement(UPSERT_DICTIONARY_SQL);
+      for (NewKey key : keys) {
+        stmt.clearParameters();
+        stmt.setString(1, key.type);
+        stmt.setString(2, key.name);
+        stmt.setLong(3, key.id);
+        stmt.executeUpdate();
+      }
+      conn.commit();
+    } finally {
+      if (stmt != null) {
+        try {
+          stmt.close();
+        } catch (SQLException e) {
+          // Ignore
+        }
+      }
+      try {
+        conn.close();
+      } catch (SQLException e) {
+        // Ignore
+      }
+    }
+  }
+
+  static String toKey(long id) {
+    String digits = Long.toString(id, Character.MAX_RADIX);
+    return ENCODED_KEY_PREFIX + new StringBuilder(digits).reverse();
+  }
+
+  private String encode(Keys keys, String name) {
+    if (!encodingEnabled || !loaded || name == null) {
+      return name;
+    }
+    String key = keys.nameToKey.get(name);
+    if (key != null) {
+      return key;
+    }
+
+    synchronized (keys) {
+      key = keys.nameToKey.get(name);
+      if (key == null) {
+        long id = keys.lastId + 1;
+        synchronized (newKeys) {
+          newKeys.add(new NewKey(keys.type, name, id));
+        }
+        key = keys.put(name, id);
+      }
+    }
+    return key;
+  }
+
+  private static String decode(Keys keys, String value) {
+    if (value == null || !value.startsWith(ENCODED_KEY_PREFIX)) {
+      return value;
+    }
+    String name = keys.keyToName.get(value);
+    if (name == null) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Unknown key " + value);
+      }
+      return value;
+    }
+    return name;
+  }
+
+  /**
+   * SQL LIKE pattern as a regular expression.
+   */
+  private static Pattern toPattern(String like) {
+    StringBuilder regex = new StringBuilder();
+    StringBuilder literal = new StringBuilder();
+    for (char c : like.toCharArray()) {
+      if (c == '%' || c == '_') {
+        if (literal.length() > 0) {
+          regex.append(Pattern.quote(literal.toString()));
+          literal.setLength(0);
+        }
+        regex.append(c == '%' ? ".*" : ".");
+      } else {
+        literal.append(c);
+      }
+    }
+    if (literal.length() > 0) {
+      regex.append(Pattern.quote(literal.toString()));
+    }
+    return Pattern.compile(regex.toString(), Pattern.DOTALL);
+  }
+
+  protected static class NewKey {
+    private final String type;
+    private final String name;
+    private final long id;
+
+    private NewKey(String type, String name, long id) {
+      this.type = type;
+      this.name = name;
+      this.id = id;
+    }
+
+    @Override
+    public String toString() {
+      return type + ":" + name + ":" + id;
+    }
+  }
+
+  private static class Keys {
+    private final String type;
+    private final Map<String, String> nameToKey = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> keyToName = new ConcurrentHashMap<String, String>();
+    private long lastId = 0;
+
+    private Keys(String type) {
+      this.type = type;
+    }
+
+    private synchronized String put(String name, long id) {
+      String key = toKey(id);
+      // The reverse mapping first, rows are only written once the key is known
+      keyToName.put(key, name);
+      nameToKey.put(name, key);
+      lastId = Math.max(lastId, id);
+      return key;
+    }
+
+    private int size() {
+      return nameToKey.size();
+    }
+  }
+}
@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.conf.Configuration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_DAILY_SLEEP_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_HOUR_SLEEP_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_TIMESLICE_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_DAILY_TABLE_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_HOUR_TABLE_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_MINUTE_TABLE_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_DAILY_SLEEP_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_HOUR_SLEEP_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_MINUTE_SLEEP_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_DAILY_TABLE_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_HOUR_TABLE_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_MINUTE_TABLE_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.PRECISION_TABLE_TTL;
+
+/**
+ * Picks the tables to read for a number of points to render. The finest
+ * precision with no more points over the time range than asked for is used,
+ * so that a query never reads more than it renders, and the coarsest one
+ * if all have more.
+ * <p/>
+ * Where the table of the precision no longer holds the start of the range,
+ * the older part is read from the next coarser table that still does, so
+ * that the result is stitched from several tables.
+ */
+public class TimelineMetricPrecisionPlanner {
+
+  // The default collection period of the sinks
+  static final long RAW_RESOLUTION_MILLIS = 10000l;
+
+  private final Map<Precision, Table> hostTables =
+    new EnumMap<Precision, Table>(Precision.class);
+  private final Map<Precision, Table> clusterTables =
+    new EnumMap<Precision, Table>(Precision.class);
+
+  public TimelineMetricPrecisionPlanner(Configuration metricsConf) {
+    hostTables.put(Precision.SECONDS, new Table(RAW_RESOLUTION_MILLIS,
+      metricsConf.getLong(PRECISION_TABLE_TTL, 86400l)));
+    hostTables.put(Precision.MINUTES, new Table(
+      SECONDS.toMillis(metricsConf.getLong(HOST_AGGREGATOR_MINUTE_SLEEP_INTERVAL, 300l)),
+      metricsConf.getLong(HOST_MINUTE_TABLE_TTL, 604800l)));
+    hostTables.put(Precision.HOURS, new Table(
+      SECONDS.toMillis(metricsConf.getLong(HOST_AGGREGATOR_HOUR_SLEEP_INTERVAL, 3600l)),
+      metricsConf.getLong(HOST_HOUR_TABLE_TTL, 2592000l)));
+    hostTables.put(Precision.DAYS, new Table(
+      SECONDS.toMillis(metricsConf.getLong(HOST_AGGREGATOR_DAILY_SLEEP_INTERVAL, 86400l)),
+      metricsConf.getLong(HOST_DAILY_TABLE_TTL, 31536000l)));
+
+    // The cluster tables have no minute precision
+    clusterTables.put(Precision.SECONDS, new Table(
+      SECONDS.toMillis(metricsConf.getInt(CLUSTER_AGGREGATOR_TIMESLICE_INTERVAL, 15)),
+      metricsConf.getLong(CLUSTER_MINUTE_TABLE_TTL, 2592000l)));
+    clusterTables.put(Precision.HOURS, new Table(
+      SECONDS.toMillis(metricsConf.getLong(CLUSTER_AGGREGATOR_HOUR_SLEEP_INTERVAL, 3600l)),
+      metricsConf.getLong(CLUSTER_HOUR_TABLE_TTL, 31536000l)));
+    clusterTables.put(Precision.DAYS, new Table(
+      SECONDS.toMillis(metricsConf.getLong(CLUSTER_AGGREGATOR_DAILY_SLEEP_INTERVAL, 86400l)),
+      metricsConf.getLong(CLUSTER_DAILY_TABLE_TTL, 31536000l)));
+  }
+
+  /**
+   * The finest precision with at most the given number of points between
+   * the start and end time.
+   *
+   * @param cluster whether the cluster aggregate tables are read
+   */
+  public Precision selectPrecision(boolean cluster, long startTime,
+                                   long endTime, int points) {
+    Map<Precision, Table> tables = cluster ? clusterTables : hostTables;
+    long range = Math.max(1, endTime - startTime);
+    Precision selected = null;
+    for (Map.Entry<Precision, Table> entry : tables.entrySet()) {
+      selected = entry.getKey();
+      if (range / entry.getValue().resolutionMillis <= points) {
+        break;
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * The parts of the time range to read from each table, oldest first.
+   * Parts older than every table holds are left out.
+   *
+   * @param now the current time, from which the ttls count back
+   */
+  public List<Segment> plan(boolean cluster, long startTime, long endTime,
+                            int points, long now) {
+    Map<Precision, Table> tables = cluster ? clusterTables : hostTables;
+    Precision precision = selectPrecision(cluster, startTime, endTime, points);
+
+    List<Segment> segments = new ArrayList<Segment>();
+    long segmentEnd = endTime;
+    for (Map.Entry<Precision, Table> entry : tables.entrySet()) {
+      if (entry.getKey().compareTo(precision) < 0) {
+        continue;
+      }
+      long retainedFrom = now - SECONDS.toMillis(entry.getValue().ttlSeconds);
+      long segmentStart = Math.max(startTime, retainedFrom);
+      if (segmentStart < segmentEnd) {
+        segments.add(new Segment(entry.getKey(), segmentStart, segmentEnd));
+        segmentEnd = segmentStart;
+      }
+      if (segmentEnd <= startTime) {
+        break;
+      }
+    }
+
+    Collections.reverse(segments);
+    return segments;
+  }
+
+  /**
+   * Part of a time range read at one precision.
+   */
+  public static class Segment {
+    private final Precision precision;
+    private final long startTime;
+    private final long endTime;
+
+    Segment(Precision precision, long startTime, long endTime) {
+      this.precision = precision;
+      this.startTime = startTime;
+      this.endTime = endTime;
+    }
+
+    public Precision getPrecision() {
+      return precision;
+    }
+
+    public long getStartTime() {
+      return startTime;
+    }
+
+    public long getEndTime() {
+      return endTime;
+    }
+
+    @Override
+    public String toString() {
+      return "Segment{" +
+        "precision=" + precision +
+        ", startTime=" + startTime +
+        ", endTime=" + endTime +
+        '}';
+    }
+  }
+
+  private static class Table {
+    private final long resolutionMillis;
+    private final long ttlSeconds;
+
+    private Table(long resolutionMillis, long ttlSeconds) {
+      this.resolutionMillis = Math.max(1, resolutionMillis);
+      this.ttlSeconds = ttlSeconds;
+    }
+  }
+}
@@ -0,0 +1,335 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.Interns;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.QUERY_CACHE_ENTRY_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.QUERY_CACHE_MAX_ENTRIES;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.QUERY_CACHE_REFRESH_OVERLAP;
+
+/**
+ * Keeps the results of repeated grouped queries, such as the ones every open
+ * Ambari Web page polls for the last hour. Queries for the same metrics,
+ * hostname, app, instance and precision share an entry, whatever their
+ * time range.
+ * <p/>
+ * An entry holds the series from the start of the first query, aligned to
+ * the bucket of the precision. A later query within the entry only scans
+ * the time after the last one, with some overlap for late records, and
+ * drops the points before its own start. Entries are scanned again in full
+ * once older than the ttl, and the least recently used ones are dropped.
+ * <p/>
+ * The number of entries, hits and the scan time saved are published as a
+ * metrics source.
+ */
+public class TimelineMetricQueryCache implements MetricsSource {
+  private static final Log LOG = LogFactory.getLog(TimelineMetricQueryCache.class);
+
+  public static final String METRICS_SOURCE_NAME = "TimelineMetricQueryCache";
+
+  /**
+   * Reads the records of a condition from the store.
+   */
+  public interface Scanner {
+    TimelineMetrics scan(Condition condition) throws SQLException, IOException;
+  }
+
+  private final int maxEntries;
+  private final long refreshOverlapMillis;
+  private final long entryTtlMillis;
+  private final Map<Key, Entry> entries;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong partialHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong scanMillisSaved = new AtomicLong();
+
+  public TimelineMetricQueryCache(Configuration metricsConf) {
+    this.maxEntries = Math.max(1, metricsConf.getInt(QUERY_CACHE_MAX_ENTRIES, 500));
+    this.refreshOverlapMillis = TimeUnit.SECONDS.toMillis(
+      metricsConf.getLong(QUERY_CACHE_REFRESH_OVERLAP, 120));
+    this.entryTtlMillis = TimeUnit.SECONDS.toMillis(
+      metricsConf.getLong(QUERY_CACHE_ENTRY_TTL, 300));
+    this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+    LOG.info("Caching up to " + maxEntries + " queries.");
+  }
+
+  /**
+   * The records of a grouped query with a time range, read through the
+   * cache. The precision of the condition should be set. The returned
+   * metrics are copies that may be changed.
+   *
+   * @param metricNames the metric names of the query with their functions
+   */
+  public TimelineMetrics getTimelineMetrics(List<String> metricNames,
+      Condition condition, Scanner scanner) throws SQLException, IOException {
+
+    if (condition.getPrecision() == null || condition.getStartTime() == null
+        || condition.getEndTime() == null) {
+      throw new IllegalArgumentException("Only queries with a time range " +
+        "and precision are cached.");
+    }
+    long startTime = condition.getStartTime();
+    long endTime = condition.getEndTime();
+    long bucket = getBucketMillis(condition.getPrecision());
+    long alignedStartTime = startTime - startTime % bucket;
+
+    Key key = new Key(metricNames, condition);
+    Entry entry;
+    synchronized (entries) {
+      entry = entries.get(key);
+      if (entry == null) {
+        entry = new Entry();
+        entries.put(key, entry);
+      }
+    }
+
+    // Concurrent queries for an entry wait for the one scan
+    synchronized (entry) {
+      long now = System.currentTimeMillis();
+      if (entry.metrics == null || alignedStartTime < entry.startTime
+          || now - entry.scannedAt > entryTtlMillis) {
+        long scanStart = System.currentTimeMillis();
+        entry.metrics = scanner.scan(copyCondition(condition, alignedStartTime, endTime));
+        entry.scanMillis = System.currentTimeMillis() - scanStart;
+        entry.startTime = alignedStartTime;
+        entry.scannedUntil = endTime;
+        entry.scannedAt = now;
+        misses.incrementAndGet();
+
+      } else if (endTime > entry.scannedUntil) {
+        long deltaStartTime = Math.max(entry.startTime,
+          entry.scannedUntil - refreshOverlapMillis);
+        long scanStart = System.currentTimeMillis();
+        TimelineMetrics delta = scanner.scan(
+          copyCondition(condition, deltaStartTime, endTime));
+        long deltaScanMillis = System.currentTimeMillis() - scanStart;
+
+        merge(entry.metrics, delta);
+        if (alignedStartTime > entry.startTime) {
+          trim(entry.metrics, alignedStartTime);
+          entry.startTime = alignedStartTime;
+        }
+        entry.scannedUntil = endTime;
+        partialHits.incrementAndGet();
+        scanMillisSaved.addAndGet(Math.max(0, entry.scanMillis - deltaScanMillis));
+
+      } else {
+        hits.incrementAndGet();
+        scanMillisSaved.addAndGet(entry.scanMillis);
+      }
+
+      return copy(entry.metrics, startTime, endTime);
+    }
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getPartialHits() {
+    return partialHits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getScanMillisSaved() {
+    return scanMillisSaved.get();
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    long hitCount = hits.get() + partialHits.get();
+    long total = hitCount + misses.get();
+    collector.addRecord(METRICS_SOURCE_NAME)
+      .setContext("timeline")
+      .addGauge(Interns.info("Entries", "Number of cached queries"), size())
+      .addCounter(Interns.info("Hits", "Queries answered without a scan"), hits.get())
+      .addCounter(Interns.info("PartialHits", "Queries that only scanned the " +
+        "latest records"), partialHits.get())
+      .addCounter(Interns.info("Misses", "Queries scanned in full"), misses.get())
+      .addGauge(Interns.info("HitRatio", "Share of queries answered from the " +
+        "cache"), total == 0 ? 0.0 : (double) hitCount / total)
+      .addCounter(Interns.info("ScanMillisSaved", "Estimated scan time saved"),
+        scanMillisSaved.get());
+  }
+
+  /**
+   * Interval the start of an entry is aligned to, about the time covered by
+   * a row of the table read for the precision.
+   */
+  static long getBucketMillis(Precision precision) {
+    switch (precision) {
+      case DAYS:
+        return TimeUnit.DAYS.toMillis(1);
+      case HOURS:
+        return TimeUnit.HOURS.toMillis(1);
+      case MINUTES:
+        return TimeUnit.MINUTES.toMillis(5);
+      default:
+        return TimeUnit.MINUTES.toMillis(1);
+    }
+  }
+
+  private static Condition copyCondition(Condition condition, long startTime,
+                                         long endTime) {
+    return new DefaultCondition(condition.getMetricNames(),
+      condition.getHostname(), condition.getAppId(), condition.getInstanceId(),
+      startTime, endTime, condition.getPrecision(), null, true);
+  }
+
+  private static void merge(TimelineMetrics metrics, TimelineMetrics delta) {
+    for (TimelineMetric metric : delta.getMetrics()) {
+      TimelineMetric cached = null;
+      for (TimelineMetric timelineMetric : metrics.getMetrics()) {
+        if (timelineMetric.equalsExceptTime(metric)) {
+          cached = timelineMetric;
+          break;
+        }
+      }
+      if (cached == null) {
+        metrics.getMetrics().add(metric);
+      } else if (metric.getMetricSeries() != null) {
+        if (cached.getMetricSeries() == null) {
+          cached.setMetricValues(metric.getMetricSeries());
+        } else {
+          cached.getMetricSeries().merge(metric.getMetricSeries());
+        }
+      }
+    }
+  }
+
+  private static void trim(TimelineMetrics metrics, long startTime) {
+    for (TimelineMetric metric : metrics.getMetrics()) {
+      TimelineMetricSeries series = metric.getMetricSeries();
+      if (series != null && series.size() > 0 && series.getFirstTimestamp() < startTime) {
+        metric.setMetricValues(series.slice(startTime, Long.MAX_VALUE));
+      }
+      if (metric.getStartTime() < startTime) {
+        metric.setStartTime(startTime);
+      }
+    }
+  }
+
+  private static TimelineMetrics copy(TimelineMetrics metrics, long startTime,
+                                      long endTime) {
+    TimelineMetrics result = new TimelineMetrics();
+    for (TimelineMetric metric : metrics.getMetrics()) {
+      TimelineMetric copy = new TimelineMetric();
+      copy.setMetricName(metric.getMetricName());
+      copy.setAppId(metric.getAppId());
+      copy.setInstanceId(metric.getInstanceId());
+      copy.setHostName(metric.getHostName());
+      copy.setType(metric.getType());
+      copy.setTimestamp(metric.getTimestamp());
+      copy.setStartTime(Math.max(startTime, metric.getStartTime()));
+      TimelineMetricSeries series = metric.getMetricSeries();
+      copy.setMetricValues(series == null ? new TimelineMetricSeries() :
+        series.slice(startTime, endTime));
+      result.getMetrics().add(copy);
+    }
+    return result;
+  }
+
+  private static class Entry {
+    private TimelineMetrics metrics;
+    private long startTime;
+    private long scannedUntil;
+    private long scannedAt;
+    private long scanMillis;
+  }
+
+  private static class Key {
+    private final List<String> metricNames;
+    private final String hostname;
+    private final String appId;
+    private final String instanceId;
+    private final Precision precision;
+
+    private Key(List<String> metricNames, Condition condition) {
+      List<String> sortedNames = new ArrayList<String>(metricNames);
+      Collections.sort(sortedNames);
+      this.metricNames = sortedNames;
+      this.hostname = condition.getHostname();
+      this.appId = condition.getAppId();
+      this.instanceId = condition.getInstanceId();
+      this.precision = condition.getPrecision();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      Key key = (Key) o;
+
+      if (!metricNames.equals(key.metricNames)) return false;
+      if (hostname != null ? !hostname.equals(key.hostname) : key.hostname != null)
+        return false;
+      if (appId != null ? !appId.equals(key.appId) : key.appId != null)
+        return false;
+      if (instanceId != null ? !instanceId.equals(key.instanceId) : key.instanceId != null)
+        return false;
+      return precision == key.precision;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = metricNames.hashCode();
+      result = 31 * result + (hostname != null ? hostname.hashCode() : 0);
+      result = 31 * result + (appId != null ? appId.hashCode() : 0);
+      result = 31 * result + (instanceId != null ? instanceId.hashCode() : 0);
+      result = 31 * result + (precision != null ? precision.hashCode() : 0);
+      return result;
+    }
+  }
+}
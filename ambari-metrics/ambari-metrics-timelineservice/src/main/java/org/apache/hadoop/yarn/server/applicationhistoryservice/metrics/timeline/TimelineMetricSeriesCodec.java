@@ -0,0 +1,379 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of a metric series, used for the METRICS_BINARY
+ * column of the METRIC_RECORD table instead of the JSON text of the METRICS
+ * column.
+ * <p/>
+ * Timestamps are written as the delta of the previous delta, which is zero
+ * or close to zero for metrics sent at a regular interval. Values are written
+ * XOR'ed with the previous value, leaving only the bits which changed. Both
+ * go into a single bit stream. Null values are flagged in a bitmap which is
+ * only written when the series has any, and are written as the previous
+ * value; NaN values are kept as NaN:
+ * <pre>
+ *   version (8 bits) | count (32 bits) | has nulls (1 bit) |
+ *   [null flags (count bits)] | first timestamp (64 bits) |
+ *   first value (64 bits) | (timestamp value)*
+ *
+ *   timestamp: '0'                  delta of delta is 0
+ *              '10'   + 7 bits      delta of delta in [-64, 63]
+ *              '110'  + 9 bits      delta of delta in [-256, 255]
+ *              '1110' + 12 bits     delta of delta in [-2048, 2047]
+ *              '1111' + 64 bits     any other delta
+ *
+ *   value:     '0'                  same as the previous value
+ *              '10'   + bits        changed bits fit in the previous window
+ *              '11'   + 5 bits leading zeros + 6 bits length - 1 + bits
+ * </pre>
+ */
+public class TimelineMetricSeriesCodec {
+
+  /**
+   * The encodings which can be used for the series of a table.
+   */
+  public enum Encoding {
+    JSON,
+    BINARY
+  }
+
+  static final int VERSION = 1;
+
+  private TimelineMetricSeriesCodec() {
+  }
+
+  /**
+   * Encode the given series, in the iteration order of the map.
+   *
+   * @param metricValues the values by timestamp
+   *
+   * @return the encoded series
+   */
+  public static byte[] encode(Map<Long, Double> metricValues) {
+    if (metricValues instanceof TimelineMetricSeries) {
+      return encode((TimelineMetricSeries) metricValues);
+    }
+    long[] timestamps = new long[metricValues.size()];
+    double[] values = new double[metricValues.size()];
+    boolean[] nulls = null;
+    int i = 0;
+    for (Map.Entry<Long, Double> entry : metricValues.entrySet()) {
+      timestamps[i] = entry.getKey();
+      if (entry.getValue() == null) {
+        if (nulls == null) {
+          nulls = new boolean[values.length];
+        }
+        nulls[i] = true;
+      } else {
+        values[i] = entry.getValue();
+      }
+      i++;
+    }
+    return encode(timestamps, values, nulls, i);
+  }
+
+  /**
+   * Encode the given series.
+   *
+   * @param series the series
+   *
+   * @return the encoded series
+   */
+  public static byte[] encode(TimelineMetricSeries series) {
+    int count = series.size();
+    long[] timestamps = new long[count];
+    double[] values = new double[count];
+    boolean[] nulls = null;
+    for (int i = 0; i < count; i++) {
+      timestamps[i] = series.getTimestamp(i);
+      if (series.isNull(i)) {
+        if (nulls == null) {
+          nulls = new boolean[count];
+        }
+        nulls[i] = true;
+      } else {
+        values[i] = series.getValue(i);
+      }
+    }
+    return encode(timestamps, values, nulls, count);
+  }
+
+  /**
+   * Encode the first {@code count} datapoints of the given arrays.
+   *
+   * @param timestamps the timestamps
+   * @param values     the values
+   * @param count      the number of datapoints
+   *
+   * @return the encoded series
+   */
+  public static byte[] encode(long[] timestamps, double[] values, int count) {
+    return encode(timestamps, values, null, count);
+  }
+
+  /**
+   * Encode the first {@code count} datapoints of the given arrays.
+   *
+   * @param timestamps the timestamps
+   * @param values     the values
+   * @param nulls      the flags of the null values; null if there are none
+   * @param count      the number of datapoints
+   *
+   * @return the encoded series
+   */
+  public static byte[] encode(long[] timestamps, double[] values,
+                              boolean[] nulls, int count) {
+    // a datapoint with a regular timestamp and a similar value takes ~2 bytes
+    BitWriter out = new BitWriter(16 + count * 4);
+    out.write(VERSION, 8);
+    out.write(count, 32);
+    if (count == 0) {
+      return out.toByteArray();
+    }
+
+    boolean hasNulls = false;
+    for (int i = 0; nulls != null && i < count && !hasNulls; i++) {
+      hasNulls = nulls[i];
+    }
+    out.write(hasNulls ? 1 : 0, 1);
+    if (hasNulls) {
+      for (int i = 0; i < count; i++) {
+        out.write(nulls[i] ? 1 : 0, 1);
+      }
+    }
+
+    long previousTime = timestamps[0];
+    long previousDelta = 0;
+    long previousBits = hasNulls && nulls[0] ? 0L : Double.doubleToRawLongBits(values[0]);
+    int previousLeading = Integer.MAX_VALUE;
+    int previousTrailing = 0;
+
+    out.write(previousTime, 64);
+    out.write(previousBits, 64);
+
+    for (int i = 1; i < count; i++) {
+      long delta = timestamps[i] - previousTime;
+      long deltaOfDelta = delta - previousDelta;
+      if (deltaOfDelta == 0) {
+        out.write(0, 1);
+      } else if (deltaOfDelta >= -64 && deltaOfDelta <= 63) {
+        out.write(0x2, 2);
+        out.write(deltaOfDelta, 7);
+      } else if (deltaOfDelta >= -256 && deltaOfDelta <= 255) {
+        out.write(0x6, 3);
+        out.write(deltaOfDelta, 9);
+      } else if (deltaOfDelta >= -2048 && deltaOfDelta <= 2047) {
+        out.write(0xE, 4);
+        out.write(deltaOfDelta, 12);
+      } else {
+        out.write(0xF, 4);
+        out.write(delta, 64);
+      }
+      previousTime = timestamps[i];
+      previousDelta = delta;
+
+      // a null value repeats the previous value, which takes a single bit
+      long bits = hasNulls && nulls[i] ? previousBits : Double.doubleToRawLongBits(values[i]);
+      long xor = bits ^ previousBits;
+      if (xor == 0) {
+        out.write(0, 1);
+      } else {
+        int leading = Math.min(31, Long.numberOfLeadingZeros(xor));
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if (leading >= previousLeading && trailing >= previousTrailing) {
+          out.write(0x2, 2);
+          out.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+        } else {
+          int length = 64 - leading - trailing;
+          out.write(0x3, 2);
+          out.write(leading, 5);
+          out.write(length - 1, 6);
+          out.write(xor >>> trailing, length);
+          previousLeading = leading;
+          previousTrailing = trailing;
+        }
+      }
+      previousBits = bits;
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Decode a series written by {@link #encode(long[], double[], boolean[], int)}.
+   *
+   * @param bytes the encoded series
+   *
+   * @return the decoded series
+   *
+   * @throws IOException if the bytes are not a series of a known version
+   */
+  public static TimelineMetricSeries decode(byte[] bytes) throws IOException {
+    BitReader in = new BitReader(bytes);
+    int version = (int) in.read(8);
+    if (version != VERSION) {
+      throw new IOException("Unknown metric series encoding version " + version);
+    }
+    int count = (int) in.read(32);
+    if (count < 0 || count > bytes.length * 8) {
+      throw new IOException("Invalid metric series length " + count);
+    }
+
+    long[] timestamps = new long[count];
+    double[] values = new double[count];
+    if (count == 0) {
+      return new TimelineMetricSeries(timestamps, values, 0);
+    }
+
+    boolean[] nulls = null;
+    if (in.read(1) == 1) {
+      nulls = new boolean[count];
+      for (int i = 0; i < count; i++) {
+        nulls[i] = in.read(1) == 1;
+      }
+    }
+
+    long previousTime = in.read(64);
+    long previousDelta = 0;
+    long previousBits = in.read(64);
+    int previousLeading = 0;
+    int previousTrailing = 0;
+
+    timestamps[0] = previousTime;
+    values[0] = Double.longBitsToDouble(previousBits);
+    boolean sorted = true;
+
+    for (int i = 1; i < count; i++) {
+      long delta;
+      if (in.read(1) == 0) {
+        delta = previousDelta;
+      } else if (in.read(1) == 0) {
+        delta = previousDelta + in.readSigned(7);
+      } else if (in.read(1) == 0) {
+        delta = previousDelta + in.readSigned(9);
+      } else if (in.read(1) == 0) {
+        delta = previousDelta + in.readSigned(12);
+      } else {
+        delta = in.read(64);
+      }
+      previousTime += delta;
+      previousDelta = delta;
+      timestamps[i] = previousTime;
+
+      if (in.read(1) == 1) {
+        long xor;
+        if (in.read(1) == 0) {
+          xor = in.read(64 - previousLeading - previousTrailing) << previousTrailing;
+        } else {
+          int leading = (int) in.read(5);
+          int length = (int) in.read(6) + 1;
+          int trailing = 64 - leading - length;
+          xor = in.read(length) << trailing;
+          previousLeading = leading;
+          previousTrailing = trailing;
+        }
+        previousBits ^= xor;
+      }
+      values[i] = Double.longBitsToDouble(previousBits);
+      sorted &= delta > 0;
+    }
+
+    if (sorted) {
+      TimelineMetricSeries series = new TimelineMetricSeries(timestamps, values, count);
+      for (int i = 0; nulls != null && i < count; i++) {
+        if (nulls[i]) {
+          series.put(timestamps[i], null);
+        }
+      }
+      return series;
+    }
+    TimelineMetricSeries series = new TimelineMetricSeries(count);
+    for (int i = 0; i < count; i++) {
+      series.put(timestamps[i], nulls != null && nulls[i] ? null : values[i]);
+    }
+    return series;
+  }
+
+  private static class BitWriter {
+    private byte[] buffer;
+    private int bitPosition = 0;
+
+    BitWriter(int initialCapacity) {
+      buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * Write the lowest {@code bits} bits of the value, most significant first.
+     */
+    void write(long value, int bits) {
+      ensureCapacity(bits);
+      for (int i = bits - 1; i >= 0; i--) {
+        if (((value >>> i) & 1L) != 0) {
+          buffer[bitPosition >>> 3] |= (byte) (0x80 >>> (bitPosition & 7));
+        }
+        bitPosition++;
+      }
+    }
+
+    private void ensureCapacity(int bits) {
+      int required = (bitPosition + bits + 7) >>> 3;
+      if (required > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+      }
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, (bitPosition + 7) >>> 3);
+    }
+  }
+
+  private static class BitReader {
+    private final byte[] buffer;
+    private int bitPosition = 0;
+
+    BitReader(byte[] buffer) {
+      this.buffer = buffer;
+    }
+
+    long read(int bits) throws IOException {
+      if (bitPosition + bits > buffer.length * 8) {
+        throw new IOException("Truncated metric series");
+      }
+      long value = 0;
+      for (int i = 0; i < bits; i++) {
+        int bit = (buffer[bitPosition >>> 3] >>> (7 - (bitPosition & 7))) & 1;
+        value = (value << 1) | bit;
+        bitPosition++;
+      }
+      return value;
+    }
+
+    long readSigned(int bits) throws IOException {
+      long value = read(bits);
+      // sign extend
+      return (value << (64 - bits)) >> (64 - bits);
+    }
+  }
+}
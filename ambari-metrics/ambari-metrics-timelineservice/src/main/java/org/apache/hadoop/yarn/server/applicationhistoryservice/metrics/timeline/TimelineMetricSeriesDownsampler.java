@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function.ReadFunction;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buckets the series of a query result so that no more than the requested
+ * number of points, or one point per step, is returned. Each bucket is
+ * stamped with the time its step starts, steps are aligned to the epoch so
+ * that the buckets of consecutive queries line up.
+ */
+public class TimelineMetricSeriesDownsampler {
+
+  private final Integer points;
+  private final Long stepMillis;
+  private final ReadFunction function;
+
+  /**
+   * @param points   the maximum number of points of a series, or null
+   * @param step     the bucket size in seconds, or null
+   * @param function avg, min, max or sum of the points in a bucket, avg if
+   *                 null
+   */
+  public TimelineMetricSeriesDownsampler(Integer points, Long step, String function) {
+    if (points == null && step == null) {
+      throw new IllegalArgumentException("Either the number of points or " +
+        "the step is needed to downsample.");
+    }
+    if ((points != null && points <= 0) || (step != null && step <= 0)) {
+      throw new IllegalArgumentException("points and step should be positive.");
+    }
+    this.points = points;
+    this.stepMillis = step == null ? null : TimeUnit.SECONDS.toMillis(step);
+
+    ReadFunction readFunction = ReadFunction.getFunction(function);
+    this.function = readFunction == ReadFunction.VALUE ? ReadFunction.AVG : readFunction;
+  }
+
+  /**
+   * The bucket size for the time range of a query, the step if set or else
+   * the smallest whole second to fit the points.
+   */
+  public long getStepMillis(long startTime, long endTime) {
+    if (stepMillis != null) {
+      return stepMillis;
+    }
+    long range = Math.max(1, endTime - startTime);
+    long step = (range + points - 1) / points;
+    return Math.max(1000, (step + 999) / 1000 * 1000);
+  }
+
+  /**
+   * The number of points of a series over the time range of a query.
+   */
+  public int getPoints(long startTime, long endTime) {
+    if (points != null) {
+      return points;
+    }
+    long range = Math.max(1, endTime - startTime);
+    return (int) Math.min(Integer.MAX_VALUE, (range + stepMillis - 1) / stepMillis);
+  }
+
+  public void downsample(TimelineMetrics metrics, long startTime, long endTime) {
+    long step = getStepMillis(startTime, endTime);
+    for (TimelineMetric metric : metrics.getMetrics()) {
+      TimelineMetricSeries series = metric.getMetricSeries();
+      if (series != null && series.size() > 1) {
+        metric.setMetricValues(downsample(series, step));
+      }
+    }
+  }
+
+  TimelineMetricSeries downsample(TimelineMetricSeries series, long step) {
+    if (function == ReadFunction.AVG) {
+      return series.downsample(step);
+    }
+
+    TimelineMetricSeries downsampled = new TimelineMetricSeries();
+    int i = 0;
+    while (i < series.size()) {
+      long timestamp = series.getTimestamp(i);
+      long bucket = timestamp - (timestamp % step + step) % step;
+      Double value = null;
+      for (; i < series.size() && series.getTimestamp(i) < bucket + step; i++) {
+        if (!series.isNull(i)) {
+          value = value == null ? series.getValue(i) : aggregate(value, series.getValue(i));
+        }
+      }
+      downsampled.put(bucket, value);
+    }
+    return downsampled;
+  }
+
+  private double aggregate(double value, double other) {
+    switch (function) {
+      case MIN:
+        return Math.min(value, other);
+      case MAX:
+        return Math.max(value, other);
+      default:
+        return value + other;
+    }
+  }
+}
@@ -47,6 +47,20 @@ public interface TimelineMetricStore {
       Long endTime, Precision precision, Integer limit, boolean groupedByHosts)
     throws SQLException, IOException;
 
+  /**
+   * Same as {@link #getTimelineMetrics(List, String, String, String, Long,
+   * Long, Precision, Integer, boolean)}, with the series bucketed by the
+   * downsampler, and only for the top hosts of each metric if a
+   * {@link TopNConfig} is given.
+   *
+   * @param downsampler Buckets the series, or null
+   * @param topNConfig Number of hosts and function to rank them by, or null
+   */
+  TimelineMetrics getTimelineMetrics(List<String> metricNames, String hostname,
+      String applicationId, String instanceId, Long startTime,
+      Long endTime, Precision precision, Integer limit, boolean groupedByHosts,
+      TimelineMetricSeriesDownsampler downsampler, TopNConfig topNConfig)
+    throws SQLException, IOException;
 
   /**
    * Return all records for a single metric satisfying the filter criteria.
@@ -0,0 +1,498 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.Interns;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.INGESTION_BATCH_ROWS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.INGESTION_BUFFER_MAX_DATAPOINTS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.INGESTION_BUFFER_OVERFLOW_POLICY;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.INGESTION_FLUSH_INTERVAL;
+
+/**
+ * Buffers the metrics posted by the sinks so that the POST can be
+ * acknowledged right away instead of waiting for HBase. Metrics of the same
+ * name, host, app and instance posted before the next flush are merged into
+ * one row. The buffer is written by a background thread every
+ * {@link TimelineMetricConfiguration#INGESTION_FLUSH_INTERVAL} seconds, or
+ * sooner when it holds a full batch of rows.
+ * <p/>
+ * The buffer holds at most
+ * {@link TimelineMetricConfiguration#INGESTION_BUFFER_MAX_DATAPOINTS}
+ * datapoints. Metrics which don't fit are either written by the posting
+ * thread, as without the buffer, or dropped, depending on
+ * {@link TimelineMetricConfiguration#INGESTION_BUFFER_OVERFLOW_POLICY}.
+ * <p/>
+ * The buffered, flushed, written through and dropped counts are published
+ * as a metrics source.
+ */
+public class TimelineMetricsIngestionBuffer implements MetricsSource {
+  private static final Log LOG = LogFactory.getLog(TimelineMetricsIngestionBuffer.class);
+
+  public static final String METRICS_SOURCE_NAME = "TimelineMetricsIngestionBuffer";
+
+  /**
+   * What to do with metrics which don't fit in the buffer.
+   */
+  public enum OverflowPolicy {
+    /**
+     * Write them to HBase in the posting thread.
+     */
+    WRITE_THROUGH,
+    /**
+     * Drop them.
+     */
+    DROP
+  }
+
+  private final PhoenixHBaseAccessor hBaseAccessor;
+  private final long maxDatapoints;
+  private final OverflowPolicy overflowPolicy;
+  private final long flushIntervalMillis;
+  private final int flushRows;
+
+  private final Object lock = new Object();
+  private final Object flushLock = new Object();
+  private Map<MetricKey, TimelineMetric> pendingMetrics =
+    new LinkedHashMap<MetricKey, TimelineMetric>();
+  private long pendingDatapoints = 0;
+
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
+  private final AtomicBoolean overflowLogged = new AtomicBoolean();
+  private ScheduledExecutorService executorService;
+
+  private final AtomicLong receivedCount = new AtomicLong();
+  private final AtomicLong coalescedCount = new AtomicLong();
+  private final AtomicLong flushedCount = new AtomicLong();
+  private final AtomicLong writtenThroughCount = new AtomicLong();
+  private final AtomicLong droppedCount = new AtomicLong();
+  private final AtomicLong flushFailureCount = new AtomicLong();
+  private volatile long lastFlushTime = 0;
+  private volatile int lastFlushSize = 0;
+
+  public TimelineMetricsIngestionBuffer(PhoenixHBaseAccessor hBaseAccessor,
+                                        Configuration metricsConf) {
+    this.hBaseAccessor = hBaseAccessor;
+    this.maxDatapoints = metricsConf.getLong(INGESTION_BUFFER_MAX_DATAPOINTS, 500000);
+    this.overflowPolicy = OverflowPolicy.valueOf(metricsConf.get(
+      INGESTION_BUFFER_OVERFLOW_POLICY, OverflowPolicy.WRITE_THROUGH.name()).trim().toUpperCase());
+    this.flushIntervalMillis = SECONDS.toMillis(
+      Math.max(1, metricsConf.getInt(INGESTION_FLUSH_INTERVAL, 5)));
+    this.flushRows = metricsConf.getInt(INGESTION_BATCH_ROWS, 10000);
+  }
+
+  /**
+   * Start writing the buffer in the background.
+   */
+  public synchronized void start() {
+    if (executorService != null) {
+      return;
+    }
+    executorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "timeline-metrics-ingestion");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executorService.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        flushQuietly();
+      }
+    }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+
+    LOG.info("Buffering posted metrics, flushInterval = " + flushIntervalMillis +
+      " ms, maxDatapoints = " + maxDatapoints + ", overflowPolicy = " + overflowPolicy);
+  }
+
+  /**
+   * Stop the background writes and write what is left in the buffer.
+   */
+  public void stop() {
+    ScheduledExecutorService executorService;
+    synchronized (this) {
+      executorService = this.executorService;
+      this.executorService = null;
+    }
+    if (executorService != null) {
+      executorService.shutdown();
+      try {
+        executorService.awaitTermination(flushIntervalMillis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    flushQuietly();
+  }
+
+  /**
+   * Add the given metrics to the buffer.
+   *
+   * @param metrics the posted metrics
+   *
+   * @throws SQLException if metrics which don't fit can't be written
+   * @throws IOException if metrics which don't fit can't be written
+   */
+  public void add(TimelineMetrics metrics) throws SQLException, IOException {
+    List<TimelineMetric> timelineMetrics = metrics.getMetrics();
+    if (timelineMetrics == null || timelineMetrics.isEmpty()) {
+      return;
+    }
+
+    List<TimelineMetric> overflow = null;
+    boolean flush;
+
+    synchronized (lock) {
+      for (TimelineMetric metric : timelineMetrics) {
+        int datapoints = getDatapointCount(metric);
+        if (pendingDatapoints + datapoints > maxDatapoints) {
+          if (overflow == null) {
+            overflow = new ArrayList<TimelineMetric>();
+          }
+          overflow.add(metric);
+          continue;
+        }
+        merge(metric);
+        pendingDatapoints += datapoints;
+      }
+      flush = pendingMetrics.size() >= flushRows;
+    }
+    receivedCount.addAndGet(timelineMetrics.size());
+
+    if (overflow != null) {
+      handleOverflow(overflow);
+    }
+    if (flush) {
+      scheduleFlush();
+    }
+  }
+
+  /**
+   * Write all buffered metrics.
+   *
+   * @return the number of rows written
+   *
+   * @throws SQLException if the metrics can't be written
+   * @throws IOException if the metrics can't be written
+   */
+  public int flush() throws SQLException, IOException {
+    synchronized (flushLock) {
+      Map<MetricKey, TimelineMetric> metrics;
+      synchronized (lock) {
+        if (pendingMetrics.isEmpty()) {
+          return 0;
+        }
+        metrics = pendingMetrics;
+        pendingMetrics = new LinkedHashMap<MetricKey, TimelineMetric>();
+        pendingDatapoints = 0;
+      }
+
+      TimelineMetrics batch = new TimelineMetrics();
+      batch.setMetrics(new ArrayList<TimelineMetric>(metrics.values()));
+
+      long start = System.currentTimeMillis();
+      try {
+        hBaseAccessor.insertMetricRecords(batch);
+      } catch (SQLException e) {
+        requeue(batch.getMetrics());
+        throw e;
+      } catch (IOException e) {
+        requeue(batch.getMetrics());
+        throw e;
+      } catch (RuntimeException e) {
+        requeue(batch.getMetrics());
+        throw e;
+      }
+
+      lastFlushTime = System.currentTimeMillis() - start;
+      lastFlushSize = metrics.size();
+      flushedCount.addAndGet(metrics.size());
+      overflowLogged.set(false);
+
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Wrote " + metrics.size() + " buffered metrics in " + lastFlushTime +
+          " ms, " + getPendingCount() + " pending");
+      }
+      return metrics.size();
+    }
+  }
+
+  private void flushQuietly() {
+    flushScheduled.set(false);
+    try {
+      flush();
+    } catch (Exception e) {
+      LOG.error("Unable to write buffered metrics, " + getPendingCount() +
+        " metrics are kept for the next attempt", e);
+    }
+  }
+
+  private void scheduleFlush() {
+    ScheduledExecutorService executorService;
+    synchronized (this) {
+      executorService = this.executorService;
+    }
+    if (executorService != null && flushScheduled.compareAndSet(false, true)) {
+      try {
+        executorService.execute(new Runnable() {
+          @Override
+          public void run() {
+            flushQuietly();
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        flushScheduled.set(false);
+      }
+    }
+  }
+
+  /**
+   * Merge the metric with the buffered metric of the same name, host, app and
+   * instance. Must be called holding the lock.
+   */
+  private void merge(TimelineMetric metric) {
+    MetricKey key = new MetricKey(metric);
+    TimelineMetric pending = pendingMetrics.get(key);
+    if (pending == null) {
+      pendingMetrics.put(key, metric);
+    } else {
+      if (metric.getMetricValues() != null) {
+        if (pending.getMetricValues() == null) {
+          pending.setMetricValues(metric.getMetricValues());
+        } else {
+          pending.addMetricValues(metric.getMetricValues());
+        }
+      }
+      pending.setStartTime(Math.min(pending.getStartTime(), metric.getStartTime()));
+      coalescedCount.incrementAndGet();
+    }
+  }
+
+  private static int getDatapointCount(TimelineMetric metric) {
+    Map<Long, Double> metricValues = metric.getMetricValues();
+    return metricValues == null ? 0 : metricValues.size();
+  }
+
+  /**
+   * Put metrics which couldn't be written back into the buffer, as far as
+   * they fit.
+   */
+  private void requeue(List<TimelineMetric> metrics) {
+    flushFailureCount.incrementAndGet();
+
+    int dropped = 0;
+    synchronized (lock) {
+      for (TimelineMetric metric : metrics) {
+        int datapoints = getDatapointCount(metric);
+        if (pendingDatapoints + datapoints > maxDatapoints) {
+          dropped++;
+          continue;
+        }
+        merge(metric);
+        pendingDatapoints += datapoints;
+      }
+    }
+    if (dropped > 0) {
+      droppedCount.addAndGet(dropped);
+      LOG.warn("Dropped " + dropped + " metrics which couldn't be written, the buffer is full");
+    }
+  }
+
+  private void handleOverflow(List<TimelineMetric> overflow)
+    throws SQLException, IOException {
+
+    if (overflowLogged.compareAndSet(false, true)) {
+      LOG.warn("Metrics buffer is full (" + maxDatapoints + " datapoints), " +
+        (overflowPolicy == OverflowPolicy.DROP ? "dropping" : "directly writing") +
+        " metrics until the next flush");
+    }
+
+    if (overflowPolicy == OverflowPolicy.DROP) {
+      droppedCount.addAndGet(overflow.size());
+      return;
+    }
+
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.setMetrics(overflow);
+    hBaseAccessor.insertMetricRecords(metrics);
+    writtenThroughCount.addAndGet(overflow.size());
+  }
+
+  /**
+   * @return the number of buffered rows
+   */
+  public int getPendingCount() {
+    synchronized (lock) {
+      return pendingMetrics.size();
+    }
+  }
+
+  /**
+   * @return the number of buffered datapoints
+   */
+  public long getPendingDatapoints() {
+    synchronized (lock) {
+      return pendingDatapoints;
+    }
+  }
+
+  /**
+   * @return the number of metrics posted
+   */
+  public long getReceivedCount() {
+    return receivedCount.get();
+  }
+
+  /**
+   * @return the number of posted metrics merged into an already buffered row
+   */
+  public long getCoalescedCount() {
+    return coalescedCount.get();
+  }
+
+  /**
+   * @return the number of rows written by flushes
+   */
+  public long getFlushedCount() {
+    return flushedCount.get();
+  }
+
+  /**
+   * @return the number of metrics written by the posting thread because the
+   *         buffer was full
+   */
+  public long getWrittenThroughCount() {
+    return writtenThroughCount.get();
+  }
+
+  /**
+   * @return the number of metrics dropped because the buffer was full
+   */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  /**
+   * @return the number of flushes which failed
+   */
+  public long getFlushFailureCount() {
+    return flushFailureCount.get();
+  }
+
+  /**
+   * @return the duration in milliseconds of the last flush
+   */
+  public long getLastFlushTime() {
+    return lastFlushTime;
+  }
+
+  /**
+   * @return the number of rows written by the last flush
+   */
+  public int getLastFlushSize() {
+    return lastFlushSize;
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    collector.addRecord(METRICS_SOURCE_NAME)
+      .setContext("timeline")
+      .addGauge(Interns.info("PendingRows", "Number of buffered rows"), getPendingCount())
+      .addGauge(Interns.info("PendingDatapoints", "Number of buffered datapoints"),
+        getPendingDatapoints())
+      .addCounter(Interns.info("Received", "Metrics posted"), getReceivedCount())
+      .addCounter(Interns.info("Coalesced", "Posted metrics merged into a " +
+        "buffered row"), getCoalescedCount())
+      .addCounter(Interns.info("Flushed", "Rows written by flushes"), getFlushedCount())
+      .addCounter(Interns.info("WrittenThrough", "Metrics written by the posting " +
+        "thread because the buffer was full"), getWrittenThroughCount())
+      .addCounter(Interns.info("Dropped", "Metrics dropped because the buffer " +
+        "was full"), getDroppedCount())
+      .addCounter(Interns.info("FlushFailures", "Flushes which failed"),
+        getFlushFailureCount())
+      .addGauge(Interns.info("LastFlushTime", "Duration of the last flush in " +
+        "milliseconds"), getLastFlushTime())
+      .addGauge(Interns.info("LastFlushSize", "Rows written by the last flush"),
+        getLastFlushSize());
+  }
+
+  /**
+   * Identifies the row a metric is written to, apart from the server time.
+   */
+  private static final class MetricKey {
+    private final String metricName;
+    private final String hostName;
+    private final String appId;
+    private final String instanceId;
+
+    private MetricKey(TimelineMetric metric) {
+      this.metricName = metric.getMetricName();
+      this.hostName = metric.getHostName();
+      this.appId = metric.getAppId();
+      this.instanceId = metric.getInstanceId();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      MetricKey key = (MetricKey) o;
+
+      return equal(metricName, key.metricName) && equal(hostName, key.hostName)
+        && equal(appId, key.appId) && equal(instanceId, key.instanceId);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = metricName != null ? metricName.hashCode() : 0;
+      result = 31 * result + (hostName != null ? hostName.hashCode() : 0);
+      result = 31 * result + (appId != null ? appId.hashCode() : 0);
+      result = 31 * result + (instanceId != null ? instanceId.hashCode() : 0);
+      return result;
+    }
+
+    private static boolean equal(String a, String b) {
+      return a == null ? b == null : a.equals(b);
+    }
+  }
+}
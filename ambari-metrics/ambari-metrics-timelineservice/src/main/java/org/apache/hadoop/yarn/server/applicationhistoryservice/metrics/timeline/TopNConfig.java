@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function.ReadFunction;
+
+/**
+ * Query for the series of only the hosts with the highest values of a
+ * metric over the time range.
+ */
+public class TopNConfig {
+
+  private final int topN;
+  private final ReadFunction function;
+
+  /**
+   * @param topN     the number of hosts
+   * @param function avg, min, max or sum to rank the hosts by, avg if null
+   */
+  public TopNConfig(int topN, String function) {
+    if (topN <= 0) {
+      throw new IllegalArgumentException("topN should be positive.");
+    }
+    this.topN = topN;
+    ReadFunction readFunction = ReadFunction.getFunction(function);
+    this.function = readFunction == ReadFunction.VALUE ? ReadFunction.AVG : readFunction;
+  }
+
+  public int getTopN() {
+    return topN;
+  }
+
+  public ReadFunction getFunction() {
+    return function;
+  }
+
+  /**
+   * The value of a host over the selected rows.
+   */
+  public String getRankExpression() {
+    switch (function) {
+      case MIN:
+        return "MIN(METRIC_MIN)";
+      case MAX:
+        return "MAX(METRIC_MAX)";
+      case SUM:
+        return "SUM(METRIC_SUM)";
+      default:
+        return "SUM(METRIC_SUM) / SUM(METRIC_COUNT)";
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "TopNConfig{" +
+      "topN=" + topN +
+      ", function=" + function +
+      '}';
+  }
+}
@@ -22,6 +22,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricDictionary;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL;
 import org.apache.hadoop.yarn.util.Clock;
@@ -35,6 +36,7 @@ import java.sql.SQLException;
 import java.util.Date;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_CHECKPOINT_DELAY;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_SAVE_BATCH_SIZE;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.RESULTSET_FETCH_SIZE;
 
 /**
@@ -47,6 +49,7 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
   private Clock clock;
   protected final long checkpointDelayMillis;
   protected final Integer resultsetFetchSize;
+  protected final int saveBatchSize;
   protected Configuration metricsConf;
 
   private String checkpointLocation;
@@ -56,6 +59,12 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
   protected String tableName;
   protected String outputTableName;
   protected Long nativeTimeRangeDelay;
+  private volatile Long catchUpEndTime;
+  private Integer shard;
+  private String metricNameFrom;
+  private String metricNameTo;
+  private volatile long lastCheckpointTime = -1;
+  private volatile long lastRunMillis = 0;
 
   public AbstractTimelineAggregator(PhoenixHBaseAccessor hBaseAccessor,
                                     Configuration metricsConf, Clock clk) {
@@ -64,6 +73,7 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
     this.checkpointDelayMillis = SECONDS.toMillis(
       metricsConf.getInt(AGGREGATOR_CHECKPOINT_DELAY, 120));
     this.resultsetFetchSize = metricsConf.getInt(RESULTSET_FETCH_SIZE, 2000);
+    this.saveBatchSize = metricsConf.getInt(AGGREGATOR_SAVE_BATCH_SIZE, 10000);
     this.LOG = LogFactory.getLog(this.getClass());
     this.clock = clk;
   }
@@ -92,6 +102,25 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
     this.nativeTimeRangeDelay =  nativeTimeRangeDelay;
   }
 
+  /**
+   * Dictionary to translate the metric names and hostnames read.
+   */
+  protected TimelineMetricDictionary getDictionary() {
+    return hBaseAccessor == null ? null : hBaseAccessor.getDictionary();
+  }
+
+  /**
+   * Whether all rows of the metric were read, the rows being ordered by the
+   * stored METRIC_NAME. While the encoding is rolled out a metric is stored
+   * both by name and by key, and the two sets of rows are apart.
+   */
+  protected boolean isMetricComplete(String metricName, String storedMetricName) {
+    TimelineMetricDictionary dictionary = getDictionary();
+    String lastStoredMetricName = dictionary == null ? metricName :
+      dictionary.getLastStoredMetricName(metricName);
+    return lastStoredMetricName.compareTo(storedMetricName) < 0;
+  }
+
   @Override
   public void run() {
     LOG.info("Started Timeline aggregator thread @ " + new Date());
@@ -108,23 +137,47 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
     }
   }
 
+  @Override
+  public long runOnce() {
+    return runOnce(getSleepIntervalMillis());
+  }
+
   /**
    * Access relaxed for tests
    */
   public long runOnce(Long SLEEP_INTERVAL) {
+    long sleepTime = doRunOnce(SLEEP_INTERVAL);
+    lastCheckpointTime = readCheckPoint();
+    return sleepTime;
+  }
+
+  private long doRunOnce(Long SLEEP_INTERVAL) {
     long currentTime = clock.getTime();
     long lastCheckPointTime = readLastCheckpointSavingOnFirstRun(currentTime);
     long sleepTime = SLEEP_INTERVAL;
 
+    Long catchUpEndTime = this.catchUpEndTime;
+    if (lastCheckPointTime != -1 && catchUpEndTime != null
+        && lastCheckPointTime >= catchUpEndTime) {
+      // Aggregated at ingest time from here on
+      LOG.debug("Caught up, last check point time: " + lastCheckPointTime);
+      return sleepTime;
+    }
+
     if (lastCheckPointTime != -1) {
       LOG.info("Last check point time: " + lastCheckPointTime + ", lagBy: "
         + ((clock.getTime() - lastCheckPointTime) / 1000)
         + " seconds.");
 
+      long endTime = lastCheckPointTime + SLEEP_INTERVAL;
+      if (catchUpEndTime != null) {
+        endTime = Math.min(endTime, catchUpEndTime);
+      }
+
       long startTime = clock.getTime();
-      boolean success = doWork(lastCheckPointTime,
-        lastCheckPointTime + SLEEP_INTERVAL);
+      boolean success = doWork(lastCheckPointTime, endTime);
       long executionTime = clock.getTime() - startTime;
+      lastRunMillis = executionTime;
       long delta = SLEEP_INTERVAL - executionTime;
 
       if (delta > 0) {
@@ -146,8 +199,7 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
           // it has to be verified so it is not a time in the future
           // checkpoint says what was aggregated, and there is no way
           // the future metrics were aggregated!
-          saveCheckPoint(Math.min(currentTime, lastCheckPointTime +
-            SLEEP_INTERVAL));
+          saveCheckPoint(Math.min(currentTime, endTime));
         } catch (IOException io) {
           LOG.warn("Error saving checkpoint, restarting aggregation at " +
             "previous checkpoint.");
@@ -231,6 +283,9 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
 
     boolean success = true;
     Condition condition = prepareMetricQueryCondition(startTime, endTime);
+    if (metricNameFrom != null || metricNameTo != null) {
+      condition.setMetricNameRange(metricNameFrom, metricNameTo);
+    }
 
     Connection conn = null;
     PreparedStatement stmt = null;
@@ -286,6 +341,48 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
 
   protected abstract void aggregate(ResultSet rs, long startTime, long endTime) throws IOException, SQLException;
 
+  /**
+   * Only aggregate until the given time, from which on the metrics are
+   * aggregated at ingest time by {@link TimelineMetricIngestAggregator}.
+   * Once the checkpoint reaches it, the aggregator only waits.
+   *
+   * @param catchUpEndTime the end of the catch-up, null to always aggregate
+   */
+  @Override
+  public void setCatchUpEndTime(Long catchUpEndTime) {
+    this.catchUpEndTime = catchUpEndTime;
+  }
+
+  /**
+   * Only aggregate the metrics whose name is in the given range, so that the
+   * scan is split between several aggregators with their own checkpoints.
+   *
+   * @param shard the index of the shard
+   * @param metricNameFrom inclusive lower bound, null for none
+   * @param metricNameTo exclusive upper bound, null for none
+   */
+  public void setShard(int shard, String metricNameFrom, String metricNameTo) {
+    this.shard = shard;
+    this.metricNameFrom = metricNameFrom;
+    this.metricNameTo = metricNameTo;
+  }
+
+  @Override
+  public String getName() {
+    return shard == null ? outputTableName : outputTableName + "_shard" + shard;
+  }
+
+  @Override
+  public long getLagMillis() {
+    long checkpoint = lastCheckpointTime;
+    return checkpoint == -1 ? 0 : Math.max(0, clock.getTime() - checkpoint);
+  }
+
+  @Override
+  public long getLastRunMillis() {
+    return lastRunMillis;
+  }
+
   protected Long getSleepIntervalMillis() {
     return sleepIntervalMillis;
   }
@@ -18,6 +18,8 @@
 package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators;
 
 
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+
 import java.util.Map;
 
 /**
@@ -26,6 +28,9 @@ import java.util.Map;
 public class AggregatorUtils {
 
   public static double[] calculateAggregates(Map<Long, Double> metricValues) {
+    if (metricValues instanceof TimelineMetricSeries) {
+      return calculateAggregates((TimelineMetricSeries) metricValues);
+    }
     double[] values = new double[4];
     double max = Double.MIN_VALUE;
     double min = Double.MAX_VALUE;
@@ -56,4 +61,29 @@ public class AggregatorUtils {
     return values;
   }
 
+  public static double[] calculateAggregates(TimelineMetricSeries metricValues) {
+    double max = Double.MIN_VALUE;
+    double min = Double.MAX_VALUE;
+    double sum = 0.0;
+
+    for (int i = 0; i < metricValues.size(); i++) {
+      if (!metricValues.isNull(i)) {
+        double value = metricValues.getValue(i);
+        if (value > max) {
+          max = value;
+        }
+        if (value < min) {
+          min = value;
+        }
+        sum += value;
+      }
+    }
+
+    return new double[] {
+      sum,
+      max != Double.MIN_VALUE ? max : 0.0,
+      min != Double.MAX_VALUE ? min : 0.0,
+      metricValues.size()
+    };
+  }
 }
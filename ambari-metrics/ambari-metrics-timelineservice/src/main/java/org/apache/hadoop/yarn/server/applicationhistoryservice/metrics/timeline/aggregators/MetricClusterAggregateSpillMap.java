@@ -0,0 +1,386 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Cluster aggregates of keys that are not read in row order, such as the
+ * app level aggregates of host metrics. At most the memory budget of
+ * aggregates is held on the heap, beyond which they are written sorted by
+ * key to a spill file. The spill files and the aggregates in memory are
+ * merged in key order once done and handed over in batches, so that the
+ * heap used is bounded by the budget rather than by the number of keys.
+ */
+public class MetricClusterAggregateSpillMap {
+  private static final Log LOG = LogFactory.getLog(MetricClusterAggregateSpillMap.class);
+
+  static final Comparator<TimelineClusterMetric> KEY_ORDER =
+    new Comparator<TimelineClusterMetric>() {
+      @Override
+      public int compare(TimelineClusterMetric o1, TimelineClusterMetric o2) {
+        int result = o1.getMetricName().compareTo(o2.getMetricName());
+        if (result == 0) {
+          result = compareNullable(o1.getAppId(), o2.getAppId());
+        }
+        if (result == 0) {
+          result = compareNullable(o1.getInstanceId(), o2.getInstanceId());
+        }
+        if (result == 0) {
+          result = o1.getTimestamp() < o2.getTimestamp() ? -1 :
+            (o1.getTimestamp() == o2.getTimestamp() ? 0 : 1);
+        }
+        return result;
+      }
+    };
+
+  private final int memoryBudget;
+  private final File spillDir;
+  private final Map<TimelineClusterMetric, MetricClusterAggregate> aggregates =
+    new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
+  private final List<File> spillFiles = new ArrayList<File>();
+  private boolean spillFailed = false;
+
+  /**
+   * @param memoryBudget the number of aggregates held in memory
+   * @param spillDir     the directory of the spill files
+   */
+  public MetricClusterAggregateSpillMap(int memoryBudget, File spillDir) {
+    this.memoryBudget = Math.max(1, memoryBudget);
+    this.spillDir = spillDir;
+  }
+
+  /**
+   * Add the value of a host to the aggregate of the key.
+   */
+  public void update(TimelineClusterMetric key, double value) {
+    MetricClusterAggregate aggregate = aggregates.get(key);
+    if (aggregate == null) {
+      aggregate = new MetricClusterAggregate(value, 1, null, value, value);
+      aggregates.put(key, aggregate);
+    } else {
+      aggregate.updateSum(value);
+      aggregate.updateNumberOfHosts(1);
+      aggregate.updateMax(value);
+      aggregate.updateMin(value);
+    }
+
+    if (aggregates.size() > memoryBudget && !spillFailed) {
+      try {
+        spill();
+      } catch (IOException e) {
+        // Keep going in memory rather than losing the aggregates
+        LOG.error("Unable to spill aggregates to " + spillDir +
+          ", keeping them in memory.", e);
+        spillFailed = true;
+      }
+    }
+  }
+
+  public int getSpillFileCount() {
+    return spillFiles.size();
+  }
+
+  public boolean isEmpty() {
+    return aggregates.isEmpty() && spillFiles.isEmpty();
+  }
+
+  /**
+   * All the aggregates at once, to be used only where they are known to fit
+   * in memory.
+   */
+  public Map<TimelineClusterMetric, MetricClusterAggregate> toMap() throws IOException {
+    final Map<TimelineClusterMetric, MetricClusterAggregate> all =
+      new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
+    try {
+      drain(Integer.MAX_VALUE, new BatchHandler() {
+        @Override
+        public void handle(Map<TimelineClusterMetric, MetricClusterAggregate> batch) {
+          all.putAll(batch);
+        }
+      });
+    } catch (SQLException e) {
+      // Not thrown by the handler
+      throw new IOException(e);
+    }
+    return all;
+  }
+
+  /**
+   * Merge the spill files and the aggregates in memory in key order and
+   * hand them over in batches of at most the given size. Empties the map.
+   */
+  public void drain(int batchSize, BatchHandler handler) throws IOException, SQLException {
+    if (spillFiles.isEmpty()) {
+      if (!aggregates.isEmpty()) {
+        Map<TimelineClusterMetric, MetricClusterAggregate> batch =
+          new HashMap<TimelineClusterMetric, MetricClusterAggregate>(aggregates);
+        aggregates.clear();
+        handleInBatches(batch, batchSize, handler);
+      }
+      return;
+    }
+
+    List<Run> runs = new ArrayList<Run>();
+    try {
+      for (File spillFile : spillFiles) {
+        runs.add(new FileRun(spillFile));
+      }
+      runs.add(new MemoryRun(sortedEntries()));
+      aggregates.clear();
+
+      PriorityQueue<Run> queue = new PriorityQueue<Run>(runs.size(), new Comparator<Run>() {
+        @Override
+        public int compare(Run o1, Run o2) {
+          return KEY_ORDER.compare(o1.key, o2.key);
+        }
+      });
+      for (Run run : runs) {
+        if (run.next()) {
+          queue.add(run);
+        }
+      }
+
+      Map<TimelineClusterMetric, MetricClusterAggregate> batch =
+        new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
+      TimelineClusterMetric currentKey = null;
+      MetricClusterAggregate current = null;
+      while (!queue.isEmpty()) {
+        Run run = queue.poll();
+        if (currentKey != null && KEY_ORDER.compare(currentKey, run.key) == 0) {
+          current.updateAggregates(run.aggregate);
+        } else {
+          if (currentKey != null) {
+            batch.put(currentKey, current);
+            if (batch.size() >= batchSize) {
+              handler.handle(batch);
+              batch = new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
+            }
+          }
+          currentKey = run.key;
+          current = run.aggregate;
+        }
+        if (run.next()) {
+          queue.add(run);
+        }
+      }
+      if (currentKey != null) {
+        batch.put(currentKey, current);
+      }
+      if (!batch.isEmpty()) {
+        handler.handle(batch);
+      }
+    } finally {
+      for (Run run : runs) {
+        run.close();
+      }
+      clear();
+    }
+  }
+
+  /**
+   * Drop the aggregates and delete the spill files.
+   */
+  public void clear() {
+    aggregates.clear();
+    for (File spillFile : spillFiles) {
+      if (!spillFile.delete()) {
+        LOG.warn("Unable to delete spill file " + spillFile);
+      }
+    }
+    spillFiles.clear();
+  }
+
+  private void spill() throws IOException {
+    File spillFile = File.createTempFile("cluster-aggregates", ".spill", spillDir);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+      new FileOutputStream(spillFile)));
+    try {
+      for (Map.Entry<TimelineClusterMetric, MetricClusterAggregate> entry : sortedEntries()) {
+        write(out, entry.getKey(), entry.getValue());
+      }
+    } catch (IOException e) {
+      IOUtils.closeQuietly(out);
+      spillFile.delete();
+      throw e;
+    }
+    out.close();
+
+    LOG.debug("Spilled " + aggregates.size() + " aggregates to " + spillFile);
+    spillFiles.add(spillFile);
+    aggregates.clear();
+  }
+
+  private List<Map.Entry<TimelineClusterMetric, MetricClusterAggregate>> sortedEntries() {
+    List<Map.Entry<TimelineClusterMetric, MetricClusterAggregate>> entries =
+      new ArrayList<Map.Entry<TimelineClusterMetric, MetricClusterAggregate>>(aggregates.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<TimelineClusterMetric, MetricClusterAggregate>>() {
+      @Override
+      public int compare(Map.Entry<TimelineClusterMetric, MetricClusterAggregate> o1,
+                         Map.Entry<TimelineClusterMetric, MetricClusterAggregate> o2) {
+        return KEY_ORDER.compare(o1.getKey(), o2.getKey());
+      }
+    });
+    return entries;
+  }
+
+  private static void handleInBatches(Map<TimelineClusterMetric, MetricClusterAggregate> all,
+                                      int batchSize, BatchHandler handler) throws SQLException {
+    if (all.size() <= batchSize) {
+      handler.handle(all);
+      return;
+    }
+    Map<TimelineClusterMetric, MetricClusterAggregate> batch =
+      new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
+    for (Map.Entry<TimelineClusterMetric, MetricClusterAggregate> entry : all.entrySet()) {
+      batch.put(entry.getKey(), entry.getValue());
+      if (batch.size() >= batchSize) {
+        handler.handle(batch);
+        batch = new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
+      }
+    }
+    if (!batch.isEmpty()) {
+      handler.handle(batch);
+    }
+  }
+
+  private static void write(DataOutputStream out, TimelineClusterMetric key,
+                            MetricClusterAggregate aggregate) throws IOException {
+    out.writeUTF(key.getMetricName());
+    writeNullable(out, key.getAppId());
+    writeNullable(out, key.getInstanceId());
+    out.writeLong(key.getTimestamp());
+    writeNullable(out, key.getType());
+    out.writeDouble(aggregate.getSum());
+    out.writeInt(aggregate.getNumberOfHosts());
+    out.writeDouble(aggregate.getMax());
+    out.writeDouble(aggregate.getMin());
+  }
+
+  private static void writeNullable(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readNullable(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static int compareNullable(String value, String other) {
+    if (value == null) {
+      return other == null ? 0 : -1;
+    }
+    return other == null ? 1 : value.compareTo(other);
+  }
+
+  /**
+   * Takes the merged aggregates, typically to save them.
+   */
+  public interface BatchHandler {
+    void handle(Map<TimelineClusterMetric, MetricClusterAggregate> batch) throws SQLException;
+  }
+
+  /**
+   * Aggregates sorted by key, read one at a time.
+   */
+  private abstract static class Run {
+    TimelineClusterMetric key;
+    MetricClusterAggregate aggregate;
+
+    abstract boolean next() throws IOException;
+
+    void close() {
+    }
+  }
+
+  private static class MemoryRun extends Run {
+    private final Iterator<Map.Entry<TimelineClusterMetric, MetricClusterAggregate>> iterator;
+
+    MemoryRun(List<Map.Entry<TimelineClusterMetric, MetricClusterAggregate>> entries) {
+      this.iterator = entries.iterator();
+    }
+
+    @Override
+    boolean next() {
+      if (!iterator.hasNext()) {
+        return false;
+      }
+      Map.Entry<TimelineClusterMetric, MetricClusterAggregate> entry = iterator.next();
+      key = entry.getKey();
+      aggregate = entry.getValue();
+      return true;
+    }
+  }
+
+  private static class FileRun extends Run {
+    private final DataInputStream in;
+
+    FileRun(File file) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    @Override
+    boolean next() throws IOException {
+      String metricName;
+      try {
+        metricName = in.readUTF();
+      } catch (EOFException e) {
+        return false;
+      }
+      String appId = readNullable(in);
+      String instanceId = readNullable(in);
+      long timestamp = in.readLong();
+      String type = readNullable(in);
+      key = new TimelineClusterMetric(metricName, appId, instanceId, timestamp, type);
+      double sum = in.readDouble();
+      int numberOfHosts = in.readInt();
+      double max = in.readDouble();
+      double min = in.readDouble();
+      aggregate = new MetricClusterAggregate(sum, numberOfHosts, null, max, min);
+      return true;
+    }
+
+    @Override
+    void close() {
+      IOUtils.closeQuietly(in);
+    }
+  }
+}
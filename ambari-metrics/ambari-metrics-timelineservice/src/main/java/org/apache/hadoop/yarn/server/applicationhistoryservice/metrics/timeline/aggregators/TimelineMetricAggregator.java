@@ -31,4 +31,35 @@ public interface TimelineMetricAggregator extends Runnable {
    * @return true/false
    */
   public boolean isDisabled();
+
+  /**
+   * Stop aggregating at the given time, from which on metrics are aggregated
+   * at ingest time.
+   * @param catchUpEndTime end time millis, null to always aggregate
+   */
+  public void setCatchUpEndTime(Long catchUpEndTime);
+
+  /**
+   * Run one aggregation cycle from the last checkpoint.
+   * @return millis to wait before the next cycle
+   */
+  public long runOnce();
+
+  /**
+   * Name of the aggregator, unique among the running aggregators.
+   * @return name
+   */
+  public String getName();
+
+  /**
+   * How far the checkpoint is behind the current time.
+   * @return lag millis, 0 if not known yet
+   */
+  public long getLagMillis();
+
+  /**
+   * Duration of the last aggregation cycle.
+   * @return millis
+   */
+  public long getLastRunMillis();
 }
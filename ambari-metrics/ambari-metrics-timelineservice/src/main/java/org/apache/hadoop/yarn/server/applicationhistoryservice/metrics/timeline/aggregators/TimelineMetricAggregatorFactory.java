@@ -20,8 +20,17 @@ package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline
 import org.apache.commons.io.FilenameUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricDictionary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_SHARDS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_SHARD_BOUNDARIES;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_DAILY_CHECKPOINT_CUTOFF_MULTIPLIER;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_DAILY_DISABLED;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_DAILY_SLEEP_INTERVAL;
@@ -33,6 +42,7 @@ import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.ti
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_MINUTE_SLEEP_INTERVAL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_TIMESLICE_INTERVAL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.DEFAULT_CHECKPOINT_LOCATION;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.DICTIONARY_ENCODING_ENABLED;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_DAILY_CHECKPOINT_CUTOFF_MULTIPLIER;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_DAILY_DISABLED;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_DAILY_SLEEP_INTERVAL;
@@ -70,15 +80,140 @@ public class TimelineMetricAggregatorFactory {
     "timeline-metrics-cluster-aggregator-daily-checkpoint";
 
   /**
-   * Minute based aggregation for hosts.
+   * The characters metric names start with, in key order. The default shard
+   * boundaries are spread evenly over them, so names starting with a digit,
+   * an upper case letter or '#' are split like the lower case ones.
    */
-  public static TimelineMetricAggregator createTimelineMetricAggregatorMinute
-    (PhoenixHBaseAccessor hBaseAccessor, Configuration metricsConf) {
+  static final String METRIC_NAME_CHARACTERS =
+    "#0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz";
 
+  /**
+   * Checkpoint of the minute based aggregation for hosts.
+   */
+  public static String getHostMinuteCheckpointLocation(Configuration metricsConf) {
     String checkpointDir = metricsConf.get(
       TIMELINE_METRICS_AGGREGATOR_CHECKPOINT_DIR, DEFAULT_CHECKPOINT_LOCATION);
-    String checkpointLocation = FilenameUtils.concat(checkpointDir,
+    return FilenameUtils.concat(checkpointDir,
       HOST_AGGREGATE_MINUTE_CHECKPOINT_FILE);
+  }
+
+  /**
+   * Checkpoint of the minute based aggregation for cluster.
+   */
+  public static String getClusterMinuteCheckpointLocation(Configuration metricsConf) {
+    String checkpointDir = metricsConf.get(
+      TIMELINE_METRICS_AGGREGATOR_CHECKPOINT_DIR, DEFAULT_CHECKPOINT_LOCATION);
+    return FilenameUtils.concat(checkpointDir,
+      CLUSTER_AGGREGATOR_CHECKPOINT_FILE);
+  }
+
+  /**
+   * Checkpoints of the minute based aggregation for hosts, one per shard.
+   */
+  public static List<String> getHostMinuteCheckpointLocations(Configuration metricsConf) {
+    return getShardCheckpointLocations(getHostMinuteCheckpointLocation(metricsConf),
+      getMetricNameShardBoundaries(metricsConf).size() + 1,
+      metricsConf.getBoolean(DICTIONARY_ENCODING_ENABLED, false));
+  }
+
+  /**
+   * Checkpoints of the minute based aggregation for cluster, one per shard.
+   */
+  public static List<String> getClusterMinuteCheckpointLocations(Configuration metricsConf) {
+    return getShardCheckpointLocations(getClusterMinuteCheckpointLocation(metricsConf),
+      getMetricNameShardBoundaries(metricsConf).size() + 1,
+      metricsConf.getBoolean(DICTIONARY_ENCODING_ENABLED, false));
+  }
+
+  /**
+   * The metric names at which the minute aggregation scans are split, either
+   * configured or spread over {@link #METRIC_NAME_CHARACTERS} when only the
+   * number of shards is set. With dictionary encoding the leading digits of
+   * the keys are used instead, the rows with full names all fall in the last
+   * shard.
+   */
+  public static List<String> getMetricNameShardBoundaries(Configuration metricsConf) {
+    List<String> boundaries = new ArrayList<String>();
+    String configured = metricsConf.get(AGGREGATOR_SHARD_BOUNDARIES);
+    if (configured != null && !configured.trim().isEmpty()) {
+      for (String boundary : configured.split(",")) {
+        if (!boundary.trim().isEmpty() && !boundaries.contains(boundary.trim())) {
+          boundaries.add(boundary.trim());
+        }
+      }
+      Collections.sort(boundaries);
+      return boundaries;
+    }
+
+    if (metricsConf.getBoolean(DICTIONARY_ENCODING_ENABLED, false)) {
+      int shards = Math.max(1, Math.min(Character.MAX_RADIX,
+        metricsConf.getInt(AGGREGATOR_SHARDS, 1)));
+      for (int i = 1; i < shards; i++) {
+        boundaries.add(TimelineMetricDictionary.ENCODED_KEY_PREFIX +
+          Character.forDigit(i * Character.MAX_RADIX / shards, Character.MAX_RADIX));
+      }
+      return boundaries;
+    }
+
+    int characters = METRIC_NAME_CHARACTERS.length();
+    int shards = Math.max(1, Math.min(characters, metricsConf.getInt(AGGREGATOR_SHARDS, 1)));
+    for (int i = 1; i < shards; i++) {
+      boundaries.add(String.valueOf(METRIC_NAME_CHARACTERS.charAt(i * characters / shards)));
+    }
+    return boundaries;
+  }
+
+  private static List<String> getShardCheckpointLocations(String checkpointLocation,
+                                                          int shards, boolean encoded) {
+    List<String> locations = new ArrayList<String>(shards);
+    if (shards == 1) {
+      locations.add(checkpointLocation);
+    } else {
+      // A different split starts over with new checkpoints, the same number
+      // of shards splits encoded names differently
+      String mode = encoded ? "-encoded" : "";
+      for (int i = 0; i < shards; i++) {
+        locations.add(checkpointLocation + mode + "-shard" + i + "-of-" + shards);
+      }
+    }
+    return locations;
+  }
+
+  /**
+   * Minute based aggregation for hosts, split by metric name.
+   */
+  public static List<TimelineMetricAggregator> createTimelineMetricAggregatorMinuteShards
+    (PhoenixHBaseAccessor hBaseAccessor, Configuration metricsConf) {
+
+    List<String> boundaries = getMetricNameShardBoundaries(metricsConf);
+    List<String> checkpointLocations = getHostMinuteCheckpointLocations(metricsConf);
+    List<TimelineMetricAggregator> shards = new ArrayList<TimelineMetricAggregator>();
+
+    for (int i = 0; i < checkpointLocations.size(); i++) {
+      AbstractTimelineAggregator aggregator = createTimelineMetricAggregatorMinute(
+        hBaseAccessor, metricsConf, checkpointLocations.get(i));
+      if (checkpointLocations.size() > 1) {
+        aggregator.setShard(i, i == 0 ? null : boundaries.get(i - 1),
+          i == boundaries.size() ? null : boundaries.get(i));
+      }
+      shards.add(aggregator);
+    }
+    return shards;
+  }
+
+  /**
+   * Minute based aggregation for hosts.
+   */
+  public static TimelineMetricAggregator createTimelineMetricAggregatorMinute
+    (PhoenixHBaseAccessor hBaseAccessor, Configuration metricsConf) {
+    return createTimelineMetricAggregatorMinute(hBaseAccessor, metricsConf,
+      getHostMinuteCheckpointLocation(metricsConf));
+  }
+
+  private static AbstractTimelineAggregator createTimelineMetricAggregatorMinute
+    (PhoenixHBaseAccessor hBaseAccessor, Configuration metricsConf,
+     String checkpointLocation) {
+
     long sleepIntervalMillis = SECONDS.toMillis(metricsConf.getLong
       (HOST_AGGREGATOR_MINUTE_SLEEP_INTERVAL, 300l));  // 5 mins
 
@@ -159,17 +294,46 @@ public class TimelineMetricAggregatorFactory {
       3600000l);
   }
 
+  /**
+   * Minute based aggregation for cluster, split by metric name. The shards
+   * share which apps run on which hosts, to aggregate host metrics by app.
+   */
+  public static List<TimelineMetricAggregator> createTimelineClusterAggregatorMinuteShards(
+      PhoenixHBaseAccessor hBaseAccessor, Configuration metricsConf) {
+
+    List<String> boundaries = getMetricNameShardBoundaries(metricsConf);
+    List<String> checkpointLocations = getClusterMinuteCheckpointLocations(metricsConf);
+    List<TimelineMetricAggregator> shards = new ArrayList<TimelineMetricAggregator>();
+    ConcurrentMap<String, List<String>> hostedAppsMap =
+      new ConcurrentHashMap<String, List<String>>();
+
+    for (int i = 0; i < checkpointLocations.size(); i++) {
+      AbstractTimelineAggregator aggregator = createTimelineClusterAggregatorMinute(
+        hBaseAccessor, metricsConf, checkpointLocations.get(i),
+        new TimelineMetricAppAggregator(metricsConf, hostedAppsMap));
+      if (checkpointLocations.size() > 1) {
+        aggregator.setShard(i, i == 0 ? null : boundaries.get(i - 1),
+          i == boundaries.size() ? null : boundaries.get(i));
+      }
+      shards.add(aggregator);
+    }
+    return shards;
+  }
+
   /**
    * Minute based aggregation for cluster.
    */
   public static TimelineMetricAggregator createTimelineClusterAggregatorMinute(
       PhoenixHBaseAccessor hBaseAccessor, Configuration metricsConf) {
+    return createTimelineClusterAggregatorMinute(hBaseAccessor, metricsConf,
+      getClusterMinuteCheckpointLocation(metricsConf),
+      new TimelineMetricAppAggregator(metricsConf));
+  }
 
-    String checkpointDir = metricsConf.get(
-      TIMELINE_METRICS_AGGREGATOR_CHECKPOINT_DIR, DEFAULT_CHECKPOINT_LOCATION);
+  private static AbstractTimelineAggregator createTimelineClusterAggregatorMinute(
+      PhoenixHBaseAccessor hBaseAccessor, Configuration metricsConf,
+      String checkpointLocation, TimelineMetricAppAggregator appAggregator) {
 
-    String checkpointLocation = FilenameUtils.concat(checkpointDir,
-      CLUSTER_AGGREGATOR_CHECKPOINT_FILE);
 
     long sleepIntervalMillis = SECONDS.toMillis(metricsConf.getLong
       (CLUSTER_AGGREGATOR_MINUTE_SLEEP_INTERVAL, 120l));
@@ -194,7 +358,8 @@ public class TimelineMetricAggregatorFactory {
       inputTableName,
       outputTableName,
       120000l,
-      timeSliceIntervalMillis
+      timeSliceIntervalMillis,
+      appAggregator
     );
   }
 
@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.Interns;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_POOL_SIZE;
+
+/**
+ * Runs the aggregators, and the shards of the sharded ones, on a shared
+ * pool of threads instead of a thread each. Every aggregator is scheduled
+ * again after the sleep time returned by its last run.
+ * <p/>
+ * The lag of every aggregator behind the current time is published as a
+ * metrics source.
+ */
+public class TimelineMetricAggregatorPool implements MetricsSource {
+  private static final Log LOG = LogFactory.getLog(TimelineMetricAggregatorPool.class);
+
+  public static final String METRICS_SOURCE_NAME = "TimelineMetricAggregators";
+
+  // Wait before running an aggregator again after it failed unexpectedly
+  private static final long FAILURE_SLEEP_MILLIS = 60000l;
+
+  private final ScheduledExecutorService executor;
+  private final List<TimelineMetricAggregator> aggregators =
+    new CopyOnWriteArrayList<TimelineMetricAggregator>();
+
+  public TimelineMetricAggregatorPool(Configuration metricsConf) {
+    int poolSize = Math.max(1, metricsConf.getInt(AGGREGATOR_POOL_SIZE, 6));
+    executor = Executors.newScheduledThreadPool(poolSize, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "timeline-metrics-aggregator-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    LOG.info("Running aggregators on " + poolSize + " threads.");
+  }
+
+  /**
+   * Run the aggregator now and then on its own schedule.
+   */
+  public void schedule(TimelineMetricAggregator aggregator) {
+    aggregators.add(aggregator);
+    executor.execute(new AggregatorTask(aggregator));
+  }
+
+  public void stop() {
+    executor.shutdownNow();
+  }
+
+  public List<TimelineMetricAggregator> getAggregators() {
+    return aggregators;
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    MetricsRecordBuilder builder = collector.addRecord(METRICS_SOURCE_NAME)
+      .setContext("timeline");
+    for (TimelineMetricAggregator aggregator : aggregators) {
+      String name = aggregator.getName();
+      builder.addGauge(Interns.info(name + "LagSeconds",
+          "Seconds the checkpoint of " + name + " is behind"),
+        TimeUnit.MILLISECONDS.toSeconds(aggregator.getLagMillis()));
+      builder.addGauge(Interns.info(name + "LastRunMillis",
+          "Duration of the last run of " + name),
+        aggregator.getLastRunMillis());
+    }
+  }
+
+  private class AggregatorTask implements Runnable {
+    private final TimelineMetricAggregator aggregator;
+
+    private AggregatorTask(TimelineMetricAggregator aggregator) {
+      this.aggregator = aggregator;
+    }
+
+    @Override
+    public void run() {
+      long sleepTime = FAILURE_SLEEP_MILLIS;
+      try {
+        sleepTime = aggregator.runOnce();
+      } catch (Throwable t) {
+        LOG.error("Aggregator " + aggregator.getName() + " failed.", t);
+      }
+
+      try {
+        executor.schedule(this, sleepTime, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        LOG.debug("Aggregator pool stopped, not scheduling " + aggregator.getName());
+      }
+    }
+  }
+}
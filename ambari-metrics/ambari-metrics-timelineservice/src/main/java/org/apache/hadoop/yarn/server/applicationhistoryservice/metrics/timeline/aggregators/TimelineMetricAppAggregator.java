@@ -21,13 +21,19 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_APP_IDS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_APP_MEMORY_BUDGET;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_SPILL_DIR;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_APP_ID;
 
 /**
@@ -40,13 +46,27 @@ public class TimelineMetricAppAggregator {
   private static final Log LOG = LogFactory.getLog(TimelineMetricAppAggregator.class);
   // Lookup to check candidacy of an app
   private final List<String> appIdsToAggregate;
-  // Map to lookup apps on a host
-  private Map<String, List<String>> hostedAppsMap = new HashMap<String, List<String>>();
+  // Map to lookup apps on a host, may be shared by the aggregators of
+  // several shards
+  private final ConcurrentMap<String, List<String>> hostedAppsMap;
+  // The app aggregates are keyed by the host metrics across hosts, they are
+  // not complete until all rows are read and spill beyond the budget
+  private final int memoryBudget;
+  private final File spillDir;
 
-  Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics;
+  MetricClusterAggregateSpillMap aggregateClusterMetrics;
 
   public TimelineMetricAppAggregator(Configuration metricsConf) {
+    this(metricsConf, new ConcurrentHashMap<String, List<String>>());
+  }
+
+  public TimelineMetricAppAggregator(Configuration metricsConf,
+                                     ConcurrentMap<String, List<String>> hostedAppsMap) {
+    this.hostedAppsMap = hostedAppsMap;
     appIdsToAggregate = getAppIdsForHostAggregation(metricsConf);
+    memoryBudget = metricsConf.getInt(CLUSTER_AGGREGATOR_APP_MEMORY_BUDGET, 100000);
+    spillDir = new File(metricsConf.get(CLUSTER_AGGREGATOR_SPILL_DIR,
+      System.getProperty("java.io.tmpdir")));
     LOG.info("AppIds configured for aggregation: " + appIdsToAggregate);
   }
 
@@ -55,7 +75,7 @@ public class TimelineMetricAppAggregator {
    */
   public void init() {
     LOG.debug("Initializing aggregation cycle.");
-    aggregateClusterMetrics = new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
+    aggregateClusterMetrics = new MetricClusterAggregateSpillMap(memoryBudget, spillDir);
   }
 
   /**
@@ -63,6 +83,9 @@ public class TimelineMetricAppAggregator {
    */
   public void cleanup() {
     LOG.debug("Cleanup aggregated data.");
+    if (aggregateClusterMetrics != null) {
+      aggregateClusterMetrics.clear();
+    }
     aggregateClusterMetrics = null;
   }
 
@@ -71,8 +94,11 @@ public class TimelineMetricAppAggregator {
    */
   public void destroy() {
     LOG.debug("Cleanup aggregated data as well as in-memory state.");
+    if (aggregateClusterMetrics != null) {
+      aggregateClusterMetrics.clear();
+    }
     aggregateClusterMetrics = null;
-    hostedAppsMap = new HashMap<String, List<String>>();
+    hostedAppsMap.clear();
   }
 
   /**
@@ -103,11 +129,17 @@ public class TimelineMetricAppAggregator {
       if (appIdsToAggregate.contains(appId)) {
         List<String> appIds = hostedAppsMap.get(hostname);
         if (appIds == null) {
-          appIds = new ArrayList<String>();
-          hostedAppsMap.put(hostname, appIds);
+          appIds = new CopyOnWriteArrayList<String>();
+          List<String> existing = hostedAppsMap.putIfAbsent(hostname, appIds);
+          if (existing != null) {
+            appIds = existing;
+          }
         }
-        if (!appIds.contains(appId)) {
-          appIds.add(appId);
+        boolean added;
+        synchronized (appIds) {
+          added = !appIds.contains(appId) && appIds.add(appId);
+        }
+        if (added) {
           LOG.info("Adding appId to hosted apps: appId = " +
             clusterMetric.getAppId() + ", hostname = " + hostname);
         }
@@ -137,26 +169,33 @@ public class TimelineMetricAppAggregator {
           clusterMetric.getType()
         );
 
-      MetricClusterAggregate clusterAggregate = aggregateClusterMetrics.get(appTimelineClusterMetric);
-
-      if (clusterAggregate == null) {
-        clusterAggregate = new MetricClusterAggregate(metricValue, 1, null, metricValue, metricValue);
-        aggregateClusterMetrics.put(appTimelineClusterMetric, clusterAggregate);
-      } else {
-        clusterAggregate.updateSum(metricValue);
-        clusterAggregate.updateNumberOfHosts(1);
-        clusterAggregate.updateMax(metricValue);
-        clusterAggregate.updateMin(metricValue);
-      }
-
+      aggregateClusterMetrics.update(appTimelineClusterMetric, metricValue);
     }
   }
 
   /**
-   * Return current copy of aggregated data.
+   * Return current copy of aggregated data, all in memory.
    */
   public Map<TimelineClusterMetric, MetricClusterAggregate> getAggregateClusterMetrics() {
-    return aggregateClusterMetrics;
+    if (aggregateClusterMetrics == null) {
+      return Collections.emptyMap();
+    }
+    try {
+      return aggregateClusterMetrics.toMap();
+    } catch (IOException e) {
+      LOG.error("Unable to read spilled app aggregates.", e);
+      return Collections.emptyMap();
+    }
+  }
+
+  /**
+   * Hand over the aggregated data in batches, merging what was spilled.
+   */
+  public void drainAggregateClusterMetrics(int batchSize,
+      MetricClusterAggregateSpillMap.BatchHandler handler) throws IOException, SQLException {
+    if (aggregateClusterMetrics != null) {
+      aggregateClusterMetrics.drain(batchSize, handler);
+    }
   }
 
   private List<String> getAppIdsForHostAggregation(Configuration metricsConf) {
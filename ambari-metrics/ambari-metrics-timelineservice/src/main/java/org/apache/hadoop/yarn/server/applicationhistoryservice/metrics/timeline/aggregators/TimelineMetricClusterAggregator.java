@@ -27,7 +27,9 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.
 import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.GET_CLUSTER_AGGREGATE_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.GET_CLUSTER_AGGREGATE_TIME_SQL;
@@ -35,7 +37,7 @@ import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.ti
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.NATIVE_TIME_RANGE_DELTA;
 
 public class TimelineMetricClusterAggregator extends AbstractTimelineAggregator {
-  private final TimelineMetricReadHelper readHelper = new TimelineMetricReadHelper(true);
+  private final TimelineMetricReadHelper readHelper = new TimelineMetricReadHelper(true, getDictionary());
   private static final Log LOG = LogFactory.getLog(TimelineMetricClusterAggregator.class);
   private final boolean isClusterPrecisionInputTable;
 
@@ -94,6 +96,11 @@ public class TimelineMetricClusterAggregator extends AbstractTimelineAggregator
     MetricHostAggregate hostAggregate = null;
     Map<TimelineClusterMetric, MetricHostAggregate> hostAggregateMap =
       new HashMap<TimelineClusterMetric, MetricHostAggregate>();
+    // Rows of a metric stored both by name and by key are apart, the later
+    // ones are added to the aggregate of the first
+    Map<List<String>, TimelineClusterMetric> metricKeys =
+      new HashMap<List<String>, TimelineClusterMetric>();
+    int saveThreshold = saveBatchSize;
 
     while (rs.next()) {
       TimelineClusterMetric currentMetric = readHelper.fromResultSet(rs);
@@ -103,28 +110,53 @@ public class TimelineMetricClusterAggregator extends AbstractTimelineAggregator
           readHelper.getMetricClusterAggregateFromResultSet(rs) :
           readHelper.getMetricClusterTimeAggregateFromResultSet(rs);
 
-      if (existingMetric == null) {
-        // First row
-        existingMetric = currentMetric;
-        hostAggregate = new MetricHostAggregate();
-        hostAggregateMap.put(currentMetric, hostAggregate);
+      if (existingMetric == null || !existingMetric.equalsExceptTime(currentMetric)) {
+        // Switched over to a new metric, rows are ordered by metric, app and
+        // instance
+        if (hostAggregateMap.size() >= saveThreshold) {
+          saveCompleted(hostAggregateMap, metricKeys, rs.getString("METRIC_NAME"));
+          saveThreshold = hostAggregateMap.size() + saveBatchSize;
+        }
+        List<String> metricKey = getMetricKey(currentMetric);
+        existingMetric = metricKeys.get(metricKey);
+        if (existingMetric == null) {
+          existingMetric = currentMetric;
+          metricKeys.put(metricKey, currentMetric);
+          hostAggregateMap.put(currentMetric, new MetricHostAggregate());
+        }
+        hostAggregate = hostAggregateMap.get(existingMetric);
       }
 
-      if (existingMetric.equalsExceptTime(currentMetric)) {
-        // Recalculate totals with current metric
-        updateAggregatesFromHost(hostAggregate, currentHostAggregate);
+      // Recalculate totals with current metric
+      updateAggregatesFromHost(hostAggregate, currentHostAggregate);
+    }
 
-      } else {
-        // Switched over to a new metric - save existing
-        hostAggregate = new MetricHostAggregate();
-        updateAggregatesFromHost(hostAggregate, currentHostAggregate);
-        hostAggregateMap.put(currentMetric, hostAggregate);
-        existingMetric = currentMetric;
-      }
+    return hostAggregateMap;
+  }
 
+  private void saveCompleted(Map<TimelineClusterMetric, MetricHostAggregate> hostAggregateMap,
+                             Map<List<String>, TimelineClusterMetric> metricKeys,
+                             String storedMetricName) throws SQLException {
+    Map<TimelineClusterMetric, MetricHostAggregate> completed =
+      new HashMap<TimelineClusterMetric, MetricHostAggregate>();
+    for (Map.Entry<TimelineClusterMetric, MetricHostAggregate> entry :
+        hostAggregateMap.entrySet()) {
+      if (isMetricComplete(entry.getKey().getMetricName(), storedMetricName)) {
+        completed.put(entry.getKey(), entry.getValue());
+      }
+    }
+    if (!completed.isEmpty()) {
+      LOG.debug("Saving " + completed.size() + " metric aggregates.");
+      hBaseAccessor.saveClusterTimeAggregateRecords(completed, outputTableName);
+      for (TimelineClusterMetric metric : completed.keySet()) {
+        hostAggregateMap.remove(metric);
+        metricKeys.remove(getMetricKey(metric));
+      }
     }
+  }
 
-    return hostAggregateMap;
+  private static List<String> getMetricKey(TimelineClusterMetric metric) {
+    return Arrays.asList(metric.getMetricName(), metric.getAppId(), metric.getInstanceId());
   }
 
   private void updateAggregatesFromHost(MetricHostAggregate agg, MetricClusterAggregate currentClusterAggregate) {
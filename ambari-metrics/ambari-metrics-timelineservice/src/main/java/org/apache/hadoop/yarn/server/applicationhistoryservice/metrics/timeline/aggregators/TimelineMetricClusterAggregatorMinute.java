@@ -22,6 +22,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
@@ -46,7 +47,7 @@ import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.ti
 public class TimelineMetricClusterAggregatorMinute extends AbstractTimelineAggregator {
   private static final Log LOG = LogFactory.getLog(TimelineMetricClusterAggregatorMinute.class);
   public Long timeSliceIntervalMillis;
-  private TimelineMetricReadHelper timelineMetricReadHelper = new TimelineMetricReadHelper(true);
+  private TimelineMetricReadHelper timelineMetricReadHelper = new TimelineMetricReadHelper(true, getDictionary());
   // Aggregator to perform app-level aggregates for host metrics
   private final TimelineMetricAppAggregator appAggregator;
 
@@ -60,11 +61,28 @@ public class TimelineMetricClusterAggregatorMinute extends AbstractTimelineAggre
                                                String outputTableName,
                                                Long nativeTimeRangeDelay,
                                                Long timeSliceInterval) {
+    this(hBaseAccessor, metricsConf, checkpointLocation, sleepIntervalMillis,
+      checkpointCutOffMultiplier, aggregatorDisabledParam, tableName,
+      outputTableName, nativeTimeRangeDelay, timeSliceInterval,
+      new TimelineMetricAppAggregator(metricsConf));
+  }
+
+  public TimelineMetricClusterAggregatorMinute(PhoenixHBaseAccessor hBaseAccessor,
+                                               Configuration metricsConf,
+                                               String checkpointLocation,
+                                               Long sleepIntervalMillis,
+                                               Integer checkpointCutOffMultiplier,
+                                               String aggregatorDisabledParam,
+                                               String tableName,
+                                               String outputTableName,
+                                               Long nativeTimeRangeDelay,
+                                               Long timeSliceInterval,
+                                               TimelineMetricAppAggregator appAggregator) {
     super(hBaseAccessor, metricsConf, checkpointLocation, sleepIntervalMillis,
       checkpointCutOffMultiplier, aggregatorDisabledParam, tableName,
       outputTableName, nativeTimeRangeDelay);
 
-    appAggregator = new TimelineMetricAppAggregator(metricsConf);
+    this.appAggregator = appAggregator;
     this.timeSliceIntervalMillis = timeSliceInterval;
   }
 
@@ -73,12 +91,26 @@ public class TimelineMetricClusterAggregatorMinute extends AbstractTimelineAggre
     List<Long[]> timeSlices = getTimeSlices(startTime, endTime);
     // Initialize app aggregates for host metrics
     appAggregator.init();
-    Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics =
-      aggregateMetricsFromResultSet(rs, timeSlices);
+    try {
+      Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics =
+        aggregateMetricsFromResultSet(rs, timeSlices);
+
+      LOG.info("Saving " + aggregateClusterMetrics.size() + " metric aggregates.");
+      hBaseAccessor.saveClusterAggregateRecords(aggregateClusterMetrics);
 
-    LOG.info("Saving " + aggregateClusterMetrics.size() + " metric aggregates.");
-    hBaseAccessor.saveClusterAggregateRecords(aggregateClusterMetrics);
-    appAggregator.cleanup();
+      // App level aggregates are complete only now, merged with those spilled
+      appAggregator.drainAggregateClusterMetrics(saveBatchSize,
+        new MetricClusterAggregateSpillMap.BatchHandler() {
+          @Override
+          public void handle(Map<TimelineClusterMetric, MetricClusterAggregate> batch)
+              throws SQLException {
+            LOG.debug("Saving " + batch.size() + " app aggregates.");
+            hBaseAccessor.saveClusterAggregateRecords(batch);
+          }
+        });
+    } finally {
+      appAggregator.cleanup();
+    }
   }
 
   @Override
@@ -113,9 +145,21 @@ public class TimelineMetricClusterAggregatorMinute extends AbstractTimelineAggre
       new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
     // Create time slices
 
+    TimelineMetric lastMetric = null;
+    int saveThreshold = saveBatchSize;
+
     while (rs.next()) {
       TimelineMetric metric = timelineMetricReadHelper.getTimelineMetricFromResultSet(rs);
 
+      // Rows are ordered by metric, app and instance, save the aggregates
+      // of the metrics all rows of which were read
+      if (lastMetric != null && !isSameClusterMetric(lastMetric, metric)
+          && aggregateClusterMetrics.size() >= saveThreshold) {
+        saveCompleted(aggregateClusterMetrics, rs.getString("METRIC_NAME"));
+        saveThreshold = aggregateClusterMetrics.size() + saveBatchSize;
+      }
+      lastMetric = metric;
+
       Map<TimelineClusterMetric, Double> clusterMetrics =
         sliceFromTimelineMetric(metric, timeSlices);
 
@@ -143,28 +187,51 @@ public class TimelineMetricClusterAggregatorMinute extends AbstractTimelineAggre
         }
       }
     }
-    // Add app level aggregates to save
-    aggregateClusterMetrics.putAll(appAggregator.getAggregateClusterMetrics());
     return aggregateClusterMetrics;
   }
 
+  private void saveCompleted(Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics,
+                             String storedMetricName) throws SQLException {
+    Map<TimelineClusterMetric, MetricClusterAggregate> completed =
+      new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
+    for (Map.Entry<TimelineClusterMetric, MetricClusterAggregate> entry :
+        aggregateClusterMetrics.entrySet()) {
+      if (isMetricComplete(entry.getKey().getMetricName(), storedMetricName)) {
+        completed.put(entry.getKey(), entry.getValue());
+      }
+    }
+    if (!completed.isEmpty()) {
+      LOG.debug("Saving " + completed.size() + " metric aggregates.");
+      hBaseAccessor.saveClusterAggregateRecords(completed);
+      aggregateClusterMetrics.keySet().removeAll(completed.keySet());
+    }
+  }
+
+  private static boolean isSameClusterMetric(TimelineMetric metric, TimelineMetric other) {
+    return metric.getMetricName().equals(other.getMetricName())
+      && (metric.getAppId() == null ? other.getAppId() == null : metric.getAppId().equals(other.getAppId()))
+      && (metric.getInstanceId() == null ? other.getInstanceId() == null :
+          metric.getInstanceId().equals(other.getInstanceId()));
+  }
+
   private Map<TimelineClusterMetric, Double> sliceFromTimelineMetric(
         TimelineMetric timelineMetric, List<Long[]> timeSlices) {
 
-    if (timelineMetric.getMetricValues().isEmpty()) {
+    TimelineMetricSeries metricValues = timelineMetric.getMetricSeries();
+    if (metricValues.isEmpty()) {
       return null;
     }
 
     Map<TimelineClusterMetric, Double> timelineClusterMetricMap =
       new HashMap<TimelineClusterMetric, Double>();
 
-    for (Map.Entry<Long, Double> metric : timelineMetric.getMetricValues().entrySet()) {
+    for (int i = 0; i < metricValues.size(); i++) {
       // TODO: investigate null values - pre filter
-      if (metric.getValue() == null) {
+      if (metricValues.isNull(i)) {
         continue;
       }
-      Long timestamp = getSliceTimeForMetric(timeSlices,
-                       Long.parseLong(metric.getKey().toString()));
+      double value = metricValues.getValue(i);
+      long timestamp = getSliceTimeForMetric(timeSlices, metricValues.getTimestamp(i));
       if (timestamp != -1) {
         // Metric is within desired time range
         TimelineClusterMetric clusterMetric = new TimelineClusterMetric(
@@ -173,12 +240,11 @@ public class TimelineMetricClusterAggregatorMinute extends AbstractTimelineAggre
           timelineMetric.getInstanceId(),
           timestamp,
           timelineMetric.getType());
-        if (!timelineClusterMetricMap.containsKey(clusterMetric)) {
-          timelineClusterMetricMap.put(clusterMetric, metric.getValue());
+        Double oldValue = timelineClusterMetricMap.get(clusterMetric);
+        if (oldValue == null) {
+          timelineClusterMetricMap.put(clusterMetric, value);
         } else {
-          Double oldValue = timelineClusterMetricMap.get(clusterMetric);
-          Double newValue = (oldValue + metric.getValue()) / 2;
-          timelineClusterMetricMap.put(clusterMetric, newValue);
+          timelineClusterMetricMap.put(clusterMetric, (oldValue + value) / 2);
         }
       }
     }
@@ -189,7 +255,7 @@ public class TimelineMetricClusterAggregatorMinute extends AbstractTimelineAggre
   /**
    * Return beginning of the time slice into which the metric fits.
    */
-  private Long getSliceTimeForMetric(List<Long[]> timeSlices, Long timestamp) {
+  private long getSliceTimeForMetric(List<Long[]> timeSlices, long timestamp) {
     for (Long[] timeSlice : timeSlices) {
       if (timestamp >= timeSlice[0] && timestamp < timeSlice[1]) {
         return timeSlice[0];
@@ -28,13 +28,15 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.
 import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.GET_METRIC_AGGREGATE_ONLY_SQL;
 
 public class TimelineMetricHostAggregator extends AbstractTimelineAggregator {
   private static final Log LOG = LogFactory.getLog(TimelineMetricHostAggregator.class);
-  TimelineMetricReadHelper readHelper = new TimelineMetricReadHelper(false);
+  TimelineMetricReadHelper readHelper = new TimelineMetricReadHelper(false, getDictionary());
 
   public TimelineMetricHostAggregator(PhoenixHBaseAccessor hBaseAccessor,
                                       Configuration metricsConf,
@@ -59,6 +61,35 @@ public class TimelineMetricHostAggregator extends AbstractTimelineAggregator {
     hBaseAccessor.saveHostAggregateRecords(hostAggregateMap, outputTableName);
   }
 
+  /**
+   * Save the aggregates of the metrics all rows of which were read, so that
+   * the whole interval is not held in memory.
+   */
+  private void saveCompleted(Map<TimelineMetric, MetricHostAggregate> hostAggregateMap,
+                             Map<List<String>, TimelineMetric> metricKeys,
+                             String storedMetricName) throws SQLException {
+    Map<TimelineMetric, MetricHostAggregate> completed =
+      new HashMap<TimelineMetric, MetricHostAggregate>();
+    for (Map.Entry<TimelineMetric, MetricHostAggregate> entry : hostAggregateMap.entrySet()) {
+      if (isMetricComplete(entry.getKey().getMetricName(), storedMetricName)) {
+        completed.put(entry.getKey(), entry.getValue());
+      }
+    }
+    if (!completed.isEmpty()) {
+      LOG.debug("Saving " + completed.size() + " metric aggregates.");
+      hBaseAccessor.saveHostAggregateRecords(completed, outputTableName);
+      for (TimelineMetric metric : completed.keySet()) {
+        hostAggregateMap.remove(metric);
+        metricKeys.remove(getMetricKey(metric));
+      }
+    }
+  }
+
+  private static List<String> getMetricKey(TimelineMetric metric) {
+    return Arrays.asList(metric.getMetricName(), metric.getHostName(),
+      metric.getAppId(), metric.getInstanceId());
+  }
+
   @Override
   protected Condition prepareMetricQueryCondition(long startTime, long endTime) {
     Condition condition = new DefaultCondition(null, null, null, null, startTime,
@@ -81,7 +112,10 @@ public class TimelineMetricHostAggregator extends AbstractTimelineAggregator {
     TimelineMetric existingMetric = null;
     MetricHostAggregate hostAggregate = null;
     Map<TimelineMetric, MetricHostAggregate> hostAggregateMap =  new HashMap<TimelineMetric, MetricHostAggregate>();
-
+    // Rows of a metric stored both by name and by key are apart, the later
+    // ones are added to the aggregate of the first
+    Map<List<String>, TimelineMetric> metricKeys = new HashMap<List<String>, TimelineMetric>();
+    int saveThreshold = saveBatchSize;
 
     while (rs.next()) {
       TimelineMetric currentMetric =
@@ -89,23 +123,24 @@ public class TimelineMetricHostAggregator extends AbstractTimelineAggregator {
       MetricHostAggregate currentHostAggregate =
         readHelper.getMetricHostAggregateFromResultSet(rs);
 
-      if (existingMetric == null) {
-        // First row
-        existingMetric = currentMetric;
-        hostAggregate = new MetricHostAggregate();
-        hostAggregateMap.put(currentMetric, hostAggregate);
+      if (existingMetric == null || !existingMetric.equalsExceptTime(currentMetric)) {
+        // Switched over to a new metric
+        if (hostAggregateMap.size() >= saveThreshold) {
+          saveCompleted(hostAggregateMap, metricKeys, rs.getString("METRIC_NAME"));
+          saveThreshold = hostAggregateMap.size() + saveBatchSize;
+        }
+        List<String> metricKey = getMetricKey(currentMetric);
+        existingMetric = metricKeys.get(metricKey);
+        if (existingMetric == null) {
+          existingMetric = currentMetric;
+          metricKeys.put(metricKey, currentMetric);
+          hostAggregateMap.put(currentMetric, new MetricHostAggregate());
+        }
+        hostAggregate = hostAggregateMap.get(existingMetric);
       }
 
-      if (existingMetric.equalsExceptTime(currentMetric)) {
-        // Recalculate totals with current metric
-        hostAggregate.updateAggregates(currentHostAggregate);
-      } else {
-        // Switched over to a new metric - save existing - create new aggregate
-        hostAggregate = new MetricHostAggregate();
-        hostAggregate.updateAggregates(currentHostAggregate);
-        hostAggregateMap.put(currentMetric, hostAggregate);
-        existingMetric = currentMetric;
-      }
+      // Recalculate totals with current metric
+      hostAggregate.updateAggregates(currentHostAggregate);
     }
     return hostAggregateMap;
   }
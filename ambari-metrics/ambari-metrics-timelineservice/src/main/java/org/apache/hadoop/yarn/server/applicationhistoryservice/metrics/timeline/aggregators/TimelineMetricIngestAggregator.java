@@ -0,0 +1,532 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import org.apache.hadoop.yarn.util.Clock;
+import org.apache.hadoop.yarn.util.SystemClock;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_MINUTE_DISABLED;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_MINUTE_SLEEP_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_TIMESLICE_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_MINUTE_DISABLED;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_MINUTE_SLEEP_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.INGEST_AGGREGATOR_FLUSH_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.INGEST_AGGREGATOR_LATENESS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.INGEST_AGGREGATOR_MAX_PENDING_WINDOWS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.METRICS_AGGREGATE_MINUTE_TABLE_NAME;
+
+/**
+ * Aggregates posted metrics into the minute aggregate tables as they arrive,
+ * instead of reading them back from METRIC_RECORD after every interval.
+ * <p/>
+ * Host aggregates are kept per metric, host, app and instance over windows of
+ * the host minute aggregator interval, by arrival time, the same way the scan
+ * based aggregator reads rows by SERVER_TIME. Cluster aggregates are kept per
+ * metric, app, instance and time slice, by datapoint time, with the average
+ * of every host in the slice. A cluster window is closed once no more
+ * datapoints are expected for it, {@link
+ * org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration#INGEST_AGGREGATOR_LATENESS}
+ * after its end; datapoints arriving later are dropped.
+ * <p/>
+ * Closed windows are written in order by a background thread, which then
+ * moves the checkpoints of the minute aggregators past them. The scan based
+ * minute aggregators only catch up with what was posted before this
+ * aggregator started, see {@link AbstractTimelineAggregator#setCatchUpEndTime}.
+ */
+public class TimelineMetricIngestAggregator {
+  private static final Log LOG = LogFactory.getLog(TimelineMetricIngestAggregator.class);
+
+  private final PhoenixHBaseAccessor hBaseAccessor;
+  private final Clock clock;
+  private final TimelineMetricAppAggregator appAggregator;
+
+  private final boolean hostAggregationEnabled;
+  private final boolean clusterAggregationEnabled;
+  private final long hostWindowMillis;
+  private final long clusterWindowMillis;
+  private final long timeSliceIntervalMillis;
+  private final long latenessMillis;
+  private final long flushIntervalMillis;
+  private final int maxPendingWindows;
+  private final List<String> hostCheckpointLocations;
+  private final List<String> clusterCheckpointLocations;
+
+  // Adds hold the read lock, closing windows holds the write lock
+  private final ReadWriteLock windowLock = new ReentrantReadWriteLock();
+  private final ConcurrentMap<Long, ConcurrentMap<TimelineMetric, MetricHostAggregate>> hostWindows =
+    new ConcurrentHashMap<Long, ConcurrentMap<TimelineMetric, MetricHostAggregate>>();
+  private final ConcurrentMap<Long, ConcurrentMap<TimelineClusterMetric, ConcurrentMap<String, double[]>>> clusterWindows =
+    new ConcurrentHashMap<Long, ConcurrentMap<TimelineClusterMetric, ConcurrentMap<String, double[]>>>();
+
+  private final long hostCoveredFrom;
+  private final long clusterCoveredFrom;
+  private volatile long lastClosedHostWindow;
+  private volatile long lastClosedClusterWindow;
+
+  // Closed windows not written yet, only used by the flushing thread
+  private final TreeMap<Long, Map<TimelineMetric, MetricHostAggregate>> pendingHostWindows =
+    new TreeMap<Long, Map<TimelineMetric, MetricHostAggregate>>();
+  private final TreeMap<Long, Map<TimelineClusterMetric, MetricClusterAggregate>> pendingClusterWindows =
+    new TreeMap<Long, Map<TimelineClusterMetric, MetricClusterAggregate>>();
+
+  private final AtomicLong aggregatedCount = new AtomicLong();
+  private final AtomicLong lateCount = new AtomicLong();
+  private final AtomicLong writtenWindowCount = new AtomicLong();
+  private final AtomicLong droppedWindowCount = new AtomicLong();
+  private final AtomicLong failureCount = new AtomicLong();
+
+  private ScheduledExecutorService executor;
+
+  public TimelineMetricIngestAggregator(PhoenixHBaseAccessor hBaseAccessor,
+                                        Configuration metricsConf) {
+    this(hBaseAccessor, metricsConf, new SystemClock());
+  }
+
+  public TimelineMetricIngestAggregator(PhoenixHBaseAccessor hBaseAccessor,
+                                        Configuration metricsConf, Clock clock) {
+    this.hBaseAccessor = hBaseAccessor;
+    this.clock = clock;
+    this.appAggregator = new TimelineMetricAppAggregator(metricsConf);
+
+    hostAggregationEnabled = !metricsConf.getBoolean(HOST_AGGREGATOR_MINUTE_DISABLED, false);
+    clusterAggregationEnabled = !metricsConf.getBoolean(CLUSTER_AGGREGATOR_MINUTE_DISABLED, false);
+    hostWindowMillis = SECONDS.toMillis(metricsConf.getLong(HOST_AGGREGATOR_MINUTE_SLEEP_INTERVAL, 300l));
+    clusterWindowMillis = SECONDS.toMillis(metricsConf.getLong(CLUSTER_AGGREGATOR_MINUTE_SLEEP_INTERVAL, 120l));
+    timeSliceIntervalMillis = SECONDS.toMillis(metricsConf.getInt(CLUSTER_AGGREGATOR_TIMESLICE_INTERVAL, 15));
+    latenessMillis = SECONDS.toMillis(metricsConf.getLong(INGEST_AGGREGATOR_LATENESS, 120l));
+    flushIntervalMillis = SECONDS.toMillis(metricsConf.getLong(INGEST_AGGREGATOR_FLUSH_INTERVAL, 10l));
+    maxPendingWindows = metricsConf.getInt(INGEST_AGGREGATOR_MAX_PENDING_WINDOWS, 12);
+    hostCheckpointLocations = TimelineMetricAggregatorFactory.getHostMinuteCheckpointLocations(metricsConf);
+    clusterCheckpointLocations = TimelineMetricAggregatorFactory.getClusterMinuteCheckpointLocations(metricsConf);
+
+    // Only windows which start after now are complete
+    long now = clock.getTime();
+    hostCoveredFrom = alignUp(now, hostWindowMillis);
+    clusterCoveredFrom = alignUp(now, clusterWindowMillis);
+    lastClosedHostWindow = hostCoveredFrom - hostWindowMillis;
+    lastClosedClusterWindow = clusterCoveredFrom - clusterWindowMillis;
+  }
+
+  /**
+   * Start writing closed windows in the background.
+   */
+  public synchronized void start() {
+    if (executor != null) {
+      return;
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "timeline-metrics-ingest-aggregator");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          flush();
+        } catch (Throwable t) {
+          LOG.error("Unable to write the ingest aggregates.", t);
+        }
+      }
+    }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+
+    LOG.info("Aggregating metrics at ingest time, host aggregates from " +
+      hostCoveredFrom + ", cluster aggregates from " + clusterCoveredFrom);
+  }
+
+  /**
+   * Stop the background thread. Windows which are still open are not
+   * written, the scan based aggregators pick them up after a restart.
+   */
+  public synchronized void stop() {
+    if (executor == null) {
+      return;
+    }
+    executor.shutdown();
+    try {
+      executor.awaitTermination(flushIntervalMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    executor = null;
+  }
+
+  /**
+   * Fold the posted metrics into the open windows.
+   */
+  public void add(TimelineMetrics metrics) {
+    if (metrics == null || metrics.getMetrics() == null) {
+      return;
+    }
+    windowLock.readLock().lock();
+    try {
+      // Read under the lock so that flushes are ordered with adds
+      long hostWindow = alignDown(clock.getTime(), hostWindowMillis);
+      for (TimelineMetric metric : metrics.getMetrics()) {
+        TimelineMetricSeries series = metric.getMetricSeries();
+        if (series == null || series.isEmpty()) {
+          continue;
+        }
+        if (hostAggregationEnabled && hostWindow > lastClosedHostWindow) {
+          addHostAggregate(hostWindow, metric, series);
+        } else if (hostAggregationEnabled && hostWindow >= hostCoveredFrom) {
+          lateCount.incrementAndGet();
+        }
+        if (clusterAggregationEnabled) {
+          addClusterValues(metric, series);
+        }
+        aggregatedCount.incrementAndGet();
+      }
+    } finally {
+      windowLock.readLock().unlock();
+    }
+  }
+
+  private void addHostAggregate(long window, TimelineMetric metric, TimelineMetricSeries series) {
+    ConcurrentMap<TimelineMetric, MetricHostAggregate> aggregates = hostWindows.get(window);
+    if (aggregates == null) {
+      aggregates = new ConcurrentHashMap<TimelineMetric, MetricHostAggregate>();
+      ConcurrentMap<TimelineMetric, MetricHostAggregate> existing =
+        hostWindows.putIfAbsent(window, aggregates);
+      if (existing != null) {
+        aggregates = existing;
+      }
+    }
+
+    TimelineMetric key = new TimelineMetric();
+    key.setMetricName(metric.getMetricName());
+    key.setHostName(metric.getHostName());
+    key.setAppId(metric.getAppId());
+    key.setInstanceId(metric.getInstanceId());
+    key.setType(metric.getType());
+    key.setTimestamp(window);
+    key.setStartTime(window);
+
+    double[] values = AggregatorUtils.calculateAggregates(series);
+    MetricHostAggregate current = new MetricHostAggregate(values[0], (int) values[3], 0.0,
+      values[1], values[2]);
+
+    MetricHostAggregate aggregate = aggregates.putIfAbsent(key, current);
+    if (aggregate != null) {
+      synchronized (aggregate) {
+        aggregate.updateAggregates(current);
+      }
+    }
+  }
+
+  private void addClusterValues(TimelineMetric metric, TimelineMetricSeries series) {
+    long lastClosed = lastClosedClusterWindow;
+    for (int i = 0; i < series.size(); i++) {
+      if (series.isNull(i)) {
+        continue;
+      }
+      long timestamp = series.getTimestamp(i);
+      long window = alignDown(timestamp, clusterWindowMillis);
+      if (window <= lastClosed) {
+        lateCount.incrementAndGet();
+        continue;
+      }
+
+      ConcurrentMap<TimelineClusterMetric, ConcurrentMap<String, double[]>> slices =
+        clusterWindows.get(window);
+      if (slices == null) {
+        slices = new ConcurrentHashMap<TimelineClusterMetric, ConcurrentMap<String, double[]>>();
+        ConcurrentMap<TimelineClusterMetric, ConcurrentMap<String, double[]>> existing =
+          clusterWindows.putIfAbsent(window, slices);
+        if (existing != null) {
+          slices = existing;
+        }
+      }
+
+      TimelineClusterMetric clusterMetric = new TimelineClusterMetric(
+        metric.getMetricName(),
+        metric.getAppId(),
+        metric.getInstanceId(),
+        window + (timestamp - window) / timeSliceIntervalMillis * timeSliceIntervalMillis,
+        metric.getType());
+
+      ConcurrentMap<String, double[]> hosts = slices.get(clusterMetric);
+      if (hosts == null) {
+        hosts = new ConcurrentHashMap<String, double[]>();
+        ConcurrentMap<String, double[]> existing = slices.putIfAbsent(clusterMetric, hosts);
+        if (existing != null) {
+          hosts = existing;
+        }
+      }
+
+      // Sum and count of the values of the host in the slice
+      double[] sumAndCount = hosts.get(metric.getHostName());
+      if (sumAndCount == null) {
+        sumAndCount = new double[2];
+        double[] existing = hosts.putIfAbsent(metric.getHostName(), sumAndCount);
+        if (existing != null) {
+          sumAndCount = existing;
+        }
+      }
+      synchronized (sumAndCount) {
+        sumAndCount[0] += series.getValue(i);
+        sumAndCount[1]++;
+      }
+    }
+  }
+
+  /**
+   * Close the windows which are over and write them, along with the ones
+   * which could not be written before. Access relaxed for tests.
+   */
+  public void flush() {
+    Map<Long, ConcurrentMap<TimelineClusterMetric, ConcurrentMap<String, double[]>>> closedClusterWindows =
+      new TreeMap<Long, ConcurrentMap<TimelineClusterMetric, ConcurrentMap<String, double[]>>>();
+
+    windowLock.writeLock().lock();
+    try {
+      long now = clock.getTime();
+      long lastClosedHost = alignDown(now, hostWindowMillis) - hostWindowMillis;
+      if (lastClosedHost > lastClosedHostWindow) {
+        lastClosedHostWindow = lastClosedHost;
+      }
+      for (Iterator<Map.Entry<Long, ConcurrentMap<TimelineMetric, MetricHostAggregate>>> it =
+             hostWindows.entrySet().iterator(); it.hasNext(); ) {
+        Map.Entry<Long, ConcurrentMap<TimelineMetric, MetricHostAggregate>> entry = it.next();
+        if (entry.getKey() <= lastClosedHostWindow) {
+          pendingHostWindows.put(entry.getKey(),
+            new HashMap<TimelineMetric, MetricHostAggregate>(entry.getValue()));
+          it.remove();
+        }
+      }
+
+      long lastClosedCluster = alignDown(now - latenessMillis, clusterWindowMillis) - clusterWindowMillis;
+      if (lastClosedCluster > lastClosedClusterWindow) {
+        lastClosedClusterWindow = lastClosedCluster;
+      }
+      for (Iterator<Map.Entry<Long, ConcurrentMap<TimelineClusterMetric, ConcurrentMap<String, double[]>>>> it =
+             clusterWindows.entrySet().iterator(); it.hasNext(); ) {
+        Map.Entry<Long, ConcurrentMap<TimelineClusterMetric, ConcurrentMap<String, double[]>>> entry = it.next();
+        if (entry.getKey() <= lastClosedClusterWindow) {
+          closedClusterWindows.put(entry.getKey(), entry.getValue());
+          it.remove();
+        }
+      }
+    } finally {
+      windowLock.writeLock().unlock();
+    }
+
+    // Nothing can be added to the closed windows anymore
+    for (Map.Entry<Long, ConcurrentMap<TimelineClusterMetric, ConcurrentMap<String, double[]>>> entry :
+           closedClusterWindows.entrySet()) {
+      pendingClusterWindows.put(entry.getKey(), aggregateClusterWindow(entry.getValue()));
+    }
+
+    if (hostAggregationEnabled) {
+      writeHostWindows();
+      advanceCheckpoints(hostCheckpointLocations, hostCoveredFrom, pendingHostWindows.isEmpty() ?
+        lastClosedHostWindow + hostWindowMillis : pendingHostWindows.firstKey());
+    }
+    if (clusterAggregationEnabled) {
+      writeClusterWindows();
+      advanceCheckpoints(clusterCheckpointLocations, clusterCoveredFrom, pendingClusterWindows.isEmpty() ?
+        lastClosedClusterWindow + clusterWindowMillis : pendingClusterWindows.firstKey());
+    }
+  }
+
+  private Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterWindow(
+      Map<TimelineClusterMetric, ConcurrentMap<String, double[]>> slices) {
+
+    Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics =
+      new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
+    appAggregator.init();
+
+    for (Map.Entry<TimelineClusterMetric, ConcurrentMap<String, double[]>> entry : slices.entrySet()) {
+      TimelineClusterMetric clusterMetric = entry.getKey();
+      for (Map.Entry<String, double[]> hostEntry : entry.getValue().entrySet()) {
+        double[] sumAndCount = hostEntry.getValue();
+        double avgValue = sumAndCount[0] / sumAndCount[1];
+
+        MetricClusterAggregate aggregate = aggregateClusterMetrics.get(clusterMetric);
+        if (aggregate == null) {
+          aggregate = new MetricClusterAggregate(avgValue, 1, null, avgValue, avgValue);
+          aggregateClusterMetrics.put(clusterMetric, aggregate);
+        } else {
+          aggregate.updateSum(avgValue);
+          aggregate.updateNumberOfHosts(1);
+          aggregate.updateMax(avgValue);
+          aggregate.updateMin(avgValue);
+        }
+        // Update app level aggregates
+        appAggregator.processTimelineClusterMetric(clusterMetric, hostEntry.getKey(), avgValue);
+      }
+    }
+
+    aggregateClusterMetrics.putAll(appAggregator.getAggregateClusterMetrics());
+    appAggregator.cleanup();
+    return aggregateClusterMetrics;
+  }
+
+  private void writeHostWindows() {
+    for (Iterator<Map.Entry<Long, Map<TimelineMetric, MetricHostAggregate>>> it =
+           pendingHostWindows.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<Long, Map<TimelineMetric, MetricHostAggregate>> entry = it.next();
+      try {
+        hBaseAccessor.saveHostAggregateRecords(entry.getValue(), METRICS_AGGREGATE_MINUTE_TABLE_NAME);
+      } catch (SQLException e) {
+        LOG.error("Unable to save host aggregates of " + entry.getKey() + ", will retry.", e);
+        failureCount.incrementAndGet();
+        break;
+      }
+      it.remove();
+      writtenWindowCount.incrementAndGet();
+    }
+    while (pendingHostWindows.size() > maxPendingWindows) {
+      LOG.error("Dropping host aggregates of " + pendingHostWindows.firstKey());
+      pendingHostWindows.pollFirstEntry();
+      droppedWindowCount.incrementAndGet();
+    }
+  }
+
+  private void writeClusterWindows() {
+    for (Iterator<Map.Entry<Long, Map<TimelineClusterMetric, MetricClusterAggregate>>> it =
+           pendingClusterWindows.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<Long, Map<TimelineClusterMetric, MetricClusterAggregate>> entry = it.next();
+      try {
+        hBaseAccessor.saveClusterAggregateRecords(entry.getValue());
+      } catch (SQLException e) {
+        LOG.error("Unable to save cluster aggregates of " + entry.getKey() + ", will retry.", e);
+        failureCount.incrementAndGet();
+        break;
+      }
+      it.remove();
+      writtenWindowCount.incrementAndGet();
+    }
+    while (pendingClusterWindows.size() > maxPendingWindows) {
+      LOG.error("Dropping cluster aggregates of " + pendingClusterWindows.firstKey());
+      pendingClusterWindows.pollFirstEntry();
+      droppedWindowCount.incrementAndGet();
+    }
+  }
+
+  /**
+   * Move the checkpoints of the shards of a scan based aggregator to the
+   * given time, once they caught up with the windows this aggregator does
+   * not cover.
+   */
+  private void advanceCheckpoints(List<String> locations, long coveredFrom, long checkpointTime) {
+    for (String location : locations) {
+      advanceCheckpoint(location, coveredFrom, checkpointTime);
+    }
+  }
+
+  private void advanceCheckpoint(String location, long coveredFrom, long checkpointTime) {
+    File checkpoint = new File(location);
+    try {
+      long lastCheckpoint = -1;
+      if (checkpoint.exists()) {
+        String contents = FileUtils.readFileToString(checkpoint);
+        if (contents != null && !contents.isEmpty()) {
+          lastCheckpoint = Long.parseLong(contents.trim());
+        }
+      }
+      if (lastCheckpoint < coveredFrom || lastCheckpoint >= checkpointTime) {
+        return;
+      }
+      FileUtils.writeStringToFile(checkpoint, String.valueOf(checkpointTime));
+    } catch (IOException io) {
+      LOG.warn("Unable to save checkpoint at " + location, io);
+    } catch (NumberFormatException nfe) {
+      LOG.warn("Invalid checkpoint at " + location, nfe);
+    }
+  }
+
+  private static long alignDown(long time, long interval) {
+    return time - time % interval;
+  }
+
+  private static long alignUp(long time, long interval) {
+    long aligned = alignDown(time, interval);
+    return aligned == time ? time : aligned + interval;
+  }
+
+  /**
+   * @return the time from which the host minute aggregates are written by
+   *         this aggregator; the scan based aggregator catches up until then
+   */
+  public long getHostCoveredFrom() {
+    return hostCoveredFrom;
+  }
+
+  /**
+   * @return the time from which the cluster minute aggregates are written by
+   *         this aggregator; the scan based aggregator catches up until then
+   */
+  public long getClusterCoveredFrom() {
+    return clusterCoveredFrom;
+  }
+
+  public long getAggregatedCount() {
+    return aggregatedCount.get();
+  }
+
+  public long getLateCount() {
+    return lateCount.get();
+  }
+
+  public long getWrittenWindowCount() {
+    return writtenWindowCount.get();
+  }
+
+  public long getDroppedWindowCount() {
+    return droppedWindowCount.get();
+  }
+
+  public long getFailureCount() {
+    return failureCount.get();
+  }
+
+  public int getPendingWindowCount() {
+    return pendingHostWindows.size() + pendingClusterWindows.size();
+  }
+}
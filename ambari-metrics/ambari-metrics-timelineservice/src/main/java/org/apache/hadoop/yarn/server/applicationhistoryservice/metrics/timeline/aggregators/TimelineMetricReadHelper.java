@@ -20,16 +20,16 @@ package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline
 
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricDictionary;
 
 import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Map;
-import java.util.TreeMap;
 
 public class TimelineMetricReadHelper {
 
   private boolean ignoreInstance = false;
+  private TimelineMetricDictionary dictionary;
 
   public TimelineMetricReadHelper() {}
 
@@ -37,12 +37,30 @@ public class TimelineMetricReadHelper {
     this.ignoreInstance = ignoreInstance;
   }
 
+  /**
+   * Read helper translating the dictionary keys of metric names and
+   * hostnames back to the names.
+   */
+  public TimelineMetricReadHelper(boolean ignoreInstance,
+                                  TimelineMetricDictionary dictionary) {
+    this.ignoreInstance = ignoreInstance;
+    this.dictionary = dictionary;
+  }
+
+  public String getMetricName(ResultSet rs) throws SQLException {
+    String metricName = rs.getString("METRIC_NAME");
+    return dictionary == null ? metricName : dictionary.decodeMetricName(metricName);
+  }
+
+  public String getHostname(ResultSet rs) throws SQLException {
+    String hostname = rs.getString("HOSTNAME");
+    return dictionary == null ? hostname : dictionary.decodeHostname(hostname);
+  }
+
   public TimelineMetric getTimelineMetricFromResultSet(ResultSet rs)
       throws SQLException, IOException {
     TimelineMetric metric = getTimelineMetricCommonsFromResultSet(rs);
-    Map<Long, Double> sortedByTimeMetrics = new TreeMap<Long, Double>(
-        PhoenixHBaseAccessor.readMetricFromJSON(rs.getString("METRICS")));
-    metric.setMetricValues(sortedByTimeMetrics);
+    metric.setMetricValues(PhoenixHBaseAccessor.readMetricValues(rs));
     return metric;
   }
 
@@ -52,10 +70,10 @@ public class TimelineMetricReadHelper {
   public TimelineMetric getTimelineMetricCommonsFromResultSet(ResultSet rs)
       throws SQLException {
     TimelineMetric metric = new TimelineMetric();
-    metric.setMetricName(rs.getString("METRIC_NAME"));
+    metric.setMetricName(getMetricName(rs));
     metric.setAppId(rs.getString("APP_ID"));
     if (!ignoreInstance) metric.setInstanceId(rs.getString("INSTANCE_ID"));
-    metric.setHostName(rs.getString("HOSTNAME"));
+    metric.setHostName(getHostname(rs));
     metric.setTimestamp(rs.getLong("SERVER_TIME"));
     metric.setStartTime(rs.getLong("START_TIME"));
     metric.setType(rs.getString("UNITS"));
@@ -91,7 +109,7 @@ public class TimelineMetricReadHelper {
 
   public TimelineClusterMetric fromResultSet(ResultSet rs) throws SQLException {
     return new TimelineClusterMetric(
-      rs.getString("METRIC_NAME"),
+      getMetricName(rs),
       rs.getString("APP_ID"),
       ignoreInstance ? null : rs.getString("INSTANCE_ID"),
       rs.getLong("SERVER_TIME"),
@@ -113,10 +131,10 @@ public class TimelineMetricReadHelper {
   public TimelineMetric getTimelineMetricKeyFromResultSet(ResultSet rs)
       throws SQLException, IOException {
     TimelineMetric metric = new TimelineMetric();
-    metric.setMetricName(rs.getString("METRIC_NAME"));
+    metric.setMetricName(getMetricName(rs));
     metric.setAppId(rs.getString("APP_ID"));
     metric.setInstanceId(rs.getString("INSTANCE_ID"));
-    metric.setHostName(rs.getString("HOSTNAME"));
+    metric.setHostName(getHostname(rs));
     metric.setTimestamp(rs.getLong("SERVER_TIME"));
     metric.setType(rs.getString("UNITS"));
     return metric;
@@ -43,4 +43,30 @@ public interface Condition {
   void setFetchSize(Integer fetchSize);
   void addOrderByColumn(String column);
   void setNoLimit();
+  String getMetricNameFrom();
+  String getMetricNameTo();
+
+  /**
+   * Restrict the metric names to a row key range, used to split aggregation
+   * scans into shards. Only bound by
+   * {@link PhoenixTransactSQL#prepareGetMetricsSqlStmt}.
+   *
+   * @param from inclusive lower bound, null for none
+   * @param to exclusive upper bound, null for none
+   */
+  void setMetricNameRange(String from, String to);
+
+  /**
+   * The values of the METRIC_NAME column to match, the metric names unless
+   * set to include the keys of dictionary encoded rows.
+   */
+  List<String> getMetricNameKeys();
+  void setMetricNameKeys(List<String> metricNameKeys);
+
+  /**
+   * The values of the HOSTNAME column to match, the hostname unless set to
+   * include the key of dictionary encoded rows.
+   */
+  List<String> getHostnameKeys();
+  void setHostnameKeys(List<String> hostnameKeys);
 }
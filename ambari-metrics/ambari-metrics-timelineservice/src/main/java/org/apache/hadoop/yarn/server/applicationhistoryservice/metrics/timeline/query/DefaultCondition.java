@@ -19,6 +19,7 @@ package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.Precision;
 
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -36,6 +37,10 @@ public class DefaultCondition implements Condition {
   boolean noLimit = false;
   Integer fetchSize;
   String statement;
+  String metricNameFrom;
+  String metricNameTo;
+  List<String> metricNameKeys;
+  List<String> hostnameKeys;
   Set<String> orderByColumns = new LinkedHashSet<String>();
 
   public DefaultCondition(List<String> metricNames, String hostname, String appId,
@@ -70,8 +75,8 @@ public class DefaultCondition implements Condition {
     StringBuilder metricsLike = new StringBuilder();
     StringBuilder metricsIn = new StringBuilder();
 
-    if (getMetricNames() != null) {
-      for (String name : getMetricNames()) {
+    if (getMetricNameKeys() != null) {
+      for (String name : getMetricNameKeys()) {
         if (name.contains("%")) {
           if (metricsLike.length() > 1) {
             metricsLike.append(" OR ");
@@ -107,7 +112,9 @@ public class DefaultCondition implements Condition {
       }
     }
 
-    appendConjunction = append(sb, appendConjunction, getHostname(), " HOSTNAME = ?");
+    appendConjunction = append(sb, appendConjunction, getMetricNameFrom(), " METRIC_NAME >= ?");
+    appendConjunction = append(sb, appendConjunction, getMetricNameTo(), " METRIC_NAME < ?");
+    appendConjunction = appendHostnames(sb, appendConjunction, getHostnameKeys());
     appendConjunction = append(sb, appendConjunction, getAppId(), " APP_ID = ?");
     appendConjunction = append(sb, appendConjunction, getInstanceId(), " INSTANCE_ID = ?");
     appendConjunction = append(sb, appendConjunction, getStartTime(), " SERVER_TIME >= ?");
@@ -130,6 +137,25 @@ public class DefaultCondition implements Condition {
     return appendConjunction;
   }
 
+  protected static boolean appendHostnames(StringBuilder sb,
+                                           boolean appendConjunction,
+                                           List<String> hostnames) {
+    if (hostnames == null || hostnames.size() < 2) {
+      return append(sb, appendConjunction,
+        hostnames == null ? null : hostnames.get(0), " HOSTNAME = ?");
+    }
+
+    StringBuilder hostnamesIn = new StringBuilder();
+    for (int i = 0; i < hostnames.size(); i++) {
+      if (hostnamesIn.length() > 0) {
+        hostnamesIn.append(", ");
+      }
+      hostnamesIn.append("?");
+    }
+    return append(sb, appendConjunction, hostnames,
+      " HOSTNAME IN (" + hostnamesIn + ")");
+  }
+
   public String getHostname() {
     return hostname == null || hostname.isEmpty() ? null : hostname;
   }
@@ -185,6 +211,38 @@ public class DefaultCondition implements Condition {
     this.noLimit = true;
   }
 
+  public String getMetricNameFrom() {
+    return metricNameFrom;
+  }
+
+  public String getMetricNameTo() {
+    return metricNameTo;
+  }
+
+  public void setMetricNameRange(String from, String to) {
+    this.metricNameFrom = from;
+    this.metricNameTo = to;
+  }
+
+  public List<String> getMetricNameKeys() {
+    return metricNameKeys == null ? getMetricNames() : metricNameKeys;
+  }
+
+  public void setMetricNameKeys(List<String> metricNameKeys) {
+    this.metricNameKeys = metricNameKeys;
+  }
+
+  public List<String> getHostnameKeys() {
+    if (hostnameKeys != null) {
+      return hostnameKeys;
+    }
+    return getHostname() == null ? null : Collections.singletonList(getHostname());
+  }
+
+  public void setHostnameKeys(List<String> hostnameKeys) {
+    this.hostnameKeys = hostnameKeys;
+  }
+
   public Integer getLimit() {
     if (noLimit) {
       return null;
@@ -253,6 +311,10 @@ public class DefaultCondition implements Condition {
       ", grouped=" + grouped +
       ", orderBy=" + orderByColumns +
       ", noLimit=" + noLimit +
+      ", metricNameFrom=" + metricNameFrom +
+      ", metricNameTo=" + metricNameTo +
+      ", metricNameKeys=" + metricNameKeys +
+      ", hostnameKeys=" + hostnameKeys +
       '}';
   }
 }
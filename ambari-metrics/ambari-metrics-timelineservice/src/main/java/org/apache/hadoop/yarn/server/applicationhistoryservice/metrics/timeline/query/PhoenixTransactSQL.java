@@ -21,6 +21,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.Precision;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TopNConfig;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -53,7 +54,8 @@ public class PhoenixTransactSQL {
     "METRIC_COUNT UNSIGNED_INT, " +
     "METRIC_MAX DOUBLE, " +
     "METRIC_MIN DOUBLE, " +
-    "METRICS VARCHAR CONSTRAINT pk " +
+    "METRICS VARCHAR, " +
+    "METRICS_BINARY VARBINARY CONSTRAINT pk " +
     "PRIMARY KEY (METRIC_NAME, HOSTNAME, SERVER_TIME, APP_ID, " +
     "INSTANCE_ID)) DATA_BLOCK_ENCODING='%s', IMMUTABLE_ROWS=true, " +
     "TTL=%s, COMPRESSION='%s'";
@@ -105,11 +107,29 @@ public class PhoenixTransactSQL {
       "SERVER_TIME)) DATA_BLOCK_ENCODING='%s', IMMUTABLE_ROWS=true, " +
       "TTL=%s, COMPRESSION='%s'";
 
+  /**
+   * Ids of the metric names and hostnames stored in the row keys of the
+   * metric tables in place of the full strings.
+   */
+  public static final String CREATE_METRICS_DICTIONARY_TABLE_SQL =
+    "CREATE TABLE IF NOT EXISTS METRIC_DICTIONARY " +
+      "(KEY_TYPE CHAR(1) NOT NULL, " +
+      "NAME VARCHAR NOT NULL, " +
+      "KEY_ID UNSIGNED_LONG " +
+      "CONSTRAINT pk PRIMARY KEY (KEY_TYPE, NAME)) " +
+      "DATA_BLOCK_ENCODING='%s', COMPRESSION='%s'";
+
   /**
    * ALTER table to set new options
    */
   public static final String ALTER_SQL = "ALTER TABLE %s SET TTL=%s";
 
+  /**
+   * Add the column of binary encoded series to tables created before it.
+   */
+  public static final String ALTER_METRICS_TABLE_ADD_BINARY_SQL =
+    "ALTER TABLE %s ADD IF NOT EXISTS METRICS_BINARY VARBINARY";
+
   /**
    * Insert into metric records table.
    */
@@ -120,8 +140,9 @@ public class PhoenixTransactSQL {
     "METRIC_MAX, " +
     "METRIC_MIN, " +
     "METRIC_COUNT, " +
-    "METRICS) VALUES " +
-    "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    "METRICS, " +
+    "METRICS_BINARY) VALUES " +
+    "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
   public static final String UPSERT_CLUSTER_AGGREGATE_SQL = "UPSERT INTO " +
     "%s (METRIC_NAME, APP_ID, INSTANCE_ID, SERVER_TIME, " +
@@ -151,6 +172,12 @@ public class PhoenixTransactSQL {
     "METRIC_COUNT) " +
     "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
+  public static final String UPSERT_DICTIONARY_SQL = "UPSERT INTO " +
+    "METRIC_DICTIONARY (KEY_TYPE, NAME, KEY_ID) VALUES (?, ?, ?)";
+
+  public static final String GET_DICTIONARY_SQL = "SELECT KEY_TYPE, NAME, " +
+    "KEY_ID FROM METRIC_DICTIONARY";
+
   /**
    * Retrieve a set of rows from metrics records table.
    */
@@ -160,7 +187,8 @@ public class PhoenixTransactSQL {
     "METRIC_MAX, " +
     "METRIC_MIN, " +
     "METRIC_COUNT, " +
-    "METRICS " +
+    "METRICS, " +
+    "METRICS_BINARY " +
     "FROM %s";
 
   public static final String GET_METRIC_AGGREGATE_ONLY_SQL = "SELECT %s " +
@@ -192,6 +220,9 @@ public class PhoenixTransactSQL {
     "METRIC_MIN " +
     "FROM %s";
 
+  public static final String GET_TOP_N_HOSTS_SQL = "SELECT %s HOSTNAME, " +
+    "%s AS RANK_VALUE FROM %s";
+
   public static final String METRICS_RECORD_TABLE_NAME = "METRIC_RECORD";
   public static final String METRICS_AGGREGATE_MINUTE_TABLE_NAME =
     "METRIC_RECORD_MINUTE";
@@ -205,6 +236,8 @@ public class PhoenixTransactSQL {
     "METRIC_AGGREGATE_HOURLY";
   public static final String METRICS_CLUSTER_AGGREGATE_DAILY_TABLE_NAME =
     "METRIC_AGGREGATE_DAILY";
+  public static final String METRICS_DICTIONARY_TABLE_NAME =
+    "METRIC_DICTIONARY";
   public static final String DEFAULT_TABLE_COMPRESSION = "SNAPPY";
   public static final String DEFAULT_ENCODING = "FAST_DIFF";
   public static final long NATIVE_TIME_RANGE_DELTA = 120000; // 2 minutes
@@ -232,48 +265,9 @@ public class PhoenixTransactSQL {
       stmtStr = condition.getStatement();
     } else {
 
-      String metricsTable;
-      String query;
-      if (condition.getPrecision() == null) {
-        long endTime = condition.getEndTime() == null ? System.currentTimeMillis() : condition.getEndTime();
-        long startTime = condition.getStartTime() == null ? 0 : condition.getStartTime();
-        Long timeRange = endTime - startTime;
-        if (timeRange > 7 * DAY) {
-          metricsTable = METRICS_AGGREGATE_DAILY_TABLE_NAME;
-          query = GET_METRIC_AGGREGATE_ONLY_SQL;
-          condition.setPrecision(Precision.DAYS);
-        } else if (timeRange < 7 * DAY && timeRange > DAY) {
-          metricsTable = METRICS_AGGREGATE_HOURLY_TABLE_NAME;
-          query = GET_METRIC_AGGREGATE_ONLY_SQL;
-          condition.setPrecision(Precision.HOURS);
-        } else if (timeRange > 10 * HOUR) {
-          metricsTable = METRICS_AGGREGATE_MINUTE_TABLE_NAME;
-          query = GET_METRIC_AGGREGATE_ONLY_SQL;
-          condition.setPrecision(Precision.MINUTES);
-        } else {
-          metricsTable = METRICS_RECORD_TABLE_NAME;
-          query = GET_METRIC_SQL;
-          condition.setPrecision(Precision.SECONDS);
-        }
-      } else {
-        switch (condition.getPrecision()) {
-          case DAYS:
-            metricsTable = METRICS_AGGREGATE_DAILY_TABLE_NAME;
-            query = GET_METRIC_AGGREGATE_ONLY_SQL;
-            break;
-          case HOURS:
-            metricsTable = METRICS_AGGREGATE_HOURLY_TABLE_NAME;
-            query = GET_METRIC_AGGREGATE_ONLY_SQL;
-            break;
-          case MINUTES:
-            metricsTable = METRICS_AGGREGATE_MINUTE_TABLE_NAME;
-            query = GET_METRIC_AGGREGATE_ONLY_SQL;
-            break;
-          default:
-            metricsTable = METRICS_RECORD_TABLE_NAME;
-            query = GET_METRIC_SQL;
-        }
-      }
+      String metricsTable = getMetricsTableName(condition);
+      String query = METRICS_RECORD_TABLE_NAME.equals(metricsTable) ?
+        GET_METRIC_SQL : GET_METRIC_AGGREGATE_ONLY_SQL;
 
       stmtStr = String.format(query,
         getNaiveTimeRangeHint(condition.getStartTime(), NATIVE_TIME_RANGE_DELTA),
@@ -299,19 +293,27 @@ public class PhoenixTransactSQL {
     }
     PreparedStatement stmt = connection.prepareStatement(sb.toString());
     int pos = 1;
-    if (condition.getMetricNames() != null) {
-      for (; pos <= condition.getMetricNames().size(); pos++) {
+    if (condition.getMetricNameKeys() != null) {
+      for (; pos <= condition.getMetricNameKeys().size(); pos++) {
         if (LOG.isDebugEnabled()) {
-          LOG.debug("Setting pos: " + pos + ", value = " + condition.getMetricNames().get(pos - 1));
+          LOG.debug("Setting pos: " + pos + ", value = " + condition.getMetricNameKeys().get(pos - 1));
         }
-        stmt.setString(pos, condition.getMetricNames().get(pos - 1));
+        stmt.setString(pos, condition.getMetricNameKeys().get(pos - 1));
       }
     }
-    if (condition.getHostname() != null) {
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("Setting pos: " + pos + ", value: " + condition.getHostname());
+    if (condition.getMetricNameFrom() != null) {
+      stmt.setString(pos++, condition.getMetricNameFrom());
+    }
+    if (condition.getMetricNameTo() != null) {
+      stmt.setString(pos++, condition.getMetricNameTo());
+    }
+    if (condition.getHostnameKeys() != null) {
+      for (String hostname : condition.getHostnameKeys()) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Setting pos: " + pos + ", value: " + hostname);
+        }
+        stmt.setString(pos++, hostname);
       }
-      stmt.setString(pos++, condition.getHostname());
     }
     if (condition.getAppId() != null) {
       if (LOG.isDebugEnabled()) {
@@ -344,6 +346,135 @@ public class PhoenixTransactSQL {
     return stmt;
   }
 
+  /**
+   * Set the precision of the condition from its time range if missing, as
+   * the table of its query is picked: the cluster aggregate tables without a
+   * hostname, the host tables otherwise.
+   */
+  public static void resolvePrecision(Condition condition) {
+    if (condition.getHostname() == null) {
+      resolveClusterAggregatePrecision(condition);
+    } else {
+      resolveMetricsPrecision(condition);
+    }
+  }
+
+  /**
+   * The host table to read for the precision of the condition, which is set
+   * from the time range if missing.
+   */
+  public static String getMetricsTableName(Condition condition) {
+    resolveMetricsPrecision(condition);
+
+    switch (condition.getPrecision()) {
+      case DAYS:
+        return METRICS_AGGREGATE_DAILY_TABLE_NAME;
+      case HOURS:
+        return METRICS_AGGREGATE_HOURLY_TABLE_NAME;
+      case MINUTES:
+        return METRICS_AGGREGATE_MINUTE_TABLE_NAME;
+      default:
+        return METRICS_RECORD_TABLE_NAME;
+    }
+  }
+
+  /**
+   * The cluster aggregate table to read for the precision of the condition,
+   * which is set from the time range if missing.
+   */
+  public static String getClusterAggregateTableName(Condition condition) {
+    resolveClusterAggregatePrecision(condition);
+
+    switch (condition.getPrecision()) {
+      case DAYS:
+        return METRICS_CLUSTER_AGGREGATE_DAILY_TABLE_NAME;
+      case HOURS:
+        return METRICS_CLUSTER_AGGREGATE_HOURLY_TABLE_NAME;
+      default:
+        return METRICS_CLUSTER_AGGREGATE_TABLE_NAME;
+    }
+  }
+
+  private static void resolveMetricsPrecision(Condition condition) {
+    if (condition.getPrecision() == null) {
+      long endTime = condition.getEndTime() == null ? System.currentTimeMillis() : condition.getEndTime();
+      long startTime = condition.getStartTime() == null ? 0 : condition.getStartTime();
+      Long timeRange = endTime - startTime;
+      if (timeRange > 7 * DAY) {
+        condition.setPrecision(Precision.DAYS);
+      } else if (timeRange < 7 * DAY && timeRange > DAY) {
+        condition.setPrecision(Precision.HOURS);
+      } else if (timeRange > 10 * HOUR) {
+        condition.setPrecision(Precision.MINUTES);
+      } else {
+        condition.setPrecision(Precision.SECONDS);
+      }
+    }
+  }
+
+  private static void resolveClusterAggregatePrecision(Condition condition) {
+    if (condition.getPrecision() == null) {
+      long endTime = condition.getEndTime() == null ? System.currentTimeMillis() : condition.getEndTime();
+      long startTime = condition.getStartTime() == null ? 0 : condition.getStartTime();
+      Long timeRange = endTime - startTime;
+      if (timeRange > 7 * DAY) {
+        condition.setPrecision(Precision.DAYS);
+      } else if (timeRange < 7 * DAY && timeRange > DAY) {
+        condition.setPrecision(Precision.HOURS);
+      } else {
+        condition.setPrecision(Precision.SECONDS);
+      }
+    }
+  }
+
+  /**
+   * Rank the hosts by a metric in the table of the condition's precision,
+   * only the HOSTNAME and RANK_VALUE of the top hosts are returned.
+   */
+  public static PreparedStatement prepareGetTopNHostsSqlStmt(
+    Connection connection, Condition condition, TopNConfig topNConfig)
+    throws SQLException {
+
+    validateConditionIsNotEmpty(condition);
+
+    String metricsTable = getMetricsTableName(condition);
+    String rankExpression = topNConfig.getRankExpression();
+
+    StringBuilder sb = new StringBuilder(String.format(GET_TOP_N_HOSTS_SQL,
+      getNaiveTimeRangeHint(condition.getStartTime(), NATIVE_TIME_RANGE_DELTA),
+      rankExpression, metricsTable));
+    sb.append(" WHERE ");
+    sb.append(condition.getConditionClause());
+    sb.append(" GROUP BY HOSTNAME ORDER BY ").append(rankExpression);
+    sb.append(" DESC LIMIT ").append(topNConfig.getTopN());
+
+    String query = sb.toString();
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("SQL: " + query + ", condition: " + condition + ", " + topNConfig);
+    }
+    PreparedStatement stmt = connection.prepareStatement(query);
+    int pos = 1;
+    if (condition.getMetricNameKeys() != null) {
+      for (String metricName : condition.getMetricNameKeys()) {
+        stmt.setString(pos++, metricName);
+      }
+    }
+    if (condition.getAppId() != null) {
+      stmt.setString(pos++, condition.getAppId());
+    }
+    if (condition.getInstanceId() != null) {
+      stmt.setString(pos++, condition.getInstanceId());
+    }
+    if (condition.getStartTime() != null) {
+      stmt.setLong(pos++, condition.getStartTime());
+    }
+    if (condition.getEndTime() != null) {
+      stmt.setLong(pos, condition.getEndTime());
+    }
+
+    return stmt;
+  }
+
   private static void validateConditionIsNotEmpty(Condition condition) {
     if (condition.isEmpty()) {
       throw new IllegalArgumentException("Condition is empty.");
@@ -412,20 +543,22 @@ public class PhoenixTransactSQL {
     }
     PreparedStatement stmt = connection.prepareStatement(sb.toString());
     int pos = 1;
-    if (condition.getMetricNames() != null) {
+    if (condition.getMetricNameKeys() != null) {
       //IGNORE condition limit, set one based on number of metric names
-      for (; pos <= condition.getMetricNames().size(); pos++) {
+      for (; pos <= condition.getMetricNameKeys().size(); pos++) {
         if (LOG.isDebugEnabled()) {
-          LOG.debug("Setting pos: " + pos + ", value = " + condition.getMetricNames().get(pos - 1));
+          LOG.debug("Setting pos: " + pos + ", value = " + condition.getMetricNameKeys().get(pos - 1));
         }
-        stmt.setString(pos, condition.getMetricNames().get(pos - 1));
+        stmt.setString(pos, condition.getMetricNameKeys().get(pos - 1));
       }
     }
-    if (condition.getHostname() != null) {
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("Setting pos: " + pos + ", value: " + condition.getHostname());
+    if (condition.getHostnameKeys() != null) {
+      for (String hostname : condition.getHostnameKeys()) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Setting pos: " + pos + ", value: " + hostname);
+        }
+        stmt.setString(pos++, hostname);
       }
-      stmt.setString(pos++, condition.getHostname());
     }
     if (condition.getAppId() != null) {
       if (LOG.isDebugEnabled()) {
@@ -452,40 +585,9 @@ public class PhoenixTransactSQL {
 
     validateConditionIsNotEmpty(condition);
 
-    String metricsAggregateTable;
-    String queryStmt;
-    if (condition.getPrecision() == null) {
-      long endTime = condition.getEndTime() == null ? System.currentTimeMillis() : condition.getEndTime();
-      long startTime = condition.getStartTime() == null ? 0 : condition.getStartTime();
-      Long timeRange = endTime - startTime;
-      if (timeRange > 7 * DAY) {
-        metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_DAILY_TABLE_NAME;
-        queryStmt = GET_CLUSTER_AGGREGATE_TIME_SQL;
-        condition.setPrecision(Precision.DAYS);
-      } else if (timeRange < 7 * DAY && timeRange > DAY) {
-        metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_HOURLY_TABLE_NAME;
-        queryStmt = GET_CLUSTER_AGGREGATE_TIME_SQL;
-        condition.setPrecision(Precision.HOURS);
-      } else {
-        metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_TABLE_NAME;
-        queryStmt = GET_CLUSTER_AGGREGATE_SQL;
-        condition.setPrecision(Precision.SECONDS);
-      }
-    } else {
-      switch (condition.getPrecision()) {
-        case DAYS:
-          metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_DAILY_TABLE_NAME;
-          queryStmt = GET_CLUSTER_AGGREGATE_TIME_SQL;
-          break;
-        case HOURS:
-          metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_HOURLY_TABLE_NAME;
-          queryStmt = GET_CLUSTER_AGGREGATE_TIME_SQL;
-          break;
-        default:
-          metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_TABLE_NAME;
-          queryStmt = GET_CLUSTER_AGGREGATE_SQL;
-      }
-    }
+    String metricsAggregateTable = getClusterAggregateTableName(condition);
+    String queryStmt = METRICS_CLUSTER_AGGREGATE_TABLE_NAME.equals(metricsAggregateTable) ?
+      GET_CLUSTER_AGGREGATE_SQL : GET_CLUSTER_AGGREGATE_TIME_SQL;
 
     queryStmt = String.format(queryStmt,
       getNaiveTimeRangeHint(condition.getStartTime(), NATIVE_TIME_RANGE_DELTA),
@@ -505,9 +607,9 @@ public class PhoenixTransactSQL {
     }
     PreparedStatement stmt = connection.prepareStatement(query);
     int pos = 1;
-    if (condition.getMetricNames() != null) {
-      for (; pos <= condition.getMetricNames().size(); pos++) {
-        stmt.setString(pos, condition.getMetricNames().get(pos - 1));
+    if (condition.getMetricNameKeys() != null) {
+      for (; pos <= condition.getMetricNameKeys().size(); pos++) {
+        stmt.setString(pos, condition.getMetricNameKeys().get(pos - 1));
       }
     }
     // TODO: Upper case all strings on POST
@@ -559,9 +661,9 @@ public class PhoenixTransactSQL {
 
     PreparedStatement stmt = connection.prepareStatement(query);
     int pos = 1;
-    if (condition.getMetricNames() != null) {
-      for (; pos <= condition.getMetricNames().size(); pos++) {
-        stmt.setString(pos, condition.getMetricNames().get(pos - 1));
+    if (condition.getMetricNameKeys() != null) {
+      for (; pos <= condition.getMetricNameKeys().size(); pos++) {
+        stmt.setString(pos, condition.getMetricNameKeys().get(pos - 1));
       }
     }
     if (condition.getAppId() != null) {
@@ -96,8 +96,8 @@ public class SplitByMetricNamesCondition implements Condition {
       appendConjunction = true;
     }
 
-    appendConjunction = DefaultCondition.append(sb, appendConjunction,
-      getHostname(), " HOSTNAME = ?");
+    appendConjunction = DefaultCondition.appendHostnames(sb, appendConjunction,
+      getHostnameKeys());
     appendConjunction = DefaultCondition.append(sb, appendConjunction,
       getAppId(), " APP_ID = ?");
     appendConjunction = DefaultCondition.append(sb, appendConjunction,
@@ -155,6 +155,45 @@ public class SplitByMetricNamesCondition implements Condition {
     adaptee.setNoLimit();
   }
 
+  @Override
+  public String getMetricNameFrom() {
+    return adaptee.getMetricNameFrom();
+  }
+
+  @Override
+  public String getMetricNameTo() {
+    return adaptee.getMetricNameTo();
+  }
+
+  @Override
+  public void setMetricNameRange(String from, String to) {
+    adaptee.setMetricNameRange(from, to);
+  }
+
+  /**
+   * The current metric is matched as it is, set it to each key of a metric
+   * to query the dictionary encoded rows.
+   */
+  @Override
+  public List<String> getMetricNameKeys() {
+    return getMetricNames();
+  }
+
+  @Override
+  public void setMetricNameKeys(List<String> metricNameKeys) {
+    adaptee.setMetricNameKeys(metricNameKeys);
+  }
+
+  @Override
+  public List<String> getHostnameKeys() {
+    return adaptee.getHostnameKeys();
+  }
+
+  @Override
+  public void setHostnameKeys(List<String> hostnameKeys) {
+    adaptee.setHostnameKeys(hostnameKeys);
+  }
+
   public List<String> getOriginalMetricNames() {
     return adaptee.getMetricNames();
   }
@@ -32,7 +32,9 @@ import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.Precision;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricSeriesDownsampler;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricStore;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TopNConfig;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.EntityIdentifier;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.GenericObjectMapper;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.NameValuePair;
@@ -342,6 +344,14 @@ public class TimelineWebServices {
    * @param precision Precision [ seconds, minutes, hours ]
    * @param limit limit on total number of {@link TimelineMetric} records
    *              retrieved.
+   * @param points Maximum number of points of a series, buckets of whole
+   *               seconds are returned. Without a precision the tables are
+   *               picked for the points, and stitched across their ttls.
+   * @param step Bucket size in seconds, overrides points.
+   * @param seriesFunction avg, min, max or sum of the points in a bucket.
+   * @param topN Only the series of the hosts with the highest values, for
+   *             queries without a hostname.
+   * @param topNFunction avg, min, max or sum to rank the hosts by.
    * @return {@link TimelineMetrics}
    */
   @GET
@@ -358,7 +368,12 @@ public class TimelineWebServices {
     @QueryParam("endTime") String endTime,
     @QueryParam("precision") String precision,
     @QueryParam("limit") String limit,
-    @QueryParam("grouped") String grouped
+    @QueryParam("grouped") String grouped,
+    @QueryParam("points") String points,
+    @QueryParam("step") String step,
+    @QueryParam("seriesFunction") String seriesFunction,
+    @QueryParam("topN") String topN,
+    @QueryParam("topNFunction") String topNFunction
   ) {
     init(res);
     try {
@@ -367,18 +382,29 @@ public class TimelineWebServices {
           "appId: " + appId + ", instanceId: " + instanceId + ", " +
           "hostname: " + hostname + ", startTime: " + startTime + ", " +
           "endTime: " + endTime + ", " +
-          "precision: " + precision);
+          "precision: " + precision + ", points: " + points + ", " +
+          "step: " + step + ", topN: " + topN);
+      }
+
+      TimelineMetricSeriesDownsampler downsampler = null;
+      if (points != null || step != null) {
+        downsampler = new TimelineMetricSeriesDownsampler(parseIntStr(points),
+          parseLongStr(step), seriesFunction);
+      }
+      TopNConfig topNConfig = null;
+      if (topN != null) {
+        topNConfig = new TopNConfig(Integer.parseInt(topN), topNFunction);
       }
 
       return timelineMetricStore.getTimelineMetrics(
         parseListStr(metricNames, ","), hostname, appId, instanceId,
         parseLongStr(startTime), parseLongStr(endTime),
         Precision.getPrecision(precision), parseIntStr(limit),
-        parseBoolean(grouped));
+        parseBoolean(grouped), downsampler, topNConfig);
 
     } catch (NumberFormatException ne) {
-      throw new BadRequestException("startTime and limit should be numeric " +
-        "values");
+      throw new BadRequestException("startTime, limit, points, step and topN " +
+        "should be numeric values");
     } catch (Precision.PrecisionFormatException pfe) {
       throw new BadRequestException("precision should be seconds, minutes " +
         "or hours");
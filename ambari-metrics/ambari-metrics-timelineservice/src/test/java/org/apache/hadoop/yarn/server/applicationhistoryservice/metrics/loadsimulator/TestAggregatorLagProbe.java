@@ -0,0 +1,39 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestAggregatorLagProbe {
+
+  @Test
+  public void testLagOfLatestValue() throws Exception {
+    String response = "{\"metrics\":[" +
+      "{\"metricname\":\"cpu_user\",\"hostname\":\"h1\",\"metrics\":{\"1000\":1.0,\"61000\":2.0}}," +
+      "{\"metricname\":\"cpu_user\",\"hostname\":\"h2\",\"metrics\":{\"31000\":1.0}}]}";
+
+    assertEquals(59000, AggregatorLagProbe.getLagMillis(response, 120000));
+  }
+
+  @Test
+  public void testNoAggregates() throws Exception {
+    assertEquals(-1, AggregatorLagProbe.getLagMillis("{\"metrics\":[]}", 120000));
+  }
+}
@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.util;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestLatencyStats {
+
+  @Test
+  public void testPercentiles() {
+    LatencyStats stats = new LatencyStats();
+    for (long i = 1; i <= 100; i++) {
+      stats.record(i);
+    }
+
+    assertEquals(100, stats.getCount());
+    assertEquals(50, stats.getPercentile(50));
+    assertEquals(95, stats.getPercentile(95));
+    assertEquals(100, stats.getPercentile(100));
+    assertEquals(100, stats.getMax());
+  }
+
+  @Test
+  public void testSampleIsBounded() {
+    LatencyStats stats = new LatencyStats(10);
+    for (long i = 1; i <= 1000; i++) {
+      stats.record(i % 2 == 0 ? 10 : 20);
+    }
+
+    assertEquals(1000, stats.getCount());
+    assertEquals(20, stats.getMax());
+    long p99 = stats.getPercentile(99);
+    assertEquals("Percentile should be one of the recorded values", true,
+      p99 == 10 || p99 == 20);
+  }
+
+  @Test
+  public void testNothingRecorded() {
+    Map<String, Object> map = new LatencyStats().toMap();
+
+    assertEquals(0l, map.get("count"));
+    assertEquals(0l, map.get("p99"));
+  }
+}
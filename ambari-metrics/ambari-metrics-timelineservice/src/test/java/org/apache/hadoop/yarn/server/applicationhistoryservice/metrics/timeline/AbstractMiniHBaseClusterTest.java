@@ -115,7 +115,10 @@ public abstract class AbstractMiniHBaseClusterTest extends BaseTest {
   }
 
   protected PhoenixHBaseAccessor createTestableHBaseAccessor() {
-    Configuration metricsConf = new Configuration();
+    return createTestableHBaseAccessor(new Configuration());
+  }
+
+  protected PhoenixHBaseAccessor createTestableHBaseAccessor(Configuration metricsConf) {
     metricsConf.set(
         TimelineMetricConfiguration.HBASE_COMPRESSION_SCHEME, "NONE");
 
@@ -261,6 +261,34 @@ public class AbstractTimelineAggregatorTest {
 
   }
 
+  @Test
+  public void testDoWorkStopsAtCatchUpEnd() throws Exception {
+    clock.setTime(0);
+    agg.setCatchUpEndTime(sleepIntervalMillis + 5000);
+
+    // first run only saves the checkpoint
+    agg.runOnce(sleepIntervalMillis);
+    assertEquals(0, actualRuns);
+
+    clock.setTime(2 * sleepIntervalMillis);
+    agg.runOnce(sleepIntervalMillis);
+    assertEquals(1, actualRuns);
+    assertEquals(sleepIntervalMillis, endTimeInDoWork.get());
+
+    // the last run only goes up to the catch-up end
+    agg.runOnce(sleepIntervalMillis);
+    assertEquals(2, actualRuns);
+    assertEquals(sleepIntervalMillis + 5000, endTimeInDoWork.get());
+    assertEquals(sleepIntervalMillis + 5000, checkPoint.get());
+
+    // caught up, nothing left to do
+    clock.setTime(3 * sleepIntervalMillis);
+    long sleep = agg.runOnce(sleepIntervalMillis);
+    assertEquals(2, actualRuns);
+    assertEquals(sleepIntervalMillis + 5000, checkPoint.get());
+    assertEquals(sleep, sleepIntervalMillis);
+  }
+
   private static class TestClock implements Clock {
 
     private long time;
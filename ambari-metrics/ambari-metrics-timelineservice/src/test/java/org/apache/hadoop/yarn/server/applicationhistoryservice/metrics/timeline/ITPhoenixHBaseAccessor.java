@@ -112,6 +112,36 @@ public class ITPhoenixHBaseAccessor extends AbstractMiniHBaseClusterTest {
     assertEquals(8, metric.getMetricValues().size());
   }
 
+  @Test
+  public void testGetMetricRecordsWrittenAsJson() throws IOException, SQLException {
+    // GIVEN
+    Configuration metricsConf = new Configuration();
+    metricsConf.set(TimelineMetricConfiguration.PRECISION_TABLE_SERIES_ENCODING, "json");
+    PhoenixHBaseAccessor jsonAccessor = createTestableHBaseAccessor(metricsConf);
+
+    long startTime = System.currentTimeMillis();
+    long ctime = startTime;
+    long minute = 60 * 1000;
+    jsonAccessor.insertMetricRecords(prepareSingleTimelineMetric(ctime, "local1",
+      "disk_free", 1));
+    ctime += minute;
+    hdb.insertMetricRecords(prepareSingleTimelineMetric(ctime, "local1",
+      "disk_free", 2));
+
+    // WHEN
+    long endTime = ctime + minute;
+    Condition condition = new DefaultCondition(
+      Collections.singletonList("disk_free"), "local1", null, null, startTime,
+      endTime, Precision.SECONDS, null, true);
+    TimelineMetrics timelineMetrics = hdb.getMetricRecords(condition,
+      singletonValueFunctionMap("disk_free"));
+
+    //THEN
+    assertEquals(1, timelineMetrics.getMetrics().size());
+    TimelineMetric metric = timelineMetrics.getMetrics().get(0);
+    assertEquals(8, metric.getMetricValues().size());
+  }
+
   @Test
   public void testGetMetricRecordsMinutes() throws IOException, SQLException {
     // GIVEN
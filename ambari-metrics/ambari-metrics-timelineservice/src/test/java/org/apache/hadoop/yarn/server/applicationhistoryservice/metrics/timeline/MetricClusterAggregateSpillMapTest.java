@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.MetricClusterAggregate;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.MetricClusterAggregateSpillMap;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineClusterMetric;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricClusterAggregateSpillMapTest {
+
+  @Rule
+  public TemporaryFolder spillDir = new TemporaryFolder();
+
+  @Test
+  public void testAggregatesWithinBudgetAreNotSpilled() throws Exception {
+    MetricClusterAggregateSpillMap map =
+      new MetricClusterAggregateSpillMap(10, spillDir.getRoot());
+    map.update(metric("cpu_user", 0), 1.0);
+    map.update(metric("cpu_user", 0), 3.0);
+
+    Map<TimelineClusterMetric, MetricClusterAggregate> aggregates = map.toMap();
+    assertEquals(0, spillDir.getRoot().list().length);
+    assertEquals(1, aggregates.size());
+    MetricClusterAggregate aggregate = aggregates.get(metric("cpu_user", 0));
+    assertEquals(4.0, aggregate.getSum(), 0.0001);
+    assertEquals(2, aggregate.getNumberOfHosts());
+    assertEquals(3.0, aggregate.getMax(), 0.0001);
+    assertEquals(1.0, aggregate.getMin(), 0.0001);
+  }
+
+  @Test
+  public void testSpilledAggregatesAreMergedInBatches() throws Exception {
+    MetricClusterAggregateSpillMap map =
+      new MetricClusterAggregateSpillMap(4, spillDir.getRoot());
+    // Three hosts, the same 10 keys each time
+    for (int host = 1; host <= 3; host++) {
+      for (int i = 0; i < 10; i++) {
+        map.update(metric("metric" + (i % 5), i), host);
+      }
+    }
+    assertTrue(map.getSpillFileCount() > 1);
+
+    final List<Map<TimelineClusterMetric, MetricClusterAggregate>> batches =
+      new ArrayList<Map<TimelineClusterMetric, MetricClusterAggregate>>();
+    final Map<TimelineClusterMetric, MetricClusterAggregate> all =
+      new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
+    map.drain(3, new MetricClusterAggregateSpillMap.BatchHandler() {
+      @Override
+      public void handle(Map<TimelineClusterMetric, MetricClusterAggregate> batch) {
+        batches.add(batch);
+        all.putAll(batch);
+      }
+    });
+
+    assertEquals(4, batches.size());
+    assertEquals(10, all.size());
+    for (MetricClusterAggregate aggregate : all.values()) {
+      assertEquals(6.0, aggregate.getSum(), 0.0001);
+      assertEquals(3, aggregate.getNumberOfHosts());
+      assertEquals(3.0, aggregate.getMax(), 0.0001);
+      assertEquals(1.0, aggregate.getMin(), 0.0001);
+    }
+    // The spill files are deleted once drained
+    assertEquals(0, spillDir.getRoot().list().length);
+    assertTrue(map.isEmpty());
+  }
+
+  private static TimelineClusterMetric metric(String metricName, long timestamp) {
+    return new TimelineClusterMetric(metricName, "datanode", null, timestamp, null);
+  }
+}
@@ -50,6 +50,46 @@ public class TestPhoenixTransactSQL {
     Assert.assertEquals(expectedClause, preparedClause);
   }
 
+  @Test
+  public void testMetricNameRangeConditionClause() throws Exception {
+    Condition condition = new DefaultCondition(null, null, null, null,
+      1407959718L, 1407959918L, null, null, true);
+    condition.setMetricNameRange("dfs", "jvm");
+
+    String preparedClause = condition.getConditionClause().toString();
+    String expectedClause = " METRIC_NAME >= ? AND METRIC_NAME < ? AND " +
+      "SERVER_TIME >= ? AND SERVER_TIME < ?";
+    Assert.assertEquals(expectedClause, preparedClause);
+
+    // last shard has no upper bound
+    condition.setMetricNameRange("jvm", null);
+    preparedClause = condition.getConditionClause().toString();
+    expectedClause = " METRIC_NAME >= ? AND SERVER_TIME >= ? AND SERVER_TIME < ?";
+    Assert.assertEquals(expectedClause, preparedClause);
+  }
+
+  @Test
+  public void testConditionClauseWithKeys() throws Exception {
+    Condition condition = new DefaultCondition(
+      Arrays.asList("cpu_user", "mem_free"), "h1", "a1", "i1",
+        1407959718L, 1407959918L, null, null, false);
+    condition.setMetricNameKeys(Arrays.asList("#1", "cpu_user", "mem_free"));
+    condition.setHostnameKeys(Arrays.asList("#1", "h1"));
+
+    String preparedClause = condition.getConditionClause().toString();
+    String expectedClause = "(METRIC_NAME IN (?, ?, ?)) AND HOSTNAME IN (?, ?) AND " +
+      "APP_ID = ? AND INSTANCE_ID = ? AND SERVER_TIME >= ? AND SERVER_TIME < ?";
+    Assert.assertEquals(expectedClause, preparedClause);
+
+    // the point in time queries match a single key of a metric
+    SplitByMetricNamesCondition splitCondition = new SplitByMetricNamesCondition(condition);
+    splitCondition.setCurrentMetric("#1");
+    preparedClause = splitCondition.getConditionClause().toString();
+    expectedClause = "METRIC_NAME = ? AND HOSTNAME IN (?, ?) AND " +
+      "APP_ID = ? AND INSTANCE_ID = ? AND SERVER_TIME >= ? AND SERVER_TIME < ?";
+    Assert.assertEquals(expectedClause, preparedClause);
+  }
+
   @Test
   public void testSplitByMetricNamesCondition() throws Exception {
     Condition c = new DefaultCondition(
@@ -67,6 +107,30 @@ public class TestPhoenixTransactSQL {
     Assert.assertEquals(expectedClause, preparedClause);
   }
 
+  @Test
+  public void testResolvePrecision() throws Exception {
+    // 12 hours
+    long endTime = 1407959918000L;
+    long startTime = endTime - 12 * 3600 * 1000L;
+
+    Condition condition = new DefaultCondition(Arrays.asList("cpu_user"), "h1",
+      "a1", "i1", startTime, endTime, null, null, false);
+    PhoenixTransactSQL.resolvePrecision(condition);
+    Assert.assertEquals(Precision.MINUTES, condition.getPrecision());
+
+    // no minute aggregates for the cluster
+    condition = new DefaultCondition(Arrays.asList("cpu_user"), null,
+      "a1", "i1", startTime, endTime, null, null, false);
+    PhoenixTransactSQL.resolvePrecision(condition);
+    Assert.assertEquals(Precision.SECONDS, condition.getPrecision());
+
+    // given precision is kept
+    condition = new DefaultCondition(Arrays.asList("cpu_user"), "h1",
+      "a1", "i1", startTime, endTime, Precision.HOURS, null, false);
+    PhoenixTransactSQL.resolvePrecision(condition);
+    Assert.assertEquals(Precision.HOURS, condition.getPrecision());
+  }
+
   @Test
   public void testLikeConditionClause() throws Exception {
     Condition condition = new DefaultCondition(
@@ -236,4 +300,25 @@ public class TestPhoenixTransactSQL {
     Assert.assertTrue(stmt.contains("FROM METRIC_RECORD_HOURLY"));
     verify(connection, preparedStatement);
   }
+
+  @Test
+  public void testPrepareGetTopNHosts() throws SQLException {
+    Condition condition = new DefaultCondition(
+        Collections.singletonList("cpu_user"), null, "a1", null,
+        1407959718L, 1407959918L, Precision.MINUTES, null, true);
+    Connection connection = createNiceMock(Connection.class);
+    PreparedStatement preparedStatement = createNiceMock(PreparedStatement.class);
+    Capture<String> stmtCapture = new Capture<String>();
+    expect(connection.prepareStatement(EasyMock.and(EasyMock.anyString(), EasyMock.capture(stmtCapture))))
+        .andReturn(preparedStatement);
+
+    replay(connection, preparedStatement);
+    PhoenixTransactSQL.prepareGetTopNHostsSqlStmt(connection, condition,
+      new TopNConfig(5, "max"));
+    String stmt = stmtCapture.getValue();
+    Assert.assertTrue(stmt.contains("FROM METRIC_RECORD_MINUTE"));
+    Assert.assertTrue(stmt.contains("GROUP BY HOSTNAME ORDER BY MAX(METRIC_MAX) DESC LIMIT 5"));
+    Assert.assertFalse(stmt.contains("HOSTNAME ="));
+    verify(connection, preparedStatement);
+  }
 }
@@ -64,6 +64,17 @@ public class TestTimelineMetricStore implements TimelineMetricStore {
     return timelineMetrics;
   }
 
+  @Override
+  public TimelineMetrics getTimelineMetrics(List<String> metricNames,
+      String hostname, String applicationId, String instanceId, Long startTime,
+      Long endTime, Precision precision, Integer limit, boolean groupedByHosts,
+      TimelineMetricSeriesDownsampler downsampler, TopNConfig topNConfig)
+    throws SQLException, IOException {
+
+    return getTimelineMetrics(metricNames, hostname, applicationId, instanceId,
+      startTime, endTime, precision, limit, groupedByHosts);
+  }
+
   @Override
   public TimelineMetric getTimelineMetric(String metricName, String hostname,
       String applicationId, String instanceId, Long startTime, Long endTime,
@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregator;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregatorFactory;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_SHARDS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_SHARD_BOUNDARIES;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.DICTIONARY_ENCODING_ENABLED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimelineMetricAggregatorFactoryTest {
+
+  @Test
+  public void testNotShardedByDefault() throws Exception {
+    Configuration metricsConf = new Configuration();
+
+    assertTrue(TimelineMetricAggregatorFactory.getMetricNameShardBoundaries(metricsConf).isEmpty());
+    assertEquals(Arrays.asList(TimelineMetricAggregatorFactory.getHostMinuteCheckpointLocation(metricsConf)),
+      TimelineMetricAggregatorFactory.getHostMinuteCheckpointLocations(metricsConf));
+
+    List<TimelineMetricAggregator> shards =
+      TimelineMetricAggregatorFactory.createTimelineMetricAggregatorMinuteShards(null, metricsConf);
+    assertEquals(1, shards.size());
+    assertEquals("METRIC_RECORD_MINUTE", shards.get(0).getName());
+  }
+
+  @Test
+  public void testConfiguredBoundaries() throws Exception {
+    Configuration metricsConf = new Configuration();
+    metricsConf.set(AGGREGATOR_SHARD_BOUNDARIES, "jvm, dfs,regionserver");
+
+    assertEquals(Arrays.asList("dfs", "jvm", "regionserver"),
+      TimelineMetricAggregatorFactory.getMetricNameShardBoundaries(metricsConf));
+
+    List<TimelineMetricAggregator> shards =
+      TimelineMetricAggregatorFactory.createTimelineClusterAggregatorMinuteShards(null, metricsConf);
+    assertEquals(4, shards.size());
+    assertEquals("METRIC_AGGREGATE_shard3", shards.get(3).getName());
+
+    List<String> locations = TimelineMetricAggregatorFactory.getClusterMinuteCheckpointLocations(metricsConf);
+    assertEquals(4, locations.size());
+    assertTrue(locations.get(0).endsWith("-shard0-of-4"));
+  }
+
+  @Test
+  public void testBoundariesFromShardCount() throws Exception {
+    Configuration metricsConf = new Configuration();
+    metricsConf.setInt(AGGREGATOR_SHARDS, 4);
+
+    assertEquals(Arrays.asList("F", "V", "k"),
+      TimelineMetricAggregatorFactory.getMetricNameShardBoundaries(metricsConf));
+
+    // as many shards as leading characters at most
+    metricsConf.setInt(AGGREGATOR_SHARDS, 1000);
+    List<String> boundaries = TimelineMetricAggregatorFactory.getMetricNameShardBoundaries(metricsConf);
+    assertEquals(63, boundaries.size());
+    assertEquals("0", boundaries.get(0));
+    assertEquals("z", boundaries.get(62));
+  }
+
+  @Test
+  public void testBoundariesOfEncodedMetricNames() throws Exception {
+    Configuration metricsConf = new Configuration();
+    metricsConf.setInt(AGGREGATOR_SHARDS, 4);
+    metricsConf.setBoolean(DICTIONARY_ENCODING_ENABLED, true);
+
+    assertEquals(Arrays.asList("#9", "#i", "#r"),
+      TimelineMetricAggregatorFactory.getMetricNameShardBoundaries(metricsConf));
+
+    // not the checkpoints of the shards by full name
+    List<String> locations = TimelineMetricAggregatorFactory.getHostMinuteCheckpointLocations(metricsConf);
+    assertEquals(4, locations.size());
+    assertTrue(locations.get(0).endsWith("-encoded-shard0-of-4"));
+  }
+}
@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.ConnectionProvider;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.DICTIONARY_ENCODING_ENABLED;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TimelineMetricDictionaryTest {
+
+  @Test
+  public void testEncodeAndDecode() throws Exception {
+    TestDictionary dictionary = createDictionary(true);
+
+    assertEquals("#1", dictionary.encodeMetricName("cpu_user"));
+    assertEquals("#2", dictionary.encodeMetricName("mem_free"));
+    assertEquals("#1", dictionary.encodeMetricName("cpu_user"));
+    // separate ids for hostnames
+    assertEquals("#1", dictionary.encodeHostname("h1"));
+    // saved in one batch
+    assertTrue(dictionary.saved.isEmpty());
+    dictionary.saveNewKeys();
+    assertEquals(Arrays.asList("M:cpu_user:1", "M:mem_free:2", "H:h1:1"), dictionary.saved);
+    dictionary.saveNewKeys();
+    assertEquals(3, dictionary.saved.size());
+
+    assertEquals("cpu_user", dictionary.decodeMetricName("#1"));
+    assertEquals("h1", dictionary.decodeHostname("#1"));
+    // rows written before the encoding
+    assertEquals("cpu_user", dictionary.decodeMetricName("cpu_user"));
+    assertEquals("#zz", dictionary.decodeMetricName("#zz"));
+  }
+
+  @Test
+  public void testKeysStartWithLeastSignificantDigit() throws Exception {
+    assertEquals("#z", TimelineMetricDictionary.toKey(35));
+    assertEquals("#01", TimelineMetricDictionary.toKey(36));
+    assertEquals("#11", TimelineMetricDictionary.toKey(37));
+  }
+
+  @Test
+  public void testEncodingDisabled() throws Exception {
+    TestDictionary dictionary = createDictionary(false);
+
+    assertEquals("cpu_user", dictionary.encodeMetricName("cpu_user"));
+    assertEquals("h1", dictionary.encodeHostname("h1"));
+    dictionary.saveNewKeys();
+    assertTrue(dictionary.saved.isEmpty());
+  }
+
+  @Test
+  public void testKeysAreSavedAgainOnFailure() throws Exception {
+    TestDictionary dictionary = createDictionary(true);
+    assertEquals("#1", dictionary.encodeMetricName("cpu_user"));
+    dictionary.fail = true;
+    try {
+      dictionary.saveNewKeys();
+      fail("Expected SQLException");
+    } catch (SQLException e) {
+      // Expected
+    }
+
+    dictionary.fail = false;
+    assertEquals("#1", dictionary.encodeMetricName("cpu_user"));
+    assertEquals("#2", dictionary.encodeMetricName("mem_free"));
+    dictionary.saveNewKeys();
+    assertEquals(Arrays.asList("M:cpu_user:1", "M:mem_free:2"), dictionary.saved);
+  }
+
+  @Test
+  public void testLastStoredMetricName() throws Exception {
+    TestDictionary dictionary = createDictionary(true);
+    dictionary.encodeMetricName("cpu_user");
+    dictionary.encodeMetricName("!cpu");
+
+    assertEquals("cpu_user", dictionary.getLastStoredMetricName("cpu_user"));
+    assertEquals("#2", dictionary.getLastStoredMetricName("!cpu"));
+    assertEquals("mem_free", dictionary.getLastStoredMetricName("mem_free"));
+  }
+
+  @Test
+  public void testConditionKeys() throws Exception {
+    TestDictionary dictionary = createDictionary(true);
+    String cpuUser = dictionary.encodeMetricName("cpu_user");
+    String cpuSystem = dictionary.encodeMetricName("cpu_system");
+    String memFree = dictionary.encodeMetricName("mem_free");
+    dictionary.encodeMetricName("disk_free");
+    String host = dictionary.encodeHostname("h1");
+
+    Condition condition = new DefaultCondition(Arrays.asList("cpu_%", "mem_free"),
+      "h1", null, null, 1407959718L, 1407959918L, null, null, false);
+    dictionary.setConditionKeys(condition);
+
+    List<String> metricNameKeys = condition.getMetricNameKeys();
+    assertEquals(5, metricNameKeys.size());
+    assertTrue(metricNameKeys.containsAll(Arrays.asList(cpuUser, cpuSystem, "cpu_%")));
+    assertEquals(Arrays.asList(memFree, "mem_free"), metricNameKeys.subList(3, 5));
+    assertEquals(Arrays.asList(host, "h1"), condition.getHostnameKeys());
+    // the names are still the ones asked for
+    assertEquals(Arrays.asList("cpu_%", "mem_free"), condition.getMetricNames());
+  }
+
+  private static TestDictionary createDictionary(boolean encodingEnabled) throws Exception {
+    Configuration metricsConf = new Configuration();
+    metricsConf.setBoolean(DICTIONARY_ENCODING_ENABLED, encodingEnabled);
+
+    // empty dictionary table
+    final Connection connection = createNiceMock(Connection.class);
+    PreparedStatement stmt = createNiceMock(PreparedStatement.class);
+    ResultSet rs = createNiceMock(ResultSet.class);
+    expect(connection.prepareStatement((String) anyObject())).andReturn(stmt).anyTimes();
+    expect(stmt.executeQuery()).andReturn(rs).anyTimes();
+    replay(connection, stmt, rs);
+
+    TestDictionary dictionary = new TestDictionary(new ConnectionProvider() {
+      @Override
+      public Connection getConnection() throws SQLException {
+        return connection;
+      }
+    }, metricsConf);
+    dictionary.load();
+    return dictionary;
+  }
+
+  private static class TestDictionary extends TimelineMetricDictionary {
+    private final List<String> saved = new ArrayList<String>();
+    private boolean fail = false;
+
+    private TestDictionary(ConnectionProvider connectionProvider, Configuration metricsConf) {
+      super(connectionProvider, metricsConf);
+    }
+
+    @Override
+    protected void saveKeys(List<NewKey> keys) throws SQLException {
+      if (fail) {
+        throw new SQLException("failed");
+      }
+      for (NewKey key : keys) {
+        saved.add(key.toString());
+      }
+    }
+  }
+}
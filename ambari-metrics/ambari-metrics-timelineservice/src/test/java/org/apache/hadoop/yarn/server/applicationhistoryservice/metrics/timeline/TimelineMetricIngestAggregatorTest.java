@@ -0,0 +1,249 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.MetricClusterAggregate;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.MetricHostAggregate;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineClusterMetric;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregatorFactory;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricIngestAggregator;
+import org.apache.hadoop.yarn.util.Clock;
+import org.easymock.Capture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_MINUTE_DISABLED;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_AGGREGATOR_CHECKPOINT_DIR;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.METRICS_AGGREGATE_MINUTE_TABLE_NAME;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+
+public class TimelineMetricIngestAggregatorTest {
+
+  private TestClock clock = new TestClock();
+  private Configuration metricsConf;
+  private File checkpointDir;
+
+  @Before
+  public void setUp() throws Exception {
+    checkpointDir = File.createTempFile("ingest-aggregator", "");
+    checkpointDir.delete();
+    checkpointDir.mkdirs();
+
+    metricsConf = new Configuration();
+    metricsConf.set(TIMELINE_METRICS_AGGREGATOR_CHECKPOINT_DIR, checkpointDir.getAbsolutePath());
+    clock.setTime(0);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FileUtils.deleteDirectory(checkpointDir);
+  }
+
+  @Test
+  public void testClosedWindowsAreWritten() throws Exception {
+    PhoenixHBaseAccessor accessor = createMock(PhoenixHBaseAccessor.class);
+    Capture<Map<TimelineMetric, MetricHostAggregate>> hostAggregates =
+      new Capture<Map<TimelineMetric, MetricHostAggregate>>();
+    Capture<Map<TimelineClusterMetric, MetricClusterAggregate>> clusterAggregates =
+      new Capture<Map<TimelineClusterMetric, MetricClusterAggregate>>();
+    accessor.saveHostAggregateRecords(capture(hostAggregates), eq(METRICS_AGGREGATE_MINUTE_TABLE_NAME));
+    expectLastCall().once();
+    accessor.saveClusterAggregateRecords(capture(clusterAggregates));
+    expectLastCall().once();
+    replay(accessor);
+
+    TimelineMetricIngestAggregator aggregator =
+      new TimelineMetricIngestAggregator(accessor, metricsConf, clock);
+    writeCheckpoints(0L);
+
+    clock.setTime(10000);
+    aggregator.add(metrics(
+      metric("h1", 5000L, 1.0, 6000L, 3.0),
+      metric("h2", 7000L, 6.0)));
+    aggregator.add(metrics(metric("h1", 9000L, 5.0)));
+
+    // nothing is closed yet
+    aggregator.flush();
+    assertEquals(0, aggregator.getWrittenWindowCount());
+
+    clock.setTime(300000);
+    aggregator.flush();
+    assertEquals(2, aggregator.getWrittenWindowCount());
+
+    assertEquals(2, hostAggregates.getValue().size());
+    for (Map.Entry<TimelineMetric, MetricHostAggregate> entry : hostAggregates.getValue().entrySet()) {
+      assertEquals(0L, entry.getKey().getTimestamp());
+      if ("h1".equals(entry.getKey().getHostName())) {
+        assertEquals(9.0, entry.getValue().getSum(), 0.0);
+        assertEquals(3, entry.getValue().getNumberOfSamples());
+        assertEquals(5.0, entry.getValue().getMax(), 0.0);
+        assertEquals(1.0, entry.getValue().getMin(), 0.0);
+      }
+    }
+
+    // the average of every host in the slice
+    assertEquals(1, clusterAggregates.getValue().size());
+    MetricClusterAggregate clusterAggregate = clusterAggregates.getValue().values().iterator().next();
+    assertEquals(9.0, clusterAggregate.getSum(), 0.0);
+    assertEquals(2, clusterAggregate.getNumberOfHosts());
+    assertEquals(6.0, clusterAggregate.getMax(), 0.0);
+    assertEquals(3.0, clusterAggregate.getMin(), 0.0);
+
+    assertEquals("300000", FileUtils.readFileToString(new File(
+      TimelineMetricAggregatorFactory.getHostMinuteCheckpointLocation(metricsConf))));
+    assertEquals("120000", FileUtils.readFileToString(new File(
+      TimelineMetricAggregatorFactory.getClusterMinuteCheckpointLocation(metricsConf))));
+
+    verify(accessor);
+  }
+
+  @Test
+  public void testLateDatapointsAreDropped() throws Exception {
+    PhoenixHBaseAccessor accessor = createMock(PhoenixHBaseAccessor.class);
+    replay(accessor);
+
+    metricsConf.setBoolean(TimelineMetricConfiguration.HOST_AGGREGATOR_MINUTE_DISABLED, true);
+    TimelineMetricIngestAggregator aggregator =
+      new TimelineMetricIngestAggregator(accessor, metricsConf, clock);
+
+    clock.setTime(300000);
+    aggregator.flush();
+    aggregator.add(metrics(metric("h1", 60000L, 1.0, 290000L, 1.0)));
+
+    assertEquals(1, aggregator.getLateCount());
+
+    verify(accessor);
+  }
+
+  @Test
+  public void testFailedWriteIsRetried() throws Exception {
+    PhoenixHBaseAccessor accessor = createMock(PhoenixHBaseAccessor.class);
+    accessor.saveHostAggregateRecords(capture(new Capture<Map<TimelineMetric, MetricHostAggregate>>()),
+      eq(METRICS_AGGREGATE_MINUTE_TABLE_NAME));
+    expectLastCall().andThrow(new SQLException("failed"));
+    accessor.saveHostAggregateRecords(capture(new Capture<Map<TimelineMetric, MetricHostAggregate>>()),
+      eq(METRICS_AGGREGATE_MINUTE_TABLE_NAME));
+    expectLastCall().once();
+    replay(accessor);
+
+    metricsConf.setBoolean(CLUSTER_AGGREGATOR_MINUTE_DISABLED, true);
+    TimelineMetricIngestAggregator aggregator =
+      new TimelineMetricIngestAggregator(accessor, metricsConf, clock);
+    writeCheckpoints(0L);
+
+    clock.setTime(10000);
+    aggregator.add(metrics(metric("h1", 5000L, 1.0)));
+
+    clock.setTime(300000);
+    aggregator.flush();
+    assertEquals(1, aggregator.getFailureCount());
+    assertEquals(1, aggregator.getPendingWindowCount());
+    // not moved past the window which is not written
+    assertEquals("0", FileUtils.readFileToString(new File(
+      TimelineMetricAggregatorFactory.getHostMinuteCheckpointLocation(metricsConf))));
+
+    aggregator.flush();
+    assertEquals(0, aggregator.getPendingWindowCount());
+    assertEquals("300000", FileUtils.readFileToString(new File(
+      TimelineMetricAggregatorFactory.getHostMinuteCheckpointLocation(metricsConf))));
+
+    verify(accessor);
+  }
+
+  @Test
+  public void testCheckpointIsLeftToCatchUp() throws Exception {
+    PhoenixHBaseAccessor accessor = createMock(PhoenixHBaseAccessor.class);
+    replay(accessor);
+
+    clock.setTime(1000);
+    TimelineMetricIngestAggregator aggregator =
+      new TimelineMetricIngestAggregator(accessor, metricsConf, clock);
+    assertEquals(300000, aggregator.getHostCoveredFrom());
+    assertEquals(120000, aggregator.getClusterCoveredFrom());
+
+    // the minute aggregators did not catch up yet
+    writeCheckpoints(100000L);
+
+    clock.setTime(600000);
+    aggregator.flush();
+
+    assertEquals("100000", FileUtils.readFileToString(new File(
+      TimelineMetricAggregatorFactory.getHostMinuteCheckpointLocation(metricsConf))));
+
+    verify(accessor);
+  }
+
+  private void writeCheckpoints(long checkpointTime) throws Exception {
+    FileUtils.writeStringToFile(new File(TimelineMetricAggregatorFactory
+      .getHostMinuteCheckpointLocation(metricsConf)), String.valueOf(checkpointTime));
+    FileUtils.writeStringToFile(new File(TimelineMetricAggregatorFactory
+      .getClusterMinuteCheckpointLocation(metricsConf)), String.valueOf(checkpointTime));
+  }
+
+  private static TimelineMetrics metrics(TimelineMetric... metrics) {
+    TimelineMetrics timelineMetrics = new TimelineMetrics();
+    timelineMetrics.setMetrics(Arrays.asList(metrics));
+    return timelineMetrics;
+  }
+
+  private static TimelineMetric metric(String hostName, Object... timesAndValues) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName("cpu_user");
+    metric.setHostName(hostName);
+    metric.setAppId("HOST");
+    metric.setStartTime((Long) timesAndValues[0]);
+
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+    for (int i = 0; i < timesAndValues.length; i += 2) {
+      values.put((Long) timesAndValues[i], (Double) timesAndValues[i + 1]);
+    }
+    metric.setMetricValues(values);
+    return metric;
+  }
+
+  private static class TestClock implements Clock {
+
+    private long time;
+
+    public void setTime(long time) {
+      this.time = time;
+    }
+
+    @Override
+    public long getTime() {
+      return time;
+    }
+  }
+}
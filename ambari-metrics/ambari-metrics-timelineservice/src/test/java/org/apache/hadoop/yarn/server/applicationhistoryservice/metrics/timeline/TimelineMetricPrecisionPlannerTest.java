@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimelineMetricPrecisionPlannerTest {
+
+  private static final long HOUR = 3600000l;
+  private static final long DAY = 24 * HOUR;
+
+  private final TimelineMetricPrecisionPlanner planner =
+    new TimelineMetricPrecisionPlanner(new Configuration());
+
+  @Test
+  public void testSelectPrecision() throws Exception {
+    // 360 points of raw data
+    assertEquals(Precision.SECONDS, planner.selectPrecision(false, 0, HOUR, 500));
+    // 12 points of 5 minute aggregates
+    assertEquals(Precision.MINUTES, planner.selectPrecision(false, 0, HOUR, 100));
+    assertEquals(Precision.HOURS, planner.selectPrecision(false, 0, 30 * DAY, 1000));
+    // coarsest if all have more points
+    assertEquals(Precision.DAYS, planner.selectPrecision(false, 0, 3650 * DAY, 10));
+    // no minute table for cluster aggregates
+    assertEquals(Precision.HOURS, planner.selectPrecision(true, 0, HOUR, 100));
+  }
+
+  @Test
+  public void testStitchAcrossTtl() throws Exception {
+    long now = 10 * DAY;
+    List<TimelineMetricPrecisionPlanner.Segment> segments =
+      planner.plan(false, now - 3 * DAY, now, 30000, now);
+
+    assertEquals(2, segments.size());
+    // raw data is kept for a day
+    assertEquals(Precision.MINUTES, segments.get(0).getPrecision());
+    assertEquals(now - 3 * DAY, segments.get(0).getStartTime());
+    assertEquals(now - DAY, segments.get(0).getEndTime());
+    assertEquals(Precision.SECONDS, segments.get(1).getPrecision());
+    assertEquals(now - DAY, segments.get(1).getStartTime());
+    assertEquals(now, segments.get(1).getEndTime());
+  }
+
+  @Test
+  public void testSingleSegmentWithinTtl() throws Exception {
+    long now = 10 * DAY;
+    List<TimelineMetricPrecisionPlanner.Segment> segments =
+      planner.plan(false, now - HOUR, now, 100, now);
+
+    assertEquals(1, segments.size());
+    assertEquals(Precision.MINUTES, segments.get(0).getPrecision());
+  }
+
+  @Test
+  public void testRangeOlderThanAllTables() throws Exception {
+    long now = 1000 * DAY;
+    List<TimelineMetricPrecisionPlanner.Segment> segments =
+      planner.plan(false, now - 400 * DAY, now, Integer.MAX_VALUE, now);
+
+    assertEquals(4, segments.size());
+    assertEquals(Precision.DAYS, segments.get(0).getPrecision());
+    assertEquals(now - 365 * DAY, segments.get(0).getStartTime());
+  }
+}
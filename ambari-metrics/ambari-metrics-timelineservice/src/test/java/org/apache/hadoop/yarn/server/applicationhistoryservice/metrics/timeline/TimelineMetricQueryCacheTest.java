@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.QUERY_CACHE_REFRESH_OVERLAP;
+import static org.junit.Assert.assertEquals;
+
+public class TimelineMetricQueryCacheTest {
+
+  private static final long MINUTE = 60000l;
+
+  @Test
+  public void testRepeatedQueryIsNotScanned() throws Exception {
+    TimelineMetricQueryCache cache = createCache();
+    TestScanner scanner = new TestScanner();
+
+    TimelineMetrics metrics = cache.getTimelineMetrics(
+      Collections.singletonList("cpu_user"), createCondition(0, 60 * MINUTE), scanner);
+    assertEquals(61, metrics.getMetrics().get(0).getMetricSeries().size());
+
+    metrics = cache.getTimelineMetrics(
+      Collections.singletonList("cpu_user"), createCondition(0, 60 * MINUTE), scanner);
+    assertEquals(61, metrics.getMetrics().get(0).getMetricSeries().size());
+
+    assertEquals(1, scanner.scanned.size());
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testLaterQueryOnlyScansLatestRecords() throws Exception {
+    TimelineMetricQueryCache cache = createCache();
+    TestScanner scanner = new TestScanner();
+
+    cache.getTimelineMetrics(Collections.singletonList("cpu_user"),
+      createCondition(0, 60 * MINUTE), scanner);
+    TimelineMetrics metrics = cache.getTimelineMetrics(
+      Collections.singletonList("cpu_user"),
+      createCondition(10 * MINUTE, 70 * MINUTE), scanner);
+
+    assertEquals(2, scanner.scanned.size());
+    Condition delta = scanner.scanned.get(1);
+    // two minutes of overlap
+    assertEquals(58 * MINUTE, delta.getStartTime().longValue());
+    assertEquals(70 * MINUTE, delta.getEndTime().longValue());
+    assertEquals(Precision.SECONDS, delta.getPrecision());
+
+    TimelineMetricSeries series = metrics.getMetrics().get(0).getMetricSeries();
+    assertEquals(61, series.size());
+    assertEquals(10 * MINUTE, series.getFirstTimestamp());
+    assertEquals(70 * MINUTE, series.getLastTimestamp());
+    assertEquals(1, cache.getPartialHits());
+  }
+
+  @Test
+  public void testResultsAreCopies() throws Exception {
+    TimelineMetricQueryCache cache = createCache();
+    TestScanner scanner = new TestScanner();
+
+    TimelineMetrics metrics = cache.getTimelineMetrics(
+      Collections.singletonList("cpu_user"), createCondition(0, 60 * MINUTE), scanner);
+    metrics.getMetrics().get(0).getMetricSeries().setValue(0, -1.0);
+
+    metrics = cache.getTimelineMetrics(
+      Collections.singletonList("cpu_user"), createCondition(0, 60 * MINUTE), scanner);
+    assertEquals(0.0, metrics.getMetrics().get(0).getMetricSeries().getValue(0), 0.0001);
+  }
+
+  @Test
+  public void testEarlierStartIsScannedAgain() throws Exception {
+    TimelineMetricQueryCache cache = createCache();
+    TestScanner scanner = new TestScanner();
+
+    cache.getTimelineMetrics(Collections.singletonList("cpu_user"),
+      createCondition(30 * MINUTE, 60 * MINUTE), scanner);
+    cache.getTimelineMetrics(Collections.singletonList("cpu_user"),
+      createCondition(0, 60 * MINUTE), scanner);
+
+    assertEquals(2, cache.getMisses());
+    assertEquals(0, scanner.scanned.get(1).getStartTime().longValue());
+  }
+
+  private static TimelineMetricQueryCache createCache() {
+    Configuration metricsConf = new Configuration();
+    metricsConf.setLong(QUERY_CACHE_REFRESH_OVERLAP, 120);
+    return new TimelineMetricQueryCache(metricsConf);
+  }
+
+  private static Condition createCondition(long startTime, long endTime) {
+    return new DefaultCondition(Collections.singletonList("cpu_user"), null,
+      "HOST", null, startTime, endTime, Precision.SECONDS, null, true);
+  }
+
+  /**
+   * One point a minute, the value being the minute.
+   */
+  private static class TestScanner implements TimelineMetricQueryCache.Scanner {
+    private final List<Condition> scanned = new ArrayList<Condition>();
+
+    @Override
+    public TimelineMetrics scan(Condition condition) {
+      scanned.add(condition);
+      TimelineMetricSeries series = new TimelineMetricSeries();
+      for (long time = condition.getStartTime(); time <= condition.getEndTime(); time += MINUTE) {
+        series.append(time, time / MINUTE);
+      }
+      TimelineMetric metric = new TimelineMetric();
+      metric.setMetricName("cpu_user");
+      metric.setAppId("HOST");
+      metric.setStartTime(condition.getStartTime());
+      metric.setMetricValues(series);
+
+      TimelineMetrics metrics = new TimelineMetrics();
+      metrics.getMetrics().add(metric);
+      return metrics;
+    }
+  }
+}
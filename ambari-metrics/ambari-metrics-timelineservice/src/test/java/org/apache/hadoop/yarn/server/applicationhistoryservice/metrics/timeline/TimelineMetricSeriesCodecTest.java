@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+import org.apache.hadoop.yarn.util.timeline.TimelineUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TimelineMetricSeriesCodecTest {
+
+  @Test
+  public void testRegularSeries() throws Exception {
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+    long time = 1430000000000L;
+    for (int i = 0; i < 360; i++) {
+      values.put(time + i * 10000L, (double) (50 + i % 7));
+    }
+
+    byte[] bytes = TimelineMetricSeriesCodec.encode(values);
+    assertEquals(values, TimelineMetricSeriesCodec.decode(bytes));
+
+    String json = TimelineUtils.dumpTimelineRecordtoJSON(values);
+    assertTrue("Expected " + bytes.length + " bytes to be less than a tenth of " +
+      json.length(), bytes.length * 10 < json.length());
+  }
+
+  @Test
+  public void testIrregularSeries() throws Exception {
+    Random random = new Random(1);
+    for (int n = 0; n < 500; n++) {
+      TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+      long time = random.nextInt(Integer.MAX_VALUE) * 1000L;
+      double value = random.nextDouble();
+      for (int i = 0; i < n; i++) {
+        time += 1 + random.nextInt(n % 2 == 0 ? 20000 : 3000000);
+        switch (random.nextInt(5)) {
+          case 0: value = random.nextDouble(); break;
+          case 1: value = Math.floor(random.nextDouble() * 1000); break;
+          case 2: value = Double.NaN; break;
+          case 3: value = -value; break;
+          default: break;
+        }
+        values.put(time, value);
+      }
+
+      assertEquals(values, TimelineMetricSeriesCodec.decode(
+        TimelineMetricSeriesCodec.encode(values)));
+    }
+  }
+
+  @Test
+  public void testNullValues() throws Exception {
+    TimelineMetricSeries values = new TimelineMetricSeries();
+    values.put(1000L, null);
+    values.put(2000L, 2.5);
+    values.put(3500L, 2.5);
+    values.put(4000L, null);
+
+    TimelineMetricSeries series =
+      TimelineMetricSeriesCodec.decode(TimelineMetricSeriesCodec.encode(values));
+
+    assertEquals(4, series.size());
+    assertEquals(4000L, series.getLastTimestamp());
+    assertTrue(series.isNull(0));
+    assertEquals(2.5, series.getValue(1), 0.0);
+    assertEquals(2.5, series.getValue(2), 0.0);
+    assertTrue(series.isNull(3));
+    assertEquals(values, series);
+  }
+
+  @Test
+  public void testNaNIsNotNull() throws Exception {
+    TimelineMetricSeries values = new TimelineMetricSeries();
+    values.put(1000L, Double.NaN);
+    values.put(2000L, null);
+    values.put(3000L, Double.NaN);
+    values.put(4000L, 1.0);
+
+    TimelineMetricSeries series =
+      TimelineMetricSeriesCodec.decode(TimelineMetricSeriesCodec.encode(values));
+
+    assertEquals(4, series.size());
+    assertFalse(series.isNull(0));
+    assertTrue(Double.isNaN(series.get(1000L)));
+    assertTrue(series.isNull(1));
+    assertNull(series.get(2000L));
+    assertTrue(series.containsKey(2000L));
+    assertFalse(series.isNull(2));
+    assertTrue(Double.isNaN(series.get(3000L)));
+    assertEquals(1.0, series.get(4000L), 0.0);
+  }
+
+  @Test
+  public void testEmptySeries() throws Exception {
+    TimelineMetricSeries series = TimelineMetricSeriesCodec.decode(
+      TimelineMetricSeriesCodec.encode(new TreeMap<Long, Double>()));
+
+    assertEquals(0, series.size());
+  }
+
+  @Test
+  public void testInvalidBytes() throws Exception {
+    try {
+      TimelineMetricSeriesCodec.decode("{\"1000\":1.0}".getBytes("UTF-8"));
+      fail("Expected JSON to be rejected");
+    } catch (IOException e) {
+      // expected
+    }
+
+    Map<Long, Double> values = new TreeMap<Long, Double>();
+    values.put(1000L, 1.0);
+    values.put(2000L, 2.0);
+    byte[] bytes = TimelineMetricSeriesCodec.encode(values);
+    byte[] truncated = new byte[bytes.length - 2];
+    System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+    try {
+      TimelineMetricSeriesCodec.decode(truncated);
+      fail("Expected a truncated series to be rejected");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimelineMetricSeriesDownsamplerTest {
+
+  @Test
+  public void testStepFromPoints() throws Exception {
+    TimelineMetricSeriesDownsampler downsampler =
+      new TimelineMetricSeriesDownsampler(60, null, null);
+    // one hour in 60 points
+    assertEquals(60000, downsampler.getStepMillis(0, 3600000));
+    // rounded up to whole seconds
+    assertEquals(2000, downsampler.getStepMillis(0, 61000));
+    assertEquals(1000, downsampler.getStepMillis(0, 100));
+
+    downsampler = new TimelineMetricSeriesDownsampler(60, 30L, null);
+    assertEquals(30000, downsampler.getStepMillis(0, 3600000));
+  }
+
+  @Test
+  public void testAverage() throws Exception {
+    TimelineMetricSeriesDownsampler downsampler =
+      new TimelineMetricSeriesDownsampler(2, null, "avg");
+    TimelineMetrics metrics = new TimelineMetrics();
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName("cpu_user");
+    metric.setMetricValues(createSeries());
+    metrics.getMetrics().add(metric);
+
+    downsampler.downsample(metrics, 0, 120000);
+
+    TimelineMetricSeries series = metric.getMetricSeries();
+    assertEquals(3, series.size());
+    assertEquals(0, series.getTimestamp(0));
+    assertEquals(2.0, series.getValue(0), 0.0001);
+    assertEquals(60000, series.getTimestamp(1));
+    assertEquals(5.0, series.getValue(1), 0.0001);
+    assertTrue(series.isNull(2));
+  }
+
+  @Test
+  public void testMinMaxSum() throws Exception {
+    TimelineMetricSeries series = createSeries();
+
+    TimelineMetricSeries min = new TimelineMetricSeriesDownsampler(null, 60L, "min")
+      .downsample(series, 60000);
+    assertEquals(1.0, min.getValue(0), 0.0001);
+    assertEquals(4.0, min.getValue(1), 0.0001);
+
+    TimelineMetricSeries max = new TimelineMetricSeriesDownsampler(null, 60L, "max")
+      .downsample(series, 60000);
+    assertEquals(3.0, max.getValue(0), 0.0001);
+    assertEquals(6.0, max.getValue(1), 0.0001);
+
+    TimelineMetricSeries sum = new TimelineMetricSeriesDownsampler(null, 60L, "sum")
+      .downsample(series, 60000);
+    assertEquals(6.0, sum.getValue(0), 0.0001);
+    assertEquals(10.0, sum.getValue(1), 0.0001);
+    assertEquals(120000, sum.getTimestamp(2));
+    assertTrue(sum.isNull(2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPointsOrStepNeeded() throws Exception {
+    new TimelineMetricSeriesDownsampler(null, null, "avg");
+  }
+
+  private static TimelineMetricSeries createSeries() {
+    TimelineMetricSeries series = new TimelineMetricSeries();
+    series.put(10000L, 1.0);
+    series.put(20000L, 2.0);
+    series.put(50000L, 3.0);
+    series.put(60000L, 4.0);
+    series.put(119000L, 6.0);
+    series.put(120000L, null);
+    return series;
+  }
+}
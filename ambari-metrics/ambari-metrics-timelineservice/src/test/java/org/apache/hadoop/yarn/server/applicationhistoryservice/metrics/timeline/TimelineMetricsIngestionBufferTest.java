@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.easymock.Capture;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TimelineMetricsIngestionBufferTest {
+
+  @Test
+  public void testMetricsAreCoalesced() throws Exception {
+    PhoenixHBaseAccessor accessor = createMock(PhoenixHBaseAccessor.class);
+    Capture<TimelineMetrics> written = new Capture<TimelineMetrics>();
+    accessor.insertMetricRecords(capture(written));
+    expectLastCall().once();
+    replay(accessor);
+
+    TimelineMetricsIngestionBuffer buffer =
+      new TimelineMetricsIngestionBuffer(accessor, new Configuration());
+
+    buffer.add(metrics(metric("cpu_user", "h1", 1000L, 2000L)));
+    buffer.add(metrics(metric("cpu_user", "h1", 3000L), metric("cpu_user", "h2", 1000L)));
+
+    assertEquals(2, buffer.getPendingCount());
+    assertEquals(1, buffer.getCoalescedCount());
+    assertEquals(3, buffer.getReceivedCount());
+
+    assertEquals(2, buffer.flush());
+    assertEquals(0, buffer.getPendingCount());
+
+    TimelineMetric merged = written.getValue().getMetrics().get(0);
+    assertEquals("h1", merged.getHostName());
+    assertEquals(3, merged.getMetricValues().size());
+    assertEquals(1000L, merged.getStartTime());
+
+    // nothing left to write
+    assertEquals(0, buffer.flush());
+
+    verify(accessor);
+  }
+
+  @Test
+  public void testOverflowIsDropped() throws Exception {
+    PhoenixHBaseAccessor accessor = createMock(PhoenixHBaseAccessor.class);
+    replay(accessor);
+
+    Configuration metricsConf = new Configuration();
+    metricsConf.setLong(TimelineMetricConfiguration.INGESTION_BUFFER_MAX_DATAPOINTS, 2);
+    metricsConf.set(TimelineMetricConfiguration.INGESTION_BUFFER_OVERFLOW_POLICY, "drop");
+
+    TimelineMetricsIngestionBuffer buffer =
+      new TimelineMetricsIngestionBuffer(accessor, metricsConf);
+
+    buffer.add(metrics(metric("cpu_user", "h1", 1000L, 2000L), metric("cpu_user", "h2", 1000L)));
+
+    assertEquals(1, buffer.getPendingCount());
+    assertEquals(1, buffer.getDroppedCount());
+
+    verify(accessor);
+  }
+
+  @Test
+  public void testOverflowIsWrittenThrough() throws Exception {
+    PhoenixHBaseAccessor accessor = createMock(PhoenixHBaseAccessor.class);
+    Capture<TimelineMetrics> written = new Capture<TimelineMetrics>();
+    accessor.insertMetricRecords(capture(written));
+    expectLastCall().once();
+    replay(accessor);
+
+    Configuration metricsConf = new Configuration();
+    metricsConf.setLong(TimelineMetricConfiguration.INGESTION_BUFFER_MAX_DATAPOINTS, 2);
+
+    TimelineMetricsIngestionBuffer buffer =
+      new TimelineMetricsIngestionBuffer(accessor, metricsConf);
+
+    buffer.add(metrics(metric("cpu_user", "h1", 1000L, 2000L), metric("cpu_user", "h2", 1000L)));
+
+    assertEquals(1, buffer.getPendingCount());
+    assertEquals(1, buffer.getWrittenThroughCount());
+    assertEquals("h2", written.getValue().getMetrics().get(0).getHostName());
+
+    verify(accessor);
+  }
+
+  @Test
+  public void testFailedFlushIsRetried() throws Exception {
+    PhoenixHBaseAccessor accessor = createMock(PhoenixHBaseAccessor.class);
+    accessor.insertMetricRecords(capture(new Capture<TimelineMetrics>()));
+    expectLastCall().andThrow(new SQLException("failed"));
+    accessor.insertMetricRecords(capture(new Capture<TimelineMetrics>()));
+    expectLastCall().once();
+    replay(accessor);
+
+    TimelineMetricsIngestionBuffer buffer =
+      new TimelineMetricsIngestionBuffer(accessor, new Configuration());
+
+    buffer.add(metrics(metric("cpu_user", "h1", 1000L)));
+
+    try {
+      buffer.flush();
+      fail("Expected the flush to fail");
+    } catch (SQLException e) {
+      // expected
+    }
+
+    assertEquals(1, buffer.getPendingCount());
+    assertEquals(1, buffer.getFlushFailureCount());
+
+    assertEquals(1, buffer.flush());
+    assertEquals(0, buffer.getPendingCount());
+
+    verify(accessor);
+  }
+
+  @Test
+  public void testMetricWithoutValues() throws Exception {
+    PhoenixHBaseAccessor accessor = createMock(PhoenixHBaseAccessor.class);
+    replay(accessor);
+
+    TimelineMetricsIngestionBuffer buffer =
+      new TimelineMetricsIngestionBuffer(accessor, new Configuration());
+
+    buffer.add(metrics(metricWithoutValues("cpu_user", "h1")));
+    buffer.add(metrics(metric("cpu_user", "h1", 2000L)));
+    buffer.add(metrics(metricWithoutValues("cpu_user", "h1")));
+
+    assertEquals(1, buffer.getPendingCount());
+    assertEquals(1, buffer.getPendingDatapoints());
+    assertEquals(2, buffer.getCoalescedCount());
+
+    verify(accessor);
+  }
+
+  private static TimelineMetrics metrics(TimelineMetric... metrics) {
+    TimelineMetrics timelineMetrics = new TimelineMetrics();
+    timelineMetrics.setMetrics(Arrays.asList(metrics));
+    return timelineMetrics;
+  }
+
+  private static TimelineMetric metric(String metricName, String hostName, Long... times) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(metricName);
+    metric.setHostName(hostName);
+    metric.setAppId("HOST");
+    metric.setStartTime(times[0]);
+
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+    for (Long time : times) {
+      values.put(time, 1.0);
+    }
+    metric.setMetricValues(values);
+    return metric;
+  }
+
+  private static TimelineMetric metricWithoutValues(String metricName, String hostName) {
+    TimelineMetric metric = metric(metricName, hostName, 1000L);
+    metric.setMetricValues(null);
+    return metric;
+  }
+}
@@ -70,10 +70,10 @@ public interface ActionDBAccessor {
    * Returns all the pending stages, including queued and not-queued. A stage is
    * considered in progress if it is in progress for any host.
    * <p/>
-   * The results will be sorted by request ID and then stage ID making this call
-   * expensive in some scenarios. Use {@link #getCommandsInProgressCount()} in
-   * order to determine if there are stages that are in progress before getting
-   * the stages from this method.
+   * The results will be sorted by request ID and then stage ID. The stages are
+   * served from an in-memory view which is read from the database once and
+   * then kept up to date as commands are persisted, scheduled and reported;
+   * only stages that changed since the previous call are re-read.
    *
    * @see HostRoleStatus#IN_PROGRESS_STATUSES
    */
@@ -86,6 +86,23 @@ public interface ActionDBAccessor {
    */
   public int getCommandsInProgressCount();
 
+  /**
+   * Marks a stage whose commands were updated without going through this
+   * accessor so that it is re-read on the next call to
+   * {@link #getStagesInProgress()}.
+   *
+   * @param requestId the request id of the stage
+   * @param stageId   the stage id
+   */
+  public void refreshStageInProgress(long requestId, long stageId);
+
+  /**
+   * Discards the in-memory view of stages in progress so that it is fully
+   * reloaded from the database on the next call to
+   * {@link #getStagesInProgress()}.
+   */
+  public void invalidateStagesInProgress();
+
   /**
    * Persists all tasks for a given request
    * @param request request object
@@ -25,11 +25,17 @@ import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.ambari.server.AmbariException;
 import org.apache.ambari.server.agent.CommandReport;
 import org.apache.ambari.server.agent.ExecutionCommand;
+import org.apache.ambari.server.events.HostRemovedEvent;
+import org.apache.ambari.server.events.publishers.AmbariEventPublisher;
+import org.apache.ambari.server.orm.AmbariJpaLocalTxnInterceptor;
 import org.apache.ambari.server.orm.dao.ClusterDAO;
 import org.apache.ambari.server.orm.dao.ExecutionCommandDAO;
 import org.apache.ambari.server.orm.dao.HostDAO;
@@ -54,6 +60,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
@@ -101,9 +108,50 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
   @Inject
   RequestScheduleDAO requestScheduleDAO;
 
+  @Inject
+  AmbariEventPublisher ambariEventPublisher;
+
   private Cache<Long, HostRoleCommand> hostRoleCommandCache;
   private long cacheLimit; //may be exceeded to store tasks from one request
 
+  /**
+   * In-memory view of the stages that have at least one command in
+   * {@link HostRoleStatus#IN_PROGRESS_STATUSES}, keyed by request id and then
+   * by stage id so that iteration order matches the ordering of
+   * {@link StageDAO#findByCommandStatuses(Collection)}. The view is loaded
+   * from the database once; after that only the stages which have been
+   * changed are re-read. Any access must synchronize on this object.
+   */
+  private final TreeMap<Long, TreeMap<Long, Stage>> stagesInProgress =
+      new TreeMap<Long, TreeMap<Long, Stage>>();
+
+  /**
+   * Action ids (requestId-stageId) of the stages which were changed since
+   * the last time the in-memory view of stages in progress was read.
+   */
+  private final Set<String> changedStages =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  /**
+   * {@code false} if the in-memory view of stages in progress must be fully
+   * reloaded from the database on next access.
+   */
+  private volatile boolean stagesInProgressLoaded = false;
+
+  /**
+   * The number of commands in progress of each stage in the in-memory view,
+   * by action id, as counted when the stage was read. Any access must
+   * synchronize on {@link #stagesInProgress}.
+   */
+  private final Map<String, Integer> commandsInProgressByStage =
+      new HashMap<String, Integer>();
+
+  /**
+   * The sum of {@link #commandsInProgressByStage}. Any access must
+   * synchronize on {@link #stagesInProgress}.
+   */
+  private int commandsInProgress = 0;
+
   @Inject
   public ActionDBAccessorImpl(@Named("executionCommandCacheSize") long cacheLimit) {
 
@@ -117,6 +165,18 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
   @Inject
   void init() {
     requestId = stageDAO.getLastRequestId();
+    ambariEventPublisher.register(this);
+  }
+
+  /**
+   * Commands of a removed host are deleted from the database directly, so
+   * the in-memory view of stages in progress has to be reloaded.
+   *
+   * @param event the host removed event
+   */
+  @Subscribe
+  public void onHostRemoved(HostRemovedEvent event) {
+    invalidateStagesInProgress();
   }
 
   /* (non-Javadoc)
@@ -182,6 +242,12 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
     }
 
     hostRoleCommandDAO.mergeAll(commands);
+
+    for (HostRoleCommandEntity command : commands) {
+      if (command.getStatus() == HostRoleStatus.ABORTED) {
+        stageChanged(command.getRequestId(), command.getStageId());
+      }
+    }
   }
 
   /* (non-Javadoc)
@@ -198,6 +264,7 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
       command.setEndTime(now);
     }
     hostRoleCommandDAO.mergeAll(commands);
+    stageChanged(requestId, stageId);
     endRequestIfCompleted(requestId);
   }
 
@@ -208,10 +275,12 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
   public List<Stage> getStagesInProgress() {
     List<Stage> stages = new ArrayList<Stage>();
 
-    List<StageEntity> stageEntities = stageDAO.findByCommandStatuses(HostRoleStatus.IN_PROGRESS_STATUSES);
+    synchronized (stagesInProgress) {
+      refreshStagesInProgress();
 
-    for (StageEntity stageEntity : stageEntities) {
-      stages.add(stageFactory.createExisting(stageEntity));
+      for (TreeMap<Long, Stage> requestStages : stagesInProgress.values()) {
+        stages.addAll(requestStages.values());
+      }
     }
 
     return stages;
@@ -222,12 +291,140 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
    */
   @Override
   public int getCommandsInProgressCount() {
-    Number count = hostRoleCommandDAO.getCountByStatus(HostRoleStatus.IN_PROGRESS_STATUSES);
-    if (null == count) {
-      return 0;
+    synchronized (stagesInProgress) {
+      // don't load the whole view just to find out that it is empty
+      if (!stagesInProgressLoaded) {
+        Number count = hostRoleCommandDAO.getCountByStatus(HostRoleStatus.IN_PROGRESS_STATUSES);
+        return null == count ? 0 : count.intValue();
+      }
+
+      // only the stages changed since the last call are re-read
+      refreshStagesInProgress();
+      return commandsInProgress;
     }
+  }
 
-    return count.intValue();
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void refreshStageInProgress(long requestId, long stageId) {
+    stageChanged(requestId, stageId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void invalidateStagesInProgress() {
+    stagesInProgressLoaded = false;
+  }
+
+  /**
+   * Marks the stage as changed so that it is re-read from the database the
+   * next time the stages in progress are requested. Within a transaction the
+   * stage is only marked once it commits, since a refresh in between would
+   * read the stage as it was and drop the mark; outside of one the change
+   * must already be written.
+   *
+   * @param requestId the request id of the stage
+   * @param stageId   the stage id
+   */
+  private void stageChanged(long requestId, long stageId) {
+    final String actionId = StageUtils.getActionId(requestId, stageId);
+    AmbariJpaLocalTxnInterceptor.runAfterCommit(new Runnable() {
+      @Override
+      public void run() {
+        changedStages.add(actionId);
+      }
+    });
+  }
+
+  /**
+   * Brings the in-memory view of stages in progress up to date. The full set
+   * of stages is only read from the database the first time or after
+   * {@link #invalidateStagesInProgress()}; otherwise only the stages marked as
+   * changed are re-created. Must be called while holding the lock on
+   * {@link #stagesInProgress}.
+   */
+  private void refreshStagesInProgress() {
+    if (!stagesInProgressLoaded) {
+      // any change reported from now on will be re-read on next access
+      stagesInProgressLoaded = true;
+      changedStages.clear();
+      stagesInProgress.clear();
+      commandsInProgressByStage.clear();
+      commandsInProgress = 0;
+
+      List<StageEntity> stageEntities = stageDAO.findByCommandStatuses(HostRoleStatus.IN_PROGRESS_STATUSES);
+      for (StageEntity stageEntity : stageEntities) {
+        putStageInProgress(stageFactory.createExisting(stageEntity));
+      }
+
+      LOG.debug("Loaded {} stages in progress", stageEntities.size());
+      return;
+    }
+
+    if (changedStages.isEmpty()) {
+      return;
+    }
+
+    List<String> actionIds = new ArrayList<String>(changedStages);
+    changedStages.removeAll(actionIds);
+
+    for (String actionId : actionIds) {
+      long[] requestStageIds = StageUtils.getRequestStage(actionId);
+      removeStageInProgress(requestStageIds[0], requestStageIds[1]);
+
+      StageEntity stageEntity = stageDAO.findByActionId(actionId);
+      if (stageEntity != null) {
+        Stage stage = stageFactory.createExisting(stageEntity);
+        if (stage.doesStageHaveHostRoleStatus(HostRoleStatus.IN_PROGRESS_STATUSES)) {
+          putStageInProgress(stage);
+        }
+      }
+    }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Refreshed {} changed stages", actionIds.size());
+    }
+  }
+
+  private void putStageInProgress(Stage stage) {
+    TreeMap<Long, Stage> requestStages = stagesInProgress.get(stage.getRequestId());
+    if (requestStages == null) {
+      requestStages = new TreeMap<Long, Stage>();
+      stagesInProgress.put(stage.getRequestId(), requestStages);
+    }
+    requestStages.put(stage.getStageId(), stage);
+
+    int count = 0;
+    for (Map<String, HostRoleCommand> roleCommands : stage.getHostRoleCommands().values()) {
+      for (HostRoleCommand command : roleCommands.values()) {
+        if (command.getStatus().isInProgress()) {
+          count++;
+        }
+      }
+    }
+
+    commandsInProgressByStage.put(stage.getActionId(), count);
+    commandsInProgress += count;
+  }
+
+  private void removeStageInProgress(long requestId, long stageId) {
+    TreeMap<Long, Stage> requestStages = stagesInProgress.get(requestId);
+    if (requestStages != null) {
+      requestStages.remove(stageId);
+      if (requestStages.isEmpty()) {
+        stagesInProgress.remove(requestId);
+      }
+    }
+
+    Integer count = commandsInProgressByStage.remove(
+        StageUtils.getActionId(requestId, stageId));
+    if (null != count) {
+      commandsInProgress -= count;
+    }
   }
 
   @Override
@@ -310,6 +507,11 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
     }
     requestEntity.setStages(stageEntities);
     requestDAO.merge(requestEntity);
+
+    // new stages are picked up by the scheduler on its next pass
+    for (StageEntity stageEntity : stageEntities) {
+      stageChanged(stageEntity.getRequestId(), stageEntity.getStageId());
+    }
   }
 
   @Override
@@ -410,6 +612,9 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
     }
 
     hostRoleCommandDAO.mergeAll(commandEntities);
+    for (HostRoleCommandEntity commandEntity : commandEntities) {
+      stageChanged(commandEntity.getRequestId(), commandEntity.getStageId());
+    }
     // Invalidate cache because of updates to ABORTED commands
     hostRoleCommandCache.invalidateAll(abortedCommandUpdates);
 
@@ -450,6 +655,7 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
       command.setExitcode(report.getExitCode());
     }
     hostRoleCommandDAO.mergeAll(commands);
+    stageChanged(requestId, stageId);
 
     if (checkRequest) {
       endRequestIfCompleted(requestId);
@@ -506,6 +712,7 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
       entity.setStatus(hostRoleCommand.getStatus());
       entity.setAttemptCount(hostRoleCommand.getAttemptCount());
       hostRoleCommandDAO.merge(entity);
+      stageChanged(s.getRequestId(), s.getStageId());
     } else {
       throw new RuntimeException("HostRoleCommand is not persisted, cannot update:\n" + hostRoleCommand);
     }
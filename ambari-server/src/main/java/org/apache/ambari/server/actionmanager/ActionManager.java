@@ -166,6 +166,14 @@ public class ActionManager {
     }
 
     db.updateHostRoleStates(reportsToProcess);
+
+    // a finished command may allow the next stage to be scheduled right away
+    for (CommandReport report : reportsToProcess) {
+      if (HostRoleStatus.valueOf(report.getStatus()).isCompletedState()) {
+        scheduler.awake();
+        break;
+      }
+    }
   }
 
   /**
@@ -247,6 +255,18 @@ public class ActionManager {
     return db.getRequestContext(requestId);
   }
 
+  /**
+   * Notifies the scheduler that the commands of a stage have been updated
+   * directly in the database, for example when a held task is retried.
+   *
+   * @param requestId the request id of the stage
+   * @param stageId   the stage id
+   */
+  public void refreshStage(long requestId, long stageId) {
+    db.refreshStageInProgress(requestId, stageId);
+    scheduler.awake();
+  }
+
   public void cancelRequest(long requestId, String reason) {
     scheduler.scheduleCancellingRequest(requestId, reason);
     scheduler.awake();
@@ -71,8 +71,10 @@ import com.google.inject.persist.UnitOfWork;
 
 /**
  * This class encapsulates the action scheduler thread.
- * Action schedule frequently looks at action database and determines if
- * there is an action that can be scheduled.
+ * Action schedule frequently looks at the stages in progress and determines if
+ * there is an action that can be scheduled. The stages are kept in memory by
+ * {@link ActionDBAccessor#getStagesInProgress()}, so a wakeup only re-reads
+ * the stages which changed since the previous one.
  */
 class ActionScheduler implements Runnable {
 
@@ -199,9 +201,11 @@ class ActionScheduler implements Runnable {
       } catch (Exception ex) {
         LOG.warn("Exception received", ex);
         requestsInProgress.clear();
+        db.invalidateStagesInProgress();
       } catch (Throwable t) {
         LOG.warn("ERROR", t);
         requestsInProgress.clear();
+        db.invalidateStagesInProgress();
       }
     }
   }
@@ -213,9 +217,9 @@ class ActionScheduler implements Runnable {
       // The first thing to do is to abort requests that are cancelled
       processCancelledRequestsList();
 
-      // !!! getting the stages in progress could be a very expensive call due
-      // to the join being used; there's no need to make it if there are
-      // no commands in progress
+      // !!! the count is kept with the in-memory view of the stages in
+      // progress, or counted by the database before the view is loaded, so
+      // that the view is not built when there are no commands in progress
       if (db.getCommandsInProgressCount() == 0) {
         // Nothing to do
         if (LOG.isDebugEnabled()) {
@@ -44,6 +44,7 @@ import org.apache.ambari.server.actionmanager.HostRoleStatus;
 import org.apache.ambari.server.api.services.AmbariMetaInfo;
 import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.MaintenanceStateHelper;
+import org.apache.ambari.server.controller.ServerMetricsRegistry;
 import org.apache.ambari.server.events.ActionFinalReportReceivedEvent;
 import org.apache.ambari.server.events.AlertEvent;
 import org.apache.ambari.server.events.AlertReceivedEvent;
@@ -106,6 +107,7 @@ import com.google.gson.annotations.SerializedName;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import com.google.inject.Singleton;
+import com.google.inject.persist.UnitOfWork;
 
 
 /**
@@ -125,12 +127,27 @@ public class HeartBeatHandler {
   private final ActionManager actionManager;
   private HeartbeatMonitor heartbeatMonitor;
 
+  /**
+   * The name under which the metrics of the {@link HeartbeatProcessor} are
+   * registered.
+   */
+  private static final String HEARTBEAT_PROCESSOR_METRICS = "heartbeat_processor";
+
+  /**
+   * Processes command reports, status reports and alerts off the agent
+   * request thread; {@code null} if heartbeats are processed synchronously.
+   */
+  private HeartbeatProcessor heartbeatProcessor;
+
   @Inject
   private Injector injector;
 
   @Inject
   private Configuration config;
 
+  @Inject
+  private UnitOfWork unitOfWork;
+
   @Inject
   private AmbariMetaInfo ambariMetaInfo;
 
@@ -190,12 +207,42 @@ public class HeartBeatHandler {
 
   public void start() {
     heartbeatMonitor.start();
+
+    if (config.isHeartbeatAsyncProcessingEnabled()) {
+      heartbeatProcessor = new HeartbeatProcessor(this, clusterFsm, unitOfWork,
+          config.getHeartbeatAsyncQueueSize(), config.getHeartbeatAsyncBatchSize());
+      heartbeatProcessor.start();
+
+      ServerMetricsRegistry.instance().register(HEARTBEAT_PROCESSOR_METRICS,
+          heartbeatProcessor);
+    }
+  }
+
+  /**
+   * Stops the asynchronous heartbeat processor, if any, once the heartbeats
+   * it has queued are processed.
+   */
+  public void stop() {
+    HeartbeatProcessor processor = heartbeatProcessor;
+    if (null != processor) {
+      processor.stop();
+      ServerMetricsRegistry.instance().unregister(HEARTBEAT_PROCESSOR_METRICS,
+          processor);
+    }
   }
 
   void setHeartbeatMonitor(HeartbeatMonitor heartbeatMonitor) {
     this.heartbeatMonitor = heartbeatMonitor;
   }
 
+  /**
+   * @return the asynchronous heartbeat processor, or {@code null} if
+   *         heartbeats are processed on the agent request thread
+   */
+  public HeartbeatProcessor getHeartbeatProcessor() {
+    return heartbeatProcessor;
+  }
+
   public HeartBeatResponse handleHeartBeat(HeartBeat heartbeat)
       throws AmbariException {
     long now = System.currentTimeMillis();
@@ -270,18 +317,23 @@ public class HeartBeatHandler {
       return createRegisterCommand();
     }
 
-    // Examine heartbeat for command reports
-    processCommandReports(heartbeat, hostname, clusterFsm, now);
+    if (null != heartbeatProcessor) {
+      // command/status reports and alerts are not needed for the response
+      heartbeatProcessor.addHeartbeat(heartbeat, now);
+    } else {
+      // Examine heartbeat for command reports
+      processCommandReports(heartbeat, hostname, clusterFsm, now);
 
-    // Examine heartbeat for component live status reports
-    processStatusReports(heartbeat, hostname, clusterFsm);
+      // Examine heartbeat for component live status reports
+      processStatusReports(heartbeat, hostname, clusterFsm);
 
-    // Calculate host status
-    // NOTE: This step must be after processing command/status reports
-    processHostStatus(heartbeat, hostname);
+      // Calculate host status
+      // NOTE: This step must be after processing command/status reports
+      processHostStatus(heartbeat, hostname);
 
-    // Example heartbeat for alerts from the host or its components
-    processAlerts(heartbeat, hostname);
+      // Example heartbeat for alerts from the host or its components
+      processAlerts(heartbeat, hostname);
+    }
 
     // Send commands if node is active
     if (hostObject.getState().equals(HostState.HEALTHY)) {
@@ -421,14 +473,14 @@ public class HeartBeatHandler {
         }
 
         host.setStatus(healthStatus.name());
-        host.persist();
+        host.persistLater();
       }
 
       //If host doesn't belong to any cluster
       if ((clusterFsm.getClustersForHost(host.getHostName())).size() == 0) {
         healthStatus = HealthStatus.HEALTHY;
         host.setStatus(healthStatus.name());
-        host.persist();
+        host.persistLater();
       }
     }
   }
@@ -0,0 +1,450 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.agent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ambari.server.AmbariException;
+import org.apache.ambari.server.controller.ServerMetricsRegistry.MetricsSource;
+import org.apache.ambari.server.state.Clusters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.persist.UnitOfWork;
+
+/**
+ * The {@link HeartbeatProcessor} takes the parts of a heartbeat which are not
+ * needed to build the heartbeat response off the agent request thread. A
+ * heartbeat goes through the following stages, each of them backed by a
+ * bounded queue which is drained in batches by a dedicated worker:
+ * <ul>
+ * <li>command reports - updates tasks and service component host states</li>
+ * <li>component status - applies live status reports and then calculates the
+ * host status; a heartbeat is passed to this stage only after its command
+ * reports are processed, so the ordering per host is kept</li>
+ * <li>alerts - publishes the received alerts</li>
+ * </ul>
+ * If the queue a heartbeat is offered to is full, the calling thread waits
+ * for space. This throttles the agents while the server is behind, keeps the
+ * heartbeats of a host in order and never drops command reports.
+ * <p/>
+ * On {@link #stop()} the stages drain what is already queued, in pipeline
+ * order, before their workers exit.
+ */
+public class HeartbeatProcessor implements MetricsSource {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(HeartbeatProcessor.class);
+
+  /**
+   * Every time this many heartbeats had to wait for a full queue, a warning
+   * is logged.
+   */
+  private static final long BLOCKED_WARNING_INTERVAL = 1000L;
+
+  /**
+   * The time in milliseconds each stage is given to drain its queue when
+   * the processor is stopped.
+   */
+  private static final long STOP_TIMEOUT = 10000L;
+
+  private final HeartBeatHandler heartBeatHandler;
+  private final Clusters clusters;
+  private final UnitOfWork unitOfWork;
+
+  private final ProcessingStage componentStatusStage;
+  private final ProcessingStage commandReportStage;
+  private final ProcessingStage alertStage;
+
+  /**
+   * Constructor.
+   *
+   * @param heartBeatHandler  the handler which implements the processing steps
+   * @param clusters          the clusters
+   * @param unitOfWork        the unit of work used by the workers
+   * @param queueSize         the capacity of the queue of each stage
+   * @param batchSize         the maximum number of heartbeats processed by a
+   *                          worker in one batch
+   */
+  public HeartbeatProcessor(final HeartBeatHandler heartBeatHandler, final Clusters clusters,
+                            UnitOfWork unitOfWork, int queueSize, int batchSize) {
+    this.heartBeatHandler = heartBeatHandler;
+    this.clusters = clusters;
+    this.unitOfWork = unitOfWork;
+
+    componentStatusStage = new ProcessingStage("component-status", queueSize, batchSize) {
+      @Override
+      void process(QueuedHeartbeat queued) throws AmbariException {
+        String hostname = queued.heartbeat.getHostname();
+
+        heartBeatHandler.processStatusReports(queued.heartbeat, hostname, clusters);
+
+        // NOTE: This step must be after processing command/status reports
+        heartBeatHandler.processHostStatus(queued.heartbeat, hostname);
+      }
+    };
+
+    commandReportStage = new ProcessingStage("command-reports", queueSize, batchSize) {
+      @Override
+      void process(QueuedHeartbeat queued) throws AmbariException {
+        try {
+          heartBeatHandler.processCommandReports(queued.heartbeat,
+              queued.heartbeat.getHostname(), clusters, queued.receivedTime);
+        } finally {
+          componentStatusStage.add(queued);
+        }
+      }
+    };
+
+    alertStage = new ProcessingStage("alerts", queueSize, batchSize) {
+      @Override
+      void process(QueuedHeartbeat queued) {
+        heartBeatHandler.processAlerts(queued.heartbeat, queued.heartbeat.getHostname());
+      }
+    };
+  }
+
+  /**
+   * Starts the workers of all stages.
+   */
+  public void start() {
+    commandReportStage.start();
+    componentStatusStage.start();
+    alertStage.start();
+  }
+
+  /**
+   * Stops the workers of all stages. Heartbeats which are already queued are
+   * processed first, for up to {@link #STOP_TIMEOUT} per stage; heartbeats
+   * added after this are ignored.
+   */
+  public void stop() {
+    // command reports feed the component status stage, so they go first
+    commandReportStage.stop();
+    componentStatusStage.stop();
+    alertStage.stop();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Map<String, Number> getMetrics() {
+    Map<String, Number> metrics = new HashMap<String, Number>();
+    for (ProcessingStage stage : new ProcessingStage[] {
+        commandReportStage, componentStatusStage, alertStage }) {
+      String prefix = stage.getName().replace('-', '_') + "_";
+
+      metrics.put(prefix + "queue_size", stage.getQueueSize());
+      metrics.put(prefix + "processed", stage.getProcessedCount());
+      metrics.put(prefix + "blocked", stage.getBlockedCount());
+      metrics.put(prefix + "blocked_time", stage.getBlockedTime());
+      metrics.put(prefix + "failures", stage.getFailureCount());
+      metrics.put(prefix + "last_queue_latency", stage.getLastQueueLatency());
+      metrics.put(prefix + "max_queue_latency", stage.getMaxQueueLatency());
+      metrics.put(prefix + "last_batch_size", stage.getLastBatchSize());
+    }
+
+    return metrics;
+  }
+
+  /**
+   * Queues the reports and alerts of the heartbeat for processing. If a queue
+   * is full, the calling thread waits until there is space in it.
+   *
+   * @param heartbeat     the heartbeat
+   * @param receivedTime  the time the heartbeat was received at
+   */
+  public void addHeartbeat(HeartBeat heartbeat, long receivedTime) {
+    QueuedHeartbeat queued = new QueuedHeartbeat(heartbeat, receivedTime);
+
+    commandReportStage.add(queued);
+
+    if (null != heartbeat.getAlerts() && !heartbeat.getAlerts().isEmpty()) {
+      alertStage.add(queued);
+    }
+  }
+
+  /**
+   * @return the statistics of the command report stage
+   */
+  public ProcessingStage getCommandReportStage() {
+    return commandReportStage;
+  }
+
+  /**
+   * @return the statistics of the component status stage
+   */
+  public ProcessingStage getComponentStatusStage() {
+    return componentStatusStage;
+  }
+
+  /**
+   * @return the statistics of the alert stage
+   */
+  public ProcessingStage getAlertStage() {
+    return alertStage;
+  }
+
+  /**
+   * A heartbeat together with the time it was received at.
+   */
+  private static final class QueuedHeartbeat {
+    private final HeartBeat heartbeat;
+    private final long receivedTime;
+
+    private QueuedHeartbeat(HeartBeat heartbeat, long receivedTime) {
+      this.heartbeat = heartbeat;
+      this.receivedTime = receivedTime;
+    }
+  }
+
+  /**
+   * A single step of heartbeat processing: a bounded queue drained by one
+   * worker thread, along with the backpressure statistics of the step.
+   */
+  public abstract class ProcessingStage implements Runnable {
+    private final String name;
+    private final int batchSize;
+    private final BlockingQueue<QueuedHeartbeat> queue;
+    private volatile boolean shouldRun = true;
+    private Thread workerThread = null;
+
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong blockedCount = new AtomicLong();
+    private final AtomicLong blockedTime = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private volatile long lastQueueLatency = 0L;
+    private volatile long maxQueueLatency = 0L;
+    private volatile int lastBatchSize = 0;
+
+    private ProcessingStage(String name, int queueSize, int batchSize) {
+      this.name = name;
+      this.batchSize = batchSize;
+      queue = new ArrayBlockingQueue<QueuedHeartbeat>(queueSize);
+    }
+
+    /**
+     * Processes a single heartbeat.
+     *
+     * @param queued  the heartbeat
+     *
+     * @throws AmbariException if the heartbeat could not be processed
+     */
+    abstract void process(QueuedHeartbeat queued) throws AmbariException;
+
+    private void start() {
+      workerThread = new Thread(this, "ambari-heartbeat-" + name);
+      workerThread.setDaemon(true);
+      workerThread.start();
+    }
+
+    private void stop() {
+      shouldRun = false;
+      if (null == workerThread) {
+        return;
+      }
+
+      try {
+        workerThread.join(STOP_TIMEOUT);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+
+      if (workerThread.isAlive()) {
+        LOG.warn("The {} heartbeat worker did not drain its queue in time, {} heartbeats are not processed",
+            name, queue.size());
+        workerThread.interrupt();
+      }
+    }
+
+    private void add(QueuedHeartbeat queued) {
+      if (!shouldRun) {
+        LOG.debug("The {} heartbeat worker is stopped, ignoring the heartbeat from {}",
+            name, queued.heartbeat.getHostname());
+        return;
+      }
+
+      if (queue.offer(queued)) {
+        return;
+      }
+
+      long blocked = blockedCount.incrementAndGet();
+      if (blocked % BLOCKED_WARNING_INTERVAL == 1) {
+        LOG.warn("The {} heartbeat queue is full, {} heartbeats had to wait for it so far",
+            name, blocked);
+      }
+
+      long start = System.currentTimeMillis();
+      try {
+        queue.put(queued);
+      } catch (InterruptedException e) {
+        LOG.warn("Interrupted while waiting to queue the heartbeat from {} in the {} stage",
+            queued.heartbeat.getHostname(), name);
+        Thread.currentThread().interrupt();
+      } finally {
+        blockedTime.addAndGet(System.currentTimeMillis() - start);
+      }
+    }
+
+    @Override
+    public void run() {
+      List<QueuedHeartbeat> batch = new ArrayList<QueuedHeartbeat>(batchSize);
+
+      // once stopped, keep going until the queue is drained
+      while (shouldRun || !queue.isEmpty()) {
+        try {
+          QueuedHeartbeat first = queue.poll(1, TimeUnit.SECONDS);
+          if (null == first) {
+            continue;
+          }
+
+          batch.add(first);
+          queue.drainTo(batch, batchSize - 1);
+          processBatch(batch);
+        } catch (InterruptedException e) {
+          LOG.debug("The {} heartbeat worker is interrupted going to stop", name);
+          shouldRun = false;
+          return;
+        } catch (Throwable t) {
+          LOG.warn("Unable to process a batch of heartbeats in the " + name + " stage", t);
+        } finally {
+          batch.clear();
+        }
+      }
+    }
+
+    private void processBatch(List<QueuedHeartbeat> batch) {
+      long now = System.currentTimeMillis();
+      long latency = now - batch.get(0).receivedTime;
+
+      lastBatchSize = batch.size();
+      lastQueueLatency = latency;
+      if (latency > maxQueueLatency) {
+        maxQueueLatency = latency;
+      }
+
+      // one unit of work per batch rather than per heartbeat
+      unitOfWork.begin();
+      try {
+        for (QueuedHeartbeat queued : batch) {
+          try {
+            process(queued);
+          } catch (Exception e) {
+            failureCount.incrementAndGet();
+            LOG.warn("Unable to process the heartbeat from " + queued.heartbeat.getHostname()
+                + " in the " + name + " stage", e);
+          }
+        }
+      } finally {
+        unitOfWork.end();
+      }
+
+      processedCount.addAndGet(batch.size());
+
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Processed {} heartbeats in the {} stage in {}ms, waited {}ms in queue, {} still queued",
+            batch.size(), name, System.currentTimeMillis() - now, latency, queue.size());
+      }
+    }
+
+    /**
+     * @return the name of the stage
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return the number of heartbeats waiting in the queue
+     */
+    public int getQueueSize() {
+      return queue.size();
+    }
+
+    /**
+     * @return the number of heartbeats processed by the worker
+     */
+    public long getProcessedCount() {
+      return processedCount.get();
+    }
+
+    /**
+     * @return the number of heartbeats which had to wait because the queue
+     *         was full
+     */
+    public long getBlockedCount() {
+      return blockedCount.get();
+    }
+
+    /**
+     * @return the total time in milliseconds spent waiting for a full queue
+     */
+    public long getBlockedTime() {
+      return blockedTime.get();
+    }
+
+    /**
+     * @return the number of heartbeats which failed to be processed by the
+     *         worker
+     */
+    public long getFailureCount() {
+      return failureCount.get();
+    }
+
+    /**
+     * @return the time in milliseconds the oldest heartbeat of the last batch
+     *         spent waiting for processing
+     */
+    public long getLastQueueLatency() {
+      return lastQueueLatency;
+    }
+
+    /**
+     * @return the highest time in milliseconds a heartbeat spent waiting for
+     *         processing
+     */
+    public long getMaxQueueLatency() {
+      return maxQueueLatency;
+    }
+
+    /**
+     * @return the number of heartbeats in the last batch
+     */
+    public int getLastBatchSize() {
+      return lastBatchSize;
+    }
+
+    @Override
+    public String toString() {
+      return "ProcessingStage{name=" + name + ", queueSize=" + queue.size()
+          + ", processed=" + processedCount + ", blocked=" + blockedCount
+          + ", failures=" + failureCount + ", lastQueueLatency=" + lastQueueLatency
+          + ", maxQueueLatency=" + maxQueueLatency + "}";
+    }
+  }
+}
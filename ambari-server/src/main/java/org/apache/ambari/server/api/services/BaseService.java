@@ -18,6 +18,7 @@
 
 package org.apache.ambari.server.api.services;
 
+import org.apache.ambari.server.api.predicate.QueryLexer;
 import org.apache.ambari.server.api.resources.ResourceInstance;
 import org.apache.ambari.server.api.resources.ResourceInstanceFactory;
 import org.apache.ambari.server.api.resources.ResourceInstanceFactoryImpl;
@@ -27,13 +28,18 @@ import org.apache.ambari.server.api.services.parsers.RequestBodyParser;
 import org.apache.ambari.server.api.services.serializers.CsvSerializer;
 import org.apache.ambari.server.api.services.serializers.JsonSerializer;
 import org.apache.ambari.server.api.services.serializers.ResultSerializer;
+import org.apache.ambari.server.api.services.serializers.StreamingResultSerializer;
 import org.apache.ambari.server.controller.spi.Resource;
 import org.eclipse.jetty.util.ajax.JSON;
 
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -110,8 +116,17 @@ public abstract class BaseService {
 
     ResultSerializer serializer = mediaType == null ? getResultSerializer() : getResultSerializer(mediaType);
 
-    Response.ResponseBuilder builder = Response.status(result.getStatus().getStatusCode()).entity(
-        serializer.serialize(result));
+    Object entity;
+    if (serializer instanceof StreamingResultSerializer) {
+      if (isPrettyPrintRequested(uriInfo)) {
+        serializer = new JsonSerializer(true);
+      }
+      entity = new ResultStreamingOutput(result, (StreamingResultSerializer) serializer);
+    } else {
+      entity = serializer.serialize(result);
+    }
+
+    Response.ResponseBuilder builder = Response.status(result.getStatus().getStatusCode()).entity(entity);
 
     if (mediaType != null) {
       builder.type(mediaType);
@@ -196,4 +211,42 @@ public abstract class BaseService {
   protected RequestBodyParser getBodyParser() {
     return new JsonRequestBodyParser();
   }
+
+  /**
+   * Determine whether or not 'pretty=true' is specified in the query string.
+   *
+   * @param uriInfo  uri information; may be null
+   *
+   * @return true if the client asked for pretty printed output
+   */
+  private boolean isPrettyPrintRequested(UriInfo uriInfo) {
+    if (uriInfo == null) {
+      return false;
+    }
+    String pretty = uriInfo.getQueryParameters().getFirst(QueryLexer.QUERY_PRETTY);
+    return pretty != null && (pretty.isEmpty() || Boolean.parseBoolean(pretty));
+  }
+
+
+  // ----- ResultStreamingOutput inner class ---------------------------------
+
+  /**
+   * Response entity which serializes the result straight to the response
+   * output stream when the response is written.
+   */
+  private static class ResultStreamingOutput implements StreamingOutput {
+
+    private final Result result;
+    private final StreamingResultSerializer serializer;
+
+    private ResultStreamingOutput(Result result, StreamingResultSerializer serializer) {
+      this.result     = result;
+      this.serializer = serializer;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+      serializer.serialize(result, output);
+    }
+  }
 }
@@ -23,21 +23,24 @@ import org.apache.ambari.server.api.services.Result;
 import org.apache.ambari.server.api.util.TreeNodeImpl;
 import org.apache.ambari.server.controller.spi.Resource;
 import org.apache.ambari.server.api.util.TreeNode;
+import org.codehaus.jackson.JsonEncoding;
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.util.DefaultPrettyPrinter;
 
 import java.io.*;
-import java.nio.charset.Charset;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * JSON serializer.
  * Responsible for representing a result as JSON.
+ * <p/>
+ * The result tree is written to the output as it is walked.  The output is
+ * compact unless pretty printing is asked for.
  */
-public class JsonSerializer implements ResultSerializer {
+public class JsonSerializer implements StreamingResultSerializer {
 
   /**
    * Factory used to create JSON generator.
@@ -47,24 +50,37 @@ public class JsonSerializer implements ResultSerializer {
   ObjectMapper m_mapper = new ObjectMapper(m_factory);
 
   /**
-   * Generator which writes JSON.
+   * Whether or not the output is pretty printed.
    */
-  JsonGenerator m_generator;
+  private final boolean m_prettyPrint;
 
 
-  @Override
-  public Object serialize(Result result) {
-    try {
-      ByteArrayOutputStream bytesOut = init();
+  // ----- Constructors ------------------------------------------------------
 
-      if (result.getStatus().isErrorState()) {
-        return serializeError(result.getStatus());
-      }
+  /**
+   * Create a serializer which writes compact JSON.
+   */
+  public JsonSerializer() {
+    this(false);
+  }
 
-      TreeNode<Resource> treeNode = result.getResultTree();
-      processNode(treeNode);
+  /**
+   * Constructor.
+   *
+   * @param prettyPrint  true to pretty print the output
+   */
+  public JsonSerializer(boolean prettyPrint) {
+    m_prettyPrint = prettyPrint;
+  }
 
-      m_generator.close();
+
+  // ----- ResultSerializer --------------------------------------------------
+
+  @Override
+  public Object serialize(Result result) {
+    try {
+      ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+      serialize(result, bytesOut);
       return bytesOut.toString("UTF-8");
     } catch (IOException e) {
       //todo: exception handling.  Create ResultStatus 500 and call serializeError
@@ -75,13 +91,8 @@ public class JsonSerializer implements ResultSerializer {
   @Override
   public Object serializeError(ResultStatus error) {
     try {
-      ByteArrayOutputStream bytesOut = init();
-      //m_mapper.writeValue(m_generator, error);
-      m_generator.writeStartObject();
-      m_generator.writeNumberField("status", error.getStatus().getStatus());
-      m_generator.writeStringField("message", error.getMessage());
-      m_generator.writeEndObject();
-      m_generator.close();
+      ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+      serializeError(error, bytesOut);
       return bytesOut.toString("UTF-8");
 
     } catch (IOException e) {
@@ -90,47 +101,65 @@ public class JsonSerializer implements ResultSerializer {
     }
   }
 
-  private ByteArrayOutputStream init() throws IOException {
-    ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
-    m_generator = createJsonGenerator(bytesOut);
 
-    DefaultPrettyPrinter p = new DefaultPrettyPrinter();
-    p.indentArraysWith(new DefaultPrettyPrinter.Lf2SpacesIndenter());
-    m_generator.setPrettyPrinter(p);
+  // ----- StreamingResultSerializer -----------------------------------------
+
+  @Override
+  public void serialize(Result result, OutputStream out) throws IOException {
+    if (result.getStatus().isErrorState()) {
+      serializeError(result.getStatus(), out);
+      return;
+    }
+
+    JsonGenerator generator = createJsonGenerator(out);
+    processNode(generator, result.getResultTree());
+    generator.close();
+    out.flush();
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
 
-    return bytesOut;
+  private void serializeError(ResultStatus error, OutputStream out) throws IOException {
+    JsonGenerator generator = createJsonGenerator(out);
+    generator.writeStartObject();
+    generator.writeNumberField("status", error.getStatus().getStatus());
+    generator.writeStringField("message", error.getMessage());
+    generator.writeEndObject();
+    generator.close();
+    out.flush();
   }
 
-  private void processNode(TreeNode<Resource> node) throws IOException {
+  private void processNode(JsonGenerator generator, TreeNode<Resource> node) throws IOException {
     if (isObject(node)) {
-      m_generator.writeStartObject();
+      generator.writeStartObject();
 
-      writeHref(node);
-      writeItemCount(node);
+      writeHref(generator, node);
+      writeItemCount(generator, node);
 
       Resource r = node.getObject();
       if (r != null) {
-        handleResourceProperties(getTreeProperties(r.getPropertiesMap()));
+        handleResourceProperties(generator, getTreeProperties(r.getPropertiesMap()));
       }
     }
 
     if (isArray(node)) {
       if (node.getName() != null)
-        m_generator.writeArrayFieldStart(node.getName());
+        generator.writeArrayFieldStart(node.getName());
       else
-        m_generator.writeStartArray();
+        generator.writeStartArray();
     }
 
     for (TreeNode<Resource> child : node.getChildren()) {
-      processNode(child);
+      processNode(generator, child);
     }
 
     if (isArray(node)) {
-      m_generator.writeEndArray();
+      generator.writeEndArray();
     }
 
     if (isObject(node)) {
-      m_generator.writeEndObject();
+      generator.writeEndObject();
     }
   }
 
@@ -180,52 +209,87 @@ public class JsonSerializer implements ResultSerializer {
     return treeProperties;
   }
 
-  private void handleResourceProperties(TreeNode<Map<String, Object>> node) throws IOException {
+  private void handleResourceProperties(JsonGenerator generator,
+                                        TreeNode<Map<String, Object>> node) throws IOException {
     String category = node.getName();
 
     if (category != null) {
-      m_generator.writeFieldName(category);
-      m_generator.writeStartObject();
+      generator.writeFieldName(category);
+      generator.writeStartObject();
     }
 
     for (Map.Entry<String, Object> entry : node.getObject().entrySet()) {
-      m_generator.writeFieldName(entry.getKey());
-      m_mapper.writeValue(m_generator, entry.getValue());
+      generator.writeFieldName(entry.getKey());
+      m_mapper.writeValue(generator, entry.getValue());
     }
 
     for (TreeNode<Map<String, Object>> n : node.getChildren()) {
-      handleResourceProperties(n);
+      handleResourceProperties(generator, n);
     }
 
     if (category != null) {
-      m_generator.writeEndObject();
+      generator.writeEndObject();
     }
   }
 
-  private JsonGenerator createJsonGenerator(ByteArrayOutputStream baos) throws IOException {
-    JsonGenerator generator = m_factory.createJsonGenerator(new OutputStreamWriter(baos,
-        Charset.forName("UTF-8").newEncoder()));
-
-    DefaultPrettyPrinter p = new DefaultPrettyPrinter();
-    p.indentArraysWith(new DefaultPrettyPrinter.Lf2SpacesIndenter());
-    generator.setPrettyPrinter(p);
+  private JsonGenerator createJsonGenerator(OutputStream out) throws IOException {
+    // the object mapper flushes the generator after each value it writes;
+    // only let the final flush reach the output so that the response isn't
+    // sent in tiny chunks
+    JsonGenerator generator = m_factory.createJsonGenerator(
+        new NonFlushingOutputStream(out), JsonEncoding.UTF8);
+
+    if (m_prettyPrint) {
+      DefaultPrettyPrinter p = new DefaultPrettyPrinter();
+      p.indentArraysWith(new DefaultPrettyPrinter.Lf2SpacesIndenter());
+      generator.setPrettyPrinter(p);
+    }
 
     return generator;
   }
 
-  private void writeHref(TreeNode<Resource> node) throws IOException {
+  private void writeHref(JsonGenerator generator, TreeNode<Resource> node) throws IOException {
     String hrefProp = node.getStringProperty("href");
     if (hrefProp != null) {
-      m_generator.writeStringField("href", hrefProp);
+      generator.writeStringField("href", hrefProp);
     }
   }
 
-  private void writeItemCount(TreeNode<Resource> node) throws IOException {
+  private void writeItemCount(JsonGenerator generator, TreeNode<Resource> node) throws IOException {
     String countProp = node.getStringProperty("count");
     if (countProp != null) {
-      m_generator.writeStringField("itemTotal", countProp);
+      generator.writeStringField("itemTotal", countProp);
       // Write once
       node.setProperty("count", null);
     }
   }
+
+
+  // ----- NonFlushingOutputStream inner class -------------------------------
+
+  /**
+   * Output stream which ignores flushes, the underlying stream is flushed
+   * once the whole result is written.
+   */
+  private static class NonFlushingOutputStream extends FilterOutputStream {
+
+    private NonFlushingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      // flushed by the serializer when done
+    }
+
+    @Override
+    public void close() throws IOException {
+      // the caller owns the underlying stream
+    }
+  }
 }
@@ -262,6 +262,30 @@ public class Configuration {
    * running on not interfering host sets may be executed in parallel.
    */
   public static final String PARALLEL_STAGE_EXECUTION_KEY = "server.stages.parallel";
+
+  /**
+   * This key defines whether command reports, status reports and alerts
+   * received in agent heartbeats are processed by background workers instead
+   * of the agent request thread.
+   */
+  public static final String AGENT_HEARTBEAT_ASYNC_ENABLED_KEY = "agent.heartbeat.async.enabled";
+  public static final String AGENT_HEARTBEAT_ASYNC_QUEUE_SIZE_KEY = "agent.heartbeat.async.queue.size";
+  public static final String AGENT_HEARTBEAT_ASYNC_BATCH_SIZE_KEY = "agent.heartbeat.async.batch.size";
+  public static final String HOST_STATE_FLUSH_INTERVAL_KEY = "agent.heartbeat.state.flush.interval";
+  public static final String ALERT_CURRENT_FLUSH_INTERVAL_KEY = "alerts.current.flush.interval";
+  public static final String ALERT_SUMMARY_RECONCILE_INTERVAL_KEY = "alerts.summary.reconcile.interval";
+  public static final String ALERT_EVENT_PUBLISHER_LANES_KEY = "alerts.eventbus.lanes";
+  public static final String ALERT_EVENT_PUBLISHER_QUEUE_SIZE_KEY = "alerts.eventbus.queue.size";
+  public static final String ALERT_EVENT_PUBLISHER_OFFER_TIMEOUT_KEY = "alerts.eventbus.offer.timeout";
+  public static final String ALERT_DISPATCH_CONCURRENCY_KEY = "alerts.dispatch.concurrency";
+  public static final String ALERT_DISPATCH_RATE_LIMIT_KEY = "alerts.dispatch.rate.limit";
+  public static final String METRICS_CACHE_ENABLED_KEY = "server.metrics.cache.enabled";
+  public static final String METRICS_CACHE_MAX_DATAPOINTS_KEY = "server.metrics.cache.max.datapoints";
+  public static final String METRICS_CACHE_TTL_KEY = "server.metrics.cache.ttl";
+  public static final String METRICS_CACHE_OVERLAP_KEY = "server.metrics.cache.overlap";
+  public static final String METRICS_CACHE_MAX_AGE_KEY = "server.metrics.cache.max.age";
+  public static final String TIMELINE_METRICS_FETCH_CONCURRENCY_KEY = "server.timeline.metrics.fetch.concurrency";
+  public static final String TIMELINE_METRICS_FETCH_TIMEOUT_KEY = "server.timeline.metrics.fetch.timeout";
   public static final String AGENT_TASK_TIMEOUT_KEY = "agent.task.timeout";
   public static final String AGENT_PACKAGE_INSTALL_TASK_TIMEOUT_KEY = "agent.package.install.task.timeout";
 
@@ -343,6 +367,24 @@ public class Configuration {
 
   private static final String PARALLEL_STAGE_EXECUTION_DEFAULT = "true";
 
+  private static final String AGENT_HEARTBEAT_ASYNC_ENABLED_DEFAULT = "false";
+  private static final String AGENT_HEARTBEAT_ASYNC_QUEUE_SIZE_DEFAULT = "5000";
+  private static final String AGENT_HEARTBEAT_ASYNC_BATCH_SIZE_DEFAULT = "100";
+  private static final String HOST_STATE_FLUSH_INTERVAL_DEFAULT = "30";
+  private static final String ALERT_CURRENT_FLUSH_INTERVAL_DEFAULT = "10";
+  private static final String ALERT_SUMMARY_RECONCILE_INTERVAL_DEFAULT = "300";
+  private static final String ALERT_EVENT_PUBLISHER_QUEUE_SIZE_DEFAULT = "10000";
+  private static final String ALERT_EVENT_PUBLISHER_OFFER_TIMEOUT_DEFAULT = "1000";
+  private static final String ALERT_DISPATCH_CONCURRENCY_DEFAULT = "4";
+  private static final String ALERT_DISPATCH_RATE_LIMIT_DEFAULT = "500";
+  private static final String METRICS_CACHE_ENABLED_DEFAULT = "true";
+  private static final String METRICS_CACHE_MAX_DATAPOINTS_DEFAULT = "500000";
+  private static final String METRICS_CACHE_TTL_DEFAULT = "10";
+  private static final String METRICS_CACHE_OVERLAP_DEFAULT = "300";
+  private static final String METRICS_CACHE_MAX_AGE_DEFAULT = "900";
+  private static final String TIMELINE_METRICS_FETCH_CONCURRENCY_DEFAULT = "20";
+  private static final String TIMELINE_METRICS_FETCH_TIMEOUT_DEFAULT = "10000";
+
   private static final String CLIENT_THREADPOOL_SIZE_KEY = "client.threadpool.size.max";
   private static final int CLIENT_THREADPOOL_SIZE_DEFAULT = 25;
   private static final String AGENT_THREADPOOL_SIZE_KEY = "agent.threadpool.size.max";
@@ -1283,6 +1325,205 @@ public class Configuration {
     return "true".equalsIgnoreCase(configsMap.get(PARALLEL_STAGE_EXECUTION_KEY));
   }
 
+  /**
+   * @return {@code true} if heartbeat reports and alerts are processed off
+   *         the agent request thread (default {@code false})
+   */
+  public boolean isHeartbeatAsyncProcessingEnabled() {
+    return Boolean.parseBoolean(properties.getProperty(
+        AGENT_HEARTBEAT_ASYNC_ENABLED_KEY, AGENT_HEARTBEAT_ASYNC_ENABLED_DEFAULT));
+  }
+
+  /**
+   * @return the capacity of each asynchronous heartbeat processing queue
+   *         (default {@value #AGENT_HEARTBEAT_ASYNC_QUEUE_SIZE_DEFAULT})
+   */
+  public int getHeartbeatAsyncQueueSize() {
+    return Integer.parseInt(properties.getProperty(
+        AGENT_HEARTBEAT_ASYNC_QUEUE_SIZE_KEY, AGENT_HEARTBEAT_ASYNC_QUEUE_SIZE_DEFAULT));
+  }
+
+  /**
+   * @return the maximum number of heartbeats processed in one batch by an
+   *         asynchronous heartbeat worker (default
+   *         {@value #AGENT_HEARTBEAT_ASYNC_BATCH_SIZE_DEFAULT})
+   */
+  public int getHeartbeatAsyncBatchSize() {
+    return Integer.parseInt(properties.getProperty(
+        AGENT_HEARTBEAT_ASYNC_BATCH_SIZE_KEY, AGENT_HEARTBEAT_ASYNC_BATCH_SIZE_DEFAULT));
+  }
+
+  /**
+   * @return the interval in seconds at which host state changed by heartbeats
+   *         is written to the database; {@code 0} writes every change
+   *         immediately (default {@value #HOST_STATE_FLUSH_INTERVAL_DEFAULT})
+   */
+  public int getHostStateFlushInterval() {
+    return Integer.parseInt(properties.getProperty(
+        HOST_STATE_FLUSH_INTERVAL_KEY, HOST_STATE_FLUSH_INTERVAL_DEFAULT));
+  }
+
+  /**
+   * @return the interval in seconds at which the latest timestamp and text of
+   *         current alerts whose state did not change are written to the
+   *         database; {@code 0} writes every update immediately (default
+   *         {@value #ALERT_CURRENT_FLUSH_INTERVAL_DEFAULT})
+   */
+  public int getAlertCurrentFlushInterval() {
+    return Integer.parseInt(properties.getProperty(
+        ALERT_CURRENT_FLUSH_INTERVAL_KEY, ALERT_CURRENT_FLUSH_INTERVAL_DEFAULT));
+  }
+
+  /**
+   * @return the interval in seconds at which the number of current alerts by
+   *         state kept in memory is compared to the database (default
+   *         {@value #ALERT_SUMMARY_RECONCILE_INTERVAL_DEFAULT})
+   */
+  public int getAlertSummaryReconcileInterval() {
+    return Integer.parseInt(properties.getProperty(
+        ALERT_SUMMARY_RECONCILE_INTERVAL_KEY, ALERT_SUMMARY_RECONCILE_INTERVAL_DEFAULT));
+  }
+
+  /**
+   * @return the number of threads dispatching alert events, each with its own
+   *         queue (default the number of processors)
+   */
+  public int getAlertEventPublisherLanes() {
+    String lanes = properties.getProperty(ALERT_EVENT_PUBLISHER_LANES_KEY);
+    if (null == lanes) {
+      return Runtime.getRuntime().availableProcessors();
+    }
+
+    return Integer.parseInt(lanes);
+  }
+
+  /**
+   * @return the number of alert events each dispatching thread can queue
+   *         (default {@value #ALERT_EVENT_PUBLISHER_QUEUE_SIZE_DEFAULT})
+   */
+  public int getAlertEventPublisherQueueSize() {
+    return Integer.parseInt(properties.getProperty(
+        ALERT_EVENT_PUBLISHER_QUEUE_SIZE_KEY, ALERT_EVENT_PUBLISHER_QUEUE_SIZE_DEFAULT));
+  }
+
+  /**
+   * @return the milliseconds to wait for room in a full queue before an alert
+   *         received from an agent is dropped (default
+   *         {@value #ALERT_EVENT_PUBLISHER_OFFER_TIMEOUT_DEFAULT})
+   */
+  public long getAlertEventPublisherOfferTimeout() {
+    return Long.parseLong(properties.getProperty(
+        ALERT_EVENT_PUBLISHER_OFFER_TIMEOUT_KEY, ALERT_EVENT_PUBLISHER_OFFER_TIMEOUT_DEFAULT));
+  }
+
+  /**
+   * Gets the number of threads dispatching alert notifications of a type. The
+   * value of {@code alerts.dispatch.concurrency.<type>}, such as
+   * {@code alerts.dispatch.concurrency.SNMP}, takes precedence over the value
+   * for all types.
+   *
+   * @param notificationType
+   *          the type of the dispatcher, such as {@code EMAIL} (not
+   *          {@code null}).
+   * @return the number of threads dispatching notifications of the type
+   *         (default {@value #ALERT_DISPATCH_CONCURRENCY_DEFAULT})
+   */
+  public int getAlertDispatchConcurrency(String notificationType) {
+    String concurrency = properties.getProperty(ALERT_DISPATCH_CONCURRENCY_KEY
+        + "." + notificationType);
+
+    if (null == concurrency) {
+      concurrency = properties.getProperty(ALERT_DISPATCH_CONCURRENCY_KEY,
+          ALERT_DISPATCH_CONCURRENCY_DEFAULT);
+    }
+
+    return Integer.parseInt(concurrency);
+  }
+
+  /**
+   * @return the maximum number of notifications sent to a target which does
+   *         not support digests, such as SNMP or a script, each time pending
+   *         alert notices are dispatched; the others wait for the next time.
+   *         {@code 0} or less does not limit the notifications (default
+   *         {@value #ALERT_DISPATCH_RATE_LIMIT_DEFAULT})
+   */
+  public int getAlertDispatchRateLimit() {
+    return Integer.parseInt(properties.getProperty(
+        ALERT_DISPATCH_RATE_LIMIT_KEY, ALERT_DISPATCH_RATE_LIMIT_DEFAULT));
+  }
+
+  /**
+   * @return {@code true} if responses of the metrics collectors (AMS and
+   *         Ganglia) are cached by the server (default
+   *         {@value #METRICS_CACHE_ENABLED_DEFAULT})
+   */
+  public boolean isMetricsCacheEnabled() {
+    return Boolean.parseBoolean(properties.getProperty(
+        METRICS_CACHE_ENABLED_KEY, METRICS_CACHE_ENABLED_DEFAULT));
+  }
+
+  /**
+   * @return the maximum number of datapoints kept by the metrics cache
+   *         (default {@value #METRICS_CACHE_MAX_DATAPOINTS_DEFAULT})
+   */
+  public long getMetricsCacheMaxDatapoints() {
+    return Long.parseLong(properties.getProperty(
+        METRICS_CACHE_MAX_DATAPOINTS_KEY, METRICS_CACHE_MAX_DATAPOINTS_DEFAULT));
+  }
+
+  /**
+   * @return the time in seconds a cached point in time metric stays valid,
+   *         which is also the largest gap at the end of a cached temporal
+   *         metric that is served without asking the collector (default
+   *         {@value #METRICS_CACHE_TTL_DEFAULT})
+   */
+  public int getMetricsCacheTTL() {
+    return Integer.parseInt(properties.getProperty(
+        METRICS_CACHE_TTL_KEY, METRICS_CACHE_TTL_DEFAULT));
+  }
+
+  /**
+   * @return the time in seconds before the end of a cached temporal metric
+   *         which is fetched again along with the missing tail, so that
+   *         datapoints the collector writes or aggregates late replace the
+   *         cached ones (default {@value #METRICS_CACHE_OVERLAP_DEFAULT})
+   */
+  public int getMetricsCacheOverlap() {
+    return Integer.parseInt(properties.getProperty(
+        METRICS_CACHE_OVERLAP_KEY, METRICS_CACHE_OVERLAP_DEFAULT));
+  }
+
+  /**
+   * @return the time in seconds after which a cached temporal metric is
+   *         fetched again in full rather than extended by its tail (default
+   *         {@value #METRICS_CACHE_MAX_AGE_DEFAULT})
+   */
+  public int getMetricsCacheMaxAge() {
+    return Integer.parseInt(properties.getProperty(
+        METRICS_CACHE_MAX_AGE_KEY, METRICS_CACHE_MAX_AGE_DEFAULT));
+  }
+
+  /**
+   * @return the maximum number of parallel calls to the Metrics Collector
+   *         made for a single request (default
+   *         {@value #TIMELINE_METRICS_FETCH_CONCURRENCY_DEFAULT})
+   */
+  public int getTimelineMetricsFetchConcurrency() {
+    return Integer.parseInt(properties.getProperty(
+        TIMELINE_METRICS_FETCH_CONCURRENCY_KEY, TIMELINE_METRICS_FETCH_CONCURRENCY_DEFAULT));
+  }
+
+  /**
+   * @return the time in milliseconds to wait for the calls to the Metrics
+   *         Collector made for a single request, after which the request
+   *         returns what has arrived so far (default
+   *         {@value #TIMELINE_METRICS_FETCH_TIMEOUT_DEFAULT})
+   */
+  public long getTimelineMetricsFetchTimeout() {
+    return Long.parseLong(properties.getProperty(
+        TIMELINE_METRICS_FETCH_TIMEOUT_KEY, TIMELINE_METRICS_FETCH_TIMEOUT_DEFAULT));
+  }
+
   public String getCustomActionDefinitionPath() {
     return properties.getProperty(CUSTOM_ACTION_DEFINITION_KEY,
                                   CUSTOM_ACTION_DEFINITION_DEF_VALUE);
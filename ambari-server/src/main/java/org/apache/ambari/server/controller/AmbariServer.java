@@ -60,7 +60,12 @@ import org.apache.ambari.server.controller.internal.StackDefinedPropertyProvider
 import org.apache.ambari.server.controller.internal.StackDependencyResourceProvider;
 import org.apache.ambari.server.controller.internal.UserPrivilegeResourceProvider;
 import org.apache.ambari.server.controller.internal.ViewPermissionResourceProvider;
+import org.apache.ambari.server.controller.metrics.MetricsResponseCache;
+import org.apache.ambari.server.controller.metrics.timeline.AMSPropertyProvider;
 import org.apache.ambari.server.controller.utilities.DatabaseChecker;
+import org.apache.ambari.server.events.publishers.AlertEventPublisher;
+import org.apache.ambari.server.events.publishers.AmbariEventPublisher;
+import org.apache.ambari.server.events.publishers.PartitionedEventBus;
 import org.apache.ambari.server.orm.GuiceJpaInitializer;
 import org.apache.ambari.server.orm.PersistenceType;
 import org.apache.ambari.server.orm.dao.BlueprintDAO;
@@ -89,6 +94,7 @@ import org.apache.ambari.server.security.unsecured.rest.CertificateDownload;
 import org.apache.ambari.server.security.unsecured.rest.CertificateSign;
 import org.apache.ambari.server.security.unsecured.rest.ConnectionInfo;
 import org.apache.ambari.server.state.Clusters;
+import org.apache.ambari.server.state.services.AlertNoticeDispatchService;
 import org.apache.ambari.server.topology.AmbariContext;
 import org.apache.ambari.server.topology.BlueprintFactory;
 import org.apache.ambari.server.topology.TopologyManager;
@@ -441,6 +447,14 @@ public class AmbariServer {
 
       server.setStopAtShutdown(true);
       serverForAgent.setStopAtShutdown(true);
+
+      // let the asynchronous heartbeat processing finish what is queued
+      Runtime.getRuntime().addShutdownHook(new Thread("ambari-heartbeat-shutdown") {
+        @Override
+        public void run() {
+          injector.getInstance(HeartBeatHandler.class).stop();
+        }
+      });
       springAppContext.start();
 
       String osType = getServerOsType();
@@ -581,6 +595,8 @@ public class AmbariServer {
     } catch (Exception e) {
       LOG.error("Error stopping the server", e);
     }
+
+    injector.getInstance(HeartBeatHandler.class).stop();
   }
 
   /**
@@ -671,6 +687,17 @@ public class AmbariServer {
       certMan.initRootCert();
       ViewRegistry.initInstance(server.viewRegistry);
       ComponentSSLConfiguration.instance().init(server.configs);
+      MetricsResponseCache.instance().init(server.configs);
+      ServerMetricsRegistry.instance().register(MetricsResponseCache.METRICS_NAME,
+          MetricsResponseCache.instance());
+      for (PartitionedEventBus eventBus : new PartitionedEventBus[] {
+          injector.getInstance(AmbariEventPublisher.class).getPartitionedEventBus(),
+          injector.getInstance(AlertEventPublisher.class).getPartitionedEventBus() }) {
+        ServerMetricsRegistry.instance().register(eventBus.getMetricsName(), eventBus);
+      }
+      ServerMetricsRegistry.instance().register(AlertNoticeDispatchService.METRICS_NAME,
+          injector.getInstance(AlertNoticeDispatchService.class));
+      AMSPropertyProvider.init(server.configs);
       server.run();
     } catch (Throwable t) {
       LOG.error("Failed to run the Ambari Server", t);
@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.controller;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the internal metrics of the server, such as queue depths and
+ * cache hit counts. Parts of the server register a {@link MetricsSource}
+ * under a name; the metrics of all sources are reported as the
+ * {@code RootServiceComponents/server_metrics} property of the
+ * {@code AMBARI_SERVER} component, e.g.
+ * {@code /api/v1/services/AMBARI/components/AMBARI_SERVER?fields=RootServiceComponents/server_metrics}.
+ */
+public class ServerMetricsRegistry {
+
+  private final static Logger LOG = LoggerFactory.getLogger(ServerMetricsRegistry.class);
+
+  /**
+   * The singleton.
+   */
+  private static final ServerMetricsRegistry singleton = new ServerMetricsRegistry();
+
+  private final ConcurrentMap<String, MetricsSource> sources =
+      new ConcurrentHashMap<String, MetricsSource>();
+
+
+  // ----- Constructors ------------------------------------------------------
+
+  /**
+   * Constructor.
+   */
+  protected ServerMetricsRegistry() {
+  }
+
+
+  // ----- ServerMetricsRegistry ---------------------------------------------
+
+  /**
+   * Get the singleton instance.
+   *
+   * @return the singleton instance
+   */
+  public static ServerMetricsRegistry instance() {
+    return singleton;
+  }
+
+  /**
+   * Registers a source of metrics, replacing any source registered under the
+   * same name.
+   *
+   * @param name    the name of the source, used as the category of its
+   *                metrics
+   * @param source  the source
+   */
+  public void register(String name, MetricsSource source) {
+    sources.put(name, source);
+  }
+
+  /**
+   * Removes the source registered under the name, if it is the given one.
+   *
+   * @param name    the name of the source
+   * @param source  the source
+   */
+  public void unregister(String name, MetricsSource source) {
+    sources.remove(name, source);
+  }
+
+  /**
+   * Gets the current metrics of all sources.
+   *
+   * @return the metrics by name, by the name of their source
+   */
+  public Map<String, Map<String, Number>> getMetrics() {
+    Map<String, Map<String, Number>> metrics = new TreeMap<String, Map<String, Number>>();
+
+    for (Map.Entry<String, MetricsSource> entry : sources.entrySet()) {
+      try {
+        metrics.put(entry.getKey(), new TreeMap<String, Number>(entry.getValue().getMetrics()));
+      } catch (RuntimeException e) {
+        LOG.warn("Unable to get the metrics of " + entry.getKey(), e);
+      }
+    }
+
+    return metrics;
+  }
+
+
+  // ----- inner classes -----------------------------------------------------
+
+  /**
+   * A part of the server which reports metrics about itself.
+   */
+  public interface MetricsSource {
+    /**
+     * Gets the current values of the metrics.
+     *
+     * @return the values by metric name
+     */
+    Map<String, Number> getMetrics();
+  }
+}
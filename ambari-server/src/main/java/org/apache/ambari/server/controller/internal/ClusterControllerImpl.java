@@ -600,9 +600,9 @@ public class ClusterControllerImpl implements ClusterController {
     int currentOffset = 0;
     Resource previous      = null;
     Set<Resource> pageResources = new LinkedHashSet<Resource>();
-    LinkedList<Resource> filteredResources =
-      getEvaluatedResources(new ResourceIterable(resources, predicate, evaluator));
-    Iterator<Resource> iterator = filteredResources.iterator();
+
+    // walk the filtered resources lazily; only the page itself is kept
+    Iterator<Resource> iterator = new ResourceIterator(resources, predicate, evaluator);
 
     // skip till offset
     while (currentOffset < offset && iterator.hasNext()) {
@@ -615,11 +615,23 @@ public class ClusterControllerImpl implements ClusterController {
       pageResources.add(iterator.next());
     }
 
+    Resource next = iterator.hasNext() ? iterator.next() : null;
+
+    // count the rest for the total
+    int totalCount = currentOffset + pageResources.size();
+    if (next != null) {
+      ++totalCount;
+      while (iterator.hasNext()) {
+        iterator.next();
+        ++totalCount;
+      }
+    }
+
     return new PageResponseImpl(pageResources,
         currentOffset,
         previous,
-        iterator.hasNext() ? iterator.next() : null,
-        filteredResources.size()
+        next,
+        totalCount
       );
   }
 
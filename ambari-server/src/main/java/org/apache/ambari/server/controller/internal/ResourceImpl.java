@@ -18,27 +18,67 @@
 
 package org.apache.ambari.server.controller.internal;
 
+import org.apache.ambari.server.controller.internal.ResourceSchema.PropertyKey;
 import org.apache.ambari.server.controller.spi.Resource;
 import org.apache.ambari.server.controller.utilities.PropertyHelper;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Simple resource implementation.
+ * <p/>
+ * The properties are kept in flat arrays ordered by the slots of their keys
+ * in the {@link ResourceSchema} of the resource type.  The map of property
+ * maps keyed by category returned by {@link #getPropertiesMap()} is a live,
+ * sorted view of these arrays, backed by an index of the categories which is
+ * rebuilt lazily after properties or categories are added or removed.
  */
 public class ResourceImpl implements Resource {
 
+  private static final PropertyKey[] NO_KEYS = new PropertyKey[0];
+  private static final Object[] NO_VALUES = new Object[0];
+
   /**
    * The resource type.
    */
   private final Type type;
 
+  /**
+   * The property schema of the resource type.
+   */
+  private final ResourceSchema schema;
+
+  /**
+   * The keys of the set properties, ordered by slot.
+   */
+  private PropertyKey[] keys = NO_KEYS;
+
+  /**
+   * The property values, in the order of the keys.
+   */
+  private Object[] values = NO_VALUES;
+
+  /**
+   * The number of set properties.
+   */
+  private int size = 0;
+
+  /**
+   * The categories which were added without properties; null if there are
+   * none.
+   */
+  private Set<String> categories = null;
+
+  /**
+   * The positions of the properties of each category in name order, keyed by
+   * category; null if it needs to be rebuilt.
+   */
+  private SortedMap<String, int[]> categoryIndex = null;
+
   /**
    * The map of property maps keyed by property category.
    */
-  private final Map<String, Map<String, Object>> propertiesMap =
-      Collections.synchronizedMap(new TreeMap<String, Map<String, Object>>());
+  private final Map<String, Map<String, Object>> propertiesMap = new PropertiesMap();
 
   // ----- Constructors ------------------------------------------------------
 
@@ -48,7 +88,8 @@ public class ResourceImpl implements Resource {
    * @param type the resource type
    */
   public ResourceImpl(Type type) {
-    this.type = type;
+    this.type   = type;
+    this.schema = ResourceSchema.forType(type);
   }
 
   /**
@@ -68,7 +109,18 @@ public class ResourceImpl implements Resource {
    * @param propertyIds the set of requested property and category ids
    */
   public ResourceImpl(Resource resource, Set<String> propertyIds) {
-    this.type = resource.getType();
+    this(resource.getType());
+
+    if (resource.getClass() == ResourceImpl.class && (propertyIds == null || propertyIds.isEmpty())) {
+      ResourceImpl source = (ResourceImpl) resource;
+      synchronized (source) {
+        keys       = Arrays.copyOf(source.keys, source.size);
+        values     = Arrays.copyOf(source.values, source.size);
+        size       = source.size;
+        categories = source.categories == null ? null : new TreeSet<String>(source.categories);
+      }
+      return;
+    }
 
     for (Map.Entry<String, Map<String, Object>> categoryEntry :
         resource.getPropertiesMap().entrySet()) {
@@ -79,7 +131,7 @@ public class ResourceImpl implements Resource {
           String propertyId = PropertyHelper.getPropertyId(category, propertyEntry.getKey());
           if (propertyIds == null || propertyIds.isEmpty() || PropertyHelper.containsProperty(propertyIds, propertyId)) {
             Object propertyValue = propertyEntry.getValue();
-            setProperty(propertyId, propertyValue);
+            setPropertyValue(schema.getPropertyKey(category, propertyEntry.getKey()), propertyValue);
           }
         }
       }
@@ -101,33 +153,27 @@ public class ResourceImpl implements Resource {
 
   @Override
   public void setProperty(String id, Object value) {
-    String categoryKey = getCategoryKey(PropertyHelper.getPropertyCategory(id));
-
-    Map<String, Object> properties = propertiesMap.get(categoryKey);
-    if (properties == null) {
-      properties = Collections.synchronizedMap(new TreeMap<String, Object>());
-      propertiesMap.put(categoryKey, properties);
-    }
-    properties.put(PropertyHelper.getPropertyName(id), value);
+    setPropertyValue(schema.getPropertyKey(id), value);
   }
 
   @Override
-  public void addCategory(String id) {
+  public synchronized void addCategory(String id) {
     String categoryKey = getCategoryKey(id);
 
-    if (!propertiesMap.containsKey(categoryKey)) {
-      propertiesMap.put(categoryKey, new HashMap<String, Object>());
+    if (!hasCategory(categoryKey)) {
+      if (categories == null) {
+        categories = new TreeSet<String>();
+      }
+      categories.add(categoryKey);
+      categoryIndex = null;
     }
   }
 
   @Override
   public Object getPropertyValue(String id) {
-    String categoryKey = getCategoryKey(PropertyHelper.getPropertyCategory(id));
-
-    Map<String, Object> properties = propertiesMap.get(categoryKey);
+    PropertyKey key = schema.findPropertyKey(id);
 
-    return properties == null ?
-        null : properties.get(PropertyHelper.getPropertyName(id));
+    return key == null ? null : getPropertyValue(key);
   }
 
 
@@ -151,13 +197,27 @@ public class ResourceImpl implements Resource {
 
     ResourceImpl resource = (ResourceImpl) o;
 
-    return type == resource.type &&
-        !(propertiesMap != null ? !propertiesMap.equals(resource.propertiesMap) : resource.propertiesMap != null);
+    if (type != resource.type) {
+      return false;
+    }
+
+    // compare snapshots so that the locks of both resources aren't held at once
+    Object[] state = resource.getState();
+    Object[] thisState = getState();
+
+    return Arrays.equals((Object[]) thisState[0], (Object[]) state[0]) &&
+        Arrays.equals((Object[]) thisState[1], (Object[]) state[1]) &&
+        (thisState[2] == null ? state[2] == null : thisState[2].equals(state[2]));
   }
 
   @Override
-  public int hashCode() {
-    return 31 * type.hashCode() + (propertiesMap != null ? propertiesMap.hashCode() : 0);
+  public synchronized int hashCode() {
+    int result = type.hashCode();
+    for (int i = 0; i < size; ++i) {
+      Object value = values[i];
+      result += keys[i].hashCode() ^ (value == null ? 0 : value.hashCode());
+    }
+    return result;
   }
 
   // ----- utility methods ---------------------------------------------------
@@ -165,4 +225,365 @@ public class ResourceImpl implements Resource {
   private String getCategoryKey(String category) {
     return category == null ? "" : category;
   }
+
+  /**
+   * Get the keys, values and empty categories of this resource.
+   */
+  private synchronized Object[] getState() {
+    return new Object[] {
+        Arrays.copyOf(keys, size),
+        Arrays.copyOf(values, size),
+        categories == null || categories.isEmpty() ? null : new TreeSet<String>(categories)};
+  }
+
+  /**
+   * Find the index of the given key.
+   *
+   * @return the index; (-(insertion point) - 1) if the key is not set
+   */
+  private int indexOf(PropertyKey key) {
+    return Arrays.binarySearch(keys, 0, size, key);
+  }
+
+  private synchronized void setPropertyValue(PropertyKey key, Object value) {
+    int index = indexOf(key);
+    if (index >= 0) {
+      values[index] = value;
+      return;
+    }
+
+    index = -index - 1;
+    if (size == keys.length) {
+      int capacity = Math.max(4, size + (size >> 1) + 1);
+      keys   = Arrays.copyOf(keys, capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+    System.arraycopy(keys, index, keys, index + 1, size - index);
+    System.arraycopy(values, index, values, index + 1, size - index);
+    keys[index]   = key;
+    values[index] = value;
+    ++size;
+    categoryIndex = null;
+
+    if (categories != null) {
+      categories.remove(key.getCategory());
+    }
+  }
+
+  private synchronized Object getPropertyValue(PropertyKey key) {
+    int index = indexOf(key);
+    return index < 0 ? null : values[index];
+  }
+
+  private synchronized boolean containsProperty(PropertyKey key) {
+    return indexOf(key) >= 0;
+  }
+
+  private synchronized Object removeProperty(PropertyKey key) {
+    int index = indexOf(key);
+    if (index < 0) {
+      return null;
+    }
+
+    Object value = values[index];
+    System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+    System.arraycopy(values, index + 1, values, index, size - index - 1);
+    --size;
+    keys[size]   = null;
+    values[size] = null;
+    categoryIndex = null;
+
+    return value;
+  }
+
+  private synchronized boolean hasCategory(String category) {
+    return getCategoryIndex().containsKey(category);
+  }
+
+  private synchronized void removeCategory(String category) {
+    if (categories != null) {
+      categories.remove(category);
+    }
+
+    int retained = 0;
+    for (int i = 0; i < size; ++i) {
+      if (!keys[i].getCategory().equals(category)) {
+        keys[retained]   = keys[i];
+        values[retained] = values[i];
+        ++retained;
+      }
+    }
+    Arrays.fill(keys, retained, size, null);
+    Arrays.fill(values, retained, size, null);
+    size = retained;
+    categoryIndex = null;
+  }
+
+  /**
+   * Get the index of the categories, building it if needed.  The caller must
+   * hold the lock of this resource.
+   */
+  private SortedMap<String, int[]> getCategoryIndex() {
+    if (categoryIndex != null) {
+      return categoryIndex;
+    }
+
+    Integer[] order = new Integer[size];
+    for (int i = 0; i < size; ++i) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer i1, Integer i2) {
+        PropertyKey key1 = keys[i1];
+        PropertyKey key2 = keys[i2];
+        int result = key1.getCategory().compareTo(key2.getCategory());
+        return result == 0 ? key1.getName().compareTo(key2.getName()) : result;
+      }
+    });
+
+    SortedMap<String, int[]> index = new TreeMap<String, int[]>();
+    int start = 0;
+    while (start < size) {
+      String category = keys[order[start]].getCategory();
+      int end = start + 1;
+      while (end < size && keys[order[end]].getCategory().equals(category)) {
+        ++end;
+      }
+      int[] positions = new int[end - start];
+      for (int i = start; i < end; ++i) {
+        positions[i - start] = order[i];
+      }
+      index.put(category, positions);
+      start = end;
+    }
+    if (categories != null) {
+      for (String category : categories) {
+        if (!index.containsKey(category)) {
+          index.put(category, new int[0]);
+        }
+      }
+    }
+
+    categoryIndex = index;
+    return index;
+  }
+
+  /**
+   * Get the sorted list of categories.
+   */
+  private synchronized List<String> getCategories() {
+    return new ArrayList<String>(getCategoryIndex().keySet());
+  }
+
+  private synchronized int getCategoryCount() {
+    return getCategoryIndex().size();
+  }
+
+  /**
+   * Get the properties of the given category sorted by name.
+   */
+  private synchronized Map<String, Object> getProperties(String category) {
+    int[] positions = getCategoryIndex().get(category);
+    if (positions == null) {
+      return Collections.emptyMap();
+    }
+
+    Map<String, Object> result = new LinkedHashMap<String, Object>(positions.length * 2);
+    for (int position : positions) {
+      result.put(keys[position].getName(), values[position]);
+    }
+    return result;
+  }
+
+  private synchronized int getPropertyCount(String category) {
+    int[] positions = getCategoryIndex().get(category);
+    return positions == null ? 0 : positions.length;
+  }
+
+
+  // ----- PropertiesMap inner class -----------------------------------------
+
+  /**
+   * Live view of the properties as a map of property maps keyed by category,
+   * sorted by category.
+   */
+  private class PropertiesMap extends AbstractMap<String, Map<String, Object>> {
+
+    @Override
+    public Set<Entry<String, Map<String, Object>>> entrySet() {
+      return new AbstractSet<Entry<String, Map<String, Object>>>() {
+        @Override
+        public Iterator<Entry<String, Map<String, Object>>> iterator() {
+          final Iterator<String> iterator = getCategories().iterator();
+
+          return new Iterator<Entry<String, Map<String, Object>>>() {
+            private String current = null;
+
+            @Override
+            public boolean hasNext() {
+              return iterator.hasNext();
+            }
+
+            @Override
+            public Entry<String, Map<String, Object>> next() {
+              current = iterator.next();
+              return new SimpleImmutableEntry<String, Map<String, Object>>(
+                  current, new CategoryMap(current));
+            }
+
+            @Override
+            public void remove() {
+              if (current == null) {
+                throw new IllegalStateException();
+              }
+              removeCategory(current);
+              current = null;
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return getCategoryCount();
+        }
+      };
+    }
+
+    @Override
+    public boolean containsKey(Object category) {
+      return category instanceof String && hasCategory((String) category);
+    }
+
+    @Override
+    public Map<String, Object> get(Object category) {
+      return containsKey(category) ? new CategoryMap((String) category) : null;
+    }
+
+    @Override
+    public Map<String, Object> put(String category, Map<String, Object> properties) {
+      synchronized (ResourceImpl.this) {
+        // copy first, the given map may be a view of the category being replaced
+        Map<String, Object> newProperties = new LinkedHashMap<String, Object>(properties);
+        Map<String, Object> previous = containsKey(category) ?
+            new HashMap<String, Object>(getProperties(category)) : null;
+
+        removeCategory(category);
+        addCategory(category);
+        for (Map.Entry<String, Object> entry : newProperties.entrySet()) {
+          setPropertyValue(schema.getPropertyKey(category, entry.getKey()), entry.getValue());
+        }
+        return previous;
+      }
+    }
+
+    @Override
+    public Map<String, Object> remove(Object category) {
+      synchronized (ResourceImpl.this) {
+        if (!containsKey(category)) {
+          return null;
+        }
+        Map<String, Object> previous = new HashMap<String, Object>(getProperties((String) category));
+        removeCategory((String) category);
+        return previous;
+      }
+    }
+  }
+
+
+  // ----- CategoryMap inner class -------------------------------------------
+
+  /**
+   * Live view of the properties of one category keyed by name, sorted by
+   * name.
+   */
+  private class CategoryMap extends AbstractMap<String, Object> {
+
+    private final String category;
+
+    private CategoryMap(String category) {
+      this.category = category;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+      return new AbstractSet<Entry<String, Object>>() {
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+          final Iterator<Entry<String, Object>> iterator =
+              getProperties(category).entrySet().iterator();
+
+          return new Iterator<Entry<String, Object>>() {
+            private Entry<String, Object> current = null;
+
+            @Override
+            public boolean hasNext() {
+              return iterator.hasNext();
+            }
+
+            @Override
+            public Entry<String, Object> next() {
+              current = iterator.next();
+              return new SimpleEntry<String, Object>(current) {
+                @Override
+                public Object setValue(Object value) {
+                  put(getKey(), value);
+                  return super.setValue(value);
+                }
+              };
+            }
+
+            @Override
+            public void remove() {
+              if (current == null) {
+                throw new IllegalStateException();
+              }
+              CategoryMap.this.remove(current.getKey());
+              current = null;
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return getPropertyCount(category);
+        }
+      };
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+      if (!(name instanceof String)) {
+        return false;
+      }
+      PropertyKey key = schema.findPropertyKey(category, (String) name);
+      return key != null && containsProperty(key);
+    }
+
+    @Override
+    public Object get(Object name) {
+      if (!(name instanceof String)) {
+        return null;
+      }
+      PropertyKey key = schema.findPropertyKey(category, (String) name);
+      return key == null ? null : getPropertyValue(key);
+    }
+
+    @Override
+    public Object put(String name, Object value) {
+      PropertyKey key = schema.getPropertyKey(category, name);
+      Object previous = getPropertyValue(key);
+      setPropertyValue(key, value);
+      return previous;
+    }
+
+    @Override
+    public Object remove(Object name) {
+      if (!(name instanceof String)) {
+        return null;
+      }
+      PropertyKey key = schema.findPropertyKey(category, (String) name);
+      return key == null ? null : removeProperty(key);
+    }
+  }
 }
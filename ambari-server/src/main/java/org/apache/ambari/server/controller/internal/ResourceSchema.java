@@ -0,0 +1,301 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.controller.internal;
+
+import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.controller.utilities.PropertyHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The property schema of a resource type.  Maps each property id set on
+ * resources of the type to an interned {@link PropertyKey} which holds the
+ * category / name split of the id and a slot index, so that the split is
+ * only done once per id and resources can store their properties in flat
+ * arrays ordered by slot.  Ids with the same category and name share a key.
+ * <p/>
+ * The schema is seeded with the known property ids of the type and grows as
+ * other ids (e.g. resolved metric ids) are set.  Once it holds
+ * {@link #MAX_PROPERTY_KEYS} keys, new ids get keys which are not interned.
+ */
+class ResourceSchema {
+
+  private final static Logger LOG = LoggerFactory.getLogger(ResourceSchema.class);
+
+  /**
+   * The maximum number of interned keys of a schema.
+   */
+  static final int MAX_PROPERTY_KEYS = 50000;
+
+  /**
+   * The slot of keys which are not interned.
+   */
+  static final int NO_SLOT = Integer.MAX_VALUE;
+
+  /**
+   * The schemas by resource type.
+   */
+  private static final ConcurrentMap<Resource.Type, ResourceSchema> schemas =
+      new ConcurrentHashMap<Resource.Type, ResourceSchema>();
+
+  /**
+   * The resource type.
+   */
+  private final Resource.Type type;
+
+  /**
+   * The interned keys by property id.
+   */
+  private final ConcurrentMap<String, PropertyKey> keys =
+      new ConcurrentHashMap<String, PropertyKey>();
+
+  /**
+   * The interned keys by category and name.
+   */
+  private final ConcurrentMap<PropertyKey, PropertyKey> internedKeys =
+      new ConcurrentHashMap<PropertyKey, PropertyKey>();
+
+  /**
+   * The next slot index.
+   */
+  private final AtomicInteger nextSlot = new AtomicInteger();
+
+
+  // ----- Constructors ------------------------------------------------------
+
+  /**
+   * Create the schema of the given type, seeded with its known property ids.
+   *
+   * @param type  the resource type
+   */
+  private ResourceSchema(Resource.Type type) {
+    this.type = type;
+
+    for (String propertyId : PropertyHelper.getPropertyIds(type)) {
+      getPropertyKey(propertyId);
+    }
+  }
+
+
+  // ----- ResourceSchema ----------------------------------------------------
+
+  /**
+   * Get the schema of the given resource type.
+   *
+   * @param type  the resource type
+   *
+   * @return the schema
+   */
+  static ResourceSchema forType(Resource.Type type) {
+    ResourceSchema schema = schemas.get(type);
+    if (schema == null) {
+      schema = new ResourceSchema(type);
+      ResourceSchema existing = schemas.putIfAbsent(type, schema);
+      if (existing != null) {
+        schema = existing;
+      }
+    }
+    return schema;
+  }
+
+  /**
+   * Get the key of the given property id, creating it if needed.
+   *
+   * @param propertyId  the property id
+   *
+   * @return the key
+   */
+  PropertyKey getPropertyKey(String propertyId) {
+    PropertyKey key = keys.get(propertyId);
+    if (key != null) {
+      return key;
+    }
+
+    key = intern(new PropertyKey(propertyId, NO_SLOT));
+    if (key.slot != NO_SLOT) {
+      keys.putIfAbsent(propertyId, key);
+    }
+    return key;
+  }
+
+  /**
+   * Get the key of the given category and name, creating it if needed.  The
+   * name is not split, even if it contains the category separator.
+   *
+   * @param category  the category; null for properties without category
+   * @param name      the name of the property within the category
+   *
+   * @return the key
+   */
+  PropertyKey getPropertyKey(String category, String name) {
+    return intern(new PropertyKey(category, name, NO_SLOT));
+  }
+
+  /**
+   * Find the key of the given property id without creating it.
+   *
+   * @param propertyId  the property id
+   *
+   * @return the key; null if no resource of the type can have the property
+   */
+  PropertyKey findPropertyKey(String propertyId) {
+    PropertyKey key = keys.get(propertyId);
+    return key == null ? find(new PropertyKey(propertyId, NO_SLOT)) : key;
+  }
+
+  /**
+   * Find the key of the given category and name without creating it.  The
+   * name is not split, even if it contains the category separator.
+   *
+   * @param category  the category; null for properties without category
+   * @param name      the name of the property within the category
+   *
+   * @return the key; null if no resource of the type can have the property
+   */
+  PropertyKey findPropertyKey(String category, String name) {
+    return find(new PropertyKey(category, name, NO_SLOT));
+  }
+
+  /**
+   * Get the interned key with the category and name of the given key,
+   * interning it if there is room.
+   */
+  private PropertyKey intern(PropertyKey key) {
+    PropertyKey interned = internedKeys.get(key);
+    if (interned == null) {
+      if (internedKeys.size() >= MAX_PROPERTY_KEYS) {
+        LOG.debug("The property schema of {} is full, {} is not interned", type, key);
+        return key;
+      }
+      interned = new PropertyKey(key, nextSlot.getAndIncrement());
+
+      PropertyKey existing = internedKeys.putIfAbsent(interned, interned);
+      if (existing != null) {
+        interned = existing;
+      }
+    }
+    return interned;
+  }
+
+  /**
+   * Get the interned key with the category and name of the given key.
+   *
+   * @return the key; null if no resource of the type can have the property
+   */
+  private PropertyKey find(PropertyKey key) {
+    PropertyKey interned = internedKeys.get(key);
+    if (interned != null) {
+      return interned;
+    }
+    // once the schema is full, other keys are not interned
+    return internedKeys.size() < MAX_PROPERTY_KEYS ? null : key;
+  }
+
+  /**
+   * @return the number of interned keys
+   */
+  int size() {
+    return internedKeys.size();
+  }
+
+
+  // ----- PropertyKey inner class -------------------------------------------
+
+  /**
+   * The category and name of a property along with its slot.
+   */
+  static final class PropertyKey implements Comparable<PropertyKey> {
+    private final String category;
+    private final String name;
+    private final int slot;
+
+    private PropertyKey(String id, int slot) {
+      String category = PropertyHelper.getPropertyCategory(id);
+
+      this.category = category == null ? "" : category;
+      this.name     = PropertyHelper.getPropertyName(id);
+      this.slot     = slot;
+    }
+
+    private PropertyKey(String category, String name, int slot) {
+      this.category = category == null ? "" : category;
+      this.name     = name;
+      this.slot     = slot;
+    }
+
+    private PropertyKey(PropertyKey key, int slot) {
+      this.category = key.category;
+      this.name     = key.name;
+      this.slot     = slot;
+    }
+
+    /**
+     * @return the category; the empty string for properties without category
+     */
+    String getCategory() {
+      return category;
+    }
+
+    /**
+     * @return the name of the property within its category
+     */
+    String getName() {
+      return name;
+    }
+
+    /**
+     * Keys are ordered by slot, keys which are not interned come last in
+     * order of their category and name.
+     */
+    @Override
+    public int compareTo(PropertyKey other) {
+      if (slot != other.slot) {
+        return slot < other.slot ? -1 : 1;
+      }
+      if (slot != NO_SLOT) {
+        return 0;
+      }
+      int result = category.compareTo(other.category);
+      return result == 0 ? name.compareTo(other.name) : result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      PropertyKey that = (PropertyKey) o;
+
+      return category.equals(that.category) && name.equals(that.name);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * category.hashCode() + name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return PropertyHelper.getPropertyId(category, name);
+    }
+  }
+}
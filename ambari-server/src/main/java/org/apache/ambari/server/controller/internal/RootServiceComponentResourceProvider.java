@@ -28,6 +28,7 @@ import org.apache.ambari.server.controller.AmbariManagementController;
 import org.apache.ambari.server.controller.RootServiceComponentRequest;
 import org.apache.ambari.server.controller.RootServiceComponentResponse;
 import org.apache.ambari.server.controller.RootServiceResponseFactory.Components;
+import org.apache.ambari.server.controller.ServerMetricsRegistry;
 import org.apache.ambari.server.controller.spi.NoSuchParentResourceException;
 import org.apache.ambari.server.controller.spi.NoSuchResourceException;
 import org.apache.ambari.server.controller.spi.Predicate;
@@ -55,6 +56,9 @@ public class RootServiceComponentResourceProvider extends
   
   public static final String PROPERTIES_SERVER_CLOCK = PropertyHelper
       .getPropertyId("RootServiceComponents", "server_clock");
+
+  public static final String SERVER_METRICS_PROPERTY_ID = PropertyHelper
+      .getPropertyId("RootServiceComponents", "server_metrics");
   
   private Set<String> pkPropertyIds = new HashSet<String>(
       Arrays.asList(new String[] { SERVICE_NAME_PROPERTY_ID, COMPONENT_NAME_PROPERTY_ID }));
@@ -109,6 +113,11 @@ public class RootServiceComponentResourceProvider extends
       if(response.getComponentName().equals(Components.AMBARI_SERVER.name())){
         setResourceProperty(resource, PROPERTIES_SERVER_CLOCK,
             System.currentTimeMillis() / 1000L, requestedIds);
+
+        if (isPropertyRequested(SERVER_METRICS_PROPERTY_ID, requestedIds)) {
+          setResourceProperty(resource, SERVER_METRICS_PROPERTY_ID,
+              ServerMetricsRegistry.instance().getMetrics(), requestedIds);
+        }
       }      
 
       resources.add(resource);
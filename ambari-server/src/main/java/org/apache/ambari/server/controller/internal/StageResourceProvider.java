@@ -315,6 +315,7 @@ public class StageResourceProvider extends AbstractControllerResourceProvider im
           hostRoleCommandDAO.merge(hostRoleCommand);
         }
       }
+      controller.getActionManager().refreshStage(stage.getRequestId(), stage.getStageId());
     }
   }
 
@@ -18,10 +18,10 @@
 package org.apache.ambari.server.controller.metrics;
 
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
 
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
 
 public class MetricsDownsamplingMethodFactory {
   private static final MetricsDownsamplingMethod perSecondDownsampling = new MetricsAveragePerSecondDownsampling();
@@ -36,25 +36,21 @@ public class MetricsDownsamplingMethodFactory {
   }
 
   private static boolean mustDownsample(TimelineMetric metric) {
-    //Linear search in Map<K, V>, faster than copying the map in a TreeMap and doing ceilingEntry()
-    for (Long time : metric.getMetricValues().keySet()) {
-      if (time > 9999999999l)
-        return true;
-    }
-    return false;
+    // timestamps are sorted, so the last one is the largest
+    TimelineMetricSeries values = metric.getMetricSeries();
+    return values != null && !values.isEmpty() && values.getLastTimestamp() > 9999999999l;
   }
 }
 
 class MetricNoDownsampling extends MetricsDownsamplingMethod {
   @Override
   public Number[][] reportMetricData(TimelineMetric metricData, MetricsDataTransferMethod dataTransferMethod) {
-    Number[][] datapointsArray = new Number[metricData.getMetricValues().size()][2];
-    int cnt = 0;
+    TimelineMetricSeries values = metricData.getMetricSeries();
+    Number[][] datapointsArray = new Number[values.size()][2];
 
-    for (Map.Entry<Long, Double> metricEntry : metricData.getMetricValues().entrySet()) {
-      datapointsArray[cnt][0] = dataTransferMethod.getData(metricEntry.getValue());
-      datapointsArray[cnt][1] = metricEntry.getKey();
-      cnt++;
+    for (int i = 0; i < values.size(); i++) {
+      datapointsArray[i][0] = dataTransferMethod.getData(values.isNull(i) ? null : values.getValue(i));
+      datapointsArray[i][1] = values.getTimestamp(i);
     }
 
     return datapointsArray;
@@ -62,79 +58,56 @@ class MetricNoDownsampling extends MetricsDownsamplingMethod {
 }
 
 class MetricsAveragePerSecondDownsampling extends MetricsDownsamplingMethod {
-  class Accumulo {
-    public long ts;
-    public Double val;
-
-    public Accumulo(long t, Double v) {
-      this.ts = t;
-      this.val = v;
-    }
-  }
   @Override
   public Number[][] reportMetricData(TimelineMetric metricData, MetricsDataTransferMethod dataTransferMethod) {
-    ArrayList<Accumulo> cache = new ArrayList<Accumulo>();
-
-    final Iterator<Map.Entry<Long, Double>> ci = metricData.getMetricValues().entrySet().iterator();
+    TimelineMetricSeries values = metricData.getMetricSeries();
+    int size = values.size();
+    List<Number[]> datapoints = new ArrayList<Number[]>(size);
 
     // Skip null padding at the beginning of the series.
-    Map.Entry<Long, Double> e0 = null;
-    while (ci.hasNext()) {
-      e0 = ci.next();
-      if (e0.getValue() == null) {
-        cache.add(new Accumulo(e0.getKey() / 1000, null));
-      } else {
-        break;
-      }
+    int i = 0;
+    for (; i < size && values.isNull(i); i++) {
+      datapoints.add(new Number[] {null, values.getTimestamp(i) / 1000});
     }
 
-    if (e0 != null) {
-      long t0 = e0.getKey() / 1000;
-      Double s0 = e0.getValue();
+    if (i < size) {
+      long t0 = values.getTimestamp(i) / 1000;
+      double s0 = values.getValue(i);
       int nSamples = 1;
       boolean lastNonNullEntryAdded = false;
 
-      while(ci.hasNext()) {
-        e0 = ci.next();
+      for (i++; i < size; i++) {
         // Skip null padding at the end of the series.
-        if (e0.getValue() == null) {
+        if (values.isNull(i)) {
           if (!lastNonNullEntryAdded) {
             // Add last non null entry
-            cache.add(new Accumulo(t0, dataTransferMethod.getData(s0 / nSamples)));
+            datapoints.add(new Number[] {dataTransferMethod.getData(s0 / nSamples), t0});
             lastNonNullEntryAdded = true;
           }
           // We do not pad below an interval of a second.
           // Add the null entry
-          cache.add(new Accumulo(e0.getKey() / 1000, null));
+          datapoints.add(new Number[] {null, values.getTimestamp(i) / 1000});
           continue;
         }
-        long t = e0.getKey() / 1000;
+        long t = values.getTimestamp(i) / 1000;
 
         if (t != t0) {
-          cache.add(new Accumulo(t0, dataTransferMethod.getData(s0 / nSamples)));
+          datapoints.add(new Number[] {dataTransferMethod.getData(s0 / nSamples), t0});
           t0 = t;
-          s0 = e0.getValue();
+          s0 = values.getValue(i);
           nSamples = 1;
         } else {
-          s0 += e0.getValue();
+          s0 += values.getValue(i);
           nSamples++;
         }
       }
 
-      //Add the last entry into the cache
+      //Add the last entry
       if (!lastNonNullEntryAdded) {
-        cache.add(new Accumulo(t0, dataTransferMethod.getData(s0 / nSamples)));
+        datapoints.add(new Number[] {dataTransferMethod.getData(s0 / nSamples), t0});
       }
     }
 
-    Number[][] datapointsArray = new Number[cache.size()][2];
-    int cnt = 0;
-    for (Accumulo e : cache) {
-      datapointsArray[cnt][0] = e.val;
-      datapointsArray[cnt][1] = e.ts;
-      cnt++;
-    }
-
-    return datapointsArray;
+    return datapoints.toArray(new Number[datapoints.size()][]);
   }
 }
@@ -19,8 +19,7 @@ package org.apache.ambari.server.controller.metrics;
 
 import org.apache.ambari.server.controller.spi.TemporalInfo;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
-import java.util.Iterator;
-import java.util.TreeMap;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
 
 public class MetricsPaddingMethod {
   private final PADDING_STRATEGY strategy;
@@ -51,8 +50,10 @@ public class MetricsPaddingMethod {
       return;
     }
 
-    // TODO: JSON dser returns LinkedHashMap that is not Navigable
-    TreeMap<Long, Double> values = new TreeMap<Long, Double>(metric.getMetricValues());
+    TimelineMetricSeries values = metric.getMetricSeries();
+    if (values == null || values.isEmpty()) {
+      return;
+    }
 
     long dataInterval = getTimelineMetricInterval(values);
 
@@ -66,25 +67,28 @@ public class MetricsPaddingMethod {
 
     long intervalStartTime = longToMillis(temporalInfo.getStartTime());
     long intervalEndTime = longToMillis(temporalInfo.getEndTime());
-    long dataStartTime = longToMillis(values.firstKey());
-    long dataEndTime = longToMillis(values.lastKey());
+    long dataStartTime = longToMillis(values.getFirstTimestamp());
+    long dataEndTime = longToMillis(values.getLastTimestamp());
 
     Double paddingValue = 0.0d;
 
     if (strategy.equals(PADDING_STRATEGY.NULLS)) {
       paddingValue = null;
     }
+
+    TimelineMetricSeries paddedValues = new TimelineMetricSeries(values.size());
     // Pad before data interval
     for (long counter = intervalStartTime; counter < dataStartTime; counter += dataInterval) {
       // Until counter approaches or goes past dataStartTime : pad
-      values.put(counter, paddingValue);
+      paddedValues.put(counter, paddingValue);
     }
+    paddedValues.merge(values);
     // Pad after data interval
     for (long counter = dataEndTime + dataInterval; counter <= intervalEndTime; counter += dataInterval) {
-      values.put(counter, paddingValue);
+      paddedValues.put(counter, paddingValue);
     }
     // Put back new + old values
-    metric.setMetricValues(values);
+    metric.setMetricValues(paddedValues);
   }
 
   private long longToMillis(long time) {
@@ -94,11 +98,10 @@ public class MetricsPaddingMethod {
     return time;
   }
 
-  private long getTimelineMetricInterval(TreeMap<Long, Double> values) {
-    if (values != null && values.size() > 1) {
-      Iterator<Long> tsValuesIterator = values.descendingKeySet().iterator();
-      long lastValue = tsValuesIterator.next();
-      long secondToLastValue = tsValuesIterator.next();
+  private long getTimelineMetricInterval(TimelineMetricSeries values) {
+    if (values.size() > 1) {
+      long lastValue = values.getTimestamp(values.size() - 1);
+      long secondToLastValue = values.getTimestamp(values.size() - 2);
       return Math.abs(lastValue - secondToLastValue);
     }
     // No values found or only one value found
@@ -0,0 +1,476 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.controller.metrics;
+
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.controller.ServerMetricsRegistry.MetricsSource;
+import org.apache.ambari.server.controller.internal.TemporalInfoImpl;
+import org.apache.ambari.server.controller.spi.SystemException;
+import org.apache.ambari.server.controller.spi.TemporalInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache for the responses of the metrics collectors, shared by all metrics
+ * property providers so that dashboards polling the same metrics at the same
+ * time don't each make a call to the collector.
+ * <p/>
+ * Responses are cached by a key which identifies the metric set, host(s) and
+ * appId of the call, but not its time range:
+ * <ul>
+ * <li>point in time responses are kept for
+ * {@link Configuration#getMetricsCacheTTL()} seconds after they are fetched,
+ * in a cache of their own</li>
+ * <li>temporal responses are kept with the time range they cover; a request
+ * which overlaps the cached range is served by splicing the cached series
+ * with a fetch of the missing tail only</li>
+ * </ul>
+ * A tail fetch starts {@link Configuration#getMetricsCacheOverlap()} seconds
+ * before the end of the cached range, so that datapoints the collector
+ * writes or aggregates late replace the cached ones. Datapoints older than
+ * that are only fetched again once the cached response is older than
+ * {@link Configuration#getMetricsCacheMaxAge()} seconds, when the response
+ * is fetched in full.
+ * Each of the two caches is bounded by the number of cached datapoints. The
+ * cache is disabled until {@link #init(Configuration)} is called.
+ */
+public class MetricsResponseCache implements MetricsSource {
+
+  private final static Logger LOG = LoggerFactory.getLogger(MetricsResponseCache.class);
+
+  /**
+   * The name the cache statistics are reported under in the server metrics.
+   */
+  public static final String METRICS_NAME = "metrics_cache";
+
+  /**
+   * Temporal responses which are not requested for this long are dropped.
+   */
+  private static final long EXPIRE_AFTER_ACCESS_MINUTES = 10L;
+
+  /**
+   * Timestamps below this are in seconds.
+   */
+  private static final long MAX_SECONDS_TIMESTAMP = 9999999999L;
+
+  /**
+   * The singleton.
+   */
+  private static final MetricsResponseCache singleton = new MetricsResponseCache();
+
+  private volatile Cache<String, CachedResponse> cache = null;
+  private volatile Cache<String, CachedResponse> pointInTimeCache = null;
+  private volatile long ttlMillis = 0L;
+  private volatile long overlapMillis = 0L;
+  private volatile long maxAgeMillis = Long.MAX_VALUE;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong partialHitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+
+  // ----- Constructors ------------------------------------------------------
+
+  /**
+   * Constructor.
+   */
+  protected MetricsResponseCache() {
+  }
+
+
+  // ----- MetricsResponseCache ----------------------------------------------
+
+  /**
+   * Get the singleton instance.
+   *
+   * @return the singleton instance
+   */
+  public static MetricsResponseCache instance() {
+    return singleton;
+  }
+
+  /**
+   * Initialize with the given configuration.
+   *
+   * @param configuration  the configuration
+   */
+  public void init(Configuration configuration) {
+    if (!configuration.isMetricsCacheEnabled()) {
+      cache = null;
+      pointInTimeCache = null;
+      return;
+    }
+
+    ttlMillis = TimeUnit.SECONDS.toMillis(configuration.getMetricsCacheTTL());
+    overlapMillis = TimeUnit.SECONDS.toMillis(Math.max(0, configuration.getMetricsCacheOverlap()));
+    maxAgeMillis = TimeUnit.SECONDS.toMillis(configuration.getMetricsCacheMaxAge());
+
+    long maxDatapoints = configuration.getMetricsCacheMaxDatapoints();
+    cache = newCacheBuilder(maxDatapoints)
+        .expireAfterAccess(EXPIRE_AFTER_ACCESS_MINUTES, TimeUnit.MINUTES)
+        .build();
+
+    // a point in time response is only valid for the ttl, keep it no longer
+    pointInTimeCache = ttlMillis <= 0 ? null : newCacheBuilder(maxDatapoints)
+        .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+        .build();
+
+    LOG.info("Caching metrics responses, ttl={}s, overlap={}s, maxAge={}s, maxDatapoints={}",
+        configuration.getMetricsCacheTTL(), configuration.getMetricsCacheOverlap(),
+        configuration.getMetricsCacheMaxAge(), configuration.getMetricsCacheMaxDatapoints());
+  }
+
+  /**
+   * Determine whether or not responses are cached.
+   *
+   * @return true if the cache is enabled
+   */
+  public boolean isEnabled() {
+    return cache != null;
+  }
+
+  /**
+   * Get the response for the given key and time range, from the cache if it
+   * is there and from the given fetcher otherwise.
+   *
+   * @param key           the key identifying the metric set, hosts and
+   *                      appId of the call
+   * @param temporalInfo  the requested time range; null for point in time
+   * @param fetcher       the fetcher used to call the collector
+   * @param <T>           the response type
+   *
+   * @return a response which the caller is free to modify; null if the
+   *         response could not be fetched
+   *
+   * @throws SystemException if thrown by the fetcher
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T getResponse(String key, TemporalInfo temporalInfo,
+                           ResponseFetcher<T> fetcher) throws SystemException {
+    Cache<String, CachedResponse> cache = this.cache;
+    if (cache == null) {
+      return fetcher.fetch(temporalInfo);
+    }
+
+    if (temporalInfo == null) {
+      Cache<String, CachedResponse> pointInTimeCache = this.pointInTimeCache;
+      if (pointInTimeCache == null) {
+        missCount.incrementAndGet();
+        return fetcher.fetch(null);
+      }
+
+      CachedResponse cached = pointInTimeCache.getIfPresent(key);
+      if (cached != null) {
+        hitCount.incrementAndGet();
+        return fetcher.slice((T) cached.response, null);
+      }
+
+      missCount.incrementAndGet();
+      T response = fetcher.fetch(null);
+      if (response != null) {
+        pointInTimeCache.put(key, new CachedResponse(response, null, fetcher.getWeight(response),
+            currentTimeMillis()));
+        return fetcher.slice(response, null);
+      }
+      return null;
+    }
+
+    long startTime = temporalInfo.getStartTime();
+    long endTime   = temporalInfo.getEndTime();
+
+    long now = currentTimeMillis();
+
+    CachedResponse cached = cache.getIfPresent(key);
+    if (cached != null && cached.covers(temporalInfo)
+        && now - cached.fetchTime < maxAgeMillis) {
+      if (endTime <= cached.endTime
+          || toMillis(endTime) - toMillis(cached.endTime) < ttlMillis) {
+        hitCount.incrementAndGet();
+        return fetcher.slice((T) cached.response, temporalInfo);
+      }
+
+      // only fetch what is missing at the end, along with the overlap which
+      // may have changed since it was cached
+      long tailStart = Math.max(cached.startTime, minus(cached.endTime, overlapMillis));
+      TemporalInfo tail = new TemporalInfoImpl(tailStart, endTime, getStep(temporalInfo));
+      T tailResponse = fetcher.fetch(tail);
+      if (tailResponse == null) {
+        // serve what is there rather than nothing
+        partialHitCount.incrementAndGet();
+        return fetcher.slice((T) cached.response, temporalInfo);
+      }
+
+      partialHitCount.incrementAndGet();
+
+      // keep the longest range asked for, so that shorter and longer views
+      // of the same metrics don't push each other out
+      long span = Math.max(cached.endTime - cached.startTime, endTime - startTime);
+      TemporalInfo range = new TemporalInfoImpl(Math.max(cached.startTime, endTime - span),
+          endTime, getStep(temporalInfo));
+
+      T spliced = fetcher.slice(fetcher.splice((T) cached.response, tailResponse), range);
+      cache.put(key, new CachedResponse(spliced, range, fetcher.getWeight(spliced),
+          cached.fetchTime));
+
+      return fetcher.slice(spliced, temporalInfo);
+    }
+
+    missCount.incrementAndGet();
+    T response = fetcher.fetch(temporalInfo);
+    if (response != null) {
+      cache.put(key, new CachedResponse(response, temporalInfo, fetcher.getWeight(response), now));
+      return fetcher.slice(response, temporalInfo);
+    }
+    return null;
+  }
+
+  /**
+   * Drop all cached responses.
+   */
+  public void invalidateAll() {
+    Cache<String, CachedResponse> cache = this.cache;
+    if (cache != null) {
+      cache.invalidateAll();
+    }
+
+    Cache<String, CachedResponse> pointInTimeCache = this.pointInTimeCache;
+    if (pointInTimeCache != null) {
+      pointInTimeCache.invalidateAll();
+    }
+  }
+
+  /**
+   * Convert the given time to milliseconds; the time ranges of metrics
+   * requests can be given in seconds or in milliseconds.
+   *
+   * @param time  the time in seconds or milliseconds
+   *
+   * @return the time in milliseconds
+   */
+  public static long toMillis(long time) {
+    return time < MAX_SECONDS_TIMESTAMP ? time * 1000 : time;
+  }
+
+  /**
+   * Subtract the given number of milliseconds from a time in seconds or
+   * milliseconds.
+   */
+  private static long minus(long time, long millis) {
+    return time < MAX_SECONDS_TIMESTAMP ? time - millis / 1000 : time - millis;
+  }
+
+  /**
+   * @return the current time in milliseconds
+   */
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  private static long getStep(TemporalInfo temporalInfo) {
+    return temporalInfo.getStep() == null ? -1 : temporalInfo.getStep();
+  }
+
+  private CacheBuilder<String, CachedResponse> newCacheBuilder(long maxDatapoints) {
+    return CacheBuilder.newBuilder()
+        .maximumWeight(maxDatapoints)
+        .weigher(new Weigher<String, CachedResponse>() {
+          @Override
+          public int weigh(String key, CachedResponse response) {
+            return response.weight;
+          }
+        })
+        .removalListener(new RemovalListener<String, CachedResponse>() {
+          @Override
+          public void onRemoval(RemovalNotification<String, CachedResponse> notification) {
+            if (notification.wasEvicted()) {
+              evictionCount.incrementAndGet();
+            }
+          }
+        });
+  }
+
+
+  // ----- statistics --------------------------------------------------------
+
+  /**
+   * @return the number of requests served from the cache
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * @return the number of requests served by splicing a cached response
+   *         with a fetch of the missing tail
+   */
+  public long getPartialHitCount() {
+    return partialHitCount.get();
+  }
+
+  /**
+   * @return the number of requests which had to be fully fetched
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * @return the number of responses dropped because the cache was full or
+   *         they were not used for a while
+   */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /**
+   * @return the number of cached responses
+   */
+  public long getSize() {
+    Cache<String, CachedResponse> cache = this.cache;
+    Cache<String, CachedResponse> pointInTimeCache = this.pointInTimeCache;
+    return (cache == null ? 0 : cache.size())
+        + (pointInTimeCache == null ? 0 : pointInTimeCache.size());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Map<String, Number> getMetrics() {
+    Map<String, Number> metrics = new HashMap<String, Number>();
+    metrics.put("enabled", isEnabled() ? 1 : 0);
+    metrics.put("size", getSize());
+    metrics.put("hits", getHitCount());
+    metrics.put("partial_hits", getPartialHitCount());
+    metrics.put("misses", getMissCount());
+    metrics.put("evictions", getEvictionCount());
+    return metrics;
+  }
+
+  @Override
+  public String toString() {
+    return "MetricsResponseCache{enabled=" + isEnabled() + ", size=" + getSize()
+        + ", hits=" + hitCount + ", partialHits=" + partialHitCount
+        + ", misses=" + missCount + ", evictions=" + evictionCount + "}";
+  }
+
+
+  // ----- inner classes -----------------------------------------------------
+
+  /**
+   * Makes the calls to a metrics collector and knows how to combine their
+   * responses.
+   *
+   * @param <T> the response type
+   */
+  public interface ResponseFetcher<T> {
+
+    /**
+     * Call the collector.
+     *
+     * @param temporalInfo  the time range to fetch; null for point in time
+     *
+     * @return the response; null if it could not be read completely, in which
+     *         case it is not cached
+     *
+     * @throws SystemException if the collector could not be called
+     */
+    T fetch(TemporalInfo temporalInfo) throws SystemException;
+
+    /**
+     * Combine a cached response with a response for a time range which
+     * starts before the end of the cached one; the datapoints of the tail
+     * replace the cached ones where they overlap. Neither of the given
+     * responses may be modified.
+     *
+     * @param head  the cached response
+     * @param tail  the response for the missing tail and the overlap
+     *
+     * @return the combined response
+     */
+    T splice(T head, T tail);
+
+    /**
+     * Copy the part of the given response which is in the given time range.
+     * The given response may not be modified.
+     *
+     * @param response      the response
+     * @param temporalInfo  the time range; null to copy everything
+     *
+     * @return the copy
+     */
+    T slice(T response, TemporalInfo temporalInfo);
+
+    /**
+     * Get the number of datapoints of the given response.
+     *
+     * @param response  the response
+     *
+     * @return the number of datapoints
+     */
+    int getWeight(T response);
+  }
+
+  /**
+   * A cached response along with the time range it covers and the time its
+   * oldest datapoints were fetched.
+   */
+  private static class CachedResponse {
+    private final Object response;
+    private final long startTime;
+    private final long endTime;
+    private final Long step;
+    private final int weight;
+    private final long fetchTime;
+
+    private CachedResponse(Object response, TemporalInfo temporalInfo, int weight, long fetchTime) {
+      this.response   = response;
+      this.startTime  = temporalInfo == null ? -1 : temporalInfo.getStartTime();
+      this.endTime    = temporalInfo == null ? -1 : temporalInfo.getEndTime();
+      this.step       = temporalInfo == null ? null : temporalInfo.getStep();
+      this.weight     = Math.max(1, weight);
+      this.fetchTime  = fetchTime;
+    }
+
+    /**
+     * Determine whether the given range starts within the cached range and
+     * has the same resolution, so it can be served by this response and an
+     * optional fetch of the tail.
+     */
+    private boolean covers(TemporalInfo temporalInfo) {
+      Long requestedStep = temporalInfo.getStep();
+      boolean sameStep = step == null ? requestedStep == null : step.equals(requestedStep);
+
+      return sameStep
+          && startTime <= temporalInfo.getStartTime()
+          && temporalInfo.getStartTime() <= endTime;
+    }
+  }
+}
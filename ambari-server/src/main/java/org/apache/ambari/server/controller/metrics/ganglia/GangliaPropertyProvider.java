@@ -22,6 +22,7 @@ import org.apache.ambari.server.configuration.ComponentSSLConfiguration;
 import org.apache.ambari.server.controller.internal.PropertyInfo;
 import org.apache.ambari.server.controller.metrics.MetricHostProvider;
 import org.apache.ambari.server.controller.metrics.MetricsPropertyProvider;
+import org.apache.ambari.server.controller.metrics.MetricsResponseCache;
 import org.apache.ambari.server.controller.spi.Request;
 import org.apache.ambari.server.controller.spi.Resource;
 import org.apache.ambari.server.controller.spi.SystemException;
@@ -372,14 +373,66 @@ public abstract class GangliaPropertyProvider extends MetricsPropertyProvider {
      */
     public Collection<Resource> populateResources() throws SystemException {
 
+      //Check if host is live
+      if (!hostProvider.isCollectorHostLive(clusterName, GANGLIA)) {
+        LOG.info("Ganglia host is not live");
+        return Collections.emptySet();
+      }
+
+      //Check if Ganglia server component is live
+      if (!hostProvider.isCollectorComponentLive(clusterName, GANGLIA)) {
+        LOG.info("Ganglia server component is not live");
+        return Collections.emptySet();
+      }
+
+      // the cache key is the request without the time range
+      String key = "ganglia:" + clusterName + ":" + getSetString(clusterSet, -1) + ":" +
+          getSetString(hostSet, -1) + ":" + getSetString(metrics.keySet(), -1);
+
+      RRDFetcher fetcher = new RRDFetcher();
+      List<GangliaMetric> gangliaMetrics =
+          MetricsResponseCache.instance().getResponse(key, temporalInfo, fetcher);
+
+      if (gangliaMetrics == null) {
+        // populate whatever was read before the feed broke off
+        gangliaMetrics = fetcher.partialMetrics;
+      }
+
+      for (GangliaMetric metric : gangliaMetrics) {
+        ResourceKey resourceKey = new ResourceKey(metric.getHost_name(), metric.getCluster_name());
+        Set<Resource> resourceSet = resources.get(resourceKey);
+        if (resourceSet != null) {
+          for (Resource resource : resourceSet) {
+            populateResource(resource, metric);
+          }
+        }
+      }
+
+      //todo: filter out resources and return keepers
+      return Collections.emptySet();
+    }
+
+    /**
+     * Read the Ganglia metrics for the given time range from the rrd feed.
+     *
+     * @param temporalInfo  the time range; null for point in time
+     *
+     * @return the metrics; null if the feed could not be read completely
+     *
+     * @throws SystemException if unable to get the Ganglia Collector host name
+     */
+    private List<GangliaMetric> readMetrics(TemporalInfo temporalInfo,
+                                            List<GangliaMetric> gangliaMetrics)
+        throws SystemException {
+
       //Get full url with parameters
       String specWithParams = getSpec(clusterName, clusterSet, hostSet, metrics.keySet(), temporalInfo);
-      
+
       //URL
       String spec = null;
       //Parameters
       String params = null;
-      
+
       String[] tokens = questionMarkPattern.split(specWithParams, 2);
 
       try {
@@ -388,23 +441,10 @@ public abstract class GangliaPropertyProvider extends MetricsPropertyProvider {
       } catch (ArrayIndexOutOfBoundsException e) {
         LOG.info(e.toString());
       }
-      
+
 
       BufferedReader reader = null;
       try {
-        
-        //Check if host is live
-        if (!hostProvider.isCollectorHostLive(clusterName, GANGLIA)) {
-          LOG.info("Ganglia host is not live");
-          return Collections.emptySet();
-        }
-
-        //Check if Ganglia server component is live
-        if (!hostProvider.isCollectorComponentLive(clusterName, GANGLIA)) {
-          LOG.info("Ganglia server component is not live");
-          return Collections.emptySet();
-        }
-
         reader = new BufferedReader(new InputStreamReader(
             getStreamProvider().readFrom(spec, "POST", params)));
 
@@ -412,7 +452,7 @@ public abstract class GangliaPropertyProvider extends MetricsPropertyProvider {
         if (feedStart == null || feedStart.isEmpty()) {
           LOG.info("Empty feed while getting ganglia metrics for spec => "+
             spec);
-          return Collections.emptySet();
+          return null;
         }
         int startTime = convertToNumber(feedStart).intValue();
 
@@ -420,7 +460,7 @@ public abstract class GangliaPropertyProvider extends MetricsPropertyProvider {
         if (dsName == null || dsName.isEmpty()) {
           LOG.info("Feed without body while reading ganglia metrics for spec " +
             "=> " + spec);
-          return Collections.emptySet();
+          return null;
         }
 
         while(!"[~EOF]".equals(dsName)) {
@@ -439,7 +479,7 @@ public abstract class GangliaPropertyProvider extends MetricsPropertyProvider {
               || stepStr.isEmpty()) {
             LOG.info("Unexpected end of stream reached while getting ganglia " +
                 "metrics for spec => " + spec);
-            return Collections.emptySet();
+            return null;
           }
           int time = convertToNumber(timeStr).intValue();
           int step = convertToNumber(stepStr).intValue();
@@ -469,20 +509,13 @@ public abstract class GangliaPropertyProvider extends MetricsPropertyProvider {
           }
 
           metric.setDatapointsFromList(listTemporalMetrics);
-
-          ResourceKey key = new ResourceKey(metric.getHost_name(), metric.getCluster_name());
-          Set<Resource> resourceSet = resources.get(key);
-          if (resourceSet != null) {
-            for (Resource resource : resourceSet) {
-              populateResource(resource, metric);
-            }
-          }
+          gangliaMetrics.add(metric);
 
           dsName = reader.readLine();
           if (dsName == null || dsName.isEmpty()) {
             LOG.info("Unexpected end of stream reached while getting ganglia " +
               "metrics for spec => " + spec);
-            return Collections.emptySet();
+            return null;
           }
         }
         String feedEnd = reader.readLine();
@@ -497,10 +530,12 @@ public abstract class GangliaPropertyProvider extends MetricsPropertyProvider {
             LOG.info("Ganglia resource population time: " + totalTime);
           }
         }
+        return gangliaMetrics;
       } catch (IOException e) {
         if (LOG.isErrorEnabled()) {
           LOG.error("Caught exception getting Ganglia metrics : spec=" + spec);
         }
+        return null;
       } finally {
         if (reader != null) {
           try {
@@ -512,8 +547,117 @@ public abstract class GangliaPropertyProvider extends MetricsPropertyProvider {
           }
         }
       }
-      //todo: filter out resources and return keepers
-      return Collections.emptySet();
+    }
+
+
+    // ----- RRDFetcher ------------------------------------------------------
+
+    /**
+     * Fetches the rrd feed for the {@link MetricsResponseCache}. If a feed
+     * can't be read completely, the metrics read up to that point are kept
+     * in {@link #partialMetrics} instead of being cached.
+     */
+    private class RRDFetcher implements MetricsResponseCache.ResponseFetcher<List<GangliaMetric>> {
+      private List<GangliaMetric> partialMetrics = new ArrayList<GangliaMetric>();
+
+      @Override
+      public List<GangliaMetric> fetch(TemporalInfo temporalInfo) throws SystemException {
+        List<GangliaMetric> gangliaMetrics = new ArrayList<GangliaMetric>();
+        List<GangliaMetric> result = readMetrics(temporalInfo, gangliaMetrics);
+        if (result == null) {
+          partialMetrics = gangliaMetrics;
+        }
+        return result;
+      }
+
+      @Override
+      public List<GangliaMetric> splice(List<GangliaMetric> head, List<GangliaMetric> tail) {
+        List<GangliaMetric> result = slice(head, null);
+
+        for (GangliaMetric tailMetric : tail) {
+          GangliaMetric metric = null;
+          for (GangliaMetric headMetric : result) {
+            if (isSameSeries(headMetric, tailMetric)) {
+              metric = headMetric;
+              break;
+            }
+          }
+
+          if (metric == null) {
+            result.add(copy(tailMetric, Long.MIN_VALUE, Long.MAX_VALUE));
+            continue;
+          }
+
+          // the tail replaces the datapoints it overlaps with
+          Number[][] tailPoints = tailMetric.getDatapoints();
+          long tailStart = tailPoints.length > 0 ? tailPoints[0][1].longValue() : Long.MAX_VALUE;
+          List<Number[]> points = new ArrayList<Number[]>();
+          for (Number[] point : metric.getDatapoints()) {
+            if (point[1].longValue() < tailStart) {
+              points.add(point);
+            }
+          }
+          points.addAll(Arrays.asList(tailPoints));
+          metric.setDatapoints(points.toArray(new Number[points.size()][]));
+        }
+        return result;
+      }
+
+      @Override
+      public List<GangliaMetric> slice(List<GangliaMetric> response, TemporalInfo temporalInfo) {
+        long startTime = Long.MIN_VALUE;
+        long endTime = Long.MAX_VALUE;
+        if (temporalInfo != null) {
+          startTime = MetricsResponseCache.toMillis(temporalInfo.getStartTime());
+          endTime = MetricsResponseCache.toMillis(temporalInfo.getEndTime());
+        }
+
+        List<GangliaMetric> result = new ArrayList<GangliaMetric>(response.size());
+        for (GangliaMetric metric : response) {
+          result.add(copy(metric, startTime, endTime));
+        }
+        return result;
+      }
+
+      @Override
+      public int getWeight(List<GangliaMetric> response) {
+        int weight = 0;
+        for (GangliaMetric metric : response) {
+          weight += 1 + metric.getDatapoints().length;
+        }
+        return weight;
+      }
+
+      private boolean isSameSeries(GangliaMetric metric, GangliaMetric other) {
+        return equals(metric.getDs_name(), other.getDs_name())
+            && equals(metric.getCluster_name(), other.getCluster_name())
+            && equals(metric.getHost_name(), other.getHost_name())
+            && equals(metric.getMetric_name(), other.getMetric_name());
+      }
+
+      private boolean equals(String s1, String s2) {
+        return s1 == null ? s2 == null : s1.equals(s2);
+      }
+
+      private GangliaMetric copy(GangliaMetric metric, long startTime, long endTime) {
+        GangliaMetric copy = new GangliaMetric();
+        copy.setDs_name(metric.getDs_name());
+        copy.setCluster_name(metric.getCluster_name());
+        copy.setGraph_type(metric.getGraph_type());
+        copy.setHost_name(metric.getHost_name());
+        copy.setMetric_name(metric.getMetric_name());
+
+        // datapoints are [value, time in seconds] and are never modified
+        List<Number[]> points = new ArrayList<Number[]>();
+        for (Number[] point : metric.getDatapoints()) {
+          long time = MetricsResponseCache.toMillis(point[1].longValue());
+          if (time >= startTime && time <= endTime) {
+            points.add(point);
+          }
+        }
+        copy.setDatapoints(points.toArray(new Number[points.size()][]));
+        return copy;
+      }
     }
 
 
@@ -18,17 +18,20 @@
 package org.apache.ambari.server.controller.metrics.timeline;
 
 import org.apache.ambari.server.configuration.ComponentSSLConfiguration;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.internal.PropertyInfo;
 import org.apache.ambari.server.controller.metrics.MetricHostProvider;
 import org.apache.ambari.server.controller.metrics.MetricsPropertyProvider;
+import org.apache.ambari.server.controller.metrics.MetricsResponseCache;
+import org.apache.ambari.server.controller.metrics.ThreadPoolEnabledPropertyProvider;
 import org.apache.ambari.server.controller.spi.Request;
 import org.apache.ambari.server.controller.spi.Resource;
 import org.apache.ambari.server.controller.spi.SystemException;
 import org.apache.ambari.server.controller.spi.TemporalInfo;
 import org.apache.ambari.server.controller.utilities.PropertyHelper;
 import org.apache.ambari.server.controller.utilities.StreamProvider;
-import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.http.client.utils.URIBuilder;
 import org.codehaus.jackson.map.AnnotationIntrospector;
@@ -39,15 +42,26 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.SocketTimeoutException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import static org.apache.ambari.server.Role.HBASE_MASTER;
@@ -63,6 +77,28 @@ public abstract class AMSPropertyProvider extends MetricsPropertyProvider {
   private final static ObjectReader timelineObjectReader;
   private static final String METRIC_REGEXP_PATTERN = "\\([^)]*\\)";
   private static final int COLLECTOR_DEFAULT_PORT = 6188;
+  private static final int DEFAULT_FETCH_CONCURRENCY = 20;
+  private static final long DEFAULT_FETCH_TIMEOUT_MILLIS = 10000L;
+
+  /**
+   * The maximum number of calls to the collector made in parallel for a
+   * single request.
+   */
+  private static volatile int fetchConcurrency = DEFAULT_FETCH_CONCURRENCY;
+
+  /**
+   * The time to wait for all calls of a request; resources whose metrics did
+   * not arrive in time are returned without them.
+   */
+  private static volatile long fetchTimeout = DEFAULT_FETCH_TIMEOUT_MILLIS;
+
+  /**
+   * Calls to the collector which are in progress, by spec. Identical calls
+   * made at the same time, e.g. by dashboards polling the same metrics, wait
+   * for the call in progress instead of making another one.
+   */
+  private static final ConcurrentMap<String, FutureTask<TimelineMetrics>> inFlightFetches =
+    new ConcurrentHashMap<String, FutureTask<TimelineMetrics>>();
   protected static enum AGGREGATE_FUNCTION_IDENTIFIER {
     SUM,
     MIN,
@@ -103,6 +139,16 @@ public abstract class AMSPropertyProvider extends MetricsPropertyProvider {
       componentNamePropertyId);
   }
 
+  /**
+   * Initialize the settings of the calls to the collector.
+   *
+   * @param configuration  the configuration
+   */
+  public static void init(Configuration configuration) {
+    fetchConcurrency = Math.max(1, configuration.getTimelineMetricsFetchConcurrency());
+    fetchTimeout = configuration.getTimelineMetricsFetchTimeout();
+  }
+
   protected String getOverridenComponentName(Resource resource) {
     String componentName = getComponentName(resource);
     // Hack: To allow host queries to succeed
@@ -237,12 +283,14 @@ public abstract class AMSPropertyProvider extends MetricsPropertyProvider {
         return Collections.emptySet();
       }
 
-      for (Map.Entry<String, Set<Resource>> resourceEntry : resources.entrySet()) {
-        String hostname = resourceEntry.getKey();
-        Set<Resource> resourceSet = resourceEntry.getValue();
-
+      // Check liveliness of the collector once per cluster
+      Set<String> liveClusters = new HashSet<String>();
+      for (Set<Resource> resourceSet : resources.values()) {
         for (Resource resource : resourceSet) {
           String clusterName = (String) resource.getPropertyValue(clusterNamePropertyId);
+          if (liveClusters.contains(clusterName)) {
+            continue;
+          }
 
           // Check liveliness of host
           if (!hostProvider.isCollectorHostLive(clusterName, TIMELINE_METRICS)) {
@@ -257,74 +305,247 @@ public abstract class AMSPropertyProvider extends MetricsPropertyProvider {
               " with metrics.");
             return Collections.emptySet();
           }
+          liveClusters.add(clusterName);
+        }
+      }
 
-          TimelineMetrics timelineMetrics;
-          // Allow for multiple requests since host metrics for a
-          // hostcomponent need the HOST appId
-          if (hostComponentHostMetrics.isEmpty()) {
-            String spec = getSpec(hostname, resource);
-            timelineMetrics = getTimelineMetricsForSpec(spec);
-          } else {
-            Set<String> specs = getSpecsForHostComponentMetrics(hostname, resource);
-            timelineMetrics = new TimelineMetrics();
-            for (String spec : specs) {
-              if (!StringUtils.isEmpty(spec)) {
-                TimelineMetrics metrics = getTimelineMetricsForSpec(spec);
-                if (metrics != null) {
-                  timelineMetrics.getMetrics().addAll(metrics.getMetrics());
-                }
-              }
-            }
+      List<FetchTask> tasks = new ArrayList<FetchTask>();
+      for (Map.Entry<String, Set<Resource>> resourceEntry : resources.entrySet()) {
+        for (Resource resource : resourceEntry.getValue()) {
+          tasks.add(new FetchTask(resourceEntry.getKey(), resource));
+        }
+      }
+
+      Set<String> patterns = createPatterns(metrics.keySet());
+
+      if (tasks.size() == 1) {
+        // nothing to run in parallel
+        FetchTask task = tasks.get(0);
+        populateResource(task.resource, task.call(), patterns);
+        return Collections.emptySet();
+      }
+
+      // Fetch the metrics of the resources in parallel, at most
+      // fetchConcurrency at a time, and populate the resources on this thread
+      // as the fetches complete
+      CompletionService<TimelineMetrics> completionService =
+          new ExecutorCompletionService<TimelineMetrics>(ThreadPoolEnabledPropertyProvider.getExecutorService());
+      Map<Future<TimelineMetrics>, Resource> running = new HashMap<Future<TimelineMetrics>, Resource>();
+      Iterator<FetchTask> pending = tasks.iterator();
+
+      long deadline = System.currentTimeMillis() + fetchTimeout;
+      try {
+        while (pending.hasNext() || !running.isEmpty()) {
+          while (pending.hasNext() && running.size() < fetchConcurrency) {
+            FetchTask task = pending.next();
+            running.put(completionService.submit(task), task.resource);
           }
 
-          Set<String> patterns = createPatterns(metrics.keySet());
+          long remaining = deadline - System.currentTimeMillis();
+          Future<TimelineMetrics> future = remaining > 0 ?
+              completionService.poll(remaining, TimeUnit.MILLISECONDS) : null;
 
-          if (timelineMetrics != null) {
-            for (TimelineMetric metric : timelineMetrics.getMetrics()) {
-              if (metric.getMetricName() != null
-                  && metric.getMetricValues() != null
-                  && checkMetricName(patterns, metric.getMetricName())) {
-                // Pad zeros or nulls if needed
-                metricsPaddingMethod.applyPaddingStrategy(metric, temporalInfo);
-                populateResource(resource, metric);
-              }
+          if (future == null) {
+            LOG.warn("Timed out waiting for metrics from the METRICS_COLLECTOR, " +
+                (running.size() + countRemaining(pending)) + " of " + tasks.size() +
+                " resources are not populated.");
+            for (Future<TimelineMetrics> runningFuture : running.keySet()) {
+              runningFuture.cancel(true);
             }
+            break;
+          }
+
+          Resource resource = running.remove(future);
+          try {
+            populateResource(resource, future.get(), patterns);
+          } catch (ExecutionException e) {
+            LOG.error("Error getting timeline metrics.", e.getCause());
           }
         }
+      } catch (InterruptedException e) {
+        LOG.warn("Interrupted while waiting for metrics from the METRICS_COLLECTOR.");
+        for (Future<TimelineMetrics> runningFuture : running.keySet()) {
+          runningFuture.cancel(true);
+        }
+        Thread.currentThread().interrupt();
       }
 
       return Collections.emptySet();
     }
 
+    private int countRemaining(Iterator<FetchTask> pending) {
+      int count = 0;
+      while (pending.hasNext()) {
+        pending.next();
+        ++count;
+      }
+      return count;
+    }
+
     /**
-     * Return separate specs for : host component metrics and host component
-     * host metrics.
-     * @return @Set Urls
+     * Populate the resource with the timeline metrics which match the
+     * requested metrics.
+     *
+     * @param resource         the resource
+     * @param timelineMetrics  the timeline metrics; may be null
+     * @param patterns         the patterns of the requested metric names
      */
-    private Set<String> getSpecsForHostComponentMetrics(String hostname, Resource resource) {
+    private void populateResource(Resource resource, TimelineMetrics timelineMetrics,
+                                  Set<String> patterns) {
+      if (timelineMetrics != null) {
+        for (TimelineMetric metric : timelineMetrics.getMetrics()) {
+          if (metric.getMetricName() != null
+              && metric.getMetricValues() != null
+              && checkMetricName(patterns, metric.getMetricName())) {
+            // Pad zeros or nulls if needed
+            metricsPaddingMethod.applyPaddingStrategy(metric, temporalInfo);
+            populateResource(resource, metric);
+          }
+        }
+      }
+    }
+
+    /**
+     * Fetches the timeline metrics of a single resource. Does not modify the
+     * resource so that it can run on another thread.
+     */
+    private class FetchTask implements Callable<TimelineMetrics> {
+      private final String hostname;
+      private final Resource resource;
+
+      private FetchTask(String hostname, Resource resource) {
+        this.hostname = hostname;
+        this.resource = resource;
+      }
+
+      @Override
+      public TimelineMetrics call() throws SystemException {
+        // Allow for multiple requests since host metrics for a
+        // hostcomponent need the HOST appId
+        if (hostComponentHostMetrics.isEmpty()) {
+          String metricsParam = getSetString(processRegexps(metrics.keySet()), -1);
+          return getTimelineMetrics(hostname, resource, metricsParam, null);
+        }
+
+        Map<String, String> metricsParams = getParamsForHostComponentMetrics();
+        TimelineMetrics timelineMetrics = new TimelineMetrics();
+        for (Map.Entry<String, String> entry : metricsParams.entrySet()) {
+          TimelineMetrics metrics = getTimelineMetrics(hostname, resource,
+              entry.getKey(), entry.getValue());
+          if (metrics != null) {
+            timelineMetrics.getMetrics().addAll(metrics.getMetrics());
+          }
+        }
+        return timelineMetrics;
+      }
+    }
+
+    /**
+     * Get the timeline metrics for the given spec, joining an identical call
+     * which is already in progress.
+     *
+     * @param spec     the spec
+     * @param fetcher  the fetcher used to copy the response
+     *
+     * @return a copy of the timeline metrics; null if they could not be fetched
+     */
+    private TimelineMetrics getCoalescedTimelineMetrics(final String spec,
+                                                        TimelineMetricsFetcher fetcher) {
+      FutureTask<TimelineMetrics> task = new FutureTask<TimelineMetrics>(
+          new Callable<TimelineMetrics>() {
+            @Override
+            public TimelineMetrics call() {
+              return getTimelineMetricsForSpec(spec);
+            }
+          });
+
+      FutureTask<TimelineMetrics> inFlight = inFlightFetches.putIfAbsent(spec, task);
+      if (inFlight == null) {
+        inFlight = task;
+        try {
+          task.run();
+        } finally {
+          inFlightFetches.remove(spec, task);
+        }
+      } else {
+        LOG.debug("Waiting for the metrics request in progress, url = " + spec);
+      }
+
+      try {
+        TimelineMetrics timelineMetrics = inFlight.get();
+        // the response is shared by all callers which modify it when padding
+        return timelineMetrics == null ? null : fetcher.slice(timelineMetrics, null);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      } catch (ExecutionException e) {
+        LOG.error("Error getting timeline metrics.", e.getCause());
+        return null;
+      }
+    }
+
+    /**
+     * Get the timeline metrics for the given host, metrics and appId, from the
+     * metrics cache if possible.
+     *
+     * @param hostname      the host name
+     * @param resource      the resource
+     * @param metricsParam  the metric names
+     * @param appId         the appId; null to use the one of the component
+     *
+     * @return the timeline metrics; null if they could not be fetched
+     *
+     * @throws SystemException if unable to get the metrics
+     */
+    private TimelineMetrics getTimelineMetrics(final String hostname, final Resource resource,
+                                               final String metricsParam, final String appId)
+        throws SystemException {
+
+      // the cache key is the query without the time range
+      String key = getSpec(resource, metricsParam, hostname, appId, null);
+
+      return MetricsResponseCache.instance().getResponse(key, temporalInfo,
+          new TimelineMetricsFetcher() {
+            @Override
+            public TimelineMetrics fetch(TemporalInfo temporalInfo) {
+              String spec = getSpec(resource, metricsParam, hostname, appId, temporalInfo);
+              return getCoalescedTimelineMetrics(spec, this);
+            }
+          });
+    }
+
+    /**
+     * Return separate metric name parameters for : host component metrics and
+     * host component host metrics.
+     * @return @Map metric names to appId, null appId for the component
+     */
+    private Map<String, String> getParamsForHostComponentMetrics() {
       Set<String> nonHostComponentMetrics = new HashSet<String>(metrics.keySet());
       nonHostComponentMetrics.removeAll(hostComponentHostMetrics);
 
-      Set<String> specs = new HashSet<String>();
+      Map<String, String> params = new HashMap<String, String>();
       if (!hostComponentHostMetrics.isEmpty()) {
         String hostComponentHostMetricParams = getSetString(processRegexps(hostComponentHostMetrics), -1);
-        setQueryParams(resource, hostComponentHostMetricParams, hostname, "HOST");
-        specs.add(uriBuilder.toString());
+        params.put(hostComponentHostMetricParams, "HOST");
       }
 
       if (!nonHostComponentMetrics.isEmpty()) {
         String nonHostComponentHostMetricParams = getSetString(processRegexps(nonHostComponentMetrics), -1);
-        setQueryParams(resource, nonHostComponentHostMetricParams, hostname, null);
-        specs.add(uriBuilder.toString());
+        params.put(nonHostComponentHostMetricParams, null);
       }
 
-      return specs;
+      return params;
     }
 
-    private void setQueryParams(Resource resource, String metricsParam,
-                                String hostname, String appId) {
-      // Reuse uriBuilder
-      uriBuilder.removeQuery();
+    private String getSpec(Resource resource, String metricsParam,
+                           String hostname, String appId,
+                           TemporalInfo temporalInfo) {
+      // Fetches may run in parallel, so don't reuse uriBuilder
+      URIBuilder uriBuilder = new URIBuilder();
+      uriBuilder.setScheme(this.uriBuilder.getScheme());
+      uriBuilder.setHost(this.uriBuilder.getHost());
+      uriBuilder.setPort(this.uriBuilder.getPort());
+      uriBuilder.setPath(this.uriBuilder.getPath());
 
       if (metricsParam.length() > 0) {
         uriBuilder.setParameter("metricNames", metricsParam);
@@ -357,12 +578,6 @@ public abstract class AMSPropertyProvider extends MetricsPropertyProvider {
           uriBuilder.setParameter("endTime", String.valueOf(endTime));
         }
       }
-    }
-
-    private String getSpec(String hostname, Resource resource) {
-      String metricsParam = getSetString(processRegexps(metrics.keySet()), -1);
-
-      setQueryParams(resource, metricsParam, hostname, null);
 
       return uriBuilder.toString();
     }
@@ -448,6 +663,82 @@ public abstract class AMSPropertyProvider extends MetricsPropertyProvider {
     }
   }
 
+  /**
+   * Fetches timeline metrics for the {@link MetricsResponseCache} and splices
+   * them by timestamp.
+   */
+  abstract static class TimelineMetricsFetcher
+      implements MetricsResponseCache.ResponseFetcher<TimelineMetrics> {
+
+    @Override
+    public TimelineMetrics splice(TimelineMetrics head, TimelineMetrics tail) {
+      TimelineMetrics result = slice(head, null);
+
+      for (TimelineMetric tailMetric : tail.getMetrics()) {
+        TimelineMetric metric = null;
+        for (TimelineMetric headMetric : result.getMetrics()) {
+          if (headMetric.equalsExceptTime(tailMetric)) {
+            metric = headMetric;
+            break;
+          }
+        }
+
+        TimelineMetricSeries tailSeries = tailMetric.getMetricSeries();
+        if (metric == null) {
+          result.getMetrics().add(copy(tailMetric, Long.MIN_VALUE, Long.MAX_VALUE));
+        } else if (tailSeries != null && tailSeries.size() > 0) {
+          // the tail replaces the datapoints it overlaps with
+          TimelineMetricSeries series = metric.getMetricSeries() == null ? new TimelineMetricSeries()
+              : metric.getMetricSeries().slice(Long.MIN_VALUE, tailSeries.getFirstTimestamp() - 1);
+          series.merge(tailSeries);
+          metric.setMetricValues(series);
+        }
+      }
+      return result;
+    }
+
+    @Override
+    public TimelineMetrics slice(TimelineMetrics response, TemporalInfo temporalInfo) {
+      long startTime = Long.MIN_VALUE;
+      long endTime = Long.MAX_VALUE;
+      if (temporalInfo != null) {
+        startTime = MetricsResponseCache.toMillis(temporalInfo.getStartTime());
+        endTime = MetricsResponseCache.toMillis(temporalInfo.getEndTime());
+      }
+
+      TimelineMetrics result = new TimelineMetrics();
+      for (TimelineMetric metric : response.getMetrics()) {
+        result.getMetrics().add(copy(metric, startTime, endTime));
+      }
+      return result;
+    }
+
+    @Override
+    public int getWeight(TimelineMetrics response) {
+      int weight = 0;
+      for (TimelineMetric metric : response.getMetrics()) {
+        weight += 1 + (metric.getMetricValues() == null ? 0 : metric.getMetricValues().size());
+      }
+      return weight;
+    }
+
+    private static TimelineMetric copy(TimelineMetric metric, long startTime, long endTime) {
+      TimelineMetric copy = new TimelineMetric();
+      copy.setMetricName(metric.getMetricName());
+      copy.setAppId(metric.getAppId());
+      copy.setInstanceId(metric.getInstanceId());
+      copy.setHostName(metric.getHostName());
+      copy.setTimestamp(metric.getTimestamp());
+      copy.setStartTime(metric.getStartTime());
+      copy.setType(metric.getType());
+
+      if (metric.getMetricSeries() != null) {
+        copy.setMetricValues(metric.getMetricSeries().slice(startTime, endTime));
+      }
+      return copy;
+    }
+  }
+
   @Override
   public Set<Resource> populateResourcesWithProperties(Set<Resource> resources,
                Request request, Set<String> propertyIds) throws SystemException {
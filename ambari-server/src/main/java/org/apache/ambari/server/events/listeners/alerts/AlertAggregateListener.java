@@ -25,11 +25,11 @@ import org.apache.ambari.server.events.AlertStateChangeEvent;
 import org.apache.ambari.server.events.InitialAlertEvent;
 import org.apache.ambari.server.events.publishers.AlertEventPublisher;
 import org.apache.ambari.server.orm.dao.AlertSummaryDTO;
-import org.apache.ambari.server.orm.dao.AlertsDAO;
 import org.apache.ambari.server.state.Alert;
 import org.apache.ambari.server.state.AlertState;
 import org.apache.ambari.server.state.alert.AggregateDefinitionMapping;
 import org.apache.ambari.server.state.alert.AggregateSource;
+import org.apache.ambari.server.state.alert.AlertCurrentStore;
 import org.apache.ambari.server.state.alert.AlertDefinition;
 import org.apache.ambari.server.state.alert.Reporting;
 import org.apache.ambari.server.state.alert.SourceType;
@@ -45,14 +45,19 @@ import com.google.inject.Singleton;
  * <p/>
  * This listener is only needed on state changes as aggregation of alerts is
  * only performed against the state of an alert and not the values that
- * contributed to that state.
+ * contributed to that state. The number of alerts by state is read from the
+ * counts kept by the {@link AlertCurrentStore} instead of being queried on
+ * every event.
  */
 @Singleton
 @EagerSingleton
 public class AlertAggregateListener {
 
+  /**
+   * Used for the number of current alerts of the aggregated definition.
+   */
   @Inject
-  private AlertsDAO m_alertsDao = null;
+  private AlertCurrentStore m_currentStore = null;
 
   /**
    * The event publisher used to receive incoming events and publish new events
@@ -95,13 +100,13 @@ public class AlertAggregateListener {
     AlertDefinition aggregateDefinition = m_aggregateMapping.getAggregateDefinition(
         clusterId, alert.getName());
 
-    if (null == aggregateDefinition || null == m_alertsDao) {
+    if (null == aggregateDefinition || null == m_currentStore) {
       return;
     }
 
     AggregateSource aggregateSource = (AggregateSource) aggregateDefinition.getSource();
 
-    AlertSummaryDTO summary = m_alertsDao.findAggregateCounts(clusterId,
+    AlertSummaryDTO summary = m_currentStore.getSummary(clusterId,
         aggregateSource.getAlertName());
 
     // OK should be based off of true OKs and those in maintenance mode
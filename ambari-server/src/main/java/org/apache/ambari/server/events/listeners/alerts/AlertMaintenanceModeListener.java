@@ -31,6 +31,7 @@ import org.apache.ambari.server.state.Host;
 import org.apache.ambari.server.state.MaintenanceState;
 import org.apache.ambari.server.state.Service;
 import org.apache.ambari.server.state.ServiceComponentHost;
+import org.apache.ambari.server.state.alert.AlertCurrentStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,6 +58,12 @@ public class AlertMaintenanceModeListener {
   @Inject
   private AlertsDAO m_alertsDao = null;
 
+  /**
+   * Counts the current alerts in maintenance mode.
+   */
+  @Inject
+  private AlertCurrentStore m_currentStore = null;
+
   /**
    * Constructor.
    *
@@ -160,6 +167,7 @@ public class AlertMaintenanceModeListener {
     }
 
     currentAlert.setMaintenanceState(maintenanceState);
-    m_alertsDao.merge(currentAlert);
+    currentAlert = m_alertsDao.merge(currentAlert);
+    m_currentStore.updateMaintenanceState(currentAlert);
   }
 }
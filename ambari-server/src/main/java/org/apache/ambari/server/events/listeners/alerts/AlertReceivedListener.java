@@ -41,6 +41,8 @@ import org.apache.ambari.server.state.Host;
 import org.apache.ambari.server.state.MaintenanceState;
 import org.apache.ambari.server.state.Service;
 import org.apache.ambari.server.state.ServiceComponentHost;
+import org.apache.ambari.server.state.alert.AlertCurrentStore;
+import org.apache.ambari.server.state.alert.AlertCurrentStore.CurrentAlert;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -70,6 +72,13 @@ public class AlertReceivedListener {
   @Inject
   private AlertDefinitionDAO m_definitionDao;
 
+  /**
+   * The ID and state of the current alerts, so that alerts with an unchanged
+   * state are not looked up.
+   */
+  @Inject
+  private AlertCurrentStore m_currentStore;
+
   /**
    * Used for looking up whether an alert has a valid service/component/host
    */
@@ -94,6 +103,8 @@ public class AlertReceivedListener {
 
   /**
    * Adds an alert. Checks for a new state before creating a new history record.
+   * If the state did not change, only the latest timestamp and text of the
+   * current alert are updated, which may be written behind.
    *
    * @param event
    *          the event to handle.
@@ -135,9 +146,24 @@ public class AlertReceivedListener {
       return;
     }
 
+    boolean noHost = StringUtils.isBlank(alert.getHostName()) || definition.isHostIgnored();
+
+    CurrentAlert currentAlert = m_currentStore.get(clusterId,
+        definition.getDefinitionId(), noHost ? null : alert.getHostName());
+
+    if (null != currentAlert) {
+      if (alert.getState() == currentAlert.getState()) {
+        m_currentStore.updateLatest(currentAlert, alert.getTimestamp(), alert.getText());
+        return;
+      }
+
+      // the new state is written with the current alert right away
+      m_currentStore.discardPending(currentAlert.getAlertId());
+    }
+
     AlertCurrentEntity current = null;
 
-    if (StringUtils.isBlank(alert.getHostName()) || definition.isHostIgnored()) {
+    if (noHost) {
       current = m_alertsDao.findCurrentByNameNoHost(clusterId, alert.getName());
     } else {
       current = m_alertsDao.findCurrentByHostAndName(clusterId, alert.getHostName(),
@@ -153,6 +179,7 @@ public class AlertReceivedListener {
       current.setLatestTimestamp(alert.getTimestamp());
       current.setOriginalTimestamp(Long.valueOf(alert.getTimestamp()));
       m_alertsDao.create(current);
+      m_currentStore.put(current);
 
       // broadcast the initial alert being received
       InitialAlertEvent initialAlertEvent = new InitialAlertEvent(
@@ -160,9 +187,9 @@ public class AlertReceivedListener {
 
       m_alertEventPublisher.publish(initialAlertEvent);
     } else if (alert.getState() == current.getAlertHistory().getAlertState()) {
-      current.setLatestTimestamp(alert.getTimestamp());
-      current.setLatestText(alert.getText());
-      current = m_alertsDao.merge(current);
+      // not known to the store yet
+      currentAlert = m_currentStore.put(current);
+      m_currentStore.updateLatest(currentAlert, alert.getTimestamp(), alert.getText());
     } else {
       if (LOG.isDebugEnabled()) {
         LOG.debug(
@@ -189,6 +216,7 @@ public class AlertReceivedListener {
       current.setLatestText(alert.getText());
 
       current = m_alertsDao.merge(current);
+      m_currentStore.put(current);
 
       if (LOG.isDebugEnabled()) {
         LOG.debug(
@@ -17,6 +17,7 @@
  */
 package org.apache.ambari.server.events.listeners.alerts;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
@@ -119,6 +120,7 @@ public class AlertStateChangedListener {
     }
 
     List<AlertGroupEntity> groups = m_alertsDispatchDao.findGroupsByDefinition(definition);
+    List<AlertNoticeEntity> notices = new ArrayList<AlertNoticeEntity>();
 
     // for each group, determine if there are any targets that need to receive
     // a notification about the alert state change event
@@ -139,9 +141,14 @@ public class AlertStateChangedListener {
         notice.setAlertHistory(event.getNewHistoricalEntry());
         notice.setNotifyState(NotificationState.PENDING);
 
-        m_alertsDispatchDao.create(notice);
+        notices.add(notice);
       }
     }
+
+    // write the notices of all targets together
+    if (!notices.isEmpty()) {
+      m_alertsDispatchDao.createNotices(notices);
+    }
   }
 
   /**
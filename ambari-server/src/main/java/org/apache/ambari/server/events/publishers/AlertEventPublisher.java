@@ -17,47 +17,96 @@
  */
 package org.apache.ambari.server.events.publishers;
 
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Arrays;
 
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.events.AlertEvent;
+import org.apache.ambari.server.events.AlertReceivedEvent;
+import org.apache.ambari.server.state.Alert;
 
-import com.google.common.eventbus.AsyncEventBus;
+import com.google.common.base.Function;
+import com.google.common.base.Predicates;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
 /**
  * The {@link AlertEventPublisher} is used to wrap a customized instance of an
- * {@link AsyncEventBus} that is only used for alerts. In general, Ambari should
+ * {@link EventBus} that is only used for alerts. In general, Ambari should
  * have its own application-wide event bus for application events (session
  * information, state changes, etc), but since alerts can contain many events
  * being published concurrently, it makes sense to encapsulate a specific alert
  * bus in this publisher.
+ * <p/>
+ * Alert events are dispatched on a {@link PartitionedEventBus} by cluster,
+ * alert name and host, so that the events of one alert are handled in order
+ * while the alerts of different hosts are handled in parallel.
  */
 @Singleton
 public final class AlertEventPublisher {
 
+  /**
+   * Gets the cluster, alert name and host of an {@link AlertEvent}.
+   */
+  private static final Function<Object, Object> ALERT_KEY = new Function<Object, Object>() {
+    @Override
+    public Object apply(Object event) {
+      if (!(event instanceof AlertEvent)) {
+        return null;
+      }
+
+      AlertEvent alertEvent = (AlertEvent) event;
+      Alert alert = alertEvent.getAlert();
+      if (null == alert) {
+        return alertEvent.getClusterId();
+      }
+
+      return Arrays.asList(alertEvent.getClusterId(), alert.getName(),
+          alert.getHostName());
+    }
+  };
+
   /**
    * A multi-threaded event bus that can handle dispatching {@link AlertEvent}s.
    */
   private final EventBus m_eventBus;
 
   /**
-   * Constructor.
+   * The same bus as {@link #m_eventBus}, for its metrics.
+   */
+  private final PartitionedEventBus m_partitionedBus;
+
+  /**
+   * Constructor, with a lane per processor.
    */
   public AlertEventPublisher() {
-    // create a fixed executor that is unbounded for now and will run rejected
-    // requests in the calling thread to prevent loss of alert handling
-    ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 0L,
-        TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
-        new AlertEventBusThreadFactory(),
-        new ThreadPoolExecutor.CallerRunsPolicy());
-
-    m_eventBus = new AsyncEventBus(executor);
+    this(Runtime.getRuntime().availableProcessors(), 10000, 1000L);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param configuration
+   *          the lanes, queue size and offer timeout of the bus.
+   */
+  @Inject
+  public AlertEventPublisher(Configuration configuration) {
+    this(configuration.getAlertEventPublisherLanes(),
+        configuration.getAlertEventPublisherQueueSize(),
+        configuration.getAlertEventPublisherOfferTimeout());
+  }
+
+  private AlertEventPublisher(int lanes, int queueSize, long offerTimeout) {
+    // agents send their alerts again on the next run, so received alerts are
+    // dropped when a lane stays full past the offer timeout; the events
+    // derived from them are not sent again and are never dropped
+    m_partitionedBus = new PartitionedEventBus("alert-event-bus",
+        Math.max(2, lanes), queueSize, offerTimeout, ALERT_KEY,
+        Predicates.instanceOf(AlertReceivedEvent.class),
+        Thread.NORM_PRIORITY - 1);
+
+    m_eventBus = m_partitionedBus;
   }
 
   /**
@@ -82,27 +131,12 @@ public final class AlertEventPublisher {
   }
 
   /**
-   * A custom {@link ThreadFactory} for the threads that will handle published
-   * {@link AlertEvent}. Threads created will have slightly reduced priority
-   * since {@link AlertEvent} instances are not critical to the system.
+   * Gets the bus dispatching the events, for its queue depth and latency
+   * metrics.
+   *
+   * @return the bus (never {@code null}).
    */
-  private static final class AlertEventBusThreadFactory implements
-      ThreadFactory {
-
-    private static final AtomicInteger s_threadIdPool = new AtomicInteger(1);
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public Thread newThread(Runnable r) {
-      Thread thread = new Thread(r, "alert-event-bus-"
-          + s_threadIdPool.getAndIncrement());
-
-      thread.setDaemon(false);
-      thread.setPriority(Thread.NORM_PRIORITY - 1);
-
-      return thread;
-    }
+  public PartitionedEventBus getPartitionedEventBus() {
+    return m_partitionedBus;
   }
 }
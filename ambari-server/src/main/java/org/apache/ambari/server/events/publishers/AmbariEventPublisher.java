@@ -17,11 +17,10 @@
  */
 package org.apache.ambari.server.events.publishers;
 
-import java.util.concurrent.Executors;
-
 import org.apache.ambari.server.events.AmbariEvent;
 
-import com.google.common.eventbus.AsyncEventBus;
+import com.google.common.base.Functions;
+import com.google.common.base.Predicates;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.Singleton;
@@ -29,22 +28,38 @@ import com.google.inject.Singleton;
 /**
  * The {@link AmbariEventPublisher} is used to publish instances of
  * {@link AmbariEvent} to any {@link Subscribe} methods interested. It uses a
- * single-threaded {@link AsyncEventBus}.
+ * {@link PartitionedEventBus} with a single lane, so that events are handled
+ * in the order they were published.
  */
 @Singleton
 public class AmbariEventPublisher {
 
+  /**
+   * The number of events waiting to be handled before publishers wait.
+   */
+  private static final int QUEUE_SIZE = 100000;
+
   /**
    * A single threaded event bus for processing Ambari events in serial.
    */
   private final EventBus m_eventBus;
 
+  /**
+   * The same bus as {@link #m_eventBus}, for its metrics.
+   */
+  private final PartitionedEventBus m_partitionedBus;
+
   /**
    * Constructor.
    */
   public AmbariEventPublisher() {
-    m_eventBus = new AsyncEventBus("ambari-event-bus",
-        Executors.newSingleThreadExecutor());
+    // Ambari events are not sent again, so publishers wait for room instead
+    // of dropping them
+    m_partitionedBus = new PartitionedEventBus("ambari-event-bus", 1,
+        QUEUE_SIZE, -1L, Functions.<Object> constant(null),
+        Predicates.<Object> alwaysFalse(), Thread.NORM_PRIORITY);
+
+    m_eventBus = m_partitionedBus;
   }
 
   /**
@@ -67,4 +82,14 @@ public class AmbariEventPublisher {
   public void register(Object object) {
     m_eventBus.register(object);
   }
+
+  /**
+   * Gets the bus dispatching the events, for its queue depth and latency
+   * metrics.
+   *
+   * @return the bus (never {@code null}).
+   */
+  public PartitionedEventBus getPartitionedEventBus() {
+    return m_partitionedBus;
+  }
 }
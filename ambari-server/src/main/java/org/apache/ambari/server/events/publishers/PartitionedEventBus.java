@@ -0,0 +1,414 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.events.publishers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ambari.server.controller.ServerMetricsRegistry.MetricsSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * The {@link PartitionedEventBus} is an {@link EventBus} which dispatches
+ * events on a fixed number of lanes. Each lane has its own thread and queue,
+ * and every event is put on the lane picked by the hash of its key, so that
+ * events with the same key are handled one at a time in the order they were
+ * posted while events with different keys are handled in parallel.
+ * <p/>
+ * Events are not handled by the thread posting them. When a lane already
+ * holds as many events as its queue size, the posting thread waits for room:
+ * <ul>
+ * <li>events which may be dropped, because they are posted again anyway, are
+ * dropped if there is still no room after the offer timeout</li>
+ * <li>all other events are never dropped; other threads wait until there is
+ * room, while the lane threads of this bus, which could wait on each other,
+ * put them on the lane over its queue size</li>
+ * </ul>
+ */
+public class PartitionedEventBus extends EventBus implements MetricsSource {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(PartitionedEventBus.class);
+
+  /**
+   * Only every this many dropped events are logged.
+   */
+  private static final long DROPPED_LOG_INTERVAL = 1000;
+
+  private final String m_identifier;
+  private final Lane[] m_lanes;
+  private final Function<Object, Object> m_keyFunction;
+  private final Predicate<Object> m_droppable;
+  private final long m_offerTimeout;
+
+  private final AtomicLong m_droppedCount = new AtomicLong();
+  private final AtomicLong m_overflowCount = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param identifier
+   *          the name of the bus, used for the lane threads.
+   * @param laneCount
+   *          the number of lanes, at least 1.
+   * @param queueSize
+   *          the number of events a lane holds before posting threads wait.
+   * @param offerTimeout
+   *          the milliseconds to wait for room on a full lane before dropping
+   *          an event which may be dropped, or a negative value to wait until
+   *          there is room.
+   * @param keyFunction
+   *          gets the key of an event; events with a {@code null} key are put
+   *          on the first lane.
+   * @param droppable
+   *          whether an event may be dropped when its lane stays full.
+   * @param threadPriority
+   *          the priority of the lane threads.
+   */
+  public PartitionedEventBus(String identifier, int laneCount, int queueSize,
+      long offerTimeout, Function<Object, Object> keyFunction,
+      Predicate<Object> droppable, int threadPriority) {
+    super(identifier);
+
+    m_identifier = identifier;
+    m_keyFunction = keyFunction;
+    m_droppable = droppable;
+    m_offerTimeout = offerTimeout;
+    m_lanes = new Lane[Math.max(1, laneCount)];
+
+    for (int i = 0; i < m_lanes.length; i++) {
+      m_lanes[i] = new Lane(identifier + "-" + (i + 1), Math.max(1, queueSize),
+          threadPriority);
+    }
+  }
+
+  /**
+   * Puts the event on its lane to be dispatched to the {@link Subscribe}
+   * methods of the registered listeners.
+   *
+   * @param event
+   *          the event to post.
+   */
+  @Override
+  public void post(Object event) {
+    Lane lane = m_lanes[getLane(event)];
+    lane.start();
+
+    boolean droppable = m_droppable.apply(event);
+    boolean permit;
+
+    if (isLaneThread()) {
+      // lanes waiting on each other would never make room
+      permit = lane.m_permits.tryAcquire();
+    } else {
+      try {
+        if (droppable && m_offerTimeout >= 0) {
+          permit = lane.m_permits.tryAcquire(m_offerTimeout, TimeUnit.MILLISECONDS);
+        } else {
+          lane.m_permits.acquire();
+          permit = true;
+        }
+      } catch (InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+        permit = false;
+      }
+    }
+
+    if (!permit) {
+      if (droppable) {
+        long dropped = m_droppedCount.incrementAndGet();
+        if (dropped % DROPPED_LOG_INTERVAL == 1) {
+          LOG.warn("The {} queues are full, {} events have been dropped so far including {}",
+              m_identifier, dropped, event);
+        }
+        return;
+      }
+
+      m_overflowCount.incrementAndGet();
+    }
+
+    lane.m_queue.add(new Envelope(event, permit));
+  }
+
+  /**
+   * Gets the lane of an event.
+   *
+   * @param event
+   *          the event.
+   * @return the index of the lane.
+   */
+  int getLane(Object event) {
+    Object key = m_keyFunction.apply(event);
+    if (null == key) {
+      return 0;
+    }
+
+    return (key.hashCode() & Integer.MAX_VALUE) % m_lanes.length;
+  }
+
+  /**
+   * @return whether the calling thread is a lane of this bus
+   */
+  private boolean isLaneThread() {
+    Thread thread = Thread.currentThread();
+    for (Lane lane : m_lanes) {
+      if (thread == lane.m_thread) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Dispatches an event on the calling lane thread. Events posted while the
+   * lane is dispatching are handled once the current event is.
+   */
+  private void dispatch(Object event) {
+    super.post(event);
+  }
+
+  /**
+   * @return the number of lanes
+   */
+  public int getLaneCount() {
+    return m_lanes.length;
+  }
+
+  /**
+   * @param lane
+   *          the index of the lane
+   * @return the number of events waiting on the lane
+   */
+  public int getQueueDepth(int lane) {
+    return m_lanes[lane].m_queue.size();
+  }
+
+  /**
+   * @return the number of events waiting on all lanes
+   */
+  public int getQueueDepth() {
+    int depth = 0;
+    for (Lane lane : m_lanes) {
+      depth += lane.m_queue.size();
+    }
+    return depth;
+  }
+
+  /**
+   * @param lane
+   *          the index of the lane
+   * @return the number of events dispatched by the lane
+   */
+  public long getDispatchedCount(int lane) {
+    return m_lanes[lane].m_dispatchedCount.get();
+  }
+
+  /**
+   * @return the number of events dispatched by all lanes
+   */
+  public long getDispatchedCount() {
+    long count = 0;
+    for (Lane lane : m_lanes) {
+      count += lane.m_dispatchedCount.get();
+    }
+    return count;
+  }
+
+  /**
+   * @return the number of events dropped because their lane was full
+   */
+  public long getDroppedCount() {
+    return m_droppedCount.get();
+  }
+
+  /**
+   * @return the number of events which could not be dropped and were put on
+   *         a full lane by a lane thread or an interrupted thread
+   */
+  public long getOverflowCount() {
+    return m_overflowCount.get();
+  }
+
+  /**
+   * @return the name to register the metrics of the bus under
+   */
+  public String getMetricsName() {
+    return m_identifier.replace('-', '_');
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Map<String, Number> getMetrics() {
+    Map<String, Number> metrics = new HashMap<String, Number>();
+    metrics.put("lanes", getLaneCount());
+    metrics.put("queue_depth", getQueueDepth());
+    metrics.put("dispatched", getDispatchedCount());
+    metrics.put("dropped", getDroppedCount());
+    metrics.put("overflow", getOverflowCount());
+
+    for (int lane = 0; lane < m_lanes.length; lane++) {
+      String prefix = "lane_" + (lane + 1) + "_";
+      metrics.put(prefix + "queue_depth", getQueueDepth(lane));
+      metrics.put(prefix + "dispatched", getDispatchedCount(lane));
+      metrics.put(prefix + "avg_queue_latency", getAverageQueueLatency(lane));
+      metrics.put(prefix + "max_queue_latency", getMaxQueueLatency(lane));
+      metrics.put(prefix + "avg_dispatch_latency", getAverageDispatchLatency(lane));
+    }
+
+    return metrics;
+  }
+
+  /**
+   * @param lane
+   *          the index of the lane
+   * @return the average milliseconds events waited on the lane before being
+   *         dispatched
+   */
+  public double getAverageQueueLatency(int lane) {
+    return m_lanes[lane].getAverage(m_lanes[lane].m_queueNanos);
+  }
+
+  /**
+   * @param lane
+   *          the index of the lane
+   * @return the longest milliseconds an event waited on the lane before being
+   *         dispatched
+   */
+  public long getMaxQueueLatency(int lane) {
+    return TimeUnit.NANOSECONDS.toMillis(m_lanes[lane].m_maxQueueNanos);
+  }
+
+  /**
+   * @param lane
+   *          the index of the lane
+   * @return the average milliseconds the listeners took to handle an event
+   *         of the lane
+   */
+  public double getAverageDispatchLatency(int lane) {
+    return m_lanes[lane].getAverage(m_lanes[lane].m_dispatchNanos);
+  }
+
+  /**
+   * An event, the time it was posted and whether it holds room on its lane.
+   */
+  private static final class Envelope {
+    private final Object event;
+    private final boolean permit;
+    private final long postedNanos;
+
+    private Envelope(Object event, boolean permit) {
+      this.event = event;
+      this.permit = permit;
+      postedNanos = System.nanoTime();
+    }
+  }
+
+  /**
+   * A queue of events and the thread dispatching them in order.
+   */
+  private final class Lane implements Runnable {
+    private final BlockingQueue<Envelope> m_queue = new LinkedBlockingQueue<Envelope>();
+    private final Semaphore m_permits;
+    private final Thread m_thread;
+    private final AtomicBoolean m_started = new AtomicBoolean();
+
+    private final AtomicLong m_dispatchedCount = new AtomicLong();
+    private final AtomicLong m_queueNanos = new AtomicLong();
+    private final AtomicLong m_dispatchNanos = new AtomicLong();
+    private volatile long m_maxQueueNanos = 0L;
+
+    private Lane(String name, int queueSize, int threadPriority) {
+      m_permits = new Semaphore(queueSize);
+
+      m_thread = new Thread(this, name);
+      m_thread.setDaemon(false);
+      m_thread.setPriority(threadPriority);
+    }
+
+    /**
+     * Starts the thread of the lane on its first event.
+     */
+    private void start() {
+      if (!m_started.get() && m_started.compareAndSet(false, true)) {
+        m_thread.start();
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+      while (true) {
+        Envelope envelope;
+        try {
+          envelope = m_queue.take();
+        } catch (InterruptedException interruptedException) {
+          LOG.info("The {} lane {} was interrupted with {} events waiting",
+              m_identifier, Thread.currentThread().getName(), m_queue.size());
+          return;
+        }
+
+        if (envelope.permit) {
+          m_permits.release();
+        }
+
+        long start = System.nanoTime();
+        long queueNanos = start - envelope.postedNanos;
+        m_queueNanos.addAndGet(queueNanos);
+        if (queueNanos > m_maxQueueNanos) {
+          m_maxQueueNanos = queueNanos;
+        }
+
+        try {
+          dispatch(envelope.event);
+        } catch (RuntimeException exception) {
+          LOG.error("Unable to dispatch {}", envelope.event, exception);
+        }
+
+        m_dispatchNanos.addAndGet(System.nanoTime() - start);
+        m_dispatchedCount.incrementAndGet();
+      }
+    }
+
+    private double getAverage(AtomicLong nanos) {
+      long count = m_dispatchedCount.get();
+      if (0 == count) {
+        return 0;
+      }
+
+      return (double) TimeUnit.NANOSECONDS.toMicros(nanos.get()) / 1000 / count;
+    }
+  }
+}
@@ -33,6 +33,8 @@ import javax.persistence.EntityTransaction;
 import javax.persistence.PersistenceException;
 import java.lang.reflect.Method;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class AmbariJpaLocalTxnInterceptor implements MethodInterceptor {
 
@@ -43,6 +45,25 @@ public class AmbariJpaLocalTxnInterceptor implements MethodInterceptor {
   private final UnitOfWork unitOfWork = null;
   // Tracks if the unit of work was begun implicitly by this transaction.
   private final ThreadLocal<Boolean> didWeStartWork = new ThreadLocal<Boolean>();
+  // Callbacks to run once the outermost transaction of the thread commits,
+  // null outside of a transaction.
+  private static final ThreadLocal<List<Runnable>> afterCommitCallbacks = new ThreadLocal<List<Runnable>>();
+
+  /**
+   * Runs the callback once the transaction of the calling thread commits, or
+   * right away if there is none. The callback is not run if the transaction
+   * is rolled back.
+   *
+   * @param callback the callback
+   */
+  public static void runAfterCommit(Runnable callback) {
+    List<Runnable> callbacks = afterCommitCallbacks.get();
+    if (null == callbacks) {
+      callback.run();
+    } else {
+      callbacks.add(callback);
+    }
+  }
 
   public Object invoke(MethodInvocation methodInvocation) throws Throwable {
 
@@ -62,15 +83,20 @@ public class AmbariJpaLocalTxnInterceptor implements MethodInterceptor {
 
     final EntityTransaction txn = em.getTransaction();
     txn.begin();
+    List<Runnable> callbacks = new ArrayList<Runnable>();
+    afterCommitCallbacks.set(callbacks);
 
     Object result;
     try {
       result = methodInvocation.proceed();
 
     } catch (Exception e) {
+      afterCommitCallbacks.remove();
+
       //commit transaction only if rollback didn't occur
       if (rollbackIfNecessary(transactional, e, txn)) {
         txn.commit();
+        runCallbacks(callbacks);
       }
 
       detailedLogForPersistenceError(e);
@@ -78,6 +104,8 @@ public class AmbariJpaLocalTxnInterceptor implements MethodInterceptor {
       //propagate whatever exception is thrown anyway
       throw e;
     } finally {
+      afterCommitCallbacks.remove();
+
       // Close the em if necessary (guarded so this code doesn't run unless catch fired).
       if (null != didWeStartWork.get() && !txn.isActive()) {
         didWeStartWork.remove();
@@ -100,10 +128,22 @@ public class AmbariJpaLocalTxnInterceptor implements MethodInterceptor {
       }
     }
 
+    runCallbacks(callbacks);
+
     //or return result
     return result;
   }
 
+  private void runCallbacks(List<Runnable> callbacks) {
+    for (Runnable callback : callbacks) {
+      try {
+        callback.run();
+      } catch (RuntimeException e) {
+        LOG.error("Unable to run a callback after commit", e);
+      }
+    }
+  }
+
   private void detailedLogForPersistenceError(Exception e) {
     if (e instanceof PersistenceException) {
       PersistenceException rbe = (PersistenceException) e;
@@ -18,6 +18,8 @@
 package org.apache.ambari.server.orm.dao;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.locks.Lock;
@@ -59,6 +61,12 @@ import com.google.inject.persist.Transactional;
  */
 @Singleton
 public class AlertDispatchDAO {
+  /**
+   * The maximum number of UUIDs in the {@code IN} clause of a bulk notice
+   * update.
+   */
+  private static final int NOTICE_UPDATE_CHUNK_SIZE = 1000;
+
   /**
    * JPA entity manager
    */
@@ -602,6 +610,61 @@ public class AlertDispatchDAO {
     entityManagerProvider.get().persist(alertNotice);
   }
 
+  /**
+   * Persists new notifications in a single transaction so that they are
+   * written together in a JDBC batch.
+   *
+   * @param alertNotices
+   *          the notifications to persist (not {@code null}).
+   */
+  @Transactional
+  public void createNotices(List<AlertNoticeEntity> alertNotices) {
+    if (null == alertNotices) {
+      return;
+    }
+
+    for (AlertNoticeEntity alertNotice : alertNotices) {
+      create(alertNotice);
+    }
+  }
+
+  /**
+   * Sets the state of the notifications with the specified UUIDs without
+   * reading them. The UUIDs are updated in chunks of
+   * {@value #NOTICE_UPDATE_CHUNK_SIZE} since some databases limit the size of
+   * an {@code IN} clause.
+   *
+   * @param uuids
+   *          the UUIDs of the notifications to update (not {@code null}).
+   * @param notifyState
+   *          the new state of the notifications (not {@code null}).
+   * @return the number of notifications updated.
+   */
+  @Transactional
+  public int updateNoticeStates(Collection<String> uuids,
+      NotificationState notifyState) {
+    if (uuids.isEmpty()) {
+      return 0;
+    }
+
+    List<String> uuidList = new ArrayList<String>(uuids);
+    int updated = 0;
+
+    for (int i = 0; i < uuidList.size(); i += NOTICE_UPDATE_CHUNK_SIZE) {
+      List<String> chunk = uuidList.subList(i,
+          Math.min(i + NOTICE_UPDATE_CHUNK_SIZE, uuidList.size()));
+
+      TypedQuery<AlertNoticeEntity> query = entityManagerProvider.get().createNamedQuery(
+          "AlertNoticeEntity.updateNotifyStateByUuids", AlertNoticeEntity.class);
+
+      query.setParameter("notifyState", notifyState);
+      query.setParameter("uuids", chunk);
+      updated += query.executeUpdate();
+    }
+
+    return updated;
+  }
+
   /**
    * Refresh the state of the notification from the database.
    *
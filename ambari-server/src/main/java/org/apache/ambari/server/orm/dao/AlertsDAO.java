@@ -20,7 +20,9 @@ package org.apache.ambari.server.orm.dao;
 import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
@@ -41,6 +43,7 @@ import org.apache.ambari.server.orm.entities.AlertHistoryEntity;
 import org.apache.ambari.server.orm.entities.AlertHistoryEntity_;
 import org.apache.ambari.server.state.AlertState;
 import org.apache.ambari.server.state.MaintenanceState;
+import org.apache.ambari.server.state.alert.AlertCurrentStore;
 import org.apache.ambari.server.state.alert.Scope;
 import org.eclipse.persistence.config.HintValues;
 import org.eclipse.persistence.config.QueryHints;
@@ -68,14 +71,26 @@ public class AlertsDAO {
       + "FROM AlertCurrentEntity alert JOIN alert.alertHistory history "
       + "WHERE history.clusterId = :clusterId AND history.hostName IS NOT NULL GROUP BY history.hostName";
 
-  private static final String ALERT_COUNT_SQL_TEMPLATE = "SELECT NEW %s("
-      + "SUM(CASE WHEN history.alertState = :okState AND alert.maintenanceState = :maintenanceStateOff THEN 1 ELSE 0 END), "
+  private static final String ALERT_COUNT_COLUMNS =
+      "SUM(CASE WHEN history.alertState = :okState AND alert.maintenanceState = :maintenanceStateOff THEN 1 ELSE 0 END), "
       + "SUM(CASE WHEN history.alertState = :warningState AND alert.maintenanceState = :maintenanceStateOff THEN 1 ELSE 0 END), "
       + "SUM(CASE WHEN history.alertState = :criticalState AND alert.maintenanceState = :maintenanceStateOff THEN 1 ELSE 0 END), "
       + "SUM(CASE WHEN history.alertState = :unknownState AND alert.maintenanceState = :maintenanceStateOff THEN 1 ELSE 0 END), "
-      + "SUM(CASE WHEN alert.maintenanceState != :maintenanceStateOff THEN 1 ELSE 0 END)) "
+      + "SUM(CASE WHEN alert.maintenanceState != :maintenanceStateOff THEN 1 ELSE 0 END)";
+
+  private static final String ALERT_COUNT_SQL_TEMPLATE = "SELECT NEW %s("
+      + ALERT_COUNT_COLUMNS + ") "
       + "FROM AlertCurrentEntity alert JOIN alert.alertHistory history WHERE history.clusterId = :clusterId";
 
+  /**
+   * JPQL for getting the number of current alerts in various states of every
+   * definition, by cluster and definition name.
+   */
+  private static final String ALERT_COUNT_BY_DEFINITION_SQL = "SELECT "
+      + "history.clusterId, history.alertDefinition.definitionName, " + ALERT_COUNT_COLUMNS + " "
+      + "FROM AlertCurrentEntity alert JOIN alert.alertHistory history "
+      + "GROUP BY history.clusterId, history.alertDefinition.definitionName";
+
   /**
    * JPA entity manager
    */
@@ -88,6 +103,13 @@ public class AlertsDAO {
   @Inject
   private DaoUtils daoUtils;
 
+  /**
+   * The in-memory index of current alerts, which removed alerts are dropped
+   * from.
+   */
+  @Inject
+  private Provider<AlertCurrentStore> currentStoreProvider;
+
   /**
    * Gets an alert with the specified ID.
    *
@@ -539,6 +561,9 @@ public class AlertsDAO {
     historyQuery.executeUpdate();
 
     entityManager.clear();
+    if (null != currentStoreProvider) {
+      currentStoreProvider.get().removeDefinition(definitionId);
+    }
   }
 
   /**
@@ -549,11 +574,19 @@ public class AlertsDAO {
    */
   @Transactional
   public int removeCurrentByHistoryId(long historyId) {
+    TypedQuery<Long> idQuery = entityManagerProvider.get().createNamedQuery(
+        "AlertCurrentEntity.findIdByHistoryId", Long.class);
+
+    idQuery.setParameter("historyId", historyId);
+    List<Long> alertIds = daoUtils.selectList(idQuery);
+
     TypedQuery<AlertCurrentEntity> query = entityManagerProvider.get().createNamedQuery(
         "AlertCurrentEntity.removeByHistoryId", AlertCurrentEntity.class);
 
     query.setParameter("historyId", historyId);
-    return query.executeUpdate();
+    int removed = query.executeUpdate();
+    removeFromCurrentStore(alertIds);
+    return removed;
   }
 
   /**
@@ -563,10 +596,17 @@ public class AlertsDAO {
    */
   @Transactional
   public int removeCurrentDisabledAlerts() {
+    TypedQuery<Long> idQuery = entityManagerProvider.get().createNamedQuery(
+        "AlertCurrentEntity.findIdsDisabled", Long.class);
+
+    List<Long> alertIds = daoUtils.selectList(idQuery);
+
     TypedQuery<AlertCurrentEntity> query = entityManagerProvider.get().createNamedQuery(
         "AlertCurrentEntity.removeDisabled", AlertCurrentEntity.class);
 
-    return query.executeUpdate();
+    int removed = query.executeUpdate();
+    removeFromCurrentStore(alertIds);
+    return removed;
   }
 
   /**
@@ -580,12 +620,19 @@ public class AlertsDAO {
    */
   @Transactional
   public int removeCurrentByService(String serviceName) {
+    TypedQuery<Long> idQuery = entityManagerProvider.get().createNamedQuery(
+        "AlertCurrentEntity.findIdsByServiceName", Long.class);
+
+    idQuery.setParameter("serviceName", serviceName);
+    List<Long> alertIds = daoUtils.selectList(idQuery);
 
     TypedQuery<AlertCurrentEntity> query = entityManagerProvider.get().createNamedQuery(
         "AlertCurrentEntity.removeByService", AlertCurrentEntity.class);
 
     query.setParameter("serviceName", serviceName);
-    return query.executeUpdate();
+    int removed = query.executeUpdate();
+    removeFromCurrentStore(alertIds);
+    return removed;
   }
 
   /**
@@ -604,7 +651,11 @@ public class AlertsDAO {
         "AlertCurrentEntity.removeByHost", AlertCurrentEntity.class);
 
     query.setParameter("hostName", hostName);
-    return query.executeUpdate();
+    int removed = query.executeUpdate();
+    if (null != currentStoreProvider) {
+      currentStoreProvider.get().removeHost(hostName);
+    }
+    return removed;
   }
 
   /**
@@ -625,6 +676,13 @@ public class AlertsDAO {
   @Transactional
   public int removeCurrentByServiceComponentHost(String serviceName,
       String componentName, String hostName) {
+    TypedQuery<Long> idQuery = entityManagerProvider.get().createNamedQuery(
+        "AlertCurrentEntity.findIdsByHostComponent", Long.class);
+
+    idQuery.setParameter("serviceName", serviceName);
+    idQuery.setParameter("componentName", componentName);
+    idQuery.setParameter("hostName", hostName);
+    List<Long> alertIds = daoUtils.selectList(idQuery);
 
     TypedQuery<AlertCurrentEntity> query = entityManagerProvider.get().createNamedQuery(
         "AlertCurrentEntity.removeByHostComponent", AlertCurrentEntity.class);
@@ -633,7 +691,9 @@ public class AlertsDAO {
     query.setParameter("componentName", componentName);
     query.setParameter("hostName", hostName);
 
-    return query.executeUpdate();
+    int removed = query.executeUpdate();
+    removeFromCurrentStore(alertIds);
+    return removed;
   }
 
   /**
@@ -727,6 +787,31 @@ public class AlertsDAO {
   @Transactional
   public void remove(AlertCurrentEntity alert) {
     entityManagerProvider.get().remove(merge(alert));
+    removeFromCurrentStore(Collections.singletonList(alert.getAlertId()));
+  }
+
+  /**
+   * Sets the latest timestamp and text of a current alert without reading it,
+   * unless a newer timestamp was already written.
+   *
+   * @param alertId
+   *          the ID of the current alert.
+   * @param latestTimestamp
+   *          the time of the most recently received alert data.
+   * @param latestText
+   *          the text of the most recently received alert data.
+   * @return the number of alerts updated, {@code 0} if the alert no longer
+   *         exists or has a newer timestamp.
+   */
+  @Transactional
+  public int updateLatest(long alertId, long latestTimestamp, String latestText) {
+    TypedQuery<AlertCurrentEntity> query = entityManagerProvider.get().createNamedQuery(
+        "AlertCurrentEntity.updateLatest", AlertCurrentEntity.class);
+
+    query.setParameter("alertId", Long.valueOf(alertId));
+    query.setParameter("latestTimestamp", Long.valueOf(latestTimestamp));
+    query.setParameter("latestText", latestText);
+    return query.executeUpdate();
   }
 
   /**
@@ -757,6 +842,40 @@ public class AlertsDAO {
     return daoUtils.selectSingle(query);
   }
 
+  /**
+   * Finds the aggregate counts of every alert name in every cluster, across
+   * all hosts, in a single query.
+   *
+   * @return the summary data by cluster ID and alert name (never
+   *         {@code null}).
+   */
+  @RequiresSession
+  public Map<Long, Map<String, AlertSummaryDTO>> findAggregateCountsByDefinition() {
+    TypedQuery<Object[]> query = entityManagerProvider.get().createQuery(
+        ALERT_COUNT_BY_DEFINITION_SQL, Object[].class);
+
+    query.setParameter("okState", AlertState.OK);
+    query.setParameter("warningState", AlertState.WARNING);
+    query.setParameter("criticalState", AlertState.CRITICAL);
+    query.setParameter("unknownState", AlertState.UNKNOWN);
+    query.setParameter("maintenanceStateOff", MaintenanceState.OFF);
+
+    Map<Long, Map<String, AlertSummaryDTO>> counts = new HashMap<Long, Map<String, AlertSummaryDTO>>();
+    for (Object[] row : daoUtils.selectList(query)) {
+      Long clusterId = ((Number) row[0]).longValue();
+      Map<String, AlertSummaryDTO> clusterCounts = counts.get(clusterId);
+      if (null == clusterCounts) {
+        clusterCounts = new HashMap<String, AlertSummaryDTO>();
+        counts.put(clusterId, clusterCounts);
+      }
+
+      clusterCounts.put((String) row[1], new AlertSummaryDTO((Number) row[2],
+          (Number) row[3], (Number) row[4], (Number) row[5], (Number) row[6]));
+    }
+
+    return counts;
+  }
+
   /**
    * Locate the current alert for the provided service and alert name, but when
    * host is not set ({@code IS NULL}).
@@ -776,6 +895,21 @@ public class AlertsDAO {
     return daoUtils.selectOne(query);
   }
 
+  /**
+   * Drops removed current alerts from the in-memory index.
+   *
+   * @param alertIds
+   *          the IDs of the removed current alerts.
+   */
+  private void removeFromCurrentStore(List<Long> alertIds) {
+    if (null != currentStoreProvider) {
+      AlertCurrentStore currentStore = currentStoreProvider.get();
+      for (Long alertId : alertIds) {
+        currentStore.remove(alertId);
+      }
+    }
+  }
+
   /**
    * Sets {@link QueryHints#REFRESH} on the specified query so that child
    * entities are not stale.
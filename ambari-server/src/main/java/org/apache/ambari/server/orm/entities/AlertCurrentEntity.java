@@ -52,6 +52,11 @@ import org.apache.ambari.server.state.MaintenanceState;
     @NamedQuery(name = "AlertCurrentEntity.findByService", query = "SELECT alert FROM AlertCurrentEntity alert WHERE alert.alertHistory.clusterId = :clusterId AND alert.alertHistory.serviceName = :serviceName AND alert.alertHistory.alertDefinition.scope IN :inlist"),
     @NamedQuery(name = "AlertCurrentEntity.findByHostAndName", query = "SELECT alert FROM AlertCurrentEntity alert WHERE alert.alertHistory.clusterId = :clusterId AND alert.alertHistory.alertDefinition.definitionName = :definitionName AND alert.alertHistory.hostName = :hostName"),
     @NamedQuery(name = "AlertCurrentEntity.findByNameAndNoHost", query = "SELECT alert FROM AlertCurrentEntity alert WHERE alert.alertHistory.clusterId = :clusterId AND alert.alertHistory.alertDefinition.definitionName = :definitionName AND alert.alertHistory.hostName IS NULL"),
+    @NamedQuery(name = "AlertCurrentEntity.findIdByHistoryId", query = "SELECT alert.alertId FROM AlertCurrentEntity alert WHERE alert.alertHistory.alertId = :historyId"),
+    @NamedQuery(name = "AlertCurrentEntity.findIdsDisabled", query = "SELECT alert.alertId FROM AlertCurrentEntity alert WHERE alert.alertDefinition.enabled = 0"),
+    @NamedQuery(name = "AlertCurrentEntity.findIdsByServiceName", query = "SELECT alert.alertId FROM AlertCurrentEntity alert WHERE alert.alertHistory.serviceName = :serviceName"),
+    @NamedQuery(name = "AlertCurrentEntity.findIdsByHostComponent", query = "SELECT alert.alertId FROM AlertCurrentEntity alert WHERE alert.alertHistory.serviceName = :serviceName AND alert.alertHistory.componentName = :componentName AND alert.alertHistory.hostName = :hostName"),
+    @NamedQuery(name = "AlertCurrentEntity.updateLatest", query = "UPDATE AlertCurrentEntity alert SET alert.latestTimestamp = :latestTimestamp, alert.latestText = :latestText WHERE alert.alertId = :alertId AND alert.latestTimestamp <= :latestTimestamp"),
     @NamedQuery(name = "AlertCurrentEntity.removeByHistoryId", query = "DELETE FROM AlertCurrentEntity alert WHERE alert.alertHistory.alertId = :historyId"),
     @NamedQuery(name = "AlertCurrentEntity.removeByDefinitionId", query = "DELETE FROM AlertCurrentEntity alert WHERE alert.alertDefinition.definitionId = :definitionId"),
     @NamedQuery(name = "AlertCurrentEntity.removeDisabled", query = "DELETE FROM AlertCurrentEntity alert WHERE alert.alertDefinition.enabled = 0"),
@@ -335,6 +335,13 @@ public interface Host {
 
   void persist();
 
+  /**
+   * Saves the host like {@link #persist()}, but allows the write of an
+   * already persisted host to be deferred and batched with other hosts.
+   * Meant for changes which come with every heartbeat.
+   */
+  void persistLater();
+
   void refresh();
 
   void importHostInfo(HostInfo hostInfo);
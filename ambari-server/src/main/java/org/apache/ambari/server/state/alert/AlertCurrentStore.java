@@ -0,0 +1,827 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state.alert;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ambari.server.orm.dao.AlertSummaryDTO;
+import org.apache.ambari.server.orm.dao.AlertsDAO;
+import org.apache.ambari.server.orm.entities.AlertCurrentEntity;
+import org.apache.ambari.server.orm.entities.AlertHistoryEntity;
+import org.apache.ambari.server.state.AlertState;
+import org.apache.ambari.server.state.MaintenanceState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.persist.Transactional;
+
+/**
+ * The {@link AlertCurrentStore} keeps the ID and state of every
+ * {@link AlertCurrentEntity} in memory by cluster, definition and host, so
+ * that an alert received with an unchanged state does not need to look up its
+ * current alert in the database. Such alerts only change the latest timestamp
+ * and text of the current alert; while write-behind is enabled these updates
+ * are coalesced by alert and written together by {@link #flush()}, otherwise
+ * they are written right away.
+ * <p/>
+ * The index is loaded from the database on first use. Any alert missing from
+ * it is looked up in the database by the caller, so the index never needs to
+ * be complete; removed alerts are dropped from it by ID, host or definition.
+ * <p/>
+ * Every change of the index also updates the number of current alerts of the
+ * definition by state and maintenance mode, so that aggregate alerts can read
+ * their summary without counting in the database. {@link #reconcile()}
+ * compares these counts to the database with a single grouped query and
+ * clears the index if they drifted.
+ */
+@Singleton
+public class AlertCurrentStore {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(AlertCurrentStore.class);
+
+  /**
+   * Used to load the current alerts and write their latest timestamp.
+   */
+  @Inject
+  private AlertsDAO m_alertsDao;
+
+  /**
+   * The ID and state of the current alerts.
+   */
+  private final ConcurrentMap<Key, CurrentAlert> m_currentAlerts =
+      new ConcurrentHashMap<Key, CurrentAlert>();
+
+  /**
+   * The key of every current alert in the index, by alert ID.
+   */
+  private final ConcurrentMap<Long, Key> m_keys = new ConcurrentHashMap<Long, Key>();
+
+  /**
+   * The number of current alerts by cluster and definition name.
+   */
+  private final ConcurrentMap<SummaryKey, StateCounts> m_summaries =
+      new ConcurrentHashMap<SummaryKey, StateCounts>();
+
+  /**
+   * The latest timestamp and text waiting to be written, by alert ID.
+   */
+  private final ConcurrentMap<Long, LatestUpdate> m_pendingUpdates =
+      new ConcurrentHashMap<Long, LatestUpdate>();
+
+  /**
+   * Incremented whenever the index is cleared, so that a load started before
+   * does not bring back removed alerts.
+   */
+  private long m_generation = 0;
+
+  private volatile boolean m_loaded = false;
+  private volatile boolean m_enabled = false;
+
+  private final AtomicLong m_flushedCount = new AtomicLong();
+  private final AtomicLong m_coalescedCount = new AtomicLong();
+  private final AtomicLong m_failureCount = new AtomicLong();
+  private volatile long m_lastFlushTime = 0L;
+  private volatile int m_lastFlushSize = 0;
+  private final AtomicLong m_driftCount = new AtomicLong();
+
+  /**
+   * @return {@code true} if updates of the latest timestamp and text are
+   *         deferred to the next flush
+   */
+  public boolean isEnabled() {
+    return m_enabled;
+  }
+
+  /**
+   * Turns write-behind on or off. Pending updates are kept when turning it
+   * off, so a final {@link #flush()} still writes them.
+   *
+   * @param enabled
+   *          {@code true} to defer updates of the latest timestamp and text
+   */
+  public void setEnabled(boolean enabled) {
+    m_enabled = enabled;
+  }
+
+  /**
+   * Gets the current alert of a definition on a host, loading the index on
+   * first use.
+   *
+   * @param clusterId
+   *          the cluster ID
+   * @param definitionId
+   *          the definition ID
+   * @param hostName
+   *          the host name, or {@code null} for alerts not bound to a host
+   * @return the current alert, or {@code null} if it is not known
+   */
+  public CurrentAlert get(long clusterId, long definitionId, String hostName) {
+    if (!m_loaded) {
+      load();
+    }
+
+    return m_currentAlerts.get(new Key(clusterId, definitionId, hostName));
+  }
+
+  /**
+   * Records the ID and state of a current alert which was just created,
+   * changed or read from the database.
+   *
+   * @param current
+   *          the current alert (not {@code null}).
+   * @return the ID and state recorded
+   */
+  public CurrentAlert put(AlertCurrentEntity current) {
+    Key key = getKey(current);
+    CurrentAlert currentAlert = createCurrentAlert(current);
+    CurrentAlert previous = m_currentAlerts.put(key, currentAlert);
+    m_keys.put(currentAlert.getAlertId(), key);
+
+    currentAlert.m_counts.add(currentAlert, 1);
+    if (null != previous) {
+      previous.m_counts.add(previous, -1);
+      if (previous.getAlertId() != currentAlert.getAlertId()) {
+        m_keys.remove(previous.getAlertId(), key);
+      }
+    }
+
+    return currentAlert;
+  }
+
+  /**
+   * Records the maintenance state of a current alert, keeping its state.
+   * Alerts which are not known to the index are left to be loaded.
+   *
+   * @param current
+   *          the current alert whose maintenance state changed (not
+   *          {@code null}).
+   */
+  public void updateMaintenanceState(AlertCurrentEntity current) {
+    Key key = getKey(current);
+    MaintenanceState maintenanceState = current.getMaintenanceState();
+
+    while (true) {
+      CurrentAlert previous = m_currentAlerts.get(key);
+      if (null == previous || previous.getAlertId() != current.getAlertId()
+          || previous.getMaintenanceState() == maintenanceState) {
+        return;
+      }
+
+      CurrentAlert currentAlert = new CurrentAlert(previous.getAlertId(),
+          previous.getState(), maintenanceState, previous.m_counts);
+
+      if (m_currentAlerts.replace(key, previous, currentAlert)) {
+        currentAlert.m_counts.add(currentAlert, 1);
+        previous.m_counts.add(previous, -1);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Gets the number of current alerts of a definition by state, loading the
+   * index on first use. Alerts in maintenance mode are only counted as such,
+   * like {@link AlertsDAO#findAggregateCounts(long, String)} does.
+   * <p/>
+   * Only changes made through this store are counted. A state written to the
+   * database directly is not part of the summary until {@link #reconcile()}
+   * finds the difference and the index is loaded again.
+   *
+   * @param clusterId
+   *          the cluster ID
+   * @param definitionName
+   *          the definition name
+   * @return the summary of the current alerts of the definition (never
+   *         {@code null}).
+   */
+  public AlertSummaryDTO getSummary(long clusterId, String definitionName) {
+    if (!m_loaded) {
+      load();
+    }
+
+    StateCounts counts = m_summaries.get(new SummaryKey(clusterId, definitionName));
+    if (null == counts) {
+      return new AlertSummaryDTO(0, 0, 0, 0, 0);
+    }
+
+    return counts.toSummary();
+  }
+
+  /**
+   * Sets the latest timestamp and text of a current alert whose state did not
+   * change.
+   *
+   * @param alert
+   *          the current alert
+   * @param latestTimestamp
+   *          the timestamp of the alert received
+   * @param latestText
+   *          the text of the alert received
+   */
+  public void updateLatest(CurrentAlert alert, long latestTimestamp,
+      String latestText) {
+    LatestUpdate update = new LatestUpdate(alert.getAlertId(), latestTimestamp,
+        latestText);
+
+    if (m_enabled) {
+      LatestUpdate previous = m_pendingUpdates.put(alert.getAlertId(), update);
+      if (null != previous) {
+        m_coalescedCount.incrementAndGet();
+
+        // alerts of a host can be processed out of order
+        if (previous.latestTimestamp > latestTimestamp) {
+          m_pendingUpdates.replace(alert.getAlertId(), update, previous);
+        }
+      }
+
+      return;
+    }
+
+    if (0 == m_alertsDao.updateLatest(update.alertId, update.latestTimestamp,
+        update.latestText)) {
+      evictIfRemoved(update.alertId);
+    }
+  }
+
+  /**
+   * Drops the pending update of an alert, which is about to be written with
+   * a new state.
+   *
+   * @param alertId
+   *          the alert ID
+   */
+  public void discardPending(long alertId) {
+    m_pendingUpdates.remove(alertId);
+  }
+
+  /**
+   * Drops a current alert which was removed from the database. Pending
+   * updates of removed alerts do not write anything.
+   *
+   * @param alertId
+   *          the ID of the removed current alert
+   */
+  public void remove(long alertId) {
+    evict(alertId);
+  }
+
+  /**
+   * Drops the current alerts of a host which were removed from the database.
+   *
+   * @param hostName
+   *          the host name (not {@code null}).
+   */
+  public void removeHost(String hostName) {
+    for (Map.Entry<Key, CurrentAlert> entry : m_currentAlerts.entrySet()) {
+      if (hostName.equals(entry.getKey().hostName)) {
+        evict(entry.getValue().getAlertId());
+      }
+    }
+  }
+
+  /**
+   * Drops the current alerts of a definition which were removed from the
+   * database.
+   *
+   * @param definitionId
+   *          the definition ID
+   */
+  public void removeDefinition(long definitionId) {
+    for (Map.Entry<Key, CurrentAlert> entry : m_currentAlerts.entrySet()) {
+      if (definitionId == entry.getKey().definitionId) {
+        evict(entry.getValue().getAlertId());
+      }
+    }
+  }
+
+  /**
+   * Clears the index; it is loaded again on next use.
+   */
+  public void invalidate() {
+    synchronized (this) {
+      m_generation++;
+      m_loaded = false;
+      m_currentAlerts.clear();
+      m_keys.clear();
+      m_summaries.clear();
+    }
+  }
+
+  /**
+   * Compares the number of current alerts of every definition to the
+   * database. Definitions which differ are compared again, so that alerts
+   * written while comparing are not taken for drift; if any still differs,
+   * the index is cleared so that it is loaded again on next use. Nothing is
+   * compared before the index is loaded.
+   *
+   * @return the number of definitions whose summary differed
+   */
+  public int reconcile() {
+    long generation;
+    synchronized (this) {
+      if (!m_loaded) {
+        return 0;
+      }
+      generation = m_generation;
+    }
+
+    Set<SummaryKey> drifted = findDrifted();
+    if (!drifted.isEmpty()) {
+      drifted.retainAll(findDrifted());
+    }
+
+    if (!drifted.isEmpty()) {
+      m_driftCount.addAndGet(drifted.size());
+      LOG.warn("The alert summaries of {} definitions differ from the database, reloading current alerts",
+          drifted.size());
+
+      synchronized (this) {
+        if (generation == m_generation) {
+          invalidate();
+        }
+      }
+    }
+
+    return drifted.size();
+  }
+
+  /**
+   * @return the definitions whose summary differs from the database
+   */
+  private Set<SummaryKey> findDrifted() {
+    Map<SummaryKey, AlertSummaryDTO> expected = new HashMap<SummaryKey, AlertSummaryDTO>();
+    for (Map.Entry<Long, Map<String, AlertSummaryDTO>> cluster :
+        m_alertsDao.findAggregateCountsByDefinition().entrySet()) {
+      for (Map.Entry<String, AlertSummaryDTO> definition : cluster.getValue().entrySet()) {
+        expected.put(new SummaryKey(cluster.getKey(), definition.getKey()),
+            definition.getValue());
+      }
+    }
+
+    Set<SummaryKey> drifted = new HashSet<SummaryKey>();
+    for (Map.Entry<SummaryKey, AlertSummaryDTO> entry : expected.entrySet()) {
+      StateCounts counts = m_summaries.get(entry.getKey());
+      if (null == counts || !counts.matches(entry.getValue())) {
+        drifted.add(entry.getKey());
+      }
+    }
+
+    for (Map.Entry<SummaryKey, StateCounts> entry : m_summaries.entrySet()) {
+      if (!expected.containsKey(entry.getKey()) && !entry.getValue().isEmpty()) {
+        drifted.add(entry.getKey());
+      }
+    }
+
+    return drifted;
+  }
+
+  /**
+   * Writes all pending updates to the database in a single transaction. If
+   * the write fails, the updates are kept to be written by the next flush.
+   *
+   * @return the number of updates written
+   */
+  public int flush() {
+    if (m_pendingUpdates.isEmpty()) {
+      return 0;
+    }
+
+    List<LatestUpdate> updates = new ArrayList<LatestUpdate>(m_pendingUpdates.size());
+    for (Long alertId : m_pendingUpdates.keySet()) {
+      LatestUpdate update = m_pendingUpdates.remove(alertId);
+      if (null != update) {
+        updates.add(update);
+      }
+    }
+
+    long start = System.currentTimeMillis();
+    List<Long> notUpdated;
+    try {
+      notUpdated = writeUpdates(updates);
+    } catch (RuntimeException e) {
+      m_failureCount.incrementAndGet();
+      for (LatestUpdate update : updates) {
+        m_pendingUpdates.putIfAbsent(update.alertId, update);
+      }
+      throw e;
+    }
+
+    for (Long alertId : notUpdated) {
+      evictIfRemoved(alertId);
+    }
+
+    m_lastFlushTime = System.currentTimeMillis() - start;
+    m_lastFlushSize = updates.size();
+    m_flushedCount.addAndGet(updates.size());
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Wrote the latest timestamp of {} current alerts in {}ms",
+          updates.size(), m_lastFlushTime);
+    }
+
+    return updates.size();
+  }
+
+  /**
+   * Writes the updates in one transaction.
+   *
+   * @param updates
+   *          the updates
+   * @return the IDs of the alerts which were not updated
+   */
+  @Transactional
+  List<Long> writeUpdates(Collection<LatestUpdate> updates) {
+    List<Long> notUpdated = new ArrayList<Long>();
+    for (LatestUpdate update : updates) {
+      if (0 == m_alertsDao.updateLatest(update.alertId, update.latestTimestamp,
+          update.latestText)) {
+        notUpdated.add(update.alertId);
+      }
+    }
+
+    return notUpdated;
+  }
+
+  /**
+   * Loads the ID and state of all current alerts.
+   */
+  private void load() {
+    long generation;
+    synchronized (this) {
+      if (m_loaded) {
+        return;
+      }
+      generation = m_generation;
+    }
+
+    List<AlertCurrentEntity> loaded = m_alertsDao.findCurrent();
+
+    synchronized (this) {
+      if (m_loaded || generation != m_generation) {
+        return;
+      }
+
+      // alerts changed while loading are newer than what was read
+      for (AlertCurrentEntity current : loaded) {
+        Key key = getKey(current);
+        CurrentAlert currentAlert = createCurrentAlert(current);
+        if (null == m_currentAlerts.putIfAbsent(key, currentAlert)) {
+          m_keys.put(currentAlert.getAlertId(), key);
+          currentAlert.m_counts.add(currentAlert, 1);
+        }
+      }
+
+      m_loaded = true;
+    }
+
+    LOG.info("Loaded {} current alerts", loaded.size());
+  }
+
+  /**
+   * Creates the entry of a current alert, counted in the summary of its
+   * definition.
+   */
+  private CurrentAlert createCurrentAlert(AlertCurrentEntity current) {
+    SummaryKey summaryKey = getSummaryKey(current);
+    StateCounts counts = m_summaries.get(summaryKey);
+    if (null == counts) {
+      StateCounts created = new StateCounts();
+      counts = m_summaries.putIfAbsent(summaryKey, created);
+      if (null == counts) {
+        counts = created;
+      }
+    }
+
+    return createCurrentAlert(current, counts);
+  }
+
+  private static CurrentAlert createCurrentAlert(AlertCurrentEntity current,
+      StateCounts counts) {
+    return new CurrentAlert(current.getAlertId(),
+        current.getAlertHistory().getAlertState(), current.getMaintenanceState(),
+        counts);
+  }
+
+  private static Key getKey(AlertCurrentEntity current) {
+    AlertHistoryEntity history = current.getAlertHistory();
+    return new Key(history.getClusterId(),
+        history.getAlertDefinition().getDefinitionId(), history.getHostName());
+  }
+
+  private static SummaryKey getSummaryKey(AlertCurrentEntity current) {
+    AlertHistoryEntity history = current.getAlertHistory();
+    return new SummaryKey(history.getClusterId(),
+        history.getAlertDefinition().getDefinitionName());
+  }
+
+  /**
+   * Removes an alert from the index so that it is looked up again.
+   *
+   * @param alertId
+   *          the alert ID
+   */
+  private void evict(long alertId) {
+    Key key = m_keys.remove(alertId);
+    if (null == key) {
+      return;
+    }
+
+    while (true) {
+      CurrentAlert currentAlert = m_currentAlerts.get(key);
+      if (null == currentAlert || currentAlert.getAlertId() != alertId) {
+        return;
+      }
+
+      if (m_currentAlerts.remove(key, currentAlert)) {
+        currentAlert.m_counts.add(currentAlert, -1);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Removes an alert whose latest timestamp was not written from the index,
+   * unless it still exists and only has a newer timestamp.
+   *
+   * @param alertId
+   *          the alert ID
+   */
+  private void evictIfRemoved(long alertId) {
+    if (null == m_alertsDao.findCurrentById(alertId)) {
+      evict(alertId);
+    }
+  }
+
+  /**
+   * @return the number of current alerts in the index
+   */
+  public int getSize() {
+    return m_currentAlerts.size();
+  }
+
+  /**
+   * @return the number of updates waiting to be written
+   */
+  public int getPendingCount() {
+    return m_pendingUpdates.size();
+  }
+
+  /**
+   * @return the number of updates written by flushes
+   */
+  public long getFlushedCount() {
+    return m_flushedCount.get();
+  }
+
+  /**
+   * @return the number of updates which replaced a pending update of the same
+   *         alert
+   */
+  public long getCoalescedCount() {
+    return m_coalescedCount.get();
+  }
+
+  /**
+   * @return the number of flushes which failed
+   */
+  public long getFailureCount() {
+    return m_failureCount.get();
+  }
+
+  /**
+   * @return the duration in milliseconds of the last flush
+   */
+  public long getLastFlushTime() {
+    return m_lastFlushTime;
+  }
+
+  /**
+   * @return the number of updates written by the last flush
+   */
+  public int getLastFlushSize() {
+    return m_lastFlushSize;
+  }
+
+  /**
+   * @return the number of definition summaries which differed from the
+   *         database when reconciled
+   */
+  public long getDriftCount() {
+    return m_driftCount.get();
+  }
+
+  /**
+   * The ID, state and maintenance state of a current alert.
+   */
+  public static final class CurrentAlert {
+    private final long m_alertId;
+    private final AlertState m_state;
+    private final MaintenanceState m_maintenanceState;
+
+    /**
+     * The summary of the definition this alert is counted in.
+     */
+    private final StateCounts m_counts;
+
+    CurrentAlert(long alertId, AlertState state,
+        MaintenanceState maintenanceState, StateCounts counts) {
+      m_alertId = alertId;
+      m_state = state;
+      m_maintenanceState = maintenanceState;
+      m_counts = counts;
+    }
+
+    /**
+     * @return the ID of the current alert
+     */
+    public long getAlertId() {
+      return m_alertId;
+    }
+
+    /**
+     * @return the state of the current history entry
+     */
+    public AlertState getState() {
+      return m_state;
+    }
+
+    /**
+     * @return the maintenance state of the current alert
+     */
+    public MaintenanceState getMaintenanceState() {
+      return m_maintenanceState;
+    }
+
+    /**
+     * @return {@code true} if the alert is counted as being in maintenance
+     *         mode instead of by its state
+     */
+    boolean isInMaintenance() {
+      return null != m_maintenanceState && m_maintenanceState != MaintenanceState.OFF;
+    }
+  }
+
+  /**
+   * The number of current alerts of a definition by state; alerts in
+   * maintenance mode are only counted as such.
+   */
+  static final class StateCounts {
+    private final AtomicInteger[] states = new AtomicInteger[AlertState.values().length];
+    private final AtomicInteger maintenance = new AtomicInteger();
+
+    StateCounts() {
+      for (int i = 0; i < states.length; i++) {
+        states[i] = new AtomicInteger();
+      }
+    }
+
+    void add(CurrentAlert alert, int delta) {
+      if (alert.isInMaintenance()) {
+        maintenance.addAndGet(delta);
+      } else if (null != alert.getState()) {
+        states[alert.getState().ordinal()].addAndGet(delta);
+      }
+    }
+
+    boolean isEmpty() {
+      for (AtomicInteger count : states) {
+        if (count.get() != 0) {
+          return false;
+        }
+      }
+      return maintenance.get() == 0;
+    }
+
+    boolean matches(AlertSummaryDTO summary) {
+      return states[AlertState.OK.ordinal()].get() == summary.getOkCount()
+          && states[AlertState.WARNING.ordinal()].get() == summary.getWarningCount()
+          && states[AlertState.CRITICAL.ordinal()].get() == summary.getCriticalCount()
+          && states[AlertState.UNKNOWN.ordinal()].get() == summary.getUnknownCount()
+          && maintenance.get() == summary.getMaintenanceCount();
+    }
+
+    AlertSummaryDTO toSummary() {
+      return new AlertSummaryDTO(states[AlertState.OK.ordinal()].get(),
+          states[AlertState.WARNING.ordinal()].get(),
+          states[AlertState.CRITICAL.ordinal()].get(),
+          states[AlertState.UNKNOWN.ordinal()].get(), maintenance.get());
+    }
+  }
+
+  /**
+   * The latest timestamp and text of a current alert.
+   */
+  static final class LatestUpdate {
+    private final long alertId;
+    private final long latestTimestamp;
+    private final String latestText;
+
+    LatestUpdate(long alertId, long latestTimestamp, String latestText) {
+      this.alertId = alertId;
+      this.latestTimestamp = latestTimestamp;
+      this.latestText = latestText;
+    }
+  }
+
+  /**
+   * Cluster, definition and host of a current alert.
+   */
+  private static final class Key {
+    private final long clusterId;
+    private final long definitionId;
+    private final String hostName;
+
+    private Key(long clusterId, long definitionId, String hostName) {
+      this.clusterId = clusterId;
+      this.definitionId = definitionId;
+      this.hostName = hostName;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) {
+        return true;
+      }
+      if (!(object instanceof Key)) {
+        return false;
+      }
+
+      Key that = (Key) object;
+      return clusterId == that.clusterId && definitionId == that.definitionId
+          && (hostName == null ? that.hostName == null : hostName.equals(that.hostName));
+    }
+
+    @Override
+    public int hashCode() {
+      int result = (int) (clusterId ^ (clusterId >>> 32));
+      result = 31 * result + (int) (definitionId ^ (definitionId >>> 32));
+      result = 31 * result + (hostName == null ? 0 : hostName.hashCode());
+      return result;
+    }
+  }
+
+  /**
+   * Cluster and definition name of the current alerts counted together.
+   */
+  private static final class SummaryKey {
+    private final long clusterId;
+    private final String definitionName;
+
+    private SummaryKey(long clusterId, String definitionName) {
+      this.clusterId = clusterId;
+      this.definitionName = definitionName;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) {
+        return true;
+      }
+      if (!(object instanceof SummaryKey)) {
+        return false;
+      }
+
+      SummaryKey that = (SummaryKey) object;
+      return clusterId == that.clusterId
+          && (definitionName == null ? that.definitionName == null
+              : definitionName.equals(that.definitionName));
+    }
+
+    @Override
+    public int hashCode() {
+      int result = (int) (clusterId ^ (clusterId >>> 32));
+      result = 31 * result + (definitionName == null ? 0 : definitionName.hashCode());
+      return result;
+    }
+  }
+}
@@ -20,16 +20,18 @@ package org.apache.ambari.server.state.alert;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.ambari.server.AmbariException;
@@ -60,6 +62,15 @@ import com.google.inject.Singleton;
  * list of {@link AlertDefinitionEntity}s. It is used in order to represent the
  * state of a group of definitions by using
  * {@link AlertDefinitionEntity#getHash()}
+ * <p/>
+ * The hash of a host is the XOR of the MD5 digests of the hashes of its
+ * definitions, so that it does not depend on the order of the definitions and
+ * a single definition can be added, changed or removed without hashing the
+ * others again. Each cached host keeps the digest of every one of its
+ * definitions along with the components it runs and the services it is a
+ * master of, which decide whether a changed definition applies to it. The
+ * cache of a host is dropped when its components change and is built again on
+ * next use.
  */
 @Singleton
 public class AlertDefinitionHash {
@@ -116,9 +127,16 @@ public class AlertDefinitionHash {
 
   /**
    * The hashes for all hosts for any cluster. The key is the hostname and the
-   * value is a map between cluster name and hash.
+   * value is a map between cluster name and the definitions of the host.
    */
-  private Map<String, Map<String, String>> m_hashes = new HashMap<String, Map<String, String>>();
+  private final ConcurrentMap<String, ConcurrentMap<String, HostDefinitions>> m_hashes =
+      new ConcurrentHashMap<String, ConcurrentMap<String, HostDefinitions>>();
+
+  /**
+   * Incremented by every invalidation and definition change, so that a hash
+   * calculated from the database while one happened is not cached.
+   */
+  private final AtomicLong m_version = new AtomicLong();
 
   /**
    * Gets a unique hash value reprssenting all of the alert definitions that
@@ -137,27 +155,46 @@ public class AlertDefinitionHash {
    * @return the unique hash or {@value #NULL_MD5_HASH} if none.
    */
   public String getHash(String clusterName, String hostName) {
-    Map<String, String> clusterMapping = m_hashes.get(hostName);
+    ConcurrentMap<String, HostDefinitions> clusterMapping = m_hashes.get(hostName);
     if (null == clusterMapping) {
-      clusterMapping = new ConcurrentHashMap<String, String>();
-      m_hashes.put(hostName, clusterMapping);
+      clusterMapping = new ConcurrentHashMap<String, HostDefinitions>();
+      ConcurrentMap<String, HostDefinitions> existing = m_hashes.putIfAbsent(
+          hostName, clusterMapping);
+
+      if (null != existing) {
+        clusterMapping = existing;
+      }
     }
 
-    String hash = clusterMapping.get(hostName);
-    if (null != hash) {
-      return hash;
+    HostDefinitions hostDefinitions = clusterMapping.get(clusterName);
+    if (null != hostDefinitions) {
+      return hostDefinitions.getHash();
     }
 
-    hash = hash(clusterName, hostName);
-    clusterMapping.put(clusterName, hash);
+    long version = m_version.get();
+    hostDefinitions = hash(clusterName, hostName);
+
+    HostDefinitions existing = clusterMapping.putIfAbsent(clusterName,
+        hostDefinitions);
 
-    return hash;
+    if (null != existing) {
+      return existing.getHash();
+    }
+
+    // a definition or the host changed while reading the definitions; the
+    // hash is still returned but calculated again on next use
+    if (version != m_version.get()) {
+      clusterMapping.remove(clusterName, hostDefinitions);
+    }
+
+    return hostDefinitions.getHash();
   }
 
   /**
    * Invalidate all cached hashes causing subsequent lookups to recalculate.
    */
   public void invalidateAll() {
+    m_version.incrementAndGet();
     m_hashes.clear();
   }
 
@@ -169,6 +206,7 @@ public class AlertDefinitionHash {
    *          the host to invalidate the cache for (not {@code null}).
    */
   public void invalidate(String hostName) {
+    m_version.incrementAndGet();
     m_hashes.remove(hostName);
   }
 
@@ -182,7 +220,8 @@ public class AlertDefinitionHash {
    *          the host to invalidate the cache for (not {@code null}).
    */
   public void invalidate(String clusterName, String hostName) {
-    Map<String, String> clusterMapping = m_hashes.get(hostName);
+    m_version.incrementAndGet();
+    Map<String, HostDefinitions> clusterMapping = m_hashes.get(hostName);
     if (null != clusterMapping) {
       clusterMapping.remove(clusterName);
     }
@@ -201,7 +240,7 @@ public class AlertDefinitionHash {
       return false;
     }
 
-    Map<String, String> clusterMapping = m_hashes.get(hostName);
+    Map<String, HostDefinitions> clusterMapping = m_hashes.get(hostName);
     if (null == clusterMapping) {
       return false;
     }
@@ -244,47 +283,56 @@ public class AlertDefinitionHash {
 
 
   /**
-   * Invalidate the hashes of any host that would be affected by the specified
-   * definition. If the definition is an {@link SourceType#AGGREGATE}, this will
-   * return an empty set since aggregates do not affect hosts.
+   * Updates the hashes of any host that would be affected by the specified
+   * definition after it was created, changed or removed. If the definition is
+   * an {@link SourceType#AGGREGATE}, this will return an empty set since
+   * aggregates do not affect hosts.
    *
    * @param definition
-   *          the definition to use to find the hosts to invlidate (not
+   *          the definition to use to find the hosts to update (not
    *          {@code null}).
-   * @return the hosts that were invalidated, or an empty set (never
+   * @return the hosts whose definitions changed, or an empty set (never
    *         {@code null}).
    */
   public Set<String> invalidateHosts(AlertDefinitionEntity definition) {
     return invalidateHosts(definition.getClusterId(),
-        definition.getSourceType(),
+        definition.getDefinitionId(), definition.getSourceType(),
         definition.getDefinitionName(), definition.getServiceName(),
         definition.getComponentName());
   }
 
   /**
-   * Invalidate the hashes of any host that would be affected by the specified
-   * definition. If the definition is an {@link SourceType#AGGREGATE}, this will
-   * return an empty set since aggregates do not affect hosts.
+   * Updates the hashes of any host that would be affected by the specified
+   * definition after it was created, changed or removed. If the definition is
+   * an {@link SourceType#AGGREGATE}, this will return an empty set since
+   * aggregates do not affect hosts.
    *
    * @param definition
-   *          the definition to use to find the hosts to invlidate (not
+   *          the definition to use to find the hosts to update (not
    *          {@code null}).
-   * @return the hosts that were invalidated, or an empty set (never
+   * @return the hosts whose definitions changed, or an empty set (never
    *         {@code null}).
    */
   public Set<String> invalidateHosts(AlertDefinition definition) {
     return invalidateHosts(definition.getClusterId(),
-        definition.getSource().getType(), definition.getName(),
+        definition.getDefinitionId(), definition.getSource().getType(),
+        definition.getName(),
         definition.getServiceName(), definition.getComponentName());
   }
 
   /**
-   * Invalidate the hashes of any host that would be affected by the specified
-   * definition. If the definition is an {@link SourceType#AGGREGATE}, this will
-   * return an empty set since aggregates do not affect hosts.
+   * Updates the hashes of any host that would be affected by the specified
+   * definition. The definition is read again so that a removed definition is
+   * taken out of the hashes of the hosts which had it, and a changed one is
+   * moved to the hosts it now applies to. Only the digest of this definition
+   * is added to or taken out of each cached hash. If the definition is an
+   * {@link SourceType#AGGREGATE}, this will return an empty set since
+   * aggregates do not affect hosts.
    *
    * @param clusterId
    *          the cluster ID
+   * @param definitionId
+   *          the definition ID
    * @param definitionSourceType
    *          the type of alert definition
    * @param definitionName
@@ -293,10 +341,10 @@ public class AlertDefinitionHash {
    *          the definition's service name.
    * @param definitionComponentName
    *          the definition's component name.
-   * @return the hosts that were invalidated, or an empty set (never
+   * @return the hosts whose definitions changed, or an empty set (never
    *         {@code null}).
    */
-  private Set<String> invalidateHosts(long clusterId,
+  private Set<String> invalidateHosts(long clusterId, long definitionId,
       SourceType definitionSourceType, String definitionName,
       String definitionServiceName, String definitionComponentName) {
 
@@ -326,9 +374,37 @@ public class AlertDefinitionHash {
         definitionSourceType, definitionName,
         definitionServiceName, definitionComponentName);
 
-    // invalidate all returned hosts
-    for (String hostName : affectedHosts) {
-      invalidate(clusterName, hostName);
+    if (definitionSourceType == SourceType.AGGREGATE) {
+      return affectedHosts;
+    }
+
+    m_version.incrementAndGet();
+
+    AlertDefinitionEntity definition = m_definitionDao.findById(definitionId);
+    byte[] digest = null;
+    if (null != definition && definition.getSourceType() != SourceType.AGGREGATE) {
+      digest = digest(definition.getHash());
+    }
+
+    // hosts are either given the new digest of the definition or have the old
+    // one taken out, which also covers hosts it no longer applies to
+    affectedHosts = new HashSet<String>(affectedHosts);
+    for (Entry<String, ConcurrentMap<String, HostDefinitions>> entry : m_hashes.entrySet()) {
+      HostDefinitions hostDefinitions = entry.getValue().get(clusterName);
+      if (null == hostDefinitions) {
+        continue;
+      }
+
+      boolean changed;
+      if (null != digest && hostDefinitions.isAssociated(definition)) {
+        changed = hostDefinitions.put(definitionId, digest);
+      } else {
+        changed = hostDefinitions.remove(definitionId);
+      }
+
+      if (changed) {
+        affectedHosts.add(entry.getKey());
+      }
     }
 
     return affectedHosts;
@@ -529,46 +605,47 @@ public class AlertDefinitionHash {
    *          the cluster name (not {@code null}).
    * @param hostName
    *          the host name (not {@code null}).
-   * @return the unique hash or {@value #NULL_MD5_HASH} if none.
+   * @return the definitions of the host, whose hash is
+   *         {@value #NULL_MD5_HASH} if there are none (never {@code null}).
    */
-  private String hash(String clusterName, String hostName) {
+  private HostDefinitions hash(String clusterName, String hostName) {
+    HostDefinitions hostDefinitions = new HostDefinitions();
     Set<AlertDefinitionEntity> definitions = getAlertDefinitionEntities(
-        clusterName,
-        hostName);
+        clusterName, hostName, hostDefinitions);
 
-    // no definitions found for this host, don't bother hashing
-    if( null == definitions || definitions.size() == 0 ) {
-      return NULL_MD5_HASH;
-    }
+    for (AlertDefinitionEntity definition : definitions) {
+      // strip out all AGGREGATE types
+      if (SourceType.AGGREGATE.equals(definition.getSourceType())) {
+        continue;
+      }
 
-    // strip out all AGGREGATE types
-    Iterator<AlertDefinitionEntity> iterator = definitions.iterator();
-    while (iterator.hasNext()) {
-      if (SourceType.AGGREGATE.equals(iterator.next().getSourceType())) {
-        iterator.remove();
+      byte[] digest = digest(definition.getHash());
+      if (null != digest) {
+        hostDefinitions.put(definition.getDefinitionId(), digest);
       }
     }
 
-    // build the UUIDs
-    List<String> uuids = new ArrayList<String>(definitions.size());
-    for (AlertDefinitionEntity definition : definitions) {
-      uuids.add(definition.getHash());
-    }
+    return hostDefinitions;
+  }
 
-    // sort the UUIDs so that the digest is created with bytes in the same order
-    Collections.sort(uuids);
+  /**
+   * Calculates the MD5 digest of the hash of a single definition.
+   *
+   * @param definitionHash
+   *          the hash of the definition.
+   * @return the digest, or {@code null} if it could not be calculated.
+   */
+  private static byte[] digest(String definitionHash) {
+    if (null == definitionHash) {
+      return null;
+    }
 
     try {
       MessageDigest digest = MessageDigest.getInstance("MD5");
-      for (String uuid : uuids) {
-        digest.update(uuid.getBytes());
-      }
-
-      byte[] hashBytes = digest.digest();
-      return Hex.encodeHexString(hashBytes);
+      return digest.digest(definitionHash.getBytes());
     } catch (NoSuchAlgorithmException nsae) {
       LOG.warn("Unable to calculate MD5 alert definition hash", nsae);
-      return NULL_MD5_HASH;
+      return null;
     }
   }
 
@@ -590,6 +667,25 @@ public class AlertDefinitionHash {
    */
   private Set<AlertDefinitionEntity> getAlertDefinitionEntities(
       String clusterName, String hostName) {
+    return getAlertDefinitionEntities(clusterName, hostName, null);
+  }
+
+  /**
+   * Gets the alert definition entities for the specified host, recording the
+   * components of the host and the services it is a master of.
+   *
+   * @param clusterName
+   *          the cluster name (not {@code null}).
+   * @param hostName
+   *          the host name (not {@code null}).
+   * @param hostDefinitions
+   *          the definitions of the host to record its components in, or
+   *          {@code null} for none.
+   * @return the alert definitions for the host, or an empty set (never
+   *         {@code null}).
+   */
+  private Set<AlertDefinitionEntity> getAlertDefinitionEntities(
+      String clusterName, String hostName, HostDefinitions hostDefinitions) {
 
     Set<AlertDefinitionEntity> definitions = new HashSet<AlertDefinitionEntity>();
 
@@ -614,6 +710,10 @@ public class AlertDefinitionHash {
           // add all alerts for this service/component pair
           definitions.addAll(m_definitionDao.findByServiceComponent(clusterId,
               serviceName, componentName));
+
+          if (null != hostDefinitions) {
+            hostDefinitions.addComponent(serviceName, componentName);
+          }
         }
 
         // for every service, get the master components and see if the host
@@ -633,6 +733,10 @@ public class AlertDefinitionHash {
           }
         }
 
+        if (null != hostDefinitions) {
+          hostDefinitions.addMasterServices(services);
+        }
+
         // add all service scoped alerts
         if (services.size() > 0) {
           definitions.addAll(m_definitionDao.findByServiceMaster(clusterId,
@@ -649,4 +753,108 @@ public class AlertDefinitionHash {
 
     return definitions;
   }
+
+  /**
+   * The digests of the definitions of a host in one cluster, combined into
+   * the hash of the host, and what the host runs.
+   */
+  private static final class HostDefinitions {
+    /**
+     * The service/component pairs of the host.
+     */
+    private final Set<String> m_components = new HashSet<String>();
+
+    /**
+     * The services the host runs a master component of.
+     */
+    private final Set<String> m_masterServices = new HashSet<String>();
+
+    /**
+     * The MD5 digest of every definition by definition ID.
+     */
+    private final Map<Long, byte[]> m_digests = new HashMap<Long, byte[]>();
+
+    /**
+     * The XOR of all digests.
+     */
+    private final byte[] m_combined = new byte[16];
+
+    private volatile String m_hash = NULL_MD5_HASH;
+
+    private void addComponent(String serviceName, String componentName) {
+      m_components.add(serviceName + "/" + componentName);
+    }
+
+    private void addMasterServices(Set<String> services) {
+      m_masterServices.addAll(services);
+    }
+
+    /**
+     * Gets whether the definition is scheduled on this host, following the
+     * same rules as {@link AlertDefinitionHash#getAlertDefinitions}.
+     */
+    private boolean isAssociated(AlertDefinitionEntity definition) {
+      String serviceName = definition.getServiceName();
+      String componentName = definition.getComponentName();
+
+      if (Services.AMBARI.name().equals(serviceName)
+          && Components.AMBARI_AGENT.name().equals(componentName)) {
+        return true;
+      }
+
+      if (null != componentName) {
+        return m_components.contains(serviceName + "/" + componentName);
+      }
+
+      return definition.getScope() == Scope.SERVICE
+          && m_masterServices.contains(serviceName);
+    }
+
+    /**
+     * Adds or replaces the digest of a definition.
+     *
+     * @return {@code true} if the hash changed
+     */
+    private synchronized boolean put(long definitionId, byte[] digest) {
+      byte[] previous = m_digests.put(definitionId, digest);
+      if (null != previous && Arrays.equals(previous, digest)) {
+        return false;
+      }
+
+      if (null != previous) {
+        combine(previous);
+      }
+
+      combine(digest);
+      return true;
+    }
+
+    /**
+     * Takes the digest of a definition out of the hash.
+     *
+     * @return {@code true} if the hash changed
+     */
+    private synchronized boolean remove(long definitionId) {
+      byte[] previous = m_digests.remove(definitionId);
+      if (null == previous) {
+        return false;
+      }
+
+      combine(previous);
+      return true;
+    }
+
+    private void combine(byte[] digest) {
+      for (int i = 0; i < m_combined.length; i++) {
+        m_combined[i] ^= digest[i];
+      }
+
+      m_hash = m_digests.isEmpty() ? NULL_MD5_HASH
+          : Hex.encodeHexString(m_combined);
+    }
+
+    private String getHash() {
+      return m_hash;
+    }
+  }
 }
@@ -118,6 +118,7 @@ public class HostImpl implements Host {
   private ClusterDAO clusterDAO;
   private Clusters clusters;
   private HostConfigMappingDAO hostConfigMappingDAO;
+  private HostStateFlusher hostStateFlusher;
 
   private long lastHeartbeatTime = 0L;
   private AgentEnv lastAgentEnv = null;
@@ -126,6 +127,12 @@ public class HostImpl implements Host {
   private boolean persisted = false;
   private Integer currentPingPort = null;
 
+  /**
+   * Set while {@link #importHostInfo(HostInfo)} copies the host information,
+   * so that the setters it calls don't save the host one by one.
+   */
+  private boolean importingHostInfo = false;
+
   private final StateMachine<HostState, HostEventType, HostEvent> stateMachine;
   private Map<Long, MaintenanceState> maintMap = null;
 
@@ -245,6 +252,7 @@ public class HostImpl implements Host {
     clusterDAO = injector.getInstance(ClusterDAO.class);
     clusters = injector.getInstance(Clusters.class);
     hostConfigMappingDAO = injector.getInstance(HostConfigMappingDAO.class);
+    hostStateFlusher = injector.getInstance(HostStateFlusher.class);
     //todo: proper static injection
     HostImpl.topologyManager = injector.getInstance(TopologyManager.class);
 
@@ -402,6 +410,7 @@ public class HostImpl implements Host {
   public void importHostInfo(HostInfo hostInfo) {
     try {
       writeLock.lock();
+      importingHostInfo = true;
 
       if (hostInfo.getIPAddress() != null
           && !hostInfo.getIPAddress().isEmpty()) {
@@ -497,9 +506,11 @@ public class HostImpl implements Host {
 
       setHostAttributes(attrs);
 
+      importingHostInfo = false;
       saveIfPersisted();
     }
     finally {
+      importingHostInfo = false;
       writeLock.unlock();
     }
   }
@@ -576,6 +587,11 @@ public class HostImpl implements Host {
             + ", event=" + event);
         throw e;
       }
+
+      // changes made by a real transition are not deferred
+      if (oldState != stateMachine.getCurrentState()) {
+        saveIfPersisted();
+      }
     }
     finally {
       writeLock.unlock();
@@ -782,7 +798,7 @@ public class HostImpl implements Host {
       HostStateEntity hostStateEntity = getHostStateEntity();
       if (hostStateEntity != null) {
         getHostStateEntity().setAvailableMem(availableMemBytes);
-        saveIfPersisted();
+        saveLater();
       }
     }
     finally {
@@ -925,7 +941,7 @@ public class HostImpl implements Host {
           setStatus(HealthStatus.UNKNOWN.name());
         }
 
-        saveIfPersisted();
+        saveLater();
       }
     } finally {
       writeLock.unlock();
@@ -1210,6 +1226,23 @@ public class HostImpl implements Host {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void persistLater() {
+    writeLock.lock();
+    try {
+      if (!persisted) {
+        persist();
+      } else {
+        saveLater();
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
   @Transactional
   void persistEntities() {
     hostDAO.create(hostEntity);
@@ -1233,11 +1266,50 @@ public class HostImpl implements Host {
     }
   }
 
-  @Transactional
+  /**
+   * Writes the host to the database right away, along with any change which
+   * is waiting for the {@link HostStateFlusher}.
+   */
   void saveIfPersisted() {
-    if (isPersisted()) {
+    if (importingHostInfo || !isPersisted()) {
+      return;
+    }
+
+    if (null != hostStateFlusher) {
+      hostStateFlusher.discard(getHostName());
+    }
+
+    mergeEntities();
+  }
+
+  /**
+   * Writes the host to the database when the {@link HostStateFlusher} runs
+   * next, or right away if write-behind is disabled. Used for changes which
+   * come with every heartbeat.
+   */
+  void saveLater() {
+    if (importingHostInfo || !isPersisted()) {
+      return;
+    }
+
+    if (null != hostStateFlusher && hostStateFlusher.isEnabled()) {
+      hostStateFlusher.markDirty(this);
+    } else {
+      saveIfPersisted();
+    }
+  }
+
+  /**
+   * Merges the host entities.
+   */
+  @Transactional
+  void mergeEntities() {
+    readLock.lock();
+    try {
       hostDAO.merge(hostEntity);
       hostStateDAO.merge(hostStateEntity);
+    } finally {
+      readLock.unlock();
     }
   }
 
@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state.host;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ambari.server.events.HostRemovedEvent;
+import org.apache.ambari.server.events.publishers.AmbariEventPublisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.eventbus.Subscribe;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.persist.Transactional;
+
+/**
+ * The {@link HostStateFlusher} keeps track of the hosts whose
+ * {@link org.apache.ambari.server.orm.entities.HostEntity} and
+ * {@link org.apache.ambari.server.orm.entities.HostStateEntity} were changed
+ * by heartbeats but not yet written to the database. The pending hosts are
+ * merged together in a single transaction by {@link #flush()}, so the updates
+ * are sent as JDBC batches instead of one transaction per host and heartbeat.
+ * <p/>
+ * Write-behind is only used while the flusher is enabled, which is done by
+ * the {@link org.apache.ambari.server.state.services.HostStateFlushService}.
+ * Otherwise hosts are saved right away.
+ */
+@Singleton
+public class HostStateFlusher {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(HostStateFlusher.class);
+
+  /**
+   * The hosts waiting to be written, by host name.
+   */
+  private final ConcurrentMap<String, HostImpl> pendingHosts =
+      new ConcurrentHashMap<String, HostImpl>();
+
+  private volatile boolean enabled = false;
+
+  private final AtomicLong flushedCount = new AtomicLong();
+  private final AtomicLong coalescedCount = new AtomicLong();
+  private final AtomicLong failureCount = new AtomicLong();
+  private volatile long lastFlushTime = 0L;
+  private volatile int lastFlushSize = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param publisher  the publisher used to be notified about removed hosts
+   */
+  @Inject
+  public HostStateFlusher(AmbariEventPublisher publisher) {
+    publisher.register(this);
+  }
+
+  /**
+   * @return {@code true} if changes can be deferred to the next flush
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Turns write-behind on or off. Pending hosts are kept when turning it off,
+   * so a final {@link #flush()} still writes them.
+   *
+   * @param enabled  {@code true} to defer heartbeat changes
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Marks the host as changed, to be written by the next {@link #flush()}.
+   *
+   * @param host  the host
+   */
+  void markDirty(HostImpl host) {
+    if (null != pendingHosts.put(host.getHostName(), host)) {
+      coalescedCount.incrementAndGet();
+    }
+  }
+
+  /**
+   * Forgets about pending changes of the host, either because they were just
+   * written or because the host is gone.
+   *
+   * @param hostName  the host name
+   */
+  void discard(String hostName) {
+    pendingHosts.remove(hostName);
+  }
+
+  /**
+   * Drops pending changes of removed hosts, merging them would create the
+   * host again.
+   *
+   * @param event  the host removed event
+   */
+  @Subscribe
+  public void onHostRemoved(HostRemovedEvent event) {
+    discard(event.getHostName());
+  }
+
+  /**
+   * Writes all pending hosts to the database. If the write fails, the hosts
+   * are kept to be written by the next flush.
+   *
+   * @return the number of hosts written
+   */
+  public int flush() {
+    if (pendingHosts.isEmpty()) {
+      return 0;
+    }
+
+    List<HostImpl> hosts = new ArrayList<HostImpl>(pendingHosts.size());
+    for (String hostName : pendingHosts.keySet()) {
+      HostImpl host = pendingHosts.remove(hostName);
+      if (null != host) {
+        hosts.add(host);
+      }
+    }
+
+    long start = System.currentTimeMillis();
+    try {
+      mergeHosts(hosts);
+    } catch (RuntimeException e) {
+      failureCount.incrementAndGet();
+      for (HostImpl host : hosts) {
+        pendingHosts.putIfAbsent(host.getHostName(), host);
+      }
+      throw e;
+    }
+
+    lastFlushTime = System.currentTimeMillis() - start;
+    lastFlushSize = hosts.size();
+    flushedCount.addAndGet(hosts.size());
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Wrote the state of {} hosts in {}ms", hosts.size(), lastFlushTime);
+    }
+
+    return hosts.size();
+  }
+
+  /**
+   * Merges the entities of the hosts in one transaction.
+   *
+   * @param hosts  the hosts
+   */
+  @Transactional
+  void mergeHosts(Collection<HostImpl> hosts) {
+    for (HostImpl host : hosts) {
+      host.mergeEntities();
+    }
+  }
+
+  /**
+   * @return the number of hosts waiting to be written
+   */
+  public int getPendingCount() {
+    return pendingHosts.size();
+  }
+
+  /**
+   * @return the number of host writes done by flushes
+   */
+  public long getFlushedCount() {
+    return flushedCount.get();
+  }
+
+  /**
+   * @return the number of changes which were merged into an already pending
+   *         write of the same host
+   */
+  public long getCoalescedCount() {
+    return coalescedCount.get();
+  }
+
+  /**
+   * @return the number of flushes which failed
+   */
+  public long getFailureCount() {
+    return failureCount.get();
+  }
+
+  /**
+   * @return the duration in milliseconds of the last flush
+   */
+  public long getLastFlushTime() {
+    return lastFlushTime;
+  }
+
+  /**
+   * @return the number of hosts written by the last flush
+   */
+  public int getLastFlushSize() {
+    return lastFlushSize;
+  }
+}
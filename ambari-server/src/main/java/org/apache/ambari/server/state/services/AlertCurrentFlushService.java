@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state.services;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ambari.server.AmbariService;
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.state.alert.AlertCurrentStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.inject.Inject;
+
+/**
+ * The {@link AlertCurrentFlushService} periodically writes the latest
+ * timestamp and text of current alerts whose state did not change, as
+ * deferred by the {@link AlertCurrentStore}. The interval is set by
+ * {@link Configuration#getAlertCurrentFlushInterval()}; if it is {@code 0},
+ * write-behind stays disabled and every received alert is written right away.
+ */
+@AmbariService
+public class AlertCurrentFlushService extends AbstractScheduledService {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(AlertCurrentFlushService.class);
+
+  /**
+   * The current alerts waiting to be written.
+   */
+  @Inject
+  private AlertCurrentStore m_currentStore;
+
+  /**
+   * The configuration instance to get Ambari properties.
+   */
+  @Inject
+  private Configuration m_configuration;
+
+  /**
+   * Constructor.
+   */
+  public AlertCurrentFlushService() {
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected Scheduler scheduler() {
+    int interval = Math.max(1, m_configuration.getAlertCurrentFlushInterval());
+    return Scheduler.newFixedDelaySchedule(interval, interval, TimeUnit.SECONDS);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void startUp() throws Exception {
+    boolean enabled = m_configuration.getAlertCurrentFlushInterval() > 0;
+    m_currentStore.setEnabled(enabled);
+
+    LOG.info("Write-behind of current alert timestamps is {}", enabled ? "enabled" : "disabled");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void runOneIteration() throws Exception {
+    try {
+      m_currentStore.flush();
+    } catch (Exception exception) {
+      LOG.error("Unable to write the latest timestamp of {} current alerts, it will be retried",
+          m_currentStore.getPendingCount(), exception);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Writes whatever is still pending so that no alert timestamp is lost.
+   */
+  @Override
+  protected void shutDown() throws Exception {
+    m_currentStore.setEnabled(false);
+    m_currentStore.flush();
+  }
+}
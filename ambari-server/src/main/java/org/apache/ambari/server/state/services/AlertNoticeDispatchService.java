@@ -28,16 +28,20 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.Unmarshaller;
@@ -48,6 +52,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 import org.apache.ambari.server.AmbariService;
 import org.apache.ambari.server.api.services.AmbariMetaInfo;
 import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.controller.ServerMetricsRegistry.MetricsSource;
 import org.apache.ambari.server.events.AlertEvent;
 import org.apache.ambari.server.notifications.DispatchCallback;
 import org.apache.ambari.server.notifications.DispatchCredentials;
@@ -98,14 +103,33 @@ import com.google.inject.Provider;
  * {@link #startUp()}. If there is a problem parsing them, the service will
  * still startup normally, producing an error in logs. It will fall back to
  * simple string concatenation for {@link Notification} content in this case.
+ * <p/>
+ * Each type of dispatcher has its own pool of threads, sized by
+ * {@link Configuration#getAlertDispatchConcurrency(String)}, so that the
+ * targets of a type are dispatched in parallel and a slow type, such as a
+ * script, does not hold back the others. Targets which do not support digests
+ * receive their notifications in a single batch which is limited to
+ * {@link Configuration#getAlertDispatchRateLimit()} notices per run; the
+ * others stay {@link NotificationState#PENDING} until the next run. A rate
+ * limit of {@code 0} or less does not limit the notices.
+ * <p/>
+ * The dispatch statistics are reported to the server metrics under
+ * {@link #METRICS_NAME}.
  */
 @AmbariService
-public class AlertNoticeDispatchService extends AbstractScheduledService {
+public class AlertNoticeDispatchService extends AbstractScheduledService
+    implements MetricsSource {
   /**
    * Logger.
    */
   private static final Logger LOG = LoggerFactory.getLogger(AlertNoticeDispatchService.class);
 
+  /**
+   * The name the dispatch statistics are reported under in the server
+   * metrics.
+   */
+  public static final String METRICS_NAME = "alert_notice_dispatch";
+
   /**
    * The log tag to pass to Apache Velocity during rendering.
    */
@@ -188,18 +212,53 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
   private Provider<AmbariMetaInfo> m_metaInfo;
 
   /**
-   * The executor responsible for dispatching.
+   * The executor responsible for dispatching all types, set only by unit
+   * tests.
    */
   private Executor m_executor;
 
+  /**
+   * The executors responsible for dispatching, by the type of dispatcher.
+   * These are created when a type is first dispatched.
+   */
+  private final ConcurrentMap<String, ThreadPoolExecutor> m_executors =
+      new ConcurrentHashMap<String, ThreadPoolExecutor>();
+
+  /**
+   * The number of notices dispatched since the service started.
+   */
+  private final AtomicLong m_dispatchedCount = new AtomicLong();
+
+  /**
+   * The number of notices delivered since the service started.
+   */
+  private final AtomicLong m_deliveredCount = new AtomicLong();
+
+  /**
+   * The number of notices which failed since the service started.
+   */
+  private final AtomicLong m_failedCount = new AtomicLong();
+
+  /**
+   * The number of notices left {@link NotificationState#PENDING} by the last
+   * run.
+   */
+  private volatile int m_backlog = 0;
+
+  /**
+   * The notices dispatched per second between the last two runs.
+   */
+  private volatile double m_drainRate = 0;
+
+  /**
+   * The time that the last run started, or {@code 0} if none has.
+   */
+  private volatile long m_lastRunTime = 0;
+
   /**
    * Constructor.
    */
   public AlertNoticeDispatchService() {
-    m_executor = new ThreadPoolExecutor(0, 2, 5L, TimeUnit.MINUTES,
-        new LinkedBlockingQueue<Runnable>(), new AlertDispatchThreadFactory(),
-        new ThreadPoolExecutor.CallerRunsPolicy());
-
     GsonBuilder gsonBuilder = new GsonBuilder();
     gsonBuilder.registerTypeAdapter(AlertTargetProperties.class,
         new AlertTargetPropertyDeserializer());
@@ -255,8 +314,24 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
   }
 
   /**
-   * Sets the {@link Executor} to use when dispatching {@link Notification}s.
-   * This should only be used by unit tests to provide a mock executor.
+   * {@inheritDoc}
+   * <p/>
+   * Stops the dispatch threads once the notifications already submitted have
+   * been dispatched.
+   */
+  @Override
+  protected void shutDown() throws Exception {
+    super.shutDown();
+
+    for (ThreadPoolExecutor executor : m_executors.values()) {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Sets the {@link Executor} to use when dispatching {@link Notification}s
+   * of every type. This should only be used by unit tests to provide a mock
+   * executor.
    *
    * @param executor
    *          the executor to use (not {@code null).
@@ -266,13 +341,88 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
     m_executor = executor;
   }
 
+  /**
+   * Gets the number of notices left {@link NotificationState#PENDING} by the
+   * last run because of the rate limit of their targets.
+   *
+   * @return the number of notices waiting for the next run.
+   */
+  public int getBacklog() {
+    return m_backlog;
+  }
+
+  /**
+   * Gets the number of notifications submitted to the dispatch threads which
+   * have not yet been dispatched.
+   *
+   * @return the number of queued notifications of all types.
+   */
+  public int getQueuedCount() {
+    int queued = 0;
+    for (ThreadPoolExecutor executor : m_executors.values()) {
+      queued += executor.getQueue().size();
+    }
+
+    return queued;
+  }
+
+  /**
+   * Gets the rate at which pending notices were dispatched between the last
+   * two runs.
+   *
+   * @return the notices dispatched per second, or {@code 0} before the
+   *         second run.
+   */
+  public double getDrainRate() {
+    return m_drainRate;
+  }
+
+  /**
+   * @return the number of notices dispatched since the service started.
+   */
+  public long getDispatchedCount() {
+    return m_dispatchedCount.get();
+  }
+
+  /**
+   * @return the number of notices delivered since the service started.
+   */
+  public long getDeliveredCount() {
+    return m_deliveredCount.get();
+  }
+
+  /**
+   * @return the number of notices which failed since the service started.
+   */
+  public long getFailedCount() {
+    return m_failedCount.get();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Map<String, Number> getMetrics() {
+    Map<String, Number> metrics = new HashMap<String, Number>();
+    metrics.put("backlog", getBacklog());
+    metrics.put("queued", getQueuedCount());
+    metrics.put("drain_rate", getDrainRate());
+    metrics.put("dispatched", getDispatchedCount());
+    metrics.put("delivered", getDeliveredCount());
+    metrics.put("failed", getFailedCount());
+    return metrics;
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   protected void runOneIteration() throws Exception {
+    long runTime = System.currentTimeMillis();
+
     List<AlertNoticeEntity> pending = m_dao.findPendingNotices();
     if (pending.size() == 0) {
+      updateMetrics(runTime, 0, 0);
       return;
     }
 
@@ -280,7 +430,7 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
         pending.size());
 
     Map<AlertTargetEntity, List<AlertNoticeEntity>> aggregateMap =
-        new HashMap<AlertTargetEntity, List<AlertNoticeEntity>>(pending.size());
+        new LinkedHashMap<AlertTargetEntity, List<AlertNoticeEntity>>();
 
     // combine all histories by target
     for (AlertNoticeEntity notice : pending) {
@@ -292,23 +442,56 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
         aggregateMap.put(target, notices);
       }
 
-      // at this point, notices have been processed but not yet delivered
-      notice.setNotifyState(NotificationState.DISPATCHED);
-      notice = m_dao.merge(notice);
-
       notices.add(notice);
     }
 
+    // targets without digest support only get as many notices as the rate
+    // limit allows; the rest are left for the next run, a limit of 0 or less
+    // does not limit them
+    int rateLimit = m_configuration.getAlertDispatchRateLimit();
+    Map<AlertTargetEntity, NotificationDispatcher> dispatchers =
+        new HashMap<AlertTargetEntity, NotificationDispatcher>(aggregateMap.size());
+
+    List<String> dispatchedUuids = new ArrayList<String>(pending.size());
+
+    for (Entry<AlertTargetEntity, List<AlertNoticeEntity>> entry : aggregateMap.entrySet()) {
+      AlertTargetEntity target = entry.getKey();
+      List<AlertNoticeEntity> notices = entry.getValue();
+
+      String targetType = target.getNotificationType();
+      NotificationDispatcher dispatcher = m_dispatchFactory.getDispatcher(targetType);
+      dispatchers.put(target, dispatcher);
+
+      if (rateLimit > 0 && !dispatcher.isDigestSupported()
+          && notices.size() > rateLimit) {
+        notices = notices.subList(0, rateLimit);
+        entry.setValue(notices);
+      }
+
+      // at this point, notices have been processed but not yet delivered
+      for (AlertNoticeEntity notice : notices) {
+        notice.setNotifyState(NotificationState.DISPATCHED);
+        dispatchedUuids.add(notice.getUuid());
+      }
+    }
+
+    // mark all of the notices as DISPATCHED at once before any of them can
+    // be called back as DELIVERED or FAILED
+    m_dao.updateNoticeStates(dispatchedUuids, NotificationState.DISPATCHED);
+    updateMetrics(runTime, dispatchedUuids.size(),
+        pending.size() - dispatchedUuids.size());
+
     // now that all of the notices are grouped by target, dispatch them
-    Set<AlertTargetEntity> targets = aggregateMap.keySet();
-    for (AlertTargetEntity target : targets) {
-      List<AlertNoticeEntity> notices = aggregateMap.get(target);
+    for (Entry<AlertTargetEntity, List<AlertNoticeEntity>> entry : aggregateMap.entrySet()) {
+      AlertTargetEntity target = entry.getKey();
+      List<AlertNoticeEntity> notices = entry.getValue();
       if (null == notices || notices.size() == 0) {
         continue;
       }
 
       String targetType = target.getNotificationType();
-      NotificationDispatcher dispatcher = m_dispatchFactory.getDispatcher(targetType);
+      NotificationDispatcher dispatcher = dispatchers.get(target);
+      Executor executor = getExecutor(targetType);
 
       // create a single digest notification if supported
       if (dispatcher.isDigestSupported()) {
@@ -333,7 +516,7 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
 
           // dispatch
           DispatchRunnable runnable = new DispatchRunnable(dispatcher, notification);
-          m_executor.execute(runnable);
+          executor.execute(runnable);
         } catch (Exception exception) {
           LOG.error("Unable to create notification for alerts", exception);
 
@@ -344,28 +527,100 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
         }
       } else {
         // the dispatcher does not support digest, each notice must have a 1:1
-        // notification created for it
-        for (AlertNoticeEntity notice : notices) {
-          AlertNotification notification = buildNotificationFromTarget(target);
-          AlertHistoryEntity history = notice.getAlertHistory();
-          notification.CallbackIds = Collections.singletonList(notice.getUuid());
+        // notification created for it; they are rendered and dispatched
+        // together by one of the dispatch threads
+        executor.execute(new BatchDispatchRunnable(dispatcher, target, notices));
+      }
+    }
 
-          // populate the subject and body fields; if there is a problem
-          // generating the content, then mark the notices as FAILED
-          try {
-            renderNotificationContent(dispatcher, notification, history, target);
+    LOG.info(
+        "Dispatched {} alert notices to {} targets, {} notices are deferred by the rate limit of {}",
+        dispatchedUuids.size(), aggregateMap.size(), m_backlog, rateLimit);
+  }
 
-            // dispatch
-            DispatchRunnable runnable = new DispatchRunnable(dispatcher, notification);
-            m_executor.execute(runnable);
-          } catch (Exception exception) {
-            LOG.error("Unable to create notification for alert", exception);
+  /**
+   * Updates the backlog and drain rate of the notices after a run.
+   *
+   * @param runTime
+   *          the time that the run started.
+   * @param dispatched
+   *          the number of notices dispatched by the run.
+   * @param backlog
+   *          the number of notices left pending by the run.
+   */
+  private void updateMetrics(long runTime, int dispatched, int backlog) {
+    m_dispatchedCount.addAndGet(dispatched);
+    m_backlog = backlog;
 
-            // mark these as failed
-            notification.Callback.onFailure(notification.CallbackIds);
-          }
-        }
+    if (m_lastRunTime > 0 && runTime > m_lastRunTime) {
+      m_drainRate = dispatched * 1000.0 / (runTime - m_lastRunTime);
+    }
+
+    m_lastRunTime = runTime;
+  }
+
+  /**
+   * Gets the {@link Executor} which dispatches the notifications of a type of
+   * dispatcher, creating it the first time the type is dispatched.
+   *
+   * @param notificationType
+   *          the type of the dispatcher (not {@code null}).
+   * @return the executor for the type (never {@code null}).
+   */
+  private Executor getExecutor(String notificationType) {
+    if (null != m_executor) {
+      return m_executor;
+    }
+
+    ThreadPoolExecutor executor = m_executors.get(notificationType);
+    if (null == executor) {
+      int concurrency = Math.max(1,
+          m_configuration.getAlertDispatchConcurrency(notificationType));
+
+      executor = new ThreadPoolExecutor(concurrency, concurrency, 5L,
+          TimeUnit.MINUTES, new LinkedBlockingQueue<Runnable>(),
+          new AlertDispatchThreadFactory(notificationType));
+
+      executor.allowCoreThreadTimeOut(true);
+
+      ThreadPoolExecutor existing = m_executors.putIfAbsent(notificationType,
+          executor);
+
+      if (null != existing) {
+        executor.shutdown();
+        executor = existing;
+      }
+    }
+
+    return executor;
+  }
+
+  /**
+   * Updates the {@link AlertNoticeEntity}s matching the given UUIDs with the
+   * specified state.
+   *
+   * @param uuids
+   *          the UUIDs of the notices (not {@code null}).
+   * @param state
+   *          the new state of the notices (not {@code null}).
+   */
+  private void updateAlertNotices(List<String> uuids, NotificationState state) {
+    if (uuids.isEmpty()) {
+      return;
+    }
+
+    try {
+      m_dao.updateNoticeStates(uuids, state);
+
+      if (state == NotificationState.DELIVERED) {
+        m_deliveredCount.addAndGet(uuids.size());
+      } else if (state == NotificationState.FAILED) {
+        m_failedCount.addAndGet(uuids.size());
       }
+    } catch (Exception exception) {
+      LOG.error(
+          "Unable to update {} alert notices to {}, notifications will continue to be sent",
+          uuids.size(), state, exception);
     }
   }
 
@@ -633,13 +888,28 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
 
     private static final AtomicInteger s_threadIdPool = new AtomicInteger(1);
 
+    /**
+     * The type of dispatcher that the threads dispatch to.
+     */
+    private final String m_notificationType;
+
+    /**
+     * Constructor.
+     *
+     * @param notificationType
+     *          the type of dispatcher that the threads dispatch to.
+     */
+    private AlertDispatchThreadFactory(String notificationType) {
+      m_notificationType = notificationType;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public Thread newThread(Runnable r) {
-      Thread thread = new Thread(r, "alert-dispatch-"
-          + s_threadIdPool.getAndIncrement());
+      Thread thread = new Thread(r, "alert-dispatch-" + m_notificationType
+          + "-" + s_threadIdPool.getAndIncrement());
 
       thread.setDaemon(false);
       thread.setPriority(Thread.NORM_PRIORITY - 1);
@@ -660,9 +930,7 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
      */
     @Override
     public void onSuccess(List<String> callbackIds) {
-      for (String callbackId : callbackIds) {
-        updateAlertNotice(callbackId, NotificationState.DELIVERED);
-      }
+      updateAlertNotices(callbackIds, NotificationState.DELIVERED);
     }
 
     /**
@@ -670,32 +938,117 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
      */
     @Override
     public void onFailure(List<String> callbackIds) {
-      for (String callbackId : callbackIds) {
-        updateAlertNotice(callbackId, NotificationState.FAILED);
+      updateAlertNotices(callbackIds, NotificationState.FAILED);
+    }
+  }
+
+  /**
+   * The {@link AlertNoticeBatchCallback} collects the callbacks of a batch of
+   * {@link Notification}s so that their {@link AlertNoticeEntity}s are updated
+   * together once the batch has been dispatched. Callbacks which arrive after
+   * that, from dispatchers which complete asynchronously, are updated right
+   * away.
+   */
+  private final class AlertNoticeBatchCallback implements DispatchCallback {
+
+    private final List<String> m_delivered = new ArrayList<String>();
+    private final List<String> m_failed = new ArrayList<String>();
+    private boolean m_flushed = false;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void onSuccess(List<String> callbackIds) {
+      if (m_flushed) {
+        updateAlertNotices(callbackIds, NotificationState.DELIVERED);
+      } else {
+        m_delivered.addAll(callbackIds);
       }
     }
 
     /**
-     * Updates the {@link AlertNoticeEntity} matching the given UUID with the
-     * specified state.
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void onFailure(List<String> callbackIds) {
+      if (m_flushed) {
+        updateAlertNotices(callbackIds, NotificationState.FAILED);
+      } else {
+        m_failed.addAll(callbackIds);
+      }
+    }
+
+    /**
+     * Updates the notices called back so far.
+     */
+    private synchronized void flush() {
+      m_flushed = true;
+
+      updateAlertNotices(m_delivered, NotificationState.DELIVERED);
+      updateAlertNotices(m_failed, NotificationState.FAILED);
+
+      m_delivered.clear();
+      m_failed.clear();
+    }
+  }
+
+  /**
+   * The {@link BatchDispatchRunnable} renders and dispatches one
+   * {@link Notification} for each notice of a target which does not support
+   * digests, one after the other.
+   */
+  private final class BatchDispatchRunnable implements Runnable {
+
+    private final NotificationDispatcher m_dispatcher;
+    private final AlertTargetEntity m_target;
+    private final List<AlertNoticeEntity> m_notices;
+
+    /**
+     * Constructor.
      *
-     * @param uuid
-     * @param state
+     * @param dispatcher
+     *          the dispatcher to dispatch to (not {@code null}).
+     * @param target
+     *          the target of the notices (not {@code null}).
+     * @param notices
+     *          the notices to dispatch (not {@code null}).
+     */
+    private BatchDispatchRunnable(NotificationDispatcher dispatcher,
+        AlertTargetEntity target, List<AlertNoticeEntity> notices) {
+      m_dispatcher = dispatcher;
+      m_target = target;
+      m_notices = notices;
+    }
+
+    /**
+     * {@inheritDoc}
      */
-    private void updateAlertNotice(String uuid, NotificationState state) {
+    @Override
+    public void run() {
+      AlertNoticeBatchCallback callback = new AlertNoticeBatchCallback();
+
       try {
-        AlertNoticeEntity entity = m_dao.findNoticeByUuid(uuid);
-        if (null == entity) {
-          LOG.warn("Unable to find an alert notice with UUID {}", uuid);
-          return;
-        }
+        for (AlertNoticeEntity notice : m_notices) {
+          AlertNotification notification = buildNotificationFromTarget(m_target);
+          AlertHistoryEntity history = notice.getAlertHistory();
+          notification.Callback = callback;
+          notification.CallbackIds = Collections.singletonList(notice.getUuid());
+
+          // populate the subject and body fields; if there is a problem
+          // generating the content, then mark the notices as FAILED
+          try {
+            renderNotificationContent(m_dispatcher, notification, history, m_target);
+            m_dispatcher.dispatch(notification);
+          } catch (Exception exception) {
+            LOG.error("Unable to create notification for alert", exception);
 
-        entity.setNotifyState(state);
-        m_dao.merge(entity);
-      } catch (Exception exception) {
-        LOG.error(
-            "Unable to update the alert notice with UUID {} to {}, notifications will continue to be sent",
-            uuid, state, exception);
+            // mark these as failed
+            notification.Callback.onFailure(notification.CallbackIds);
+          }
+        }
+      } finally {
+        callback.flush();
       }
     }
   }
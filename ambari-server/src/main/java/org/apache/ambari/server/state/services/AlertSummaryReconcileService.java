@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state.services;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ambari.server.AmbariService;
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.state.alert.AlertCurrentStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.inject.Inject;
+
+/**
+ * The {@link AlertSummaryReconcileService} periodically compares the number
+ * of current alerts by state, which the {@link AlertCurrentStore} keeps for
+ * aggregate alerts, to the database. Summaries which drifted, for example
+ * because current alerts were changed outside of the alert listeners, are
+ * loaded again. The interval is set by
+ * {@link Configuration#getAlertSummaryReconcileInterval()}.
+ */
+@AmbariService
+public class AlertSummaryReconcileService extends AbstractScheduledService {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(AlertSummaryReconcileService.class);
+
+  /**
+   * The current alerts whose summaries are compared.
+   */
+  @Inject
+  private AlertCurrentStore m_currentStore;
+
+  /**
+   * The configuration instance to get Ambari properties.
+   */
+  @Inject
+  private Configuration m_configuration;
+
+  /**
+   * Constructor.
+   */
+  public AlertSummaryReconcileService() {
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected Scheduler scheduler() {
+    int interval = Math.max(1, m_configuration.getAlertSummaryReconcileInterval());
+    return Scheduler.newFixedDelaySchedule(interval, interval, TimeUnit.SECONDS);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void runOneIteration() throws Exception {
+    try {
+      m_currentStore.reconcile();
+    } catch (Exception exception) {
+      LOG.error("Unable to compare the alert summaries to the database", exception);
+    }
+  }
+}
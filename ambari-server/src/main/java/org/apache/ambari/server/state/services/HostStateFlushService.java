@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state.services;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ambari.server.AmbariService;
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.state.host.HostStateFlusher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.inject.Inject;
+
+/**
+ * The {@link HostStateFlushService} periodically writes the host state which
+ * was changed by heartbeats and deferred by the {@link HostStateFlusher}. The
+ * interval is set by {@link Configuration#getHostStateFlushInterval()}; if it
+ * is {@code 0}, write-behind stays disabled and hosts are saved on every
+ * change.
+ */
+@AmbariService
+public class HostStateFlushService extends AbstractScheduledService {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(HostStateFlushService.class);
+
+  /**
+   * The hosts waiting to be written.
+   */
+  @Inject
+  private HostStateFlusher m_flusher;
+
+  /**
+   * The configuration instance to get Ambari properties.
+   */
+  @Inject
+  private Configuration m_configuration;
+
+  /**
+   * Constructor.
+   */
+  public HostStateFlushService() {
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected Scheduler scheduler() {
+    int interval = Math.max(1, m_configuration.getHostStateFlushInterval());
+    return Scheduler.newFixedDelaySchedule(interval, interval, TimeUnit.SECONDS);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void startUp() throws Exception {
+    boolean enabled = m_configuration.getHostStateFlushInterval() > 0;
+    m_flusher.setEnabled(enabled);
+
+    LOG.info("Write-behind of host heartbeat state is {}", enabled ? "enabled" : "disabled");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void runOneIteration() throws Exception {
+    try {
+      m_flusher.flush();
+    } catch (Exception exception) {
+      LOG.error("Unable to write the state of {} hosts, it will be retried",
+          m_flusher.getPendingCount(), exception);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Writes whatever is still pending so that no host state is lost.
+   */
+  @Override
+  protected void shutDown() throws Exception {
+    m_flusher.setEnabled(false);
+    m_flusher.flush();
+  }
+}
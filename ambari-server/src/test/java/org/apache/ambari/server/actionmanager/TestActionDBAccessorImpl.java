@@ -20,6 +20,8 @@ package org.apache.ambari.server.actionmanager;
 import static org.apache.ambari.server.orm.DBAccessor.DbType.ORACLE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -268,6 +270,33 @@ public class TestActionDBAccessorImpl {
     assertEquals(5, stages.size());
   }
 
+  @Test
+  public void testGetStagesInProgressAfterCommandReports() throws AmbariException {
+    populateActionDB(db, hostName, requestId, stageId);
+
+    List<Stage> stages = db.getStagesInProgress();
+    assertEquals(1, stages.size());
+    assertEquals(2, db.getCommandsInProgressCount());
+
+    // unchanged stages are served from memory
+    Stage stage = stages.get(0);
+    assertSame(stage, db.getStagesInProgress().get(0));
+
+    List<HostRoleCommand> commands = stage.getOrderedHostRoleCommands();
+    db.updateHostRoleStates(Collections.singletonList(createCompletedReport(commands.get(0))));
+
+    // the reported stage is re-read
+    stages = db.getStagesInProgress();
+    assertEquals(1, stages.size());
+    assertNotSame(stage, stages.get(0));
+    assertEquals(1, db.getCommandsInProgressCount());
+
+    db.updateHostRoleStates(Collections.singletonList(createCompletedReport(commands.get(1))));
+
+    assertEquals(0, db.getStagesInProgress().size());
+    assertEquals(0, db.getCommandsInProgressCount());
+  }
+
   @Test
   public void testGetStagesInProgressWithManyCommands() throws AmbariException {
     // 1000 hosts
@@ -635,6 +664,18 @@ public class TestActionDBAccessorImpl {
       taskIds.size(), entities.size());
   }
 
+  private CommandReport createCompletedReport(HostRoleCommand command) {
+    CommandReport cr = new CommandReport();
+    cr.setTaskId(command.getTaskId());
+    cr.setActionId(StageUtils.getActionId(command.getRequestId(), command.getStageId()));
+    cr.setRole(command.getRole().toString());
+    cr.setStatus(HostRoleStatus.COMPLETED.toString());
+    cr.setStdErr("");
+    cr.setStdOut("");
+    cr.setExitCode(0);
+    return cr;
+  }
+
   private void populateActionDB(ActionDBAccessor db, String hostname,
       long requestId, long stageId) throws AmbariException {
     Stage s = createStubStage(hostname, requestId, stageId);
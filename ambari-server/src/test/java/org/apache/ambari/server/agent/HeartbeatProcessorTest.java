@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.agent;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.ambari.server.AmbariException;
+import org.apache.ambari.server.state.Alert;
+import org.apache.ambari.server.state.Clusters;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.persist.UnitOfWork;
+
+/**
+ * Tests {@link HeartbeatProcessor}.
+ */
+public class HeartbeatProcessorTest {
+
+  private HeartBeatHandler handler;
+  private Clusters clusters;
+  private UnitOfWork unitOfWork;
+  private HeartbeatProcessor processor;
+
+  @Before
+  public void setup() {
+    handler = mock(HeartBeatHandler.class);
+    clusters = mock(Clusters.class);
+    unitOfWork = mock(UnitOfWork.class);
+    processor = new HeartbeatProcessor(handler, clusters, unitOfWork, 10, 5);
+    processor.start();
+  }
+
+  @After
+  public void teardown() {
+    processor.stop();
+  }
+
+  @Test
+  public void testHeartbeatIsProcessedByAllStages() throws Exception {
+    HeartBeat heartbeat = createHeartbeat("host1");
+    heartbeat.setAlerts(Collections.singletonList(new Alert()));
+
+    processor.addHeartbeat(heartbeat, 1000L);
+
+    verify(handler, timeout(5000)).processCommandReports(heartbeat, "host1", clusters, 1000L);
+    verify(handler, timeout(5000)).processStatusReports(heartbeat, "host1", clusters);
+    verify(handler, timeout(5000)).processHostStatus(heartbeat, "host1");
+    verify(handler, timeout(5000)).processAlerts(heartbeat, "host1");
+    verify(unitOfWork, timeout(5000).atLeast(3)).begin();
+  }
+
+  @Test
+  public void testHeartbeatWithoutAlerts() throws Exception {
+    HeartBeat heartbeat = createHeartbeat("host1");
+
+    processor.addHeartbeat(heartbeat, 1000L);
+
+    verify(handler, timeout(5000)).processHostStatus(heartbeat, "host1");
+    verify(handler, never()).processAlerts(any(HeartBeat.class), anyString());
+  }
+
+  @Test
+  public void testStatusIsProcessedWhenCommandReportsFail() throws Exception {
+    HeartBeat heartbeat = createHeartbeat("host1");
+
+    doThrow(new AmbariException("failed")).when(handler).processCommandReports(
+        eq(heartbeat), eq("host1"), eq(clusters), eq(1000L));
+
+    processor.addHeartbeat(heartbeat, 1000L);
+
+    verify(handler, timeout(5000)).processHostStatus(heartbeat, "host1");
+
+    HeartbeatProcessor.ProcessingStage stage = processor.getCommandReportStage();
+    for (int i = 0; i < 50 && stage.getFailureCount() == 0; i++) {
+      Thread.sleep(100);
+    }
+    Assert.assertEquals(1, stage.getFailureCount());
+  }
+
+  @Test
+  public void testStopProcessesQueuedHeartbeats() throws Exception {
+    HeartBeat heartbeat = createHeartbeat("host1");
+    processor.addHeartbeat(heartbeat, 1000L);
+    processor.stop();
+
+    verify(handler).processHostStatus(heartbeat, "host1");
+
+    Map<String, Number> metrics = processor.getMetrics();
+    Assert.assertEquals(1L, metrics.get("command_reports_processed"));
+    Assert.assertEquals(1L, metrics.get("component_status_processed"));
+    Assert.assertEquals(0, metrics.get("command_reports_queue_size"));
+
+    // heartbeats are ignored once stopped
+    HeartBeat ignored = createHeartbeat("host2");
+    processor.addHeartbeat(ignored, 2000L);
+    Assert.assertEquals(0, processor.getCommandReportStage().getQueueSize());
+  }
+
+  private HeartBeat createHeartbeat(String hostname) {
+    HeartBeat heartbeat = new HeartBeat();
+    heartbeat.setHostname(hostname);
+    heartbeat.setReports(new ArrayList<CommandReport>());
+    heartbeat.setComponentStatus(new ArrayList<ComponentStatus>());
+    return heartbeat;
+  }
+}
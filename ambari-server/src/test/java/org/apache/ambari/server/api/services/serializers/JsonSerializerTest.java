@@ -27,7 +27,9 @@ import org.junit.Test;
 
 import javax.ws.rs.core.UriInfo;
 
+import java.io.ByteArrayOutputStream;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import static org.easymock.EasyMock.*;
@@ -72,7 +74,7 @@ public class JsonSerializerTest {
     replay(uriInfo, resource/*, resource2*/);
 
     //execute test
-    Object o = new JsonSerializer().serialize(result).toString().replace("\r", "");
+    Object o = new JsonSerializer(true).serialize(result).toString().replace("\r", "");
 
     String expected = "{\n" +
         "  \"href\" : \"this is an href\",\n" +
@@ -126,7 +128,7 @@ public class JsonSerializerTest {
     replay(uriInfo, resource);
 
     //execute test
-    Object o = new JsonSerializer().serialize(result).toString().replace("\r", "");
+    Object o = new JsonSerializer(true).serialize(result).toString().replace("\r", "");
 
     String expected = "{\n" +
         "  \"resources\" : [\n" +
@@ -182,7 +184,7 @@ public class JsonSerializerTest {
     replay(uriInfo, resource/*, resource2*/);
 
     //execute test
-    Object o = new JsonSerializer().serialize(result).toString().replace("\r", "");
+    Object o = new JsonSerializer(true).serialize(result).toString().replace("\r", "");
     String expected = "[\n" +
     "  {\n" +
     "    \"href\" : \"this is an href\",\n" +
@@ -207,6 +209,61 @@ public class JsonSerializerTest {
 
     verify(uriInfo, resource/*, resource2*/);
   }
-    
-  
+
+  @Test
+  public void testSerializeCompact() throws Exception {
+    Result result = createResult();
+
+    Object o = new JsonSerializer().serialize(result);
+
+    String expected = "{\"href\":\"this is an href\",\"prop1\":\"value1\"," +
+        "\"category\":{\"catProp1\":\"catValue1\"}}";
+
+    assertEquals(expected, o);
+  }
+
+  @Test
+  public void testSerializeToStream() throws Exception {
+    Result result = createResult();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new JsonSerializer().serialize(result, out);
+
+    assertEquals(new JsonSerializer().serialize(result), out.toString("UTF-8"));
+  }
+
+  @Test
+  public void testSerializeErrorToStream() throws Exception {
+    Result result = new ResultImpl(new ResultStatus(ResultStatus.STATUS.NOT_FOUND, "not found"));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new JsonSerializer().serialize(result, out);
+
+    assertEquals("{\"status\":404,\"message\":\"not found\"}", out.toString("UTF-8"));
+  }
+
+  private Result createResult() {
+    Resource resource = createMock(Resource.class);
+
+    Result result = new ResultImpl(true);
+    result.setResultStatus(new ResultStatus(ResultStatus.STATUS.OK));
+    TreeNode<Resource> child = result.getResultTree().addChild(resource, "resource1");
+    child.setProperty("href", "this is an href");
+
+    Map<String, Object> mapRootProps = new LinkedHashMap<String, Object>();
+    mapRootProps.put("prop1", "value1");
+
+    Map<String, Object> mapCategoryProps = new LinkedHashMap<String, Object>();
+    mapCategoryProps.put("catProp1", "catValue1");
+
+    Map<String, Map<String, Object>> propertyMap = new LinkedHashMap<String, Map<String, Object>>();
+    propertyMap.put(null, mapRootProps);
+    propertyMap.put("category", mapCategoryProps);
+
+    expect(resource.getPropertiesMap()).andReturn(propertyMap).anyTimes();
+    expect(resource.getType()).andReturn(Resource.Type.Cluster).anyTimes();
+    replay(resource);
+
+    return result;
+  }
 }
@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.controller.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.controller.utilities.PropertyHelper;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Microbenchmark of {@link ResourceImpl} against the nested synchronized tree
+ * maps which resources used before their properties were kept in schema
+ * ordered arrays.
+ * <p/>
+ * Each round builds {@link #RESOURCES} host resources with the properties of
+ * {@link #PROPERTY_IDS}, reads every property back by id, walks the map of
+ * property maps and copies every resource.  The first {@link #WARMUP_ROUNDS}
+ * rounds are not measured so that both implementations are compiled before
+ * they are timed.  The average nanoseconds per resource of each step and the
+ * heap retained per resource are printed for both implementations.
+ * <p/>
+ * Not run by default, the timings depend on the machine.  Remove the
+ * {@link Ignore} annotation and run
+ * {@code mvn test -Dtest=ResourceImplPerformanceTest} to run it.
+ */
+@Ignore
+public class ResourceImplPerformanceTest {
+
+  private static final int RESOURCES = 20000;
+  private static final int WARMUP_ROUNDS = 5;
+  private static final int ROUNDS = 10;
+
+  private static final String[] PROPERTY_IDS = {
+      "Hosts/host_name", "Hosts/cluster_name", "Hosts/ip", "Hosts/cpu_count",
+      "Hosts/total_mem", "Hosts/os_type", "Hosts/host_status", "Hosts/host_state",
+      "Hosts/last_heartbeat_time", "Hosts/maintenance_state", "Hosts/rack_info",
+      "metrics/cpu/cpu_user", "metrics/cpu/cpu_system", "metrics/memory/mem_free",
+      "metrics/disk/disk_free", "metrics/load/load_one"};
+
+  /**
+   * Keeps the results of the measured steps so they aren't optimized away.
+   */
+  private long sink = 0L;
+
+  @Test
+  public void testCompareWithMapBasedResource() {
+    ResourceFactory[] factories = {new MapResourceFactory(), new SchemaResourceFactory()};
+
+    for (int round = 0; round < WARMUP_ROUNDS; ++round) {
+      for (ResourceFactory factory : factories) {
+        run(factory, new long[4]);
+      }
+    }
+
+    for (ResourceFactory factory : factories) {
+      long[] nanos = new long[4];
+      for (int round = 0; round < ROUNDS; ++round) {
+        run(factory, nanos);
+      }
+
+      long operations = (long) RESOURCES * ROUNDS;
+      System.out.println(factory.getClass().getSimpleName() + ": build " +
+          nanos[0] / operations + "ns, read " + nanos[1] / operations +
+          "ns, walk " + nanos[2] / operations + "ns, copy " + nanos[3] / operations +
+          "ns per resource, ~" + getRetainedBytes(factory) + " bytes per resource");
+    }
+    System.out.println(sink);
+  }
+
+  /**
+   * Run one round, adding the nanoseconds of each step to the given totals.
+   */
+  private void run(ResourceFactory factory, long[] nanos) {
+    long start = System.nanoTime();
+    List<Resource> resources = build(factory);
+    long built = System.nanoTime();
+
+    for (Resource resource : resources) {
+      for (String propertyId : PROPERTY_IDS) {
+        if (resource.getPropertyValue(propertyId) != null) {
+          ++sink;
+        }
+      }
+    }
+    long read = System.nanoTime();
+
+    for (Resource resource : resources) {
+      for (Map.Entry<String, Map<String, Object>> category : resource.getPropertiesMap().entrySet()) {
+        for (Map.Entry<String, Object> property : category.getValue().entrySet()) {
+          sink += property.getKey().length();
+        }
+      }
+    }
+    long walked = System.nanoTime();
+
+    for (Resource resource : resources) {
+      sink += factory.copy(resource).getPropertiesMap().size();
+    }
+    long copied = System.nanoTime();
+
+    nanos[0] += built - start;
+    nanos[1] += read - built;
+    nanos[2] += walked - read;
+    nanos[3] += copied - walked;
+  }
+
+  private List<Resource> build(ResourceFactory factory) {
+    List<Resource> resources = new ArrayList<Resource>(RESOURCES);
+    for (int i = 0; i < RESOURCES; ++i) {
+      Resource resource = factory.create();
+      for (String propertyId : PROPERTY_IDS) {
+        resource.setProperty(propertyId, i);
+      }
+      resources.add(resource);
+    }
+    return resources;
+  }
+
+  private long getRetainedBytes(ResourceFactory factory) {
+    System.gc();
+    long usedBefore = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+    List<Resource> resources = build(factory);
+    System.gc();
+    long usedAfter = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+
+    sink += resources.size();
+    return (usedAfter - usedBefore) / RESOURCES;
+  }
+
+  private interface ResourceFactory {
+    Resource create();
+
+    Resource copy(Resource resource);
+  }
+
+  private static class SchemaResourceFactory implements ResourceFactory {
+    @Override
+    public Resource create() {
+      return new ResourceImpl(Resource.Type.Host);
+    }
+
+    @Override
+    public Resource copy(Resource resource) {
+      return new ResourceImpl(resource);
+    }
+  }
+
+  private static class MapResourceFactory implements ResourceFactory {
+    @Override
+    public Resource create() {
+      return new MapResource();
+    }
+
+    @Override
+    public Resource copy(Resource resource) {
+      MapResource copy = new MapResource();
+      for (Map.Entry<String, Map<String, Object>> categoryEntry :
+          resource.getPropertiesMap().entrySet()) {
+        for (Map.Entry<String, Object> propertyEntry : categoryEntry.getValue().entrySet()) {
+          copy.setProperty(PropertyHelper.getPropertyId(categoryEntry.getKey(),
+              propertyEntry.getKey()), propertyEntry.getValue());
+        }
+      }
+      return copy;
+    }
+  }
+
+  /**
+   * The map based resource representation.
+   */
+  private static class MapResource implements Resource {
+    private final Map<String, Map<String, Object>> propertiesMap =
+        Collections.synchronizedMap(new TreeMap<String, Map<String, Object>>());
+
+    @Override
+    public Type getType() {
+      return Type.Host;
+    }
+
+    @Override
+    public Map<String, Map<String, Object>> getPropertiesMap() {
+      return propertiesMap;
+    }
+
+    @Override
+    public void setProperty(String id, Object value) {
+      String category = PropertyHelper.getPropertyCategory(id);
+      String categoryKey = category == null ? "" : category;
+
+      Map<String, Object> properties = propertiesMap.get(categoryKey);
+      if (properties == null) {
+        properties = Collections.synchronizedMap(new TreeMap<String, Object>());
+        propertiesMap.put(categoryKey, properties);
+      }
+      properties.put(PropertyHelper.getPropertyName(id), value);
+    }
+
+    @Override
+    public void addCategory(String id) {
+      if (!propertiesMap.containsKey(id)) {
+        propertiesMap.put(id, new HashMap<String, Object>());
+      }
+    }
+
+    @Override
+    public Object getPropertyValue(String id) {
+      String category = PropertyHelper.getPropertyCategory(id);
+      Map<String, Object> properties = propertiesMap.get(category == null ? "" : category);
+
+      return properties == null ? null : properties.get(PropertyHelper.getPropertyName(id));
+    }
+  }
+}
@@ -23,6 +23,8 @@ import org.apache.ambari.server.controller.utilities.PropertyHelper;
 import org.apache.ambari.server.controller.spi.Resource;
 import org.junit.Test;
 
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.Map;
 
 /**
@@ -183,5 +185,173 @@ public class ResourceImplTest {
     Assert.assertTrue(resource1.equals(resource2));
     Assert.assertTrue(resource2.equals(resource1));
   }
-}
 
+  @Test
+  public void testNullValue() {
+    Resource resource = new ResourceImpl(Resource.Type.Cluster);
+
+    String propertyId = PropertyHelper.getPropertyId("c1", "p1");
+    resource.setProperty(propertyId, null);
+
+    Assert.assertNull(resource.getPropertyValue(propertyId));
+    Assert.assertTrue(resource.getPropertiesMap().get("c1").containsKey("p1"));
+  }
+
+  @Test
+  public void testPropertiesMapIsLive() {
+    Resource resource = new ResourceImpl(Resource.Type.Cluster);
+
+    String p1 = PropertyHelper.getPropertyId("c1", "p1");
+    String p2 = PropertyHelper.getPropertyId("c1", "p2");
+    String p3 = PropertyHelper.getPropertyId("c2", "p3");
+
+    resource.setProperty(p1, "foo");
+    resource.setProperty(p2, "bar");
+    resource.setProperty(p3, "baz");
+
+    Map<String, Map<String, Object>> map = resource.getPropertiesMap();
+
+    // remove a property through the category map
+    Iterator<String> iterator = map.get("c1").keySet().iterator();
+    Assert.assertEquals("p1", iterator.next());
+    iterator.remove();
+    Assert.assertNull(resource.getPropertyValue(p1));
+    Assert.assertEquals("bar", resource.getPropertyValue(p2));
+
+    // remove a whole category
+    Iterator<Map.Entry<String, Map<String, Object>>> categoryIterator = map.entrySet().iterator();
+    Assert.assertEquals("c1", categoryIterator.next().getKey());
+    categoryIterator.remove();
+    Assert.assertNull(resource.getPropertyValue(p2));
+    Assert.assertFalse(map.containsKey("c1"));
+
+    // set a property through the category map
+    map.get("c2").put("p4", 1);
+    Assert.assertEquals(1, resource.getPropertyValue(PropertyHelper.getPropertyId("c2", "p4")));
+
+    Assert.assertEquals(1, map.size());
+    Assert.assertEquals(2, map.get("c2").size());
+  }
+
+  @Test
+  public void testCopyConstructorWithPropertyIds() {
+    Resource resource = new ResourceImpl(Resource.Type.Cluster);
+
+    String p1 = PropertyHelper.getPropertyId("c1", "p1");
+    String p2 = PropertyHelper.getPropertyId("c2", "p2");
+
+    resource.setProperty(p1, "foo");
+    resource.setProperty(p2, "bar");
+
+    Resource copy = new ResourceImpl(resource, Collections.singleton("c1"));
+
+    Assert.assertEquals("foo", copy.getPropertyValue(p1));
+    Assert.assertNull(copy.getPropertyValue(p2));
+
+    // the copy is independent of the original
+    copy.setProperty(p1, "baz");
+    Assert.assertEquals("foo", resource.getPropertyValue(p1));
+  }
+
+  @Test
+  public void testEqualsIgnoresSetOrder() {
+    Resource resource1 = new ResourceImpl(Resource.Type.Cluster);
+    Resource resource2 = new ResourceImpl(Resource.Type.Cluster);
+
+    resource1.setProperty("c1/p1", "foo");
+    resource1.setProperty("c2/p2", "bar");
+
+    resource2.setProperty("c2/p2", "bar");
+    resource2.setProperty("c1/p1", "foo");
+
+    Assert.assertEquals(resource1, resource2);
+    Assert.assertEquals(resource1.hashCode(), resource2.hashCode());
+
+    resource2.addCategory("c3");
+    Assert.assertFalse(resource1.equals(resource2));
+  }
+
+  @Test
+  public void testSchemaKeysAreShared() {
+    ResourceSchema schema = ResourceSchema.forType(Resource.Type.Cluster);
+
+    Assert.assertSame(schema, ResourceSchema.forType(Resource.Type.Cluster));
+    Assert.assertSame(schema.getPropertyKey("c1/p1"), schema.getPropertyKey("c1/p1"));
+    Assert.assertEquals("c1", schema.getPropertyKey("c1/p1").getCategory());
+    Assert.assertEquals("p1", schema.getPropertyKey("c1/p1").getName());
+    Assert.assertNull(schema.findPropertyKey("unknown/property"));
+  }
+
+  @Test
+  public void testCategoryMapKeepsNames() {
+    Resource resource = new ResourceImpl(Resource.Type.Cluster);
+    Map<String, Map<String, Object>> propertiesMap = resource.getPropertiesMap();
+
+    // a name with a separator is not split into a category and a name
+    resource.addCategory("c1");
+    propertiesMap.get("c1").put("p/1", "foo");
+    propertiesMap.put("c2", Collections.<String, Object>singletonMap("p/2", "bar"));
+
+    Assert.assertEquals(2, propertiesMap.size());
+    Assert.assertEquals("foo", propertiesMap.get("c1").get("p/1"));
+    Assert.assertEquals("bar", propertiesMap.get("c2").get("p/2"));
+    Assert.assertFalse(propertiesMap.containsKey("c1/p"));
+
+    Resource copy = new ResourceImpl(resource, Collections.singleton("c2"));
+    Assert.assertEquals("bar", copy.getPropertiesMap().get("c2").get("p/2"));
+    Assert.assertEquals(1, copy.getPropertiesMap().size());
+  }
+
+  @Test
+  public void testPutCategoryView() {
+    Resource resource = new ResourceImpl(Resource.Type.Cluster);
+
+    resource.setProperty("c1/p1", "foo");
+    resource.setProperty("c1/p2", "bar");
+    resource.setProperty("c2/p3", "baz");
+
+    Map<String, Map<String, Object>> propertiesMap = resource.getPropertiesMap();
+
+    // put the live view of a category back into the same map
+    Map<String, Object> previous = propertiesMap.put("c1", propertiesMap.get("c1"));
+    Assert.assertEquals(2, previous.size());
+    Assert.assertEquals("foo", resource.getPropertyValue("c1/p1"));
+    Assert.assertEquals("bar", resource.getPropertyValue("c1/p2"));
+
+    // put the live view of another category
+    propertiesMap.put("c3", propertiesMap.get("c2"));
+    Assert.assertEquals("baz", resource.getPropertyValue("c3/p3"));
+    Assert.assertEquals("baz", resource.getPropertyValue("c2/p3"));
+  }
+
+  @Test
+  public void testCategoryIndexFollowsWrites() {
+    Resource resource = new ResourceImpl(Resource.Type.Cluster);
+    Map<String, Map<String, Object>> propertiesMap = resource.getPropertiesMap();
+
+    resource.setProperty("c2/b", 1);
+    resource.setProperty("c1/z", 2);
+    resource.setProperty("c2/a", 3);
+    resource.addCategory("c0");
+
+    Assert.assertEquals(3, propertiesMap.size());
+    Assert.assertEquals("c0", propertiesMap.keySet().iterator().next());
+    Assert.assertEquals(0, propertiesMap.get("c0").size());
+    Assert.assertEquals(2, propertiesMap.get("c2").size());
+    Assert.assertEquals("a", propertiesMap.get("c2").keySet().iterator().next());
+
+    // updating a value keeps the index, adding and removing rebuilds it
+    resource.setProperty("c2/a", 4);
+    Assert.assertEquals(4, propertiesMap.get("c2").get("a"));
+
+    resource.setProperty("c0/p", 5);
+    Assert.assertEquals(1, propertiesMap.get("c0").size());
+
+    propertiesMap.get("c2").remove("a");
+    Assert.assertEquals(1, propertiesMap.get("c2").size());
+
+    propertiesMap.remove("c1");
+    Assert.assertEquals(2, propertiesMap.size());
+    Assert.assertFalse(propertiesMap.containsKey("c1"));
+  }
+}
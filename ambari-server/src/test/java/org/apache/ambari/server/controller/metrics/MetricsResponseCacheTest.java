@@ -0,0 +1,258 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.controller.metrics;
+
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.controller.internal.TemporalInfoImpl;
+import org.apache.ambari.server.controller.spi.TemporalInfo;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Tests for {@link MetricsResponseCache}.
+ */
+public class MetricsResponseCacheTest {
+
+  private MetricsResponseCache cache;
+  private long now = 0L;
+
+  @Before
+  public void setUp() {
+    Properties properties = new Properties();
+    properties.setProperty(Configuration.METRICS_CACHE_TTL_KEY, "10");
+    properties.setProperty(Configuration.METRICS_CACHE_MAX_DATAPOINTS_KEY, "1000");
+    properties.setProperty(Configuration.METRICS_CACHE_OVERLAP_KEY, "20");
+    properties.setProperty(Configuration.METRICS_CACHE_MAX_AGE_KEY, "600");
+
+    cache = new MetricsResponseCache() {
+      @Override
+      protected long currentTimeMillis() {
+        return now;
+      }
+    };
+    cache.init(new Configuration(properties));
+  }
+
+  @Test
+  public void testTemporalHit() throws Exception {
+    TestFetcher fetcher = new TestFetcher();
+
+    TreeMap<Long, Double> series = cache.getResponse("key", new TemporalInfoImpl(1000L, 2000L, 1L), fetcher);
+    Assert.assertEquals(101, series.size());
+
+    // modifying the returned series doesn't change the cached one
+    series.clear();
+
+    series = cache.getResponse("key", new TemporalInfoImpl(1500L, 2000L, 1L), fetcher);
+    Assert.assertEquals(51, series.size());
+    Assert.assertEquals(1500L, series.firstKey().longValue());
+
+    Assert.assertEquals(1, fetcher.fetched.size());
+    Assert.assertEquals(1, cache.getHitCount());
+    Assert.assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  public void testOverlappingRangeFetchesTail() throws Exception {
+    TestFetcher fetcher = new TestFetcher();
+
+    cache.getResponse("key", new TemporalInfoImpl(1000L, 2000L, 1L), fetcher);
+    TreeMap<Long, Double> series = cache.getResponse("key", new TemporalInfoImpl(1100L, 2100L, 1L), fetcher);
+
+    Assert.assertEquals(2, fetcher.fetched.size());
+    TemporalInfo tail = fetcher.fetched.get(1);
+    // the overlap is fetched again
+    Assert.assertEquals(1980L, tail.getStartTime().longValue());
+    Assert.assertEquals(2100L, tail.getEndTime().longValue());
+
+    Assert.assertEquals(101, series.size());
+    Assert.assertEquals(1100L, series.firstKey().longValue());
+    Assert.assertEquals(2100L, series.lastKey().longValue());
+    Assert.assertEquals(1, cache.getPartialHitCount());
+  }
+
+  @Test
+  public void testTailReplacesOverlap() throws Exception {
+    TestFetcher fetcher = new TestFetcher();
+
+    cache.getResponse("key", new TemporalInfoImpl(1000L, 2000L, 1L), fetcher);
+
+    // the collector has aggregated the last datapoints since
+    fetcher.offset = 0.5;
+    TreeMap<Long, Double> series = cache.getResponse("key", new TemporalInfoImpl(1000L, 2100L, 1L), fetcher);
+
+    Assert.assertEquals(1970.0, series.get(1970L), 0.0);
+    Assert.assertEquals(1980.5, series.get(1980L), 0.0);
+    Assert.assertEquals(2000.5, series.get(2000L), 0.0);
+    Assert.assertEquals(2100.5, series.get(2100L), 0.0);
+  }
+
+  @Test
+  public void testOldResponseIsFetchedInFull() throws Exception {
+    TestFetcher fetcher = new TestFetcher();
+
+    cache.getResponse("key", new TemporalInfoImpl(1000L, 2000L, 1L), fetcher);
+    now += 300000L;
+    cache.getResponse("key", new TemporalInfoImpl(1000L, 2100L, 1L), fetcher);
+    Assert.assertEquals(1980L, fetcher.fetched.get(1).getStartTime().longValue());
+
+    // splicing a tail doesn't make the cached response any younger
+    now += 300000L;
+    cache.getResponse("key", new TemporalInfoImpl(1000L, 2200L, 1L), fetcher);
+    Assert.assertEquals(3, fetcher.fetched.size());
+    Assert.assertEquals(1000L, fetcher.fetched.get(2).getStartTime().longValue());
+    Assert.assertEquals(2, cache.getMissCount());
+    Assert.assertEquals(1, cache.getPartialHitCount());
+  }
+
+  @Test
+  public void testSmallGapIsServedFromCache() throws Exception {
+    TestFetcher fetcher = new TestFetcher();
+
+    cache.getResponse("key", new TemporalInfoImpl(1000L, 2000L, 1L), fetcher);
+    // 5 seconds later than the cached range with a 10 second ttl
+    cache.getResponse("key", new TemporalInfoImpl(1005L, 2005L, 1L), fetcher);
+
+    Assert.assertEquals(1, fetcher.fetched.size());
+    Assert.assertEquals(1, cache.getHitCount());
+  }
+
+  @Test
+  public void testDifferentStepIsMiss() throws Exception {
+    TestFetcher fetcher = new TestFetcher();
+
+    cache.getResponse("key", new TemporalInfoImpl(1000L, 2000L, 1L), fetcher);
+    cache.getResponse("key", new TemporalInfoImpl(1000L, 2000L, 60L), fetcher);
+
+    Assert.assertEquals(2, fetcher.fetched.size());
+    Assert.assertEquals(2, cache.getMissCount());
+  }
+
+  @Test
+  public void testPointInTime() throws Exception {
+    TestFetcher fetcher = new TestFetcher();
+
+    cache.getResponse("key", null, fetcher);
+    cache.getResponse("key", null, fetcher);
+    cache.getResponse("other", null, fetcher);
+
+    Assert.assertEquals(2, fetcher.fetched.size());
+    Assert.assertEquals(1, cache.getHitCount());
+    Assert.assertEquals(2, cache.getMissCount());
+    Assert.assertEquals(2, cache.getSize());
+
+    Map<String, Number> metrics = cache.getMetrics();
+    Assert.assertEquals(1L, metrics.get("hits"));
+    Assert.assertEquals(2L, metrics.get("misses"));
+    Assert.assertEquals(2L, metrics.get("size"));
+  }
+
+  @Test
+  public void testFailedFetchIsNotCached() throws Exception {
+    TestFetcher fetcher = new TestFetcher();
+    fetcher.fail = true;
+
+    Assert.assertNull(cache.getResponse("key", new TemporalInfoImpl(1000L, 2000L, 1L), fetcher));
+
+    fetcher.fail = false;
+    Assert.assertNotNull(cache.getResponse("key", new TemporalInfoImpl(1000L, 2000L, 1L), fetcher));
+    Assert.assertEquals(2, fetcher.fetched.size());
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    TestFetcher fetcher = new TestFetcher();
+
+    // each response has ~100 datapoints, the cache holds 1000
+    for (int i = 0; i < 50; i++) {
+      cache.getResponse("key" + i, new TemporalInfoImpl(1000L, 2000L, 1L), fetcher);
+    }
+
+    Assert.assertTrue(cache.getEvictionCount() > 0);
+    Assert.assertTrue(cache.getSize() < 50);
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty(Configuration.METRICS_CACHE_ENABLED_KEY, "false");
+    cache.init(new Configuration(properties));
+
+    TestFetcher fetcher = new TestFetcher();
+    cache.getResponse("key", new TemporalInfoImpl(1000L, 2000L, 1L), fetcher);
+    cache.getResponse("key", new TemporalInfoImpl(1000L, 2000L, 1L), fetcher);
+
+    Assert.assertFalse(cache.isEnabled());
+    Assert.assertEquals(2, fetcher.fetched.size());
+  }
+
+  /**
+   * Returns a datapoint every 10 seconds of the requested range.
+   */
+  private static class TestFetcher implements MetricsResponseCache.ResponseFetcher<TreeMap<Long, Double>> {
+    private final List<TemporalInfo> fetched = new ArrayList<TemporalInfo>();
+    private boolean fail = false;
+    private double offset = 0.0;
+
+    @Override
+    public TreeMap<Long, Double> fetch(TemporalInfo temporalInfo) {
+      fetched.add(temporalInfo);
+      if (fail) {
+        return null;
+      }
+
+      TreeMap<Long, Double> series = new TreeMap<Long, Double>();
+      if (temporalInfo == null) {
+        series.put(0L, 1.0);
+      } else {
+        for (long time = temporalInfo.getStartTime(); time <= temporalInfo.getEndTime(); time += 10) {
+          series.put(time, time + offset);
+        }
+      }
+      return series;
+    }
+
+    @Override
+    public TreeMap<Long, Double> splice(TreeMap<Long, Double> head, TreeMap<Long, Double> tail) {
+      TreeMap<Long, Double> series = new TreeMap<Long, Double>(head);
+      series.putAll(tail);
+      return series;
+    }
+
+    @Override
+    public TreeMap<Long, Double> slice(TreeMap<Long, Double> response, TemporalInfo temporalInfo) {
+      if (temporalInfo == null) {
+        return new TreeMap<Long, Double>(response);
+      }
+      return new TreeMap<Long, Double>(response.subMap(
+          temporalInfo.getStartTime(), true, temporalInfo.getEndTime(), true));
+    }
+
+    @Override
+    public int getWeight(TreeMap<Long, Double> response) {
+      return response.size();
+    }
+  }
+}
@@ -18,6 +18,7 @@
 package org.apache.ambari.server.controller.metrics.timeline;
 
 import org.apache.ambari.server.configuration.ComponentSSLConfiguration;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.internal.PropertyInfo;
 import org.apache.ambari.server.controller.internal.ResourceImpl;
 import org.apache.ambari.server.controller.internal.TemporalInfoImpl;
@@ -39,6 +40,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 
 import static org.apache.ambari.server.controller.metrics.MetricsServiceProvider.MetricsService;
@@ -505,6 +507,110 @@ public class AMSPropertyProviderTest {
     Assert.assertEquals(8, val.length);
   }
 
+  @Test
+  public void testPopulateResourcesForMultipleHostsInParallel() throws Exception {
+    ConcurrentTestStreamProvider streamProvider = new ConcurrentTestStreamProvider(SINGLE_HOST_METRICS_FILE_PATH, null);
+    Set<Resource> resources = populateHostResources(streamProvider, "h1", "h2", "h3");
+
+    Assert.assertEquals(3, resources.size());
+    for (Resource res : resources) {
+      Number[][] val = (Number[][]) res.getPropertyValue(PROPERTY_ID1);
+      Assert.assertEquals(111, val.length);
+    }
+
+    Assert.assertEquals(3, streamProvider.specs.size());
+    for (String hostname : new String[] {"h1", "h2", "h3"}) {
+      URIBuilder uriBuilder = AMSPropertyProvider.getAMSUriBuilder("localhost", 8188);
+      uriBuilder.addParameter("metricNames", "cpu_user");
+      uriBuilder.addParameter("hostname", hostname);
+      uriBuilder.addParameter("appId", "HOST");
+      uriBuilder.addParameter("startTime", "1416445244701");
+      uriBuilder.addParameter("endTime", "1416445244901");
+      Assert.assertTrue(streamProvider.specs.contains(uriBuilder.toString()));
+    }
+  }
+
+  @Test
+  public void testPopulateResourcesReturnsPartialResultsOnTimeout() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty(Configuration.TIMELINE_METRICS_FETCH_TIMEOUT_KEY, "500");
+    AMSPropertyProvider.init(new Configuration(properties));
+
+    try {
+      ConcurrentTestStreamProvider streamProvider = new ConcurrentTestStreamProvider(SINGLE_HOST_METRICS_FILE_PATH, "h3");
+      Set<Resource> resources = populateHostResources(streamProvider, "h1", "h2", "h3");
+
+      Assert.assertEquals(3, resources.size());
+      for (Resource res : resources) {
+        Object val = res.getPropertyValue(PROPERTY_ID1);
+        if ("h3".equals(res.getPropertyValue(HOST_NAME_PROPERTY_ID))) {
+          Assert.assertNull(val);
+        } else {
+          Assert.assertEquals(111, ((Number[][]) val).length);
+        }
+      }
+    } finally {
+      AMSPropertyProvider.init(new Configuration(new Properties()));
+    }
+  }
+
+  private Set<Resource> populateHostResources(TestStreamProvider streamProvider,
+                                              String... hostnames) throws Exception {
+    TestMetricHostProvider metricHostProvider = new TestMetricHostProvider();
+    ComponentSSLConfiguration sslConfiguration = mock(ComponentSSLConfiguration.class);
+
+    Map<String, Map<String, PropertyInfo>> propertyIds = PropertyHelper.getMetricPropertyIds(Resource.Type.Host);
+    AMSPropertyProvider propertyProvider = new AMSHostPropertyProvider(
+      propertyIds,
+      streamProvider,
+      sslConfiguration,
+      metricHostProvider,
+      CLUSTER_NAME_PROPERTY_ID,
+      HOST_NAME_PROPERTY_ID
+    );
+
+    Set<Resource> resources = new HashSet<Resource>();
+    for (String hostname : hostnames) {
+      Resource resource = new ResourceImpl(Resource.Type.Host);
+      resource.setProperty(HOST_NAME_PROPERTY_ID, hostname);
+      resources.add(resource);
+    }
+
+    Map<String, TemporalInfo> temporalInfoMap = new HashMap<String, TemporalInfo>();
+    temporalInfoMap.put(PROPERTY_ID1, new TemporalInfoImpl(1416445244701L, 1416445244901L, 1L));
+    Request request = PropertyHelper.getReadRequest(Collections.singleton(PROPERTY_ID1), temporalInfoMap);
+
+    return propertyProvider.populateResources(resources, request, null);
+  }
+
+  /**
+   * Stream provider which can be called from several threads and which
+   * answers slowly for one host.
+   */
+  static class ConcurrentTestStreamProvider extends TestStreamProvider {
+    private final Set<String> specs = Collections.synchronizedSet(new HashSet<String>());
+    private final String slowHostname;
+
+    public ConcurrentTestStreamProvider(String fileName, String slowHostname) {
+      super(fileName);
+      this.slowHostname = slowHostname;
+    }
+
+    @Override
+    public InputStream readFrom(String spec) throws IOException {
+      specs.add(spec);
+
+      if (slowHostname != null && spec.contains("hostname=" + slowHostname)) {
+        try {
+          Thread.sleep(2000);
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+      return ClassLoader.getSystemResourceAsStream(fileName);
+    }
+  }
+
   public static class TestMetricHostProvider implements MetricHostProvider {
 
     @Override
@@ -21,6 +21,7 @@ import junit.framework.Assert;
 import org.apache.ambari.server.controller.metrics.MetricsPaddingMethod;
 import org.apache.ambari.server.controller.spi.TemporalInfo;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
 import org.junit.Test;
 import java.util.Map;
 import java.util.TreeMap;
@@ -47,11 +48,11 @@ public class MetricsPaddingMethodTest {
 
     TemporalInfo temporalInfo = getTemporalInfo(now - 10000, now, 1l);
     paddingMethod.applyPaddingStrategy(timelineMetric, temporalInfo);
-    TreeMap<Long, Double> values = (TreeMap<Long, Double>) timelineMetric.getMetricValues();
+    TimelineMetricSeries values = timelineMetric.getMetricSeries();
 
     Assert.assertEquals(11, values.size());
     Assert.assertEquals(new Long(now - 10000), values.keySet().iterator().next());
-    Assert.assertEquals(new Long(now), values.descendingKeySet().iterator().next());
+    Assert.assertEquals(now, values.getLastTimestamp());
     Assert.assertEquals(null, values.values().iterator().next());
   }
 
@@ -75,11 +76,11 @@ public class MetricsPaddingMethodTest {
 
     TemporalInfo temporalInfo = getTemporalInfo(now - 10000, now, 1l);
     paddingMethod.applyPaddingStrategy(timelineMetric, temporalInfo);
-    TreeMap<Long, Double> values = (TreeMap<Long, Double>) timelineMetric.getMetricValues();
+    TimelineMetricSeries values = timelineMetric.getMetricSeries();
 
     Assert.assertEquals(11, values.size());
     Assert.assertEquals(new Long(now - 10000), values.keySet().iterator().next());
-    Assert.assertEquals(new Long(now), values.descendingKeySet().iterator().next());
+    Assert.assertEquals(now, values.getLastTimestamp());
     Assert.assertEquals(0.0, values.values().iterator().next());
   }
 
@@ -104,11 +105,11 @@ public class MetricsPaddingMethodTest {
 
     TemporalInfo temporalInfo = getTemporalInfo(now - 3000, now, 1l);
     paddingMethod.applyPaddingStrategy(timelineMetric, temporalInfo);
-    TreeMap<Long, Double> values = (TreeMap<Long, Double>) timelineMetric.getMetricValues();
+    TimelineMetricSeries values = timelineMetric.getMetricSeries();
 
     Assert.assertEquals(4, values.size());
     Assert.assertEquals(new Long(now - 3000), values.keySet().iterator().next());
-    Assert.assertEquals(new Long(now), values.descendingKeySet().iterator().next());
+    Assert.assertEquals(now, values.getLastTimestamp());
   }
 
   @Test
@@ -129,11 +130,11 @@ public class MetricsPaddingMethodTest {
 
     TemporalInfo temporalInfo = getTemporalInfo(now - 10000, now, 1000l);
     paddingMethod.applyPaddingStrategy(timelineMetric, temporalInfo);
-    TreeMap<Long, Double> values = (TreeMap<Long, Double>) timelineMetric.getMetricValues();
+    TimelineMetricSeries values = timelineMetric.getMetricSeries();
 
     Assert.assertEquals(11, values.size());
     Assert.assertEquals(new Long(now - 10000), values.keySet().iterator().next());
-    Assert.assertEquals(new Long(now), values.descendingKeySet().iterator().next());
+    Assert.assertEquals(now, values.getLastTimestamp());
     Assert.assertEquals(0.0, values.values().iterator().next());
   }
 
@@ -155,7 +156,7 @@ public class MetricsPaddingMethodTest {
 
     TemporalInfo temporalInfo = getTemporalInfo(now - 10000, now, null);
     paddingMethod.applyPaddingStrategy(timelineMetric, temporalInfo);
-    TreeMap<Long, Double> values = (TreeMap<Long, Double>) timelineMetric.getMetricValues();
+    TimelineMetricSeries values = timelineMetric.getMetricSeries();
 
     Assert.assertEquals(1, values.size());
     Assert.assertEquals(new Long(now - 1000), values.keySet().iterator().next());
@@ -182,7 +183,7 @@ public class MetricsPaddingMethodTest {
 
     TemporalInfo temporalInfo = getTemporalInfo(now - 1000, now, 10l);
     paddingMethod.applyPaddingStrategy(timelineMetric, temporalInfo);
-    TreeMap<Long, Double> values = (TreeMap<Long, Double>) timelineMetric.getMetricValues();
+    TimelineMetricSeries values = timelineMetric.getMetricSeries();
 
     Assert.assertEquals(3, values.size());
   }
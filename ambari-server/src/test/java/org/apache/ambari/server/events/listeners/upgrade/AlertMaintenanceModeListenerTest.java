@@ -38,6 +38,7 @@ import org.apache.ambari.server.state.Host;
 import org.apache.ambari.server.state.MaintenanceState;
 import org.apache.ambari.server.state.Service;
 import org.apache.ambari.server.state.ServiceComponentHost;
+import org.apache.ambari.server.state.alert.AlertCurrentStore;
 import org.apache.ambari.server.utils.EventBusSynchronizer;
 import org.easymock.EasyMock;
 import org.junit.Before;
@@ -226,6 +227,7 @@ public class AlertMaintenanceModeListenerTest {
       binder.bind(Cluster.class).toInstance(cluster);
       binder.bind(AlertDefinitionDAO.class).toInstance(createNiceMock(AlertDefinitionDAO.class));
       binder.bind(AlertsDAO.class).toInstance(createNiceMock(AlertsDAO.class));
+      binder.bind(AlertCurrentStore.class).toInstance(createNiceMock(AlertCurrentStore.class));
       binder.bind(EntityManager.class).toInstance(createNiceMock(EntityManager.class));
     }
   }
@@ -0,0 +1,305 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.events.publishers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Tests {@link PartitionedEventBus}.
+ */
+public class PartitionedEventBusTest {
+
+  /**
+   * The key of a {@link TestEvent}.
+   */
+  private static final Function<Object, Object> KEY = new Function<Object, Object>() {
+    @Override
+    public Object apply(Object event) {
+      return ((TestEvent) event).key;
+    }
+  };
+
+  /**
+   * Whether a {@link TestEvent} may be dropped.
+   */
+  private static final Predicate<Object> DROPPABLE = new Predicate<Object>() {
+    @Override
+    public boolean apply(Object event) {
+      return ((TestEvent) event).droppable;
+    }
+  };
+
+  /**
+   * Tests that the events of a key are handled in the order they were posted
+   * and never on the posting thread.
+   */
+  @Test
+  public void testOrderingPerKey() throws Exception {
+    PartitionedEventBus bus = new PartitionedEventBus("test-bus", 4, 1000,
+        -1L, KEY, DROPPABLE, Thread.NORM_PRIORITY);
+
+    int keys = 10;
+    int eventsPerKey = 100;
+    OrderListener listener = new OrderListener(keys, keys * eventsPerKey);
+    bus.register(listener);
+
+    for (int sequence = 0; sequence < eventsPerKey; sequence++) {
+      for (int key = 0; key < keys; key++) {
+        bus.post(new TestEvent(key, sequence));
+      }
+    }
+
+    assertTrue(listener.latch.await(10, TimeUnit.SECONDS));
+    assertFalse(listener.handledByCaller);
+
+    for (int key = 0; key < keys; key++) {
+      List<Integer> sequences = listener.sequences.get(key);
+      assertEquals(eventsPerKey, sequences.size());
+      for (int sequence = 0; sequence < eventsPerKey; sequence++) {
+        assertEquals(sequence, sequences.get(sequence).intValue());
+      }
+    }
+
+    // the lanes count an event once its listeners are done with it
+    for (int i = 0; i < 100 && bus.getDispatchedCount() < keys * eventsPerKey; i++) {
+      Thread.sleep(100);
+    }
+    assertEquals(keys * eventsPerKey, bus.getDispatchedCount());
+    assertEquals(0, bus.getDroppedCount());
+  }
+
+  /**
+   * Tests that droppable events are dropped rather than handled on the
+   * posting thread when their lane is full.
+   */
+  @Test
+  public void testOverflowIsDropped() throws Exception {
+    PartitionedEventBus bus = new PartitionedEventBus("test-bus", 1, 1, 0L,
+        KEY, DROPPABLE, Thread.NORM_PRIORITY);
+
+    BlockingListener listener = new BlockingListener();
+    bus.register(listener);
+
+    // the first is being handled, the second waits and the third is dropped
+    bus.post(new TestEvent(1, 0, true));
+    assertTrue(listener.started.await(10, TimeUnit.SECONDS));
+    bus.post(new TestEvent(1, 1, true));
+    bus.post(new TestEvent(1, 2, true));
+
+    assertEquals(1, bus.getQueueDepth(0));
+    assertEquals(1, bus.getDroppedCount());
+
+    listener.release.countDown();
+    assertTrue(Thread.currentThread() != listener.thread);
+  }
+
+  /**
+   * Tests that other events wait for room on a full lane instead of being
+   * dropped.
+   */
+  @Test
+  public void testOverflowWaitsForRoom() throws Exception {
+    final PartitionedEventBus bus = new PartitionedEventBus("test-bus", 1, 1, 0L,
+        KEY, DROPPABLE, Thread.NORM_PRIORITY);
+
+    BlockingListener listener = new BlockingListener();
+    bus.register(listener);
+
+    bus.post(new TestEvent(1, 0));
+    assertTrue(listener.started.await(10, TimeUnit.SECONDS));
+    bus.post(new TestEvent(1, 1));
+
+    final CountDownLatch posted = new CountDownLatch(1);
+    Thread poster = new Thread() {
+      @Override
+      public void run() {
+        bus.post(new TestEvent(1, 2));
+        posted.countDown();
+      }
+    };
+    poster.start();
+
+    assertFalse(posted.await(200, TimeUnit.MILLISECONDS));
+    listener.release.countDown();
+    assertTrue(posted.await(10, TimeUnit.SECONDS));
+    assertTrue(listener.handled.await(10, TimeUnit.SECONDS));
+
+    assertEquals(Arrays.asList(0, 1, 2), listener.sequences);
+    assertEquals(0, bus.getDroppedCount());
+  }
+
+  /**
+   * Tests that events a listener posts to its own full lane are put on the
+   * lane over its queue size unless they may be dropped.
+   */
+  @Test
+  public void testRepostToFullLane() throws Exception {
+    PartitionedEventBus bus = new PartitionedEventBus("test-bus", 1, 1, 0L,
+        KEY, DROPPABLE, Thread.NORM_PRIORITY);
+
+    RepostListener listener = new RepostListener(bus, 5);
+    bus.register(listener);
+
+    // the first is taken off the queue, the second fits, the third and
+    // fourth do not and the droppable fifth is dropped
+    bus.post(new TestEvent(1, 0));
+    assertTrue(listener.latch.await(10, TimeUnit.SECONDS));
+
+    assertEquals(Arrays.asList(0, 1, 2, 3), listener.sequences);
+    assertFalse(listener.handledByCaller);
+    assertEquals(1, bus.getDroppedCount());
+    assertEquals(2, bus.getOverflowCount());
+
+    Map<String, Number> metrics = bus.getMetrics();
+    assertEquals(2L, metrics.get("overflow"));
+    assertEquals(1L, metrics.get("dropped"));
+    assertTrue(metrics.containsKey("lane_1_queue_depth"));
+  }
+
+  /**
+   * Tests that the same key always goes to the same lane.
+   */
+  @Test
+  public void testLaneOfKey() throws Exception {
+    PartitionedEventBus bus = new PartitionedEventBus("test-bus", 8, 10, 0L,
+        KEY, DROPPABLE, Thread.NORM_PRIORITY);
+
+    assertEquals(bus.getLane(new TestEvent(3, 0)), bus.getLane(new TestEvent(3, 1)));
+    assertEquals(0, bus.getLane(new TestEvent(null, 0)));
+    assertEquals(8, bus.getLaneCount());
+  }
+
+  private static final class TestEvent {
+    private final Integer key;
+    private final int sequence;
+    private final boolean droppable;
+
+    private TestEvent(Integer key, int sequence) {
+      this(key, sequence, false);
+    }
+
+    private TestEvent(Integer key, int sequence, boolean droppable) {
+      this.key = key;
+      this.sequence = sequence;
+      this.droppable = droppable;
+    }
+  }
+
+  /**
+   * Records the sequences handled for every key.
+   */
+  public static final class OrderListener {
+    private final List<List<Integer>> sequences = new ArrayList<List<Integer>>();
+    private final CountDownLatch latch;
+    private final Thread caller = Thread.currentThread();
+    private volatile boolean handledByCaller = false;
+
+    private OrderListener(int keys, int events) {
+      for (int key = 0; key < keys; key++) {
+        sequences.add(Collections.synchronizedList(new ArrayList<Integer>()));
+      }
+      latch = new CountDownLatch(events);
+    }
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void onEvent(TestEvent event) {
+      if (Thread.currentThread() == caller) {
+        handledByCaller = true;
+      }
+
+      sequences.get(event.key).add(event.sequence);
+      latch.countDown();
+    }
+  }
+
+  /**
+   * Posts more events of the same key from the first one, the last of them
+   * droppable.
+   */
+  public static final class RepostListener {
+    private final List<Integer> sequences = Collections.synchronizedList(new ArrayList<Integer>());
+    private final PartitionedEventBus bus;
+    private final int events;
+    private final CountDownLatch latch;
+    private final Thread caller = Thread.currentThread();
+    private volatile boolean handledByCaller = false;
+
+    private RepostListener(PartitionedEventBus bus, int events) {
+      this.bus = bus;
+      this.events = events;
+      latch = new CountDownLatch(events - 1);
+    }
+
+    @Subscribe
+    public void onEvent(TestEvent event) {
+      if (Thread.currentThread() == caller) {
+        handledByCaller = true;
+      }
+
+      if (event.sequence == 0) {
+        for (int sequence = 1; sequence < events; sequence++) {
+          bus.post(new TestEvent(event.key, sequence, sequence == events - 1));
+        }
+      }
+
+      sequences.add(event.sequence);
+      latch.countDown();
+    }
+  }
+
+  /**
+   * Blocks the lane on the first event until released.
+   */
+  public static final class BlockingListener {
+    private final List<Integer> sequences = Collections.synchronizedList(new ArrayList<Integer>());
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch handled = new CountDownLatch(3);
+    private volatile Thread thread;
+
+    @Subscribe
+    public void onEvent(TestEvent event) throws InterruptedException {
+      if (event.sequence == 0) {
+        thread = Thread.currentThread();
+        started.countDown();
+        release.await(10, TimeUnit.SECONDS);
+      }
+
+      sequences.add(event.sequence);
+      handled.countDown();
+    }
+  }
+}
@@ -644,6 +644,59 @@ public class AlertDispatchDAOTest {
     assertNull(m_dao.findNoticeByUuid("DEADBEEF"));
   }
 
+  /**
+   * Tests that notices are created and have their state updated in bulk.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testUpdateNoticeStates() throws Exception {
+    List<AlertDefinitionEntity> definitions = createDefinitions();
+    AlertDefinitionEntity definition = definitions.get(0);
+
+    AlertHistoryEntity history = new AlertHistoryEntity();
+    history.setServiceName(definition.getServiceName());
+    history.setClusterId(m_cluster.getClusterId());
+    history.setAlertDefinition(definition);
+    history.setAlertLabel("Label");
+    history.setAlertState(AlertState.OK);
+    history.setAlertText("Alert Text");
+    history.setAlertTimestamp(System.currentTimeMillis());
+    m_alertsDao.create(history);
+
+    AlertTargetEntity target = m_helper.createAlertTarget();
+
+    List<AlertNoticeEntity> notices = new ArrayList<AlertNoticeEntity>();
+    for (int i = 0; i < 3; i++) {
+      AlertNoticeEntity notice = new AlertNoticeEntity();
+      notice.setUuid(UUID.randomUUID().toString());
+      notice.setAlertTarget(target);
+      notice.setAlertHistory(history);
+      notice.setNotifyState(NotificationState.PENDING);
+      notices.add(notice);
+    }
+
+    m_dao.createNotices(notices);
+    assertEquals(3, m_dao.findPendingNotices().size());
+
+    List<String> uuids = new ArrayList<String>();
+    uuids.add(notices.get(0).getUuid());
+    uuids.add(notices.get(1).getUuid());
+
+    assertEquals(2, m_dao.updateNoticeStates(uuids, NotificationState.DELIVERED));
+    assertEquals(0, m_dao.updateNoticeStates(Collections.<String> emptyList(),
+        NotificationState.FAILED));
+
+    for (AlertNoticeEntity notice : notices) {
+      m_dao.refresh(notice);
+    }
+
+    assertEquals(NotificationState.DELIVERED, notices.get(0).getNotifyState());
+    assertEquals(NotificationState.DELIVERED, notices.get(1).getNotifyState());
+    assertEquals(NotificationState.PENDING, notices.get(2).getNotifyState());
+    assertEquals(1, m_dao.findPendingNotices().size());
+  }
+
 
   /**
    * Tests that the Ambari {@link Predicate} can be converted and submitted to
@@ -20,6 +20,7 @@ package org.apache.ambari.server.orm.dao;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -29,6 +30,7 @@ import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
 import java.util.UUID;
 
@@ -827,6 +829,14 @@ public class AlertsDAOTest {
     assertEquals(1, summary.getCriticalCount());
     assertEquals(0, summary.getUnknownCount());
 
+    // the same counts from the query of all definitions
+    Map<String, AlertSummaryDTO> definitionCounts =
+        m_dao.findAggregateCountsByDefinition().get(m_cluster.getClusterId());
+    summary = definitionCounts.get("many_per_cluster");
+    assertEquals(1, summary.getOkCount());
+    assertEquals(1, summary.getCriticalCount());
+    assertFalse(definitionCounts.containsKey("foo"));
+
     summary = m_dao.findAggregateCounts(m_cluster.getClusterId(), "foo");
     assertEquals(0, summary.getOkCount());
     assertEquals(0, summary.getWarningCount());
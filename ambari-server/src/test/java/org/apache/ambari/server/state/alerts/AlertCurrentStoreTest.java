@@ -0,0 +1,334 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state.alerts;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.createStrictMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+
+import org.apache.ambari.server.orm.dao.AlertSummaryDTO;
+import org.apache.ambari.server.orm.dao.AlertsDAO;
+import org.apache.ambari.server.orm.entities.AlertCurrentEntity;
+import org.apache.ambari.server.orm.entities.AlertDefinitionEntity;
+import org.apache.ambari.server.orm.entities.AlertHistoryEntity;
+import org.apache.ambari.server.state.AlertState;
+import org.apache.ambari.server.state.MaintenanceState;
+import org.apache.ambari.server.state.alert.AlertCurrentStore;
+import org.apache.ambari.server.state.alert.AlertCurrentStore.CurrentAlert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+/**
+ * Tests {@link AlertCurrentStore}.
+ */
+public class AlertCurrentStoreTest {
+
+  private static final long CLUSTER_ID = 1L;
+  private static final long DEFINITION_ID = 2L;
+  private static final String DEFINITION_NAME = "datanode_process";
+  private static final String HOST = "c6401.ambari.apache.org";
+  private static final String HOST2 = "c6402.ambari.apache.org";
+
+  private AlertsDAO m_dao;
+  private AlertCurrentStore m_store;
+
+  @Before
+  public void setup() {
+    m_dao = createStrictMock(AlertsDAO.class);
+
+    Injector injector = Guice.createInjector(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(AlertsDAO.class).toInstance(m_dao);
+        bind(EntityManager.class).toInstance(createNiceMock(EntityManager.class));
+      }
+    });
+
+    m_store = injector.getInstance(AlertCurrentStore.class);
+  }
+
+  /**
+   * Tests that the current alerts are loaded once and that updates of the
+   * same alert are written together.
+   */
+  @Test
+  public void testUpdatesAreCoalesced() throws Exception {
+    expect(m_dao.findCurrent()).andReturn(
+        Collections.singletonList(createCurrent(10L, AlertState.OK))).once();
+    expect(m_dao.updateLatest(10L, 3L, "text 3")).andReturn(1).once();
+    replay(m_dao);
+
+    m_store.setEnabled(true);
+
+    CurrentAlert current = m_store.get(CLUSTER_ID, DEFINITION_ID, HOST);
+    assertNotNull(current);
+    assertEquals(10L, current.getAlertId());
+    assertEquals(AlertState.OK, current.getState());
+    assertNull(m_store.get(CLUSTER_ID, DEFINITION_ID, null));
+
+    m_store.updateLatest(current, 2L, "text 2");
+    m_store.updateLatest(current, 3L, "text 3");
+    // received out of order
+    m_store.updateLatest(current, 1L, "text 1");
+
+    assertEquals(1, m_store.getPendingCount());
+    assertEquals(2, m_store.getCoalescedCount());
+
+    assertEquals(1, m_store.flush());
+    assertEquals(0, m_store.getPendingCount());
+    assertEquals(0, m_store.flush());
+
+    verify(m_dao);
+  }
+
+  /**
+   * Tests that updates are written right away without write-behind.
+   */
+  @Test
+  public void testUpdateWithoutWriteBehind() throws Exception {
+    expect(m_dao.findCurrent()).andReturn(
+        Collections.singletonList(createCurrent(10L, AlertState.OK))).once();
+    expect(m_dao.updateLatest(10L, 2L, "text 2")).andReturn(1).once();
+    replay(m_dao);
+
+    CurrentAlert current = m_store.get(CLUSTER_ID, DEFINITION_ID, HOST);
+    m_store.updateLatest(current, 2L, "text 2");
+    assertEquals(0, m_store.getPendingCount());
+
+    verify(m_dao);
+  }
+
+  /**
+   * Tests that an alert which was not updated, because it was removed, is
+   * dropped from the index.
+   */
+  @Test
+  public void testRemovedAlertIsEvicted() throws Exception {
+    expect(m_dao.findCurrent()).andReturn(
+        Collections.singletonList(createCurrent(10L, AlertState.CRITICAL))).once();
+    expect(m_dao.updateLatest(10L, 2L, "text 2")).andReturn(0).once();
+    expect(m_dao.findCurrentById(10L)).andReturn(null).once();
+    replay(m_dao);
+
+    m_store.setEnabled(true);
+
+    CurrentAlert current = m_store.get(CLUSTER_ID, DEFINITION_ID, HOST);
+    m_store.updateLatest(current, 2L, "text 2");
+    m_store.flush();
+
+    assertNull(m_store.get(CLUSTER_ID, DEFINITION_ID, HOST));
+    assertEquals(0, m_store.getSize());
+
+    verify(m_dao);
+  }
+
+  /**
+   * Tests that an alert which was not updated because it has a newer
+   * timestamp is kept in the index.
+   */
+  @Test
+  public void testAlertWithNewerTimestampIsKept() throws Exception {
+    AlertCurrentEntity entity = createCurrent(10L, AlertState.OK);
+    expect(m_dao.findCurrent()).andReturn(Collections.singletonList(entity)).once();
+    expect(m_dao.updateLatest(10L, 2L, "text 2")).andReturn(0).once();
+    expect(m_dao.findCurrentById(10L)).andReturn(entity).once();
+    replay(m_dao);
+
+    CurrentAlert current = m_store.get(CLUSTER_ID, DEFINITION_ID, HOST);
+    m_store.updateLatest(current, 2L, "text 2");
+
+    assertNotNull(m_store.get(CLUSTER_ID, DEFINITION_ID, HOST));
+    assertSummary(m_store.getSummary(CLUSTER_ID, DEFINITION_NAME), 1, 0, 0, 0);
+
+    verify(m_dao);
+  }
+
+  /**
+   * Tests that removed alerts are dropped from the index and the summary
+   * without loading it again.
+   */
+  @Test
+  public void testRemove() throws Exception {
+    expect(m_dao.findCurrent()).andReturn(
+        Arrays.asList(createCurrent(10L, HOST, AlertState.OK),
+            createCurrent(11L, HOST2, AlertState.CRITICAL))).once();
+    replay(m_dao);
+
+    assertSummary(m_store.getSummary(CLUSTER_ID, DEFINITION_NAME), 1, 0, 1, 0);
+
+    m_store.remove(10L);
+    assertNull(m_store.get(CLUSTER_ID, DEFINITION_ID, HOST));
+    assertSummary(m_store.getSummary(CLUSTER_ID, DEFINITION_NAME), 0, 0, 1, 0);
+
+    // a new alert of the same host and definition replaces the removed one
+    m_store.put(createCurrent(12L, HOST, AlertState.WARNING));
+    m_store.remove(10L);
+    assertEquals(12L, m_store.get(CLUSTER_ID, DEFINITION_ID, HOST).getAlertId());
+
+    m_store.removeHost(HOST2);
+    assertNull(m_store.get(CLUSTER_ID, DEFINITION_ID, HOST2));
+    assertSummary(m_store.getSummary(CLUSTER_ID, DEFINITION_NAME), 0, 1, 0, 0);
+
+    m_store.removeDefinition(DEFINITION_ID);
+    assertEquals(0, m_store.getSize());
+    assertSummary(m_store.getSummary(CLUSTER_ID, DEFINITION_NAME), 0, 0, 0, 0);
+
+    verify(m_dao);
+  }
+
+  /**
+   * Tests that the index is loaded again after being invalidated and that a
+   * new state replaces the old one.
+   */
+  @Test
+  public void testInvalidate() throws Exception {
+    expect(m_dao.findCurrent()).andReturn(
+        Collections.singletonList(createCurrent(10L, AlertState.OK))).once();
+    expect(m_dao.findCurrent()).andReturn(
+        Collections.<AlertCurrentEntity> emptyList()).once();
+    replay(m_dao);
+
+    assertNotNull(m_store.get(CLUSTER_ID, DEFINITION_ID, HOST));
+
+    m_store.invalidate();
+    assertNull(m_store.get(CLUSTER_ID, DEFINITION_ID, HOST));
+
+    m_store.put(createCurrent(11L, AlertState.WARNING));
+    CurrentAlert current = m_store.get(CLUSTER_ID, DEFINITION_ID, HOST);
+    assertEquals(11L, current.getAlertId());
+    assertEquals(AlertState.WARNING, current.getState());
+
+    verify(m_dao);
+  }
+
+  /**
+   * Tests that the summary of a definition follows changes of state and
+   * maintenance mode without querying the database again.
+   */
+  @Test
+  public void testSummaryFollowsChanges() throws Exception {
+    expect(m_dao.findCurrent()).andReturn(
+        Arrays.asList(createCurrent(10L, HOST, AlertState.OK),
+            createCurrent(11L, HOST2, AlertState.OK))).once();
+    replay(m_dao);
+
+    assertSummary(m_store.getSummary(CLUSTER_ID, DEFINITION_NAME), 2, 0, 0, 0);
+    assertSummary(m_store.getSummary(CLUSTER_ID, "unknown_definition"), 0, 0, 0, 0);
+
+    m_store.put(createCurrent(10L, HOST, AlertState.CRITICAL));
+    assertSummary(m_store.getSummary(CLUSTER_ID, DEFINITION_NAME), 1, 0, 1, 0);
+
+    // in maintenance mode the state is no longer counted
+    AlertCurrentEntity current = createCurrent(11L, HOST2, AlertState.OK);
+    current.setMaintenanceState(MaintenanceState.ON);
+    m_store.updateMaintenanceState(current);
+    assertSummary(m_store.getSummary(CLUSTER_ID, DEFINITION_NAME), 0, 0, 1, 1);
+
+    // the state is kept while the maintenance mode changes
+    m_store.updateMaintenanceState(current);
+    assertSummary(m_store.getSummary(CLUSTER_ID, DEFINITION_NAME), 1, 0, 1, 0);
+
+    verify(m_dao);
+  }
+
+  /**
+   * Tests that summaries which differ from the database are loaded again,
+   * unless they no longer differ when compared again.
+   */
+  @Test
+  public void testReconcile() throws Exception {
+    expect(m_dao.findCurrent()).andReturn(
+        Collections.singletonList(createCurrent(10L, HOST, AlertState.OK))).once();
+    expect(m_dao.findAggregateCountsByDefinition()).andReturn(createCounts(1, 0)).once();
+    expect(m_dao.findAggregateCountsByDefinition()).andReturn(createCounts(0, 1)).once();
+    expect(m_dao.findAggregateCountsByDefinition()).andReturn(createCounts(1, 0)).once();
+    expect(m_dao.findAggregateCountsByDefinition()).andReturn(createCounts(0, 1)).times(2);
+    expect(m_dao.findCurrent()).andReturn(
+        Collections.singletonList(createCurrent(10L, HOST, AlertState.WARNING))).once();
+    replay(m_dao);
+
+    // nothing to compare before the index is loaded
+    assertEquals(0, m_store.reconcile());
+
+    assertSummary(m_store.getSummary(CLUSTER_ID, DEFINITION_NAME), 1, 0, 0, 0);
+    assertEquals(0, m_store.reconcile());
+
+    // written while comparing
+    assertEquals(0, m_store.reconcile());
+    assertEquals(0, m_store.getDriftCount());
+
+    // changed without going through the store
+    assertEquals(1, m_store.reconcile());
+    assertEquals(1, m_store.getDriftCount());
+    assertSummary(m_store.getSummary(CLUSTER_ID, DEFINITION_NAME), 0, 1, 0, 0);
+
+    verify(m_dao);
+  }
+
+  private void assertSummary(AlertSummaryDTO summary, int ok, int warning,
+      int critical, int maintenance) {
+    assertEquals(ok, summary.getOkCount());
+    assertEquals(warning, summary.getWarningCount());
+    assertEquals(critical, summary.getCriticalCount());
+    assertEquals(0, summary.getUnknownCount());
+    assertEquals(maintenance, summary.getMaintenanceCount());
+  }
+
+  private Map<Long, Map<String, AlertSummaryDTO>> createCounts(int ok, int warning) {
+    return Collections.singletonMap(CLUSTER_ID, Collections.singletonMap(
+        DEFINITION_NAME, new AlertSummaryDTO(ok, warning, 0, 0, 0)));
+  }
+
+  private AlertCurrentEntity createCurrent(long alertId, AlertState state) {
+    return createCurrent(alertId, HOST, state);
+  }
+
+  private AlertCurrentEntity createCurrent(long alertId, String hostName,
+      AlertState state) {
+    AlertDefinitionEntity definition = new AlertDefinitionEntity();
+    definition.setDefinitionId(DEFINITION_ID);
+    definition.setDefinitionName(DEFINITION_NAME);
+    definition.setClusterId(CLUSTER_ID);
+
+    AlertHistoryEntity history = new AlertHistoryEntity();
+    history.setAlertDefinition(definition);
+    history.setClusterId(CLUSTER_ID);
+    history.setHostName(hostName);
+    history.setAlertState(state);
+
+    AlertCurrentEntity current = new AlertCurrentEntity();
+    current.setAlertId(alertId);
+    current.setAlertHistory(history);
+    return current;
+  }
+}
@@ -80,6 +80,7 @@ public class AlertDefinitionHashTest extends TestCase {
   private List<AlertDefinitionEntity> m_agentDefinitions;
   private AlertDefinitionEntity m_hdfsService;
   AlertDefinitionEntity m_hdfsHost;
+  private AlertDefinitionEntity m_newAgentScoped;
 
   /**
    *
@@ -199,6 +200,18 @@ public class AlertDefinitionHashTest extends TestCase {
     EasyMock.expect(m_mockDao.findAgentScoped(EasyMock.anyInt())).andReturn(
         m_agentDefinitions).anyTimes();
 
+    m_newAgentScoped = new AlertDefinitionEntity();
+    m_newAgentScoped.setDefinitionId(4L);
+    m_newAgentScoped.setClusterId(1L);
+    m_newAgentScoped.setHash(UUID.randomUUID().toString());
+    m_newAgentScoped.setServiceName("AMBARI");
+    m_newAgentScoped.setComponentName("AMBARI_AGENT");
+    m_newAgentScoped.setScope(Scope.HOST);
+    m_newAgentScoped.setScheduleInterval(1);
+
+    EasyMock.expect(m_mockDao.findById(2L)).andReturn(m_hdfsHost).anyTimes();
+    EasyMock.expect(m_mockDao.findById(4L)).andReturn(m_newAgentScoped).anyTimes();
+
     EasyMock.replay(m_mockClusters, m_mockCluster, m_mockDao);
     m_hash = m_injector.getInstance(AlertDefinitionHash.class);
   }
@@ -289,7 +302,8 @@ public class AlertDefinitionHashTest extends TestCase {
   }
 
   /**
-   * Test {@link AlertDefinitionHash#invalidateHosts(AlertDefinitionEntity)}.
+   * Test {@link AlertDefinitionHash#invalidateHosts(AlertDefinitionEntity)}
+   * updates the cached hash in place.
    */
   @Test
   public void testInvalidateHosts() {
@@ -298,11 +312,62 @@ public class AlertDefinitionHashTest extends TestCase {
     assertNotNull(hash);
     assertTrue(m_hash.isHashCached(CLUSTERNAME, HOSTNAME));
 
+    // an unchanged definition does not change the hash
     Set<String> invalidatedHosts = m_hash.invalidateHosts(m_hdfsHost);
-    assertFalse(m_hash.isHashCached(CLUSTERNAME, HOSTNAME));
+    assertTrue(m_hash.isHashCached(CLUSTERNAME, HOSTNAME));
+    assertEquals(hash, m_hash.getHash(CLUSTERNAME, HOSTNAME));
     assertNotNull(invalidatedHosts);
     assertEquals(1, invalidatedHosts.size());
     assertTrue(invalidatedHosts.contains(HOSTNAME));
+
+    m_hdfsHost.setHash(UUID.randomUUID().toString());
+    invalidatedHosts = m_hash.invalidateHosts(m_hdfsHost);
+    assertTrue(m_hash.isHashCached(CLUSTERNAME, HOSTNAME));
+    assertTrue(invalidatedHosts.contains(HOSTNAME));
+
+    String newHash = m_hash.getHash(CLUSTERNAME, HOSTNAME);
+    assertFalse(hash.equals(newHash));
+
+    // the same as calculating it again
+    m_hash.invalidateAll();
+    assertEquals(newHash, m_hash.getHash(CLUSTERNAME, HOSTNAME));
+  }
+
+  /**
+   * Tests that adding and removing a definition only changes the cached hash
+   * by its own digest.
+   */
+  @Test
+  public void testIncrementalHash() {
+    String hash = m_hash.getHash(CLUSTERNAME, HOSTNAME);
+
+    m_agentDefinitions.add(m_newAgentScoped);
+    Set<String> invalidatedHosts = m_hash.invalidateHosts(m_newAgentScoped);
+    assertTrue(invalidatedHosts.contains(HOSTNAME));
+
+    String newHash = m_hash.getHash(CLUSTERNAME, HOSTNAME);
+    assertFalse(hash.equals(newHash));
+
+    m_hash.invalidateAll();
+    assertEquals(newHash, m_hash.getHash(CLUSTERNAME, HOSTNAME));
+
+    // definition 5 can not be found, as if it was removed
+    AlertDefinitionEntity removed = new AlertDefinitionEntity();
+    removed.setDefinitionId(5L);
+    removed.setClusterId(1L);
+    removed.setHash(UUID.randomUUID().toString());
+    removed.setServiceName("AMBARI");
+    removed.setComponentName("AMBARI_AGENT");
+    removed.setScope(Scope.HOST);
+
+    m_agentDefinitions.add(removed);
+    m_hash.invalidateAll();
+    assertFalse(newHash.equals(m_hash.getHash(CLUSTERNAME, HOSTNAME)));
+
+    m_agentDefinitions.remove(removed);
+    invalidatedHosts = m_hash.invalidateHosts(removed);
+    assertTrue(invalidatedHosts.contains(HOSTNAME));
+    assertEquals(newHash, m_hash.getHash(CLUSTERNAME, HOSTNAME));
   }
 
   /**
@@ -352,14 +417,14 @@ public class AlertDefinitionHashTest extends TestCase {
       uuids.add(entity.getHash());
     }
 
-    Collections.sort(uuids);
-
-    MessageDigest digest = MessageDigest.getInstance("MD5");
+    byte[] hashBytes = new byte[16];
     for (String uuid : uuids) {
-      digest.update(uuid.getBytes());
+      byte[] digest = MessageDigest.getInstance("MD5").digest(uuid.getBytes());
+      for (int i = 0; i < hashBytes.length; i++) {
+        hashBytes[i] ^= digest[i];
+      }
     }
 
-    byte[] hashBytes = digest.digest();
     String expected = Hex.encodeHexString(hashBytes);
 
     assertEquals(expected, m_hash.getHash(CLUSTERNAME, HOSTNAME));
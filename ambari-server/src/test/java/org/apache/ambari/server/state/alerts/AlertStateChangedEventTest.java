@@ -110,7 +110,7 @@ public class AlertStateChangedEventTest {
         dispatchDao.findGroupsByDefinition(EasyMock.anyObject(AlertDefinitionEntity.class))).andReturn(
         groups).once();
 
-    dispatchDao.create(EasyMock.anyObject(AlertNoticeEntity.class));
+    dispatchDao.createNotices(EasyMock.<List<AlertNoticeEntity>> anyObject());
     EasyMock.expectLastCall().once();
 
     EasyMock.replay(alertTarget, alertGroup, dispatchDao);
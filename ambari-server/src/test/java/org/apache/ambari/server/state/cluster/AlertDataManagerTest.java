@@ -58,6 +58,7 @@ import org.apache.ambari.server.state.ServiceComponentHostFactory;
 import org.apache.ambari.server.state.ServiceFactory;
 import org.apache.ambari.server.state.alert.AggregateDefinitionMapping;
 import org.apache.ambari.server.state.alert.AggregateSource;
+import org.apache.ambari.server.state.alert.AlertCurrentStore;
 import org.apache.ambari.server.state.alert.AlertDefinition;
 import org.apache.ambari.server.state.alert.AlertDefinitionFactory;
 import org.apache.ambari.server.state.alert.Reporting;
@@ -94,6 +95,7 @@ public class AlertDataManagerTest {
   private Clusters m_clusters;
   private Cluster m_cluster;
   private AlertsDAO m_dao;
+  private AlertCurrentStore m_currentStore;
   private AlertDispatchDAO m_dispatchDao;
   private AlertDefinitionDAO m_definitionDao;
 
@@ -107,6 +109,7 @@ public class AlertDataManagerTest {
     m_injector.getInstance(GuiceJpaInitializer.class);
     m_helper = m_injector.getInstance(OrmTestHelper.class);
     m_dao = m_injector.getInstance(AlertsDAO.class);
+    m_currentStore = m_injector.getInstance(AlertCurrentStore.class);
     m_dispatchDao = m_injector.getInstance(AlertDispatchDAO.class);
     m_definitionDao = m_injector.getInstance(AlertDefinitionDAO.class);
     m_clusters = m_injector.getInstance(Clusters.class);
@@ -445,6 +448,7 @@ public class AlertDataManagerTest {
     // check if one is critical, still ok
     current.getAlertHistory().setAlertState(AlertState.CRITICAL);
     m_dao.merge(current.getAlertHistory());
+    m_currentStore.put(current);
 
     listener.onAlertStateChangeEvent(event);
     assertEquals("aggregate_test", ref.get().getName());
@@ -457,6 +461,7 @@ public class AlertDataManagerTest {
 
     current.getAlertHistory().setAlertState(AlertState.WARNING);
     m_dao.merge(current.getAlertHistory());
+    m_currentStore.put(current);
 
     listener.onAlertStateChangeEvent(event);
     assertEquals("aggregate_test", ref.get().getName());
@@ -469,6 +474,7 @@ public class AlertDataManagerTest {
 
     current.getAlertHistory().setAlertState(AlertState.CRITICAL);
     m_dao.merge(current.getAlertHistory());
+    m_currentStore.put(current);
 
     listener.onAlertStateChangeEvent(event);
     assertEquals("aggregate_test", ref.get().getName());
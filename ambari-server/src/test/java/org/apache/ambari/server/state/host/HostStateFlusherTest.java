@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state.host;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.apache.ambari.server.events.HostRemovedEvent;
+import org.apache.ambari.server.events.publishers.AmbariEventPublisher;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link HostStateFlusher}.
+ */
+public class HostStateFlusherTest {
+
+  private HostStateFlusher flusher;
+
+  @Before
+  public void setup() {
+    AmbariEventPublisher publisher = createNiceMock(AmbariEventPublisher.class);
+    replay(publisher);
+
+    flusher = new HostStateFlusher(publisher);
+    flusher.setEnabled(true);
+  }
+
+  @Test
+  public void testChangesAreCoalesced() throws Exception {
+    HostImpl host = createHost("host1");
+    host.mergeEntities();
+    expectLastCall().once();
+    replay(host);
+
+    flusher.markDirty(host);
+    flusher.markDirty(host);
+    flusher.markDirty(host);
+
+    assertEquals(1, flusher.getPendingCount());
+    assertEquals(2, flusher.getCoalescedCount());
+
+    assertEquals(1, flusher.flush());
+    assertEquals(0, flusher.getPendingCount());
+    assertEquals(1, flusher.getFlushedCount());
+
+    // nothing left to write
+    assertEquals(0, flusher.flush());
+
+    verify(host);
+  }
+
+  @Test
+  public void testRemovedHostIsNotWritten() throws Exception {
+    HostImpl host1 = createHost("host1");
+    HostImpl host2 = createHost("host2");
+    host2.mergeEntities();
+    expectLastCall().once();
+    replay(host1, host2);
+
+    flusher.markDirty(host1);
+    flusher.markDirty(host2);
+    flusher.onHostRemoved(new HostRemovedEvent("host1"));
+
+    assertEquals(1, flusher.flush());
+
+    verify(host1, host2);
+  }
+
+  @Test
+  public void testFailedFlushIsRetried() throws Exception {
+    HostImpl host = createHost("host1");
+    host.mergeEntities();
+    expectLastCall().andThrow(new RuntimeException("failed"));
+    host.mergeEntities();
+    expectLastCall().once();
+    replay(host);
+
+    flusher.markDirty(host);
+
+    try {
+      flusher.flush();
+      fail("Expected the flush to fail");
+    } catch (RuntimeException e) {
+      // expected
+    }
+
+    assertEquals(1, flusher.getPendingCount());
+    assertEquals(1, flusher.getFailureCount());
+
+    assertEquals(1, flusher.flush());
+    assertEquals(0, flusher.getPendingCount());
+
+    verify(host);
+  }
+
+  private HostImpl createHost(String hostName) {
+    HostImpl host = createNiceMock(HostImpl.class);
+    expect(host.getHostName()).andReturn(hostName).anyTimes();
+    return host;
+  }
+}
@@ -25,7 +25,9 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +36,7 @@ import java.util.UUID;
 import java.util.concurrent.Executor;
 
 import org.apache.ambari.server.api.services.AmbariMetaInfo;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.notifications.DispatchFactory;
 import org.apache.ambari.server.notifications.Notification;
 import org.apache.ambari.server.notifications.NotificationDispatcher;
@@ -212,7 +215,8 @@ public class AlertNoticeDispatchServiceTest extends AlertNoticeDispatchService {
 
     EasyMock.expect(m_dao.findPendingNotices()).andReturn(notices).once();
     EasyMock.expect(m_dispatchFactory.getDispatcher("EMAIL")).andReturn(dispatcher).once();
-    EasyMock.expect(m_dao.merge(notice)).andReturn(notice).atLeastOnce();
+    EasyMock.expect(m_dao.updateNoticeStates(Collections.singletonList(notice.getUuid()),
+        NotificationState.DISPATCHED)).andReturn(1).once();
 
     EasyMock.replay(m_dao, m_dispatchFactory);
 
@@ -243,13 +247,12 @@ public class AlertNoticeDispatchServiceTest extends AlertNoticeDispatchService {
   public void testSingleDispatch() throws Exception {
     MockSnmpDispatcher dispatcher = new MockSnmpDispatcher();
 
-    List<AlertNoticeEntity> notices = getSingleMockNotice(dispatcher.getType());
-    AlertNoticeEntity notice = notices.get(0);
-
     EasyMock.expect(m_dao.findPendingNotices()).andReturn(getSnmpMockNotices()).once();
-    EasyMock.expect(m_dao.merge(notice)).andReturn(notice).atLeastOnce();
     EasyMock.expect(m_dispatchFactory.getDispatcher("SNMP")).andReturn(
         dispatcher).atLeastOnce();
+    EasyMock.expect(m_dao.updateNoticeStates(
+        Arrays.asList(ALERT_NOTICE_UUID_1, ALERT_NOTICE_UUID_2),
+        NotificationState.DISPATCHED)).andReturn(2).once();
 
     EasyMock.replay(m_dao, m_dispatchFactory);
 
@@ -267,6 +270,91 @@ public class AlertNoticeDispatchServiceTest extends AlertNoticeDispatchService {
     assertEquals(2, notifications.size());
   }
 
+  /**
+   * Tests that a target without digest support only gets as many notices as
+   * the rate limit allows and that the rest are left pending.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testRateLimitedDispatch() throws Exception {
+    MockSnmpDispatcher dispatcher = new MockSnmpDispatcher();
+
+    EasyMock.expect(m_dao.findPendingNotices()).andReturn(getSnmpMockNotices()).once();
+    EasyMock.expect(m_dispatchFactory.getDispatcher("SNMP")).andReturn(
+        dispatcher).atLeastOnce();
+    EasyMock.expect(m_dao.updateNoticeStates(Collections.singletonList(ALERT_NOTICE_UUID_1),
+        NotificationState.DISPATCHED)).andReturn(1).once();
+
+    EasyMock.replay(m_dao, m_dispatchFactory);
+
+    InMemoryDefaultTestModule module = new InMemoryDefaultTestModule();
+    module.getProperties().setProperty(
+        Configuration.ALERT_DISPATCH_RATE_LIMIT_KEY, "1");
+
+    Injector injector = Guice.createInjector(Modules.override(module).with(
+        new MockModule()));
+
+    // "startup" the service so that its initialization is done
+    AlertNoticeDispatchService service = injector.getInstance(AlertNoticeDispatchService.class);
+    service.startUp();
+
+    // service trigger with mock executor that blocks
+    service.setExecutor(new MockExecutor());
+    service.runOneIteration();
+
+    EasyMock.verify(m_dao, m_dispatchFactory);
+
+    List<Notification> notifications = dispatcher.getNotifications();
+    assertEquals(1, notifications.size());
+    assertEquals(1, service.getDispatchedCount());
+    assertEquals(1, service.getBacklog());
+  }
+
+  /**
+   * Tests that a rate limit of 0 or less does not limit the notices and that
+   * the dispatch statistics are reported as metrics.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testDispatchWithoutRateLimit() throws Exception {
+    for (String rateLimit : new String[] { "0", "-1" }) {
+      MockSnmpDispatcher dispatcher = new MockSnmpDispatcher();
+
+      EasyMock.reset(m_dao, m_dispatchFactory);
+      EasyMock.expect(m_dao.findPendingNotices()).andReturn(getSnmpMockNotices()).once();
+      EasyMock.expect(m_dispatchFactory.getDispatcher("SNMP")).andReturn(
+          dispatcher).atLeastOnce();
+      EasyMock.expect(m_dao.updateNoticeStates(
+          Arrays.asList(ALERT_NOTICE_UUID_1, ALERT_NOTICE_UUID_2),
+          NotificationState.DISPATCHED)).andReturn(2).once();
+
+      EasyMock.replay(m_dao, m_dispatchFactory);
+
+      InMemoryDefaultTestModule module = new InMemoryDefaultTestModule();
+      module.getProperties().setProperty(
+          Configuration.ALERT_DISPATCH_RATE_LIMIT_KEY, rateLimit);
+
+      Injector injector = Guice.createInjector(Modules.override(module).with(
+          new MockModule()));
+
+      AlertNoticeDispatchService service = injector.getInstance(AlertNoticeDispatchService.class);
+      service.startUp();
+
+      service.setExecutor(new MockExecutor());
+      service.runOneIteration();
+
+      EasyMock.verify(m_dao, m_dispatchFactory);
+
+      assertEquals(2, dispatcher.getNotifications().size());
+
+      Map<String, Number> metrics = service.getMetrics();
+      assertEquals(2L, metrics.get("dispatched"));
+      assertEquals(0, metrics.get("backlog"));
+    }
+  }
+
   /**
    * Tests that a failed dispatch invokes the callback to mark the UUIDs of the
    * notices as FAILED.
@@ -277,13 +365,13 @@ public class AlertNoticeDispatchServiceTest extends AlertNoticeDispatchService {
   public void testFailedDispatch() throws Exception {
     MockEmailDispatcher dispatcher = new MockEmailDispatcher();
     List<AlertNoticeEntity> notices = getSingleMockNotice(dispatcher.getType());
-    AlertNoticeEntity notice = notices.get(0);
 
     // these expectations happen b/c we need to mark the notice as FAILED
     EasyMock.expect(m_dao.findPendingNotices()).andReturn(notices).once();
-    EasyMock.expect(m_dao.merge(notice)).andReturn(notice).once();
-    EasyMock.expect(m_dao.findNoticeByUuid(ALERT_NOTICE_UUID_1)).andReturn(notice).once();
-    EasyMock.expect(m_dao.merge(notice)).andReturn(notice).once();
+    EasyMock.expect(m_dao.updateNoticeStates(Collections.singletonList(ALERT_NOTICE_UUID_1),
+        NotificationState.DISPATCHED)).andReturn(1).once();
+    EasyMock.expect(m_dao.updateNoticeStates(Collections.singletonList(ALERT_NOTICE_UUID_1),
+        NotificationState.FAILED)).andReturn(1).once();
     EasyMock.expect(m_dispatchFactory.getDispatcher(dispatcher.getType())).andReturn(dispatcher).once();
 
     EasyMock.replay(m_dao, m_dispatchFactory);
@@ -316,8 +404,9 @@ public class AlertNoticeDispatchServiceTest extends AlertNoticeDispatchService {
 
     // these expectations happen b/c we need to mark the notice as FAILED
     EasyMock.expect(m_dao.findPendingNotices()).andReturn(notices).once();
-    EasyMock.expect(m_dao.merge(notice)).andReturn(notice).atLeastOnce();
     EasyMock.expect(m_dispatchFactory.getDispatcher(dispatcher.getType())).andReturn(dispatcher).once();
+    EasyMock.expect(m_dao.updateNoticeStates(Collections.singletonList(notice.getUuid()),
+        NotificationState.DISPATCHED)).andReturn(1).once();
 
     EasyMock.replay(m_dao, m_dispatchFactory);
 
@@ -619,6 +708,8 @@ public class AlertNoticeDispatchServiceTest extends AlertNoticeDispatchService {
       binder.bind(DispatchFactory.class).toInstance(m_dispatchFactory);
       binder.bind(AmbariMetaInfo.class).toInstance(m_metaInfo);
 
+      // the module is used by more than one injector in some tests
+      EasyMock.reset(m_metaInfo);
       EasyMock.expect(m_metaInfo.getServerVersion()).andReturn("2.0.0").anyTimes();
       EasyMock.replay(m_metaInfo);
     }